@@ -42,6 +42,7 @@ package com.sun.enterprise.container.common.impl.util;
 
 import com.sun.enterprise.container.common.spi.util.SerializableObjectFactory;
 
+import com.sun.enterprise.container.common.spi.util.ClassDescriptorDictionary;
 import com.sun.enterprise.container.common.spi.util.GlassFishInputStreamHandler;
 import com.sun.logging.LogDomains;
 
@@ -69,13 +70,28 @@ class GlassFishObjectInputStream extends ObjectInputStream
     private ObjectInputOutputStreamFactory inputStreamHelper;
 
     private Collection<GlassFishInputStreamHandler> handlers;
+
+    private ClassDescriptorDictionary dictionary;
     
     GlassFishObjectInputStream(Collection<GlassFishInputStreamHandler> handlers,  InputStream in, ClassLoader appCl, boolean resolve)
         throws IOException, StreamCorruptedException
+    {
+        this(handlers, in, appCl, resolve, null);
+    }
+
+    GlassFishObjectInputStream(Collection<GlassFishInputStreamHandler> handlers,  InputStream in, ClassLoader appCl, boolean resolve,
+            ClassDescriptorDictionary dictionary)
+        throws IOException, StreamCorruptedException
     {
         super(in);
         appLoader = appCl;
         this.handlers = handlers;
+        this.dictionary = dictionary;
+
+        if (dictionary != null && readLong() != dictionary.getId()) {
+            throw new StreamCorruptedException(
+                    "Data was not written with this class descriptor dictionary");
+        }
         
         if (resolve) {
             enableResolveObject(resolve);
@@ -115,6 +131,29 @@ class GlassFishObjectInputStream extends ObjectInputStream
         }
     }
 
+    @Override
+    protected ObjectStreamClass readClassDescriptor()
+        throws IOException, ClassNotFoundException
+    {
+        if (dictionary == null) {
+            return super.readClassDescriptor();
+        }
+
+        byte marker = readByte();
+        if (marker == GlassFishObjectOutputStream.FULL_DESCRIPTOR) {
+            return super.readClassDescriptor();
+        } else if (marker != GlassFishObjectOutputStream.DICTIONARY_DESCRIPTOR) {
+            throw new StreamCorruptedException("Unknown class descriptor marker: " + marker);
+        }
+
+        int classId = readInt();
+        Class<?> cl = dictionary.classOf(classId);
+        if (cl == null) {
+            throw new InvalidClassException("Unknown class descriptor id: " + classId);
+        }
+        return ObjectStreamClass.lookupAny(cl);
+    }
+
     @Override
     protected Class<?> resolveProxyClass(String[] interfaces)
         throws IOException, ClassNotFoundException
@@ -54,10 +54,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.sun.enterprise.container.common.spi.util.ClassDescriptorDictionary;
 import com.sun.enterprise.container.common.spi.util.JavaEEIOUtils;
 import com.sun.enterprise.container.common.spi.util.GlassFishOutputStreamHandler;
 import com.sun.enterprise.container.common.spi.util.IndirectlySerializable;
@@ -81,14 +83,30 @@ class GlassFishObjectOutputStream extends java.io.ObjectOutputStream {
 
 	private static final byte HOME_KEY = (byte) 0xff;
 
+	// Class descriptor markers used when writing with a dictionary
+	static final byte FULL_DESCRIPTOR = 0;
+	static final byte DICTIONARY_DESCRIPTOR = 1;
+
 	private ObjectInputOutputStreamFactory outputStreamHelper;
 
 	private Collection<GlassFishOutputStreamHandler> handlers;
+
+	private ClassDescriptorDictionary dictionary;
 	
 	GlassFishObjectOutputStream(Collection<GlassFishOutputStreamHandler> handlers, OutputStream out, boolean replaceObject)
 			throws IOException {
+		this(handlers, out, replaceObject, null);
+	}
+
+	GlassFishObjectOutputStream(Collection<GlassFishOutputStreamHandler> handlers, OutputStream out, boolean replaceObject,
+			ClassDescriptorDictionary dictionary) throws IOException {
 		super(out);
 		this.handlers = handlers;
+		this.dictionary = dictionary;
+
+		if (dictionary != null) {
+			writeLong(dictionary.getId());
+		}
 		
 		if (replaceObject == true) {
 			enableReplaceObject(replaceObject);
@@ -127,6 +145,25 @@ class GlassFishObjectOutputStream extends java.io.ObjectOutputStream {
 		outputStreamHelper.annotateClass(this, cl);
 	}
 
+	/**
+	 * With a dictionary, a class descriptor is written as the id of its
+	 * class.  Descriptors without a stable serialVersionUID (enums, arrays)
+	 * are still written in full.
+	 */
+	@Override
+	protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+		Class<?> cl = (dictionary == null) ? null : desc.forClass();
+		if (cl == null || cl.isArray() || desc.getSerialVersionUID() == 0L) {
+			if (dictionary != null) {
+				writeByte(FULL_DESCRIPTOR);
+			}
+			super.writeClassDescriptor(desc);
+		} else {
+			writeByte(DICTIONARY_DESCRIPTOR);
+			writeInt(dictionary.idOf(cl));
+		}
+	}
+
 }
 
 final class SerializableJNDIContext implements SerializableObjectFactory {
@@ -46,6 +46,7 @@ import org.jvnet.hk2.annotations.Service;
 import org.glassfish.hk2.api.PostConstruct;
 import org.glassfish.hk2.api.ServiceLocator;
 
+import com.sun.enterprise.container.common.spi.util.ClassDescriptorDictionary;
 import com.sun.enterprise.container.common.spi.util.GlassFishOutputStreamHandler;
 import com.sun.enterprise.container.common.spi.util.GlassFishInputStreamHandler;
 import com.sun.enterprise.container.common.spi.util.JavaEEIOUtils;
@@ -83,22 +84,39 @@ public class JavaEEIOUtilsImpl implements JavaEEIOUtils {
 
 	public ObjectInputStream createObjectInputStream(InputStream is,
 			boolean resolveObject, ClassLoader loader) throws Exception {
-		return new GlassFishObjectInputStream(inputHandlers, is, loader, resolveObject);
+		return createObjectInputStream(is, resolveObject, loader, null);
+	}
+
+	public ObjectInputStream createObjectInputStream(InputStream is,
+			boolean resolveObject, ClassLoader loader,
+			ClassDescriptorDictionary dictionary) throws Exception {
+		return new GlassFishObjectInputStream(inputHandlers, is, loader, resolveObject, dictionary);
 	}
 
 	public ObjectOutputStream createObjectOutputStream(OutputStream os,
 			boolean replaceObject) throws IOException {
-		return new GlassFishObjectOutputStream(outputHandlers, os, replaceObject);
+		return createObjectOutputStream(os, replaceObject, null);
+	}
+
+	public ObjectOutputStream createObjectOutputStream(OutputStream os,
+			boolean replaceObject, ClassDescriptorDictionary dictionary)
+			throws IOException {
+		return new GlassFishObjectOutputStream(outputHandlers, os, replaceObject, dictionary);
 	}
 
 	public byte[] serializeObject(Object obj, boolean replaceObject)
 			throws java.io.IOException {
+		return serializeObject(obj, replaceObject, null);
+	}
+
+	public byte[] serializeObject(Object obj, boolean replaceObject,
+			ClassDescriptorDictionary dictionary) throws java.io.IOException {
 
 		byte[] data = null;
 		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		ObjectOutputStream oos = null;
 		try {
-			oos = createObjectOutputStream(bos, replaceObject);
+			oos = createObjectOutputStream(bos, replaceObject, dictionary);
 
 			oos.writeObject(obj);
 			oos.flush();
@@ -127,13 +145,19 @@ public class JavaEEIOUtilsImpl implements JavaEEIOUtils {
 
 	public Object deserializeObject(byte[] data, boolean resolveObject,
 			ClassLoader appClassLoader) throws Exception {
+		return deserializeObject(data, resolveObject, appClassLoader, null);
+	}
+
+	public Object deserializeObject(byte[] data, boolean resolveObject,
+			ClassLoader appClassLoader, ClassDescriptorDictionary dictionary)
+			throws Exception {
 
 		Object obj = null;
 		ByteArrayInputStream bis = null;
 		ObjectInputStream ois = null;
 		try {
 			bis = new ByteArrayInputStream(data);
-			ois = createObjectInputStream(bis, resolveObject, appClassLoader);
+			ois = createObjectInputStream(bis, resolveObject, appClassLoader, dictionary);
 			obj = ois.readObject();
 		} catch (Exception ex) {
 			_logger.log(Level.FINE, "Error during deserialization", ex);
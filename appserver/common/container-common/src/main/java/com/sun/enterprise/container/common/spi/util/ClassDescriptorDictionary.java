@@ -0,0 +1,108 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.container.common.spi.util;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dictionary of the classes whose descriptors have been written through 
+ * JavaEEIOUtils.  Streams created with a dictionary write a small id in 
+ * place of each class descriptor, so the same dictionary must be used to 
+ * read the data back.  Ids are only valid within the JVM that assigned 
+ * them; a dictionary must never be used for data that is replicated or 
+ * outlives the dictionary.
+ */
+public final class ClassDescriptorDictionary {
+
+    private final long id = UUID.randomUUID().getMostSignificantBits();
+
+    private final ConcurrentMap<Class<?>, Integer> ids = 
+            new ConcurrentHashMap<Class<?>, Integer>();
+
+    // Indexed by id.  Replaced, never modified, when a class is added.
+    private volatile Class<?>[] classes = new Class<?>[0];
+
+    /**
+     * @return an id that identifies this dictionary in the streams it wrote
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the id of the given class, assigning one if needed
+     */
+    public int idOf(Class<?> clazz) {
+        Integer result = ids.get(clazz);
+        if (result == null) {
+            synchronized (this) {
+                result = ids.get(clazz);
+                if (result == null) {
+                    Class<?>[] current = classes;
+                    Class<?>[] next = Arrays.copyOf(current, current.length + 1);
+                    next[current.length] = clazz;
+                    classes = next;
+                    result = current.length;
+                    ids.put(clazz, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the class with the given id, or null if no such id was assigned
+     */
+    public Class<?> classOf(int classId) {
+        Class<?>[] current = classes;
+        return (classId >= 0 && classId < current.length) ? current[classId] : null;
+    }
+
+    /**
+     * @return the number of classes that have been assigned an id
+     */
+    public int size() {
+        return ids.size();
+    }
+}
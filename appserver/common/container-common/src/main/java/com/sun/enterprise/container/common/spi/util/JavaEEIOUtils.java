@@ -74,6 +74,24 @@ public interface JavaEEIOUtils {
     public Object deserializeObject(byte[] data, boolean resolveObject, ClassLoader appClassLoader)
             throws Exception;
     
+    /**
+     * Variants of the methods above that write class descriptors as ids from
+     * the given dictionary.  Data written with a dictionary can only be read
+     * back with the same dictionary.  A null dictionary selects the standard
+     * stream format.
+     */
+    public ObjectInputStream createObjectInputStream(InputStream is, boolean resolveObject, ClassLoader loader,
+            ClassDescriptorDictionary dictionary) throws Exception;
+
+    public ObjectOutputStream createObjectOutputStream(OutputStream os, boolean replaceObject,
+            ClassDescriptorDictionary dictionary) throws IOException;
+
+    public byte[] serializeObject(Object obj, boolean replaceObject, ClassDescriptorDictionary dictionary)
+            throws java.io.IOException;
+
+    public Object deserializeObject(byte[] data, boolean resolveObject, ClassLoader appClassLoader,
+            ClassDescriptorDictionary dictionary) throws Exception;
+
     public void addGlassFishOutputStreamHandler(GlassFishOutputStreamHandler handler);
     
     public void removeGlassFishOutputStreamHandler(GlassFishOutputStreamHandler handler);
@@ -0,0 +1,258 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.container.common.impl.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import com.sun.enterprise.container.common.spi.util.ClassDescriptorDictionary;
+import com.sun.enterprise.container.common.spi.util.GlassFishInputStreamHandler;
+import com.sun.enterprise.container.common.spi.util.GlassFishOutputStreamHandler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that objects written with a class descriptor dictionary are read
+ * back unchanged, and that a stream is only read with its own dictionary.
+ */
+public class GlassFishObjectStreamsTest {
+
+    @Test
+    public void testPlainClassIsWrittenAsId() throws Exception {
+        ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary();
+        Point point = new Point(3, 4);
+
+        byte[] data = write(point, dictionary);
+        assertEquals(point, read(data, dictionary));
+        assertEquals(1, dictionary.size());
+        assertSame(Point.class, dictionary.classOf(dictionary.idOf(Point.class)));
+
+        // the id and the marker replace the descriptor, less the stream id
+        assertTrue(data.length - 8 < write(point, null).length);
+
+        // ids stay valid for later streams written with the same dictionary
+        Point other = new Point(5, 6);
+        assertEquals(other, read(write(other, dictionary), dictionary));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void testHierarchy() throws Exception {
+        ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary();
+        Point3D point = new Point3D(1, 2, 3);
+
+        Point3D result = (Point3D) read(write(point, dictionary), dictionary);
+        assertEquals(point, result);
+        assertEquals(3, result.z);
+        assertEquals(2, dictionary.size());
+        assertSame(Point.class, dictionary.classOf(dictionary.idOf(Point.class)));
+        assertSame(Point3D.class, dictionary.classOf(dictionary.idOf(Point3D.class)));
+    }
+
+    @Test
+    public void testArraysAreWrittenInFull() throws Exception {
+        ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary();
+        Point[][] points = { { new Point(1, 2) }, { new Point(3, 4), null } };
+
+        Point[][] result = (Point[][]) read(write(points, dictionary), dictionary);
+        assertEquals(2, result.length);
+        assertArrayEquals(points[0], result[0]);
+        assertArrayEquals(points[1], result[1]);
+        assertArrayEquals(new int[] { 1, 2, 3 },
+                (int[]) read(write(new int[] { 1, 2, 3 }, dictionary), dictionary));
+
+        // only the element class was given an id
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void testEnumsAreWrittenInFull() throws Exception {
+        ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary();
+
+        assertSame(Color.GREEN, read(write(Color.GREEN, dictionary), dictionary));
+        assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    public void testProxy() throws Exception {
+        ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary();
+        Greeter greeter = (Greeter) Proxy.newProxyInstance(
+                Greeter.class.getClassLoader(), new Class<?>[] { Greeter.class },
+                new GreetingHandler("hello"));
+
+        Greeter result = (Greeter) read(write(greeter, dictionary), dictionary);
+        assertTrue(Proxy.isProxyClass(result.getClass()));
+        assertEquals("hello world", result.greet("world"));
+    }
+
+    @Test
+    public void testMixedGraph() throws Exception {
+        ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary();
+        Object[] graph = { new Point(1, 1), Color.RED, new Point3D(1, 2, 3),
+                           new int[] { 7 }, "text", new Point(1, 1) };
+
+        Object[] result = (Object[]) read(write(graph, dictionary), dictionary);
+        assertEquals(graph.length, result.length);
+        assertEquals(graph[0], result[0]);
+        assertSame(Color.RED, result[1]);
+        assertEquals(graph[2], result[2]);
+        assertArrayEquals((int[]) graph[3], (int[]) result[3]);
+        assertEquals("text", result[4]);
+        assertEquals(graph[5], result[5]);
+    }
+
+    @Test
+    public void testOtherDictionaryIsRejected() throws Exception {
+        byte[] data = write(new Point(1, 2), new ClassDescriptorDictionary());
+        try {
+            read(data, new ClassDescriptorDictionary());
+            fail("StreamCorruptedException expected");
+        } catch (StreamCorruptedException expected) {
+        }
+    }
+
+    private static byte[] write(Object obj, ClassDescriptorDictionary dictionary)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GlassFishObjectOutputStream out = new GlassFishObjectOutputStream(
+                Collections.<GlassFishOutputStreamHandler>emptyList(), bos, false,
+                dictionary);
+        out.writeObject(obj);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    private static Object read(byte[] data, ClassDescriptorDictionary dictionary)
+            throws IOException, ClassNotFoundException {
+        GlassFishObjectInputStream in = new GlassFishObjectInputStream(
+                Collections.<GlassFishInputStreamHandler>emptyList(),
+                new ByteArrayInputStream(data),
+                GlassFishObjectStreamsTest.class.getClassLoader(), false, dictionary);
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    public enum Color {
+        RED, GREEN
+    }
+
+    public interface Greeter {
+        String greet(String name);
+    }
+
+    static class Point implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null || obj.getClass() != getClass()) {
+                return false;
+            }
+            Point other = (Point) obj;
+            return x == other.x && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+
+    static class Point3D extends Point {
+        private static final long serialVersionUID = 1L;
+
+        final int z;
+
+        Point3D(int x, int y, int z) {
+            super(x, y);
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return super.equals(obj) && z == ((Point3D) obj).z;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + z;
+        }
+    }
+
+    static class GreetingHandler implements InvocationHandler, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String greeting;
+
+        GreetingHandler(String greeting) {
+            this.greeting = greeting;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return greeting + " " + args[0];
+        }
+    }
+}
@@ -77,6 +77,15 @@ public class AssocWithThreadResourcePool extends ConnectionPool {
                 maxPoolSize, this, resourceSelectionStrategyClass);
     }
 
+    /**
+     * Resources of this pool are associated with threads, hence a released
+     * resource is never handed off to a waiter. Waiters are only notified.
+     */
+    @Override
+    protected void initializePoolWaitQueue() throws PoolingException {
+        super.initializePoolWaitQueue();
+        handoffQueue = null;
+    }
 
     /**
      * Prefetch is called to check whether there there is a free resource is already associated with the thread
@@ -53,6 +53,7 @@ import com.sun.enterprise.resource.listener.PoolLifeCycleListener;
 import com.sun.enterprise.resource.pool.datastructure.DataStructure;
 import com.sun.enterprise.resource.pool.datastructure.DataStructureFactory;
 import com.sun.enterprise.resource.pool.resizer.Resizer;
+import com.sun.enterprise.resource.pool.waitqueue.FairHandoffPoolWaitQueue;
 import com.sun.enterprise.resource.pool.waitqueue.PoolWaitQueue;
 import com.sun.enterprise.resource.pool.waitqueue.PoolWaitQueueFactory;
 import com.sun.enterprise.transaction.api.JavaEETransaction;
@@ -65,6 +66,7 @@ import javax.resource.ResourceException;
 import javax.resource.spi.RetryableUnavailableException;
 import javax.transaction.Transaction;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -129,6 +131,8 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
 
     protected PoolWaitQueue waitQueue;
     protected PoolWaitQueue reconfigWaitQueue;
+    //set when the wait-queue hands released resources directly to waiters
+    protected FairHandoffPoolWaitQueue handoffQueue;
     private long reconfigWaitTime ;
     protected String poolWaitQueueClass;
 
@@ -160,6 +164,9 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
     protected void initializePoolWaitQueue() throws PoolingException {
         waitQueue = PoolWaitQueueFactory.createPoolWaitQueue(poolWaitQueueClass);
         reconfigWaitQueue = PoolWaitQueueFactory.createPoolWaitQueue(poolWaitQueueClass);
+        if (waitQueue instanceof FairHandoffPoolWaitQueue) {
+            handoffQueue = (FairHandoffPoolWaitQueue) waitQueue;
+        }
     }
 
     protected void initializePoolDataStructure() throws PoolingException {
@@ -367,7 +374,8 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         long remainingWaitTime = 0;
 
         while (true) {
-            if (gateway.allowed()) {
+            //result is already set when a resource was handed off while waiting
+            if (result == null && gateway.allowed()) {
                 //See comment #1 above
                 JavaEETransaction jtx = ((JavaEETransaction) txn);
                 Set resourcesSet = null;
@@ -420,7 +428,33 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
                     }
                 }
 
-                if (!blocked) {
+                if (!blocked && handoffQueue != null) {
+                    //wait for a released resource to be handed off to this request
+                    if (poolLifeCycleListener != null) {
+                        poolLifeCycleListener.connectionRequestQueued();
+                    }
+                    FairHandoffPoolWaitQueue.Waiter waiter = handoffQueue.enqueue();
+                    ResourceHandle handedOff;
+                    try {
+                        logFine("Resource Pool: getting on hand-off wait queue");
+                        handedOff = handoffQueue.await(waiter,
+                                TimeUnit.MILLISECONDS.toNanos(remainingWaitTime));
+                    } catch (InterruptedException ex) {
+                        //Could be system shutdown.
+                        if (poolLifeCycleListener != null) {
+                            poolLifeCycleListener.connectionRequestDequeued();
+                        }
+                        break;
+                    }
+                    //a time-out removes the waiter from the queue by itself,
+                    //otherwise the releasing thread has already dequeued it.
+                    if (waiter.isCancelled() && poolLifeCycleListener != null) {
+                        poolLifeCycleListener.connectionRequestDequeued();
+                    }
+                    if (handedOff != null) {
+                        result = acceptHandedOffResource(handedOff, alloc);
+                    }
+                } else if (!blocked) {
                     //add to wait-queue
                     Object waitMonitor = new Object();
                     if (poolLifeCycleListener != null) {
@@ -765,6 +799,42 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         return result;
     }
 
+    /**
+     * Take over a resource handed off by a releasing thread through the
+     * hand-off wait-queue. The resource is matched and validated as in
+     * getResourceFromPool. If it does not suit this request it is put back
+     * in the free list (or destroyed when invalid) and null is returned.
+     *
+     * @param h     resource handed off to the waiting request
+     * @param alloc ResourceAllocator of the waiting request
+     * @return ResourceHandle the busy resource, or null
+     */
+    protected ResourceHandle acceptHandedOffResource(ResourceHandle h, ResourceAllocator alloc) {
+        if (h.hasConnectionErrorOccurred()) {
+            ds.removeResource(h);
+            return null;
+        }
+        if (!matchConnection(h, alloc) || h.isShareable() != alloc.shareableWithinComponent()) {
+            ds.returnResource(h);
+            notifyWaitingThreads();
+            return null;
+        }
+        if (!isConnectionValid(h, alloc) || h.hasConnectionErrorOccurred()) {
+            ds.removeResource(h);
+            return null;
+        }
+
+        setResourceStateToBusy(h);
+        if (maxConnectionUsage_ > 0) {
+            h.incrementUsageCount();
+        }
+        if (poolLifeCycleListener != null) {
+            poolLifeCycleListener.connectionUsed(h.getId());
+            poolLifeCycleListener.decrementNumConnFree();
+        }
+        return h;
+    }
+
     /**
      * Scale-up the pool to serve the new request. <br>
      * If pool is at max-pool-size and free resources are found, purge unmatched<br>
@@ -1059,13 +1129,20 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
                     resourceHandle.getUsageCount() >= maxConnectionUsage_) {
                  performMaxConnectionUsageOperation(resourceHandle);
             } else {
-                // Put it back to the free collection.
-                ds.returnResource(resourceHandle);
                 //update the monitoring data
                 if (poolLifeCycleListener != null && !resourceHandle.getDestroyByLeakTimeOut()) {
                     poolLifeCycleListener.decrementConnectionUsed(resourceHandle.getId());
                     poolLifeCycleListener.incrementNumConnFree(false, steadyPoolSize);
                 }
+                // Hand it to the oldest waiter, if any, so that no other thread can take it
+                if (handoffQueue != null && handoffQueue.handOff(resourceHandle)) {
+                    if (poolLifeCycleListener != null) {
+                        poolLifeCycleListener.connectionRequestDequeued();
+                    }
+                    return;
+                }
+                // Put it back to the free collection.
+                ds.returnResource(resourceHandle);
             }
             //for both the cases of free.add and maxConUsageOperation, a free resource is added.
             // Hence notify waiting threads
@@ -1221,7 +1298,7 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         synchronized (waitQueue) {
             if (waitQueue.getQueueLength() > 0) {
                 waitMonitor = waitQueue.remove();
-                if(poolLifeCycleListener != null) {
+                if(poolLifeCycleListener != null && waitMonitor != null) {
                     poolLifeCycleListener.connectionRequestDequeued();
                 }
             }
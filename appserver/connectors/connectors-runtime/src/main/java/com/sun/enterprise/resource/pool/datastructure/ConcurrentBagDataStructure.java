@@ -0,0 +1,282 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.ResourceHandler;
+import com.sun.logging.LogDomains;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lock-free datastructure for pool.<br>
+ * A thread first tries the resources it returned most recently, then steals
+ * any free resource from the shared list. Ownership of a resource is taken
+ * by a compare-and-set on its state, so no monitor is held on the
+ * get/return path. When nothing is free, <code>null</code> is returned and the
+ * pool decides whether to resize or to wait.<br>
+ * Can be selected through the pool property
+ * <code>PoolDataStructure=com.sun.enterprise.resource.pool.datastructure.ConcurrentBagDataStructure</code><br>
+ * A {@link com.sun.enterprise.resource.pool.datastructure.strategy.ResourceSelectionStrategy}
+ * cannot be applied to the per-thread lists, so {@link DataStructureFactory}
+ * uses {@link ListDataStructure} for a pool that configures one, and this
+ * constructor rejects a <code>strategyClass</code>.
+ *
+ * @see ListDataStructure
+ * @see RWLockDataStructure
+ */
+public class ConcurrentBagDataStructure implements DataStructure {
+
+    private static final int STATE_REMOVED = -1;
+    private static final int STATE_FREE = 0;
+    private static final int STATE_IN_USE = 1;
+
+    //Number of recently returned resources remembered per thread.
+    private static final int THREAD_LOCAL_LIST_SIZE = 16;
+
+    private final CopyOnWriteArrayList<BagEntry> sharedList;
+    private final ConcurrentHashMap<ResourceHandle, BagEntry> entries;
+    private final ThreadLocal<ArrayDeque<WeakReference<BagEntry>>> threadList;
+    private final AtomicInteger freeCount = new AtomicInteger();
+    //Max Size of the datastructure.Depends mostly on the max-pool-size of
+    // the connection pool.
+    private int maxSize;
+    private final DynamicSemaphore dynSemaphore;
+
+    private ResourceHandler handler;
+
+    protected final static Logger _logger =
+            LogDomains.getLogger(ConcurrentBagDataStructure.class, LogDomains.RSR_LOGGER);
+
+    public ConcurrentBagDataStructure(String parameters, int maxSize,
+                                      ResourceHandler handler, String strategyClass) {
+        sharedList = new CopyOnWriteArrayList<BagEntry>();
+        entries = new ConcurrentHashMap<ResourceHandle, BagEntry>((maxSize > 1000) ? 1000 : maxSize);
+        threadList = new ThreadLocal<ArrayDeque<WeakReference<BagEntry>>>() {
+            @Override
+            protected ArrayDeque<WeakReference<BagEntry>> initialValue() {
+                return new ArrayDeque<WeakReference<BagEntry>>(THREAD_LOCAL_LIST_SIZE);
+            }
+        };
+        if (strategyClass != null) {
+            throw new IllegalArgumentException(
+                    "Resource selection strategy is not supported by ConcurrentBagDataStructure : " + strategyClass);
+        }
+        this.handler = handler;
+        dynSemaphore = new DynamicSemaphore();
+        setMaxSize(maxSize);
+        if (_logger.isLoggable(Level.FINEST)) {
+            _logger.log(Level.FINEST, "pool.datastructure.concurrentbagds.init");
+        }
+    }
+
+    /**
+     * Set maxSize based on the new max pool size set on the connection pool
+     * during a reconfiguration. Permits of the dynamic semaphore are released
+     * or reduced by the difference, as in {@link ListDataStructure}.
+     *
+     * @param newMaxSize
+     */
+    public synchronized void setMaxSize(int newMaxSize) {
+        int permits = newMaxSize - this.maxSize;
+
+        if (permits == 0) {
+            return;
+        } else if (permits > 0) {
+            this.dynSemaphore.release(permits);
+        } else {
+            this.dynSemaphore.reducePermits(-permits);
+        }
+        this.maxSize = newMaxSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int addResource(ResourceAllocator allocator, int count) throws PoolingException {
+        int numResAdded = 0;
+        for (int i = 0; i < count && sharedList.size() < maxSize; i++) {
+            boolean lockAcquired = dynSemaphore.tryAcquire();
+            if (lockAcquired) {
+                try {
+                    ResourceHandle handle = handler.createResource(allocator);
+                    BagEntry entry = new BagEntry(handle);
+                    entries.put(handle, entry);
+                    sharedList.add(entry);
+                    freeCount.incrementAndGet();
+                    numResAdded++;
+                } catch (Exception e) {
+                    dynSemaphore.release();
+                    PoolingException pe = new PoolingException(e.getMessage());
+                    pe.initCause(e);
+                    throw pe;
+                }
+            }
+        }
+        return numResAdded;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ResourceHandle getResource() {
+        //most recently returned by this thread first
+        ArrayDeque<WeakReference<BagEntry>> local = threadList.get();
+        WeakReference<BagEntry> ref;
+        while ((ref = local.pollLast()) != null) {
+            BagEntry entry = ref.get();
+            if (entry != null && entry.acquire()) {
+                return entry.handle;
+            }
+        }
+
+        //steal from the shared list
+        for (BagEntry entry : sharedList) {
+            if (entry.acquire()) {
+                return entry.handle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeResource(ResourceHandle resource) {
+        BagEntry entry = entries.remove(resource);
+        if (entry != null) {
+            if (entry.state.getAndSet(STATE_REMOVED) == STATE_FREE) {
+                freeCount.decrementAndGet();
+            }
+            sharedList.remove(entry);
+            dynSemaphore.release();
+            handler.deleteResource(resource);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void returnResource(ResourceHandle resource) {
+        BagEntry entry = entries.get(resource);
+        if (entry != null && entry.release()) {
+            ArrayDeque<WeakReference<BagEntry>> local = threadList.get();
+            if (local.size() >= THREAD_LOCAL_LIST_SIZE) {
+                local.pollFirst();
+            }
+            local.addLast(entry.ref);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getFreeListSize() {
+        return freeCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAll() {
+        for (BagEntry entry : sharedList) {
+            removeResource(entry.handle);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getResourcesSize() {
+        return sharedList.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ArrayList<ResourceHandle> getAllResources() {
+        ArrayList<ResourceHandle> all = new ArrayList<ResourceHandle>(sharedList.size());
+        for (BagEntry entry : sharedList) {
+            all.add(entry.handle);
+        }
+        return all;
+    }
+
+    /**
+     * Holder of a resource and its ownership state in the bag.
+     */
+    private final class BagEntry {
+        private final ResourceHandle handle;
+        private final AtomicInteger state = new AtomicInteger(STATE_FREE);
+        //shared by all thread-local lists so that a return does not allocate
+        private final WeakReference<BagEntry> ref = new WeakReference<BagEntry>(this);
+
+        BagEntry(ResourceHandle handle) {
+            this.handle = handle;
+        }
+
+        boolean acquire() {
+            if (state.compareAndSet(STATE_FREE, STATE_IN_USE)) {
+                freeCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        boolean release() {
+            if (state.compareAndSet(STATE_IN_USE, STATE_FREE)) {
+                freeCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -68,6 +68,14 @@ public class DataStructureFactory {
                 ds = new ListDataStructure(parameters, maxPoolSize, handler, strategyClass);
             }else if(className.equals(RWLockDataStructure.class.getName())){
                 ds = new RWLockDataStructure(parameters, maxPoolSize, handler, strategyClass);
+            }else if(className.equals(ConcurrentBagDataStructure.class.getName())){
+                if (strategyClass != null) {
+                    //the bag has no single free list a strategy could choose from
+                    _logger.log(Level.WARNING, "pool.datastructure.concurrentbagds.strategy.fallback", strategyClass);
+                    ds = new ListDataStructure(parameters, maxPoolSize, handler, strategyClass);
+                } else {
+                    ds = new ConcurrentBagDataStructure(parameters, maxPoolSize, handler, null);
+                }
             }else{
                 ds = initializeCustomDataStructureInPrivilegedMode(className, parameters, maxPoolSize, handler, strategyClass);
             }
@@ -47,7 +47,6 @@ import com.sun.enterprise.resource.pool.ResourceHandler;
 import com.sun.enterprise.resource.pool.datastructure.strategy.ResourceSelectionStrategy;
 
 import java.util.ArrayList;
-import java.util.concurrent.Semaphore;
 
 /**
  * List based datastructure that can be used by connection pool <br>
@@ -234,21 +233,4 @@ public class ListDataStructure implements DataStructure {
     public ArrayList<ResourceHandle> getAllResources() {
         return this.resources;
     }
-
-    /**
-     * Semaphore whose available permits change according to the 
-     * changes in max-pool-size via a reconfiguration.
-     */
-    private static final class DynamicSemaphore extends Semaphore {
-        
-        DynamicSemaphore() {
-            //Default is 0
-            super(0);
-        }
-        
-        @Override
-        protected void reducePermits(int size) {
-            super.reducePermits(size);
-        }
-    }
 }
@@ -43,14 +43,19 @@ package com.sun.enterprise.resource.pool.monitor;
 import com.sun.enterprise.connectors.ConnectorRuntime;
 import com.sun.enterprise.resource.pool.PoolLifeCycleListenerRegistry;
 import com.sun.enterprise.resource.pool.PoolStatus;
+import com.sun.enterprise.resource.pool.ResourcePool;
+import com.sun.enterprise.resource.pool.waitqueue.FairHandoffPoolWaitQueue;
+import com.sun.enterprise.resource.pool.waitqueue.PoolWaitQueue;
 import org.glassfish.external.probe.provider.annotations.ProbeListener;
 import org.glassfish.external.probe.provider.annotations.ProbeParam;
 import org.glassfish.external.statistics.CountStatistic;
 import org.glassfish.external.statistics.RangeStatistic;
+import org.glassfish.external.statistics.StringStatistic;
 import org.glassfish.external.statistics.annotations.Reset;
 import org.glassfish.external.statistics.impl.CountStatisticImpl;
 import org.glassfish.external.statistics.impl.RangeStatisticImpl;
 import org.glassfish.external.statistics.impl.StatisticImpl;
+import org.glassfish.external.statistics.impl.StringStatisticImpl;
 import org.glassfish.gmbal.AMXMetadata;
 import org.glassfish.gmbal.Description;
 import org.glassfish.gmbal.ManagedAttribute;
@@ -139,6 +144,14 @@ public class ConnectorConnPoolStatsProvider {
     private CountStatisticImpl waitQueueLength = new CountStatisticImpl(
             "WaitQueueLength", StatisticImpl.UNIT_COUNT, 
             "Number of connection requests in the queue waiting to be serviced.");    
+    private StringStatisticImpl waitQueueDepthHistogram = new StringStatisticImpl(
+            "WaitQueueDepthHistogram", "List",
+            "Distribution of the wait queue length seen by connection requests " +
+            "that had to wait. Available with the fair hand-off wait queue only.");
+    private StringStatisticImpl connRequestWaitTimeHistogram = new StringStatisticImpl(
+            "ConnRequestWaitTimeHistogram", "List",
+            "Distribution of the time connection requests spent in the wait queue. " +
+            "Available with the fair hand-off wait queue only.");
     private static final String JCA_PROBE_LISTENER = "glassfish:jca:connection-pool:";
 
     public ConnectorConnPoolStatsProvider(PoolInfo poolInfo, Logger logger) {
@@ -480,6 +493,10 @@ public class ConnectorConnPoolStatsProvider {
         averageConnWaitTime.reset();
         totalConnRequestWaitTime.reset();
         waitQueueLength.reset();        
+        FairHandoffPoolWaitQueue handoffQueue = getHandoffWaitQueue();
+        if (handoffQueue != null) {
+            handoffQueue.resetHistograms();
+        }
     }
     
     /**
@@ -707,4 +724,31 @@ public class ConnectorConnPoolStatsProvider {
     public CountStatistic getWaitQueueLength() {
         return waitQueueLength;
     }    
+
+    @ManagedAttribute(id="waitqueuedepthhistogram")
+    public StringStatistic getWaitQueueDepthHistogram() {
+        FairHandoffPoolWaitQueue handoffQueue = getHandoffWaitQueue();
+        waitQueueDepthHistogram.setCurrent(
+                handoffQueue == null ? "" : handoffQueue.getQueueDepthHistogram());
+        return waitQueueDepthHistogram;
+    }
+
+    @ManagedAttribute(id="connrequestwaittimehistogram")
+    public StringStatistic getConnRequestWaitTimeHistogram() {
+        FairHandoffPoolWaitQueue handoffQueue = getHandoffWaitQueue();
+        connRequestWaitTimeHistogram.setCurrent(
+                handoffQueue == null ? "" : handoffQueue.getWaitTimeHistogram());
+        return connRequestWaitTimeHistogram;
+    }
+
+    private FairHandoffPoolWaitQueue getHandoffWaitQueue() {
+        ResourcePool pool = ConnectorRuntime.getRuntime().getPoolManager().getPool(poolInfo);
+        if (pool != null) {
+            PoolWaitQueue waitQueue = pool.getPoolWaitQueue();
+            if (waitQueue instanceof FairHandoffPoolWaitQueue) {
+                return (FairHandoffPoolWaitQueue) waitQueue;
+            }
+        }
+        return null;
+    }
 }
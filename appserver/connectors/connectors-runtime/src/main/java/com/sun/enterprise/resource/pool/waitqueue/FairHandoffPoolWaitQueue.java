@@ -0,0 +1,279 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.waitqueue;
+
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.logging.LogDomains;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fair wait queue that hands a released resource straight to the oldest waiter.<br>
+ * Waiters park on their own {@link Waiter} instead of a monitor. A releasing thread
+ * calls {@link #handOff(ResourceHandle)}, which transfers ownership of the resource
+ * to the oldest waiter by a compare-and-set, so no other thread can barge in and take it.
+ * Waits are timed with nanosecond deadlines.<br>
+ * Can be selected through the pool property
+ * <code>PoolWaitQueue=com.sun.enterprise.resource.pool.waitqueue.FairHandoffPoolWaitQueue</code>
+ * <br>
+ * Objects added through {@link #addToQueue(Object)} that are not {@link Waiter}s
+ * (eg: monitors of the reconfig-wait-queue) are queued and removed as in
+ * {@link DefaultPoolWaitQueue} and are never handed a resource.
+ */
+public class FairHandoffPoolWaitQueue implements PoolWaitQueue {
+
+    private static final Object WAITING = new Object();
+    private static final Object SIGNALLED = new Object();
+    private static final Object CANCELLED = new Object();
+
+    private static final long[] DEPTH_BUCKETS = {0, 1, 2, 4, 8, 16, 32, 64, 128, 256, 512};
+    private static final long[] WAIT_TIME_BUCKETS_MS = {1, 5, 10, 50, 100, 500, 1000, 5000, 30000};
+
+    private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<Object>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final WaitQueueHistogram depthHistogram = new WaitQueueHistogram(DEPTH_BUCKETS, "");
+    private final WaitQueueHistogram waitTimeHistogram = new WaitQueueHistogram(WAIT_TIME_BUCKETS_MS, "ms");
+
+    protected final static Logger _logger = LogDomains.getLogger(FairHandoffPoolWaitQueue.class, LogDomains.RSR_LOGGER);
+
+    public FairHandoffPoolWaitQueue() {
+        debug("Initializing fair hand-off Pool Wait Queue");
+    }
+
+    /**
+     * A resource request waiting in the queue.
+     */
+    public static final class Waiter {
+        private final Thread thread = Thread.currentThread();
+        private final long enqueuedAt = System.nanoTime();
+        private final AtomicReference<Object> state = new AtomicReference<Object>(WAITING);
+
+        /**
+         * @return true if the waiter left the queue because of a time-out or an interrupt
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private boolean complete(Object newState) {
+            if (state.compareAndSet(WAITING, newState)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Adds a waiter for the current thread to the tail of the queue
+     * @return Waiter to be passed to {@link #await(Waiter, long)}
+     */
+    public Waiter enqueue() {
+        Waiter waiter = new Waiter();
+        addToQueue(waiter);
+        return waiter;
+    }
+
+    /**
+     * Parks the current thread until a resource is handed off to the waiter,
+     * the waiter is signalled, or the time-out elapses.
+     *
+     * @param waiter the waiter returned by {@link #enqueue()}
+     * @param timeoutNanos maximum time to wait, 0 to wait indefinitely
+     * @return the resource handed off to this waiter, null when it was only
+     * signalled or the wait timed out
+     * @throws InterruptedException when interrupted before a resource was handed off
+     */
+    public ResourceHandle await(Waiter waiter, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                Object current = waiter.state.get();
+                if (current != WAITING) {
+                    if (interrupted && current == CANCELLED) {
+                        throw new InterruptedException();
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return (current instanceof ResourceHandle) ? (ResourceHandle) current : null;
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    cancel(waiter);
+                } else if (timeoutNanos > 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        cancel(waiter);
+                    } else {
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            waitTimeHistogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waiter.enqueuedAt));
+        }
+    }
+
+    /**
+     * Hands the resource to the oldest waiter. Ownership passes to the waiter only
+     * when true is returned, otherwise the caller still owns the resource.
+     *
+     * @param resource the released resource
+     * @return boolean indicating whether a waiter took the resource
+     */
+    public boolean handOff(ResourceHandle resource) {
+        Object o;
+        while ((o = queue.poll()) != null) {
+            if (o instanceof Waiter) {
+                if (((Waiter) o).complete(resource)) {
+                    size.decrementAndGet();
+                    return true;
+                }
+                //cancelled waiter, already accounted for
+            } else {
+                size.decrementAndGet();
+                notifyMonitor(o);
+            }
+        }
+        return false;
+    }
+
+    private boolean cancel(Waiter waiter) {
+        if (waiter.state.compareAndSet(WAITING, CANCELLED)) {
+            queue.remove(waiter);
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void notifyMonitor(Object monitor) {
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    public int getQueueLength() {
+        return size.get();
+    }
+
+    public void addToQueue(Object o) {
+        depthHistogram.record(size.getAndIncrement());
+        queue.offer(o);
+    }
+
+    public boolean removeFromQueue(Object o) {
+        if (o instanceof Waiter) {
+            return cancel((Waiter) o);
+        }
+        if (queue.remove(o)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * removes the oldest live object from the queue. A {@link Waiter} is signalled
+     * and will retry to get a resource from the pool.
+     * @return Object removed, null if the queue is empty
+     */
+    public Object remove() {
+        Object o;
+        while ((o = queue.poll()) != null) {
+            if (!(o instanceof Waiter) || ((Waiter) o).complete(SIGNALLED)) {
+                size.decrementAndGet();
+                return o;
+            }
+        }
+        return null;
+    }
+
+    public Object peek() {
+        for (Object o : queue) {
+            if (!(o instanceof Waiter) || !((Waiter) o).isCancelled()) {
+                return o;
+            }
+        }
+        return null;
+    }
+
+    public Collection getQueueContents() {
+        return new ArrayList<Object>(queue);
+    }
+
+    /**
+     * @return histogram of the queue length seen by each request that had to wait
+     */
+    public String getQueueDepthHistogram() {
+        return depthHistogram.toString();
+    }
+
+    /**
+     * @return histogram of the time spent by requests in the queue
+     */
+    public String getWaitTimeHistogram() {
+        return waitTimeHistogram.toString();
+    }
+
+    public void resetHistograms() {
+        depthHistogram.reset();
+        waitTimeHistogram.reset();
+    }
+
+    protected void debug(String debugStatement) {
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, debugStatement);
+        }
+    }
+}
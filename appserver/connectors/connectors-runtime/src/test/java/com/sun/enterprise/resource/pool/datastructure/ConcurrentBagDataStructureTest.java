@@ -0,0 +1,309 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.ResourceHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrentBagDataStructureTest {
+
+    private static final int MAX_SIZE = 8;
+
+    private StubResourceHandler handler;
+    private ConcurrentBagDataStructure ds;
+
+    @Before
+    public void setup() {
+        handler = new StubResourceHandler();
+        ds = new ConcurrentBagDataStructure(null, MAX_SIZE, handler, null);
+    }
+
+    @Test
+    public void testAddIsBoundedByMaxSize() throws Exception {
+        assertEquals(MAX_SIZE, ds.addResource(null, MAX_SIZE + 5));
+        assertEquals(MAX_SIZE, ds.getResourcesSize());
+        assertEquals(MAX_SIZE, ds.getFreeListSize());
+        assertEquals(0, ds.addResource(null, 1));
+    }
+
+    @Test
+    public void testGetPrefersLastReturned() throws Exception {
+        ds.addResource(null, 4);
+        ResourceHandle first = ds.getResource();
+        ResourceHandle second = ds.getResource();
+        ds.returnResource(first);
+        ds.returnResource(second);
+
+        assertSame(second, ds.getResource());
+        assertSame(first, ds.getResource());
+        assertEquals(2, ds.getFreeListSize());
+    }
+
+    @Test
+    public void testExhaustedBagReturnsNull() throws Exception {
+        ds.addResource(null, MAX_SIZE);
+        for (int i = 0; i < MAX_SIZE; i++) {
+            assertNotNull(ds.getResource());
+        }
+        assertNull(ds.getResource());
+        assertEquals(0, ds.getFreeListSize());
+    }
+
+    @Test
+    public void testReturnedResourceIsStolenByAnotherThread() throws Exception {
+        ds.addResource(null, 1);
+        final ResourceHandle resource = ds.getResource();
+        ds.returnResource(resource);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ResourceHandle> stolen = executor.submit(new Callable<ResourceHandle>() {
+                public ResourceHandle call() {
+                    return ds.getResource();
+                }
+            });
+            assertSame(resource, stolen.get(10, TimeUnit.SECONDS));
+            assertNull(ds.getResource());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRemoveReleasesPermit() throws Exception {
+        ds.addResource(null, MAX_SIZE);
+        ResourceHandle busy = ds.getResource();
+        ResourceHandle free = ds.getResource();
+        ds.returnResource(free);
+
+        ds.removeResource(busy);
+        ds.removeResource(free);
+        //removing twice must not release a second permit
+        ds.removeResource(free);
+
+        assertEquals(MAX_SIZE - 2, ds.getResourcesSize());
+        assertEquals(MAX_SIZE - 2, ds.getFreeListSize());
+        assertEquals(2, handler.deleted.size());
+        //a removed resource is never handed out again
+        ds.returnResource(free);
+        assertEquals(MAX_SIZE - 2, ds.getFreeListSize());
+        assertEquals(2, ds.addResource(null, 5));
+    }
+
+    @Test
+    public void testResize() throws Exception {
+        ds.addResource(null, MAX_SIZE);
+        ds.setMaxSize(MAX_SIZE / 2);
+        assertEquals(0, ds.addResource(null, 1));
+
+        //shrinking takes effect as resources are removed
+        List<ResourceHandle> all = ds.getAllResources();
+        for (int i = 0; i < MAX_SIZE / 2 + 1; i++) {
+            ds.removeResource(all.get(i));
+        }
+        assertEquals(MAX_SIZE / 2 - 1, ds.getResourcesSize());
+        assertEquals(1, ds.addResource(null, 5));
+
+        ds.setMaxSize(MAX_SIZE * 2);
+        assertEquals(MAX_SIZE * 2 - MAX_SIZE / 2, ds.addResource(null, MAX_SIZE * 2));
+        assertEquals(MAX_SIZE * 2, ds.getResourcesSize());
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+        ds.addResource(null, MAX_SIZE);
+        ds.getResource();
+        ds.removeAll();
+        assertEquals(0, ds.getResourcesSize());
+        assertEquals(0, ds.getFreeListSize());
+        assertEquals(MAX_SIZE, handler.deleted.size());
+        assertNull(ds.getResource());
+    }
+
+    @Test
+    public void testConcurrentBorrowAndReturn() throws Exception {
+        ds.addResource(null, MAX_SIZE);
+        final int threads = 16;
+        final int iterations = 20000;
+        final Set<ResourceHandle> inUse =
+                Collections.newSetFromMap(new ConcurrentHashMap<ResourceHandle, Boolean>());
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        start.await();
+                        int borrowed = 0;
+                        for (int i = 0; i < iterations; i++) {
+                            ResourceHandle resource = ds.getResource();
+                            if (resource == null) {
+                                continue;
+                            }
+                            if (!inUse.add(resource)) {
+                                throw new AssertionError("resource handed out twice: " + resource);
+                            }
+                            borrowed++;
+                            inUse.remove(resource);
+                            ds.returnResource(resource);
+                        }
+                        return borrowed;
+                    }
+                }));
+            }
+            start.countDown();
+            int borrowed = 0;
+            for (Future<Integer> result : results) {
+                borrowed += result.get(60, TimeUnit.SECONDS);
+            }
+            assertTrue(borrowed > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(MAX_SIZE, ds.getFreeListSize());
+        assertEquals(MAX_SIZE, ds.getResourcesSize());
+    }
+
+    @Test
+    public void testConcurrentBorrowWhileResizing() throws Exception {
+        ds.addResource(null, MAX_SIZE);
+        final CountDownLatch done = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> borrowers = new ArrayList<Future<?>>();
+            for (int t = 0; t < 3; t++) {
+                borrowers.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        while (done.getCount() > 0) {
+                            ResourceHandle resource = ds.getResource();
+                            if (resource != null) {
+                                ds.returnResource(resource);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < 1000; i++) {
+                List<ResourceHandle> all = ds.getAllResources();
+                if (!all.isEmpty()) {
+                    ds.removeResource(all.get(0));
+                }
+                ds.addResource(null, 1);
+            }
+            done.countDown();
+            for (Future<?> borrower : borrowers) {
+                borrower.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(MAX_SIZE, ds.getResourcesSize());
+        assertEquals(MAX_SIZE, ds.getFreeListSize());
+    }
+
+    @Test
+    public void testStrategyIsRejected() {
+        try {
+            new ConcurrentBagDataStructure(null, MAX_SIZE, handler, "com.example.Strategy");
+            fail("a resource selection strategy must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testFactoryFallsBackToListForStrategy() throws Exception {
+        DataStructure withStrategy = DataStructureFactory.getDataStructure(
+                ConcurrentBagDataStructure.class.getName(), null, MAX_SIZE, handler, "com.example.Strategy");
+        assertTrue(withStrategy instanceof ListDataStructure);
+
+        DataStructure withoutStrategy = DataStructureFactory.getDataStructure(
+                ConcurrentBagDataStructure.class.getName(), null, MAX_SIZE, handler, null);
+        assertTrue(withoutStrategy instanceof ConcurrentBagDataStructure);
+    }
+
+    private static class StubResourceHandler implements ResourceHandler {
+        final List<ResourceHandle> deleted =
+                Collections.synchronizedList(new ArrayList<ResourceHandle>());
+
+        public void deleteResource(ResourceHandle resourceHandle) {
+            deleted.add(resourceHandle);
+        }
+
+        public ResourceHandle createResource(ResourceAllocator allocator) throws PoolingException {
+            return new ResourceHandle(null, null, null, null);
+        }
+
+        public void createResourceAndAddToPool() throws PoolingException {
+        }
+
+        public Set getInvalidConnections(Set connections) {
+            return Collections.emptySet();
+        }
+
+        public void invalidConnectionDetected(ResourceHandle h) {
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.waitqueue;
+
+import com.sun.enterprise.resource.ResourceHandle;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FairHandoffPoolWaitQueueTest {
+
+    private static final long WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private FairHandoffPoolWaitQueue queue;
+
+    @Before
+    public void setup() {
+        queue = new FairHandoffPoolWaitQueue();
+    }
+
+    @Test
+    public void testHandOffIsFifo() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<ResourceHandle> first = enqueueAndAwait(executor);
+            Future<ResourceHandle> second = enqueueAndAwait(executor);
+            Future<ResourceHandle> third = enqueueAndAwait(executor);
+            assertEquals(3, queue.getQueueLength());
+
+            ResourceHandle r1 = newHandle();
+            ResourceHandle r2 = newHandle();
+            ResourceHandle r3 = newHandle();
+            assertTrue(queue.handOff(r1));
+            assertTrue(queue.handOff(r2));
+            assertTrue(queue.handOff(r3));
+
+            assertSame(r1, first.get(10, TimeUnit.SECONDS));
+            assertSame(r2, second.get(10, TimeUnit.SECONDS));
+            assertSame(r3, third.get(10, TimeUnit.SECONDS));
+            assertEquals(0, queue.getQueueLength());
+            assertFalse(queue.handOff(newHandle()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTimedOutWaiterLeavesQueue() throws Exception {
+        FairHandoffPoolWaitQueue.Waiter waiter = queue.enqueue();
+        assertEquals(1, queue.getQueueLength());
+
+        assertNull(queue.await(waiter, TimeUnit.MILLISECONDS.toNanos(20)));
+        assertTrue(waiter.isCancelled());
+        assertEquals(0, queue.getQueueLength());
+        assertTrue(queue.getQueueContents().isEmpty());
+        assertFalse("a timed out waiter must not take a resource", queue.handOff(newHandle()));
+    }
+
+    @Test
+    public void testHandOffSkipsTimedOutWaiter() throws Exception {
+        FairHandoffPoolWaitQueue.Waiter timedOut = queue.enqueue();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ResourceHandle> live = enqueueAndAwait(executor);
+            assertNull(queue.await(timedOut, TimeUnit.MILLISECONDS.toNanos(1)));
+            assertEquals(1, queue.getQueueLength());
+
+            ResourceHandle resource = newHandle();
+            assertTrue(queue.handOff(resource));
+            assertSame(resource, live.get(10, TimeUnit.SECONDS));
+            assertEquals(0, queue.getQueueLength());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRemovedWaiterIsNotHandedResource() {
+        FairHandoffPoolWaitQueue.Waiter waiter = queue.enqueue();
+        assertTrue(queue.removeFromQueue(waiter));
+        assertTrue(waiter.isCancelled());
+        assertEquals(0, queue.getQueueLength());
+        assertFalse(queue.removeFromQueue(waiter));
+        assertNull(queue.peek());
+        assertFalse(queue.handOff(newHandle()));
+    }
+
+    @Test
+    public void testRemoveSignalsOldestWaiter() throws Exception {
+        FairHandoffPoolWaitQueue.Waiter first = queue.enqueue();
+        FairHandoffPoolWaitQueue.Waiter second = queue.enqueue();
+        assertSame(first, queue.peek());
+
+        assertSame(first, queue.remove());
+        assertFalse(first.isCancelled());
+        assertNull("a signalled waiter gets no resource", queue.await(first, WAIT_NANOS));
+        assertEquals(1, queue.getQueueLength());
+        assertSame(second, queue.peek());
+    }
+
+    @Test
+    public void testMonitorIsDequeuedByHandOff() {
+        Object monitor = new Object();
+        queue.addToQueue(monitor);
+        assertEquals(1, queue.getQueueLength());
+        assertFalse("a monitor is notified but never handed a resource", queue.handOff(newHandle()));
+        assertEquals(0, queue.getQueueLength());
+    }
+
+    /**
+     * Enqueues a waiter on an executor thread and waits until it is in the queue,
+     * so that waiters are queued in submission order.
+     */
+    private Future<ResourceHandle> enqueueAndAwait(ExecutorService executor) throws InterruptedException {
+        final CountDownLatch enqueued = new CountDownLatch(1);
+        Future<ResourceHandle> result = executor.submit(() -> {
+            FairHandoffPoolWaitQueue.Waiter waiter = queue.enqueue();
+            enqueued.countDown();
+            return queue.await(waiter, WAIT_NANOS);
+        });
+        assertTrue(enqueued.await(10, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private static ResourceHandle newHandle() {
+        return new ResourceHandle(null, null, null, null);
+    }
+}
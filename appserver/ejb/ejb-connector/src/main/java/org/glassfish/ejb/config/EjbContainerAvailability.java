@@ -114,7 +114,8 @@ public interface EjbContainerAvailability extends ConfigBeanProxy,
      * Gets the value of the sfsbPersistenceType property.
      *
      * Specifies the passivation mechanism for stateful session beans that do
-     * not have availability enabled. Default is "file".
+     * not have availability enabled. Default is "file"; "segmented-file"
+     * appends the state to rolling segment files instead of one file per bean.
      *
      * @return possible object is
      *         {@link String }
@@ -43,6 +43,7 @@ package com.sun.ejb;
 import java.lang.reflect.Method;
 
 import com.sun.ejb.containers.interceptors.InterceptorManager;
+import com.sun.ejb.containers.util.MethodInvoker;
 import com.sun.enterprise.security.ee.CachedPermission;
 import org.glassfish.ejb.deployment.descriptor.EjbRemovalInfo;
 
@@ -80,6 +81,10 @@ public class InvocationInfo {
     // correspond to ejb interface methods.
     public Method     targetMethod1;
     public Method     targetMethod2;
+
+    // Invoker for targetMethod1, bound at initialization so that business
+    // method dispatch does not go through Method.invoke
+    public MethodInvoker targetMethod1Invoker;
     public boolean    ejbIntfOverride;
 
     public boolean    flushEnabled;
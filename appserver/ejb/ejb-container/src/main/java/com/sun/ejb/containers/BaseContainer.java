@@ -110,6 +110,7 @@ import com.sun.ejb.codegen.EjbOptionalIntfGenerator;
 import com.sun.ejb.codegen.ServiceInterfaceGenerator;
 import com.sun.ejb.containers.interceptors.InterceptorManager;
 import com.sun.ejb.containers.interceptors.SystemInterceptorProxy;
+import com.sun.ejb.containers.util.MethodInvoker;
 import com.sun.ejb.containers.util.MethodMap;
 import com.sun.ejb.monitoring.probes.EjbCacheProbeProvider;
 import com.sun.ejb.monitoring.probes.EjbMonitoringProbeProvider;
@@ -158,6 +159,7 @@ import org.glassfish.ejb.deployment.descriptor.EjbInitInfo;
 import org.glassfish.ejb.deployment.descriptor.EjbMessageBeanDescriptor;
 import org.glassfish.ejb.deployment.descriptor.EjbSessionDescriptor;
 import org.glassfish.ejb.deployment.descriptor.ScheduledTimerDescriptor;
+import org.glassfish.ejb.security.application.EJBSecurityManager;
 import org.glassfish.ejb.spi.WSEjbEndpointRegistry;
 import org.glassfish.enterprise.iiop.api.GlassFishORBHelper;
 import org.glassfish.enterprise.iiop.api.ProtocolManager;
@@ -3626,6 +3628,24 @@ public abstract class BaseContainer
             Method m = ejbIntfMethods[i];
             ejbIntfMethodInfo[i] = (InvocationInfo) invocationInfoMap.get(m);
         }
+
+        // Bind the bean class methods once, so that dispatching a business
+        // method does not go through Method.invoke.  A method that cannot
+        // be bound is still invoked reflectively.
+        for(Object o : invocationInfoMap.values()) {
+            InvocationInfo info = (InvocationInfo) o;
+            if( info.targetMethod1 != null ) {
+                try {
+                    info.targetMethod1Invoker =
+                        MethodInvoker.create(info.targetMethod1);
+                } catch(IllegalAccessException e) {
+                    if( _logger.isLoggable(Level.FINE) ) {
+                        _logger.log(Level.FINE, "Cannot bind invoker for "
+                                    + info.targetMethod1, e);
+                    }
+                }
+            }
+        }
     }
     
     /**
@@ -4238,8 +4258,14 @@ public abstract class BaseContainer
             throws Throwable {
         try {
             onEjbMethodStart(inv.invocationInfo.str_method_sig);
+            MethodInvoker invoker = getBeanMethodInvoker(inv, beanClassMethod);
             if (inv.useFastPath) {
-                return inv.getBeanMethod().invoke(inv.ejb, inv.methodParams);
+                return (invoker != null)
+                    ? invoker.invoke(inv.ejb, inv.methodParams)
+                    : inv.getBeanMethod().invoke(inv.ejb, inv.methodParams);
+            } else if (invoker != null) {
+                return ((EJBSecurityManager) securityManager).invoke(
+                        invoker, inv.isLocal, target, params);
             } else {
 
                 return securityManager.invoke(beanClassMethod, inv.isLocal, target,
@@ -4817,6 +4843,11 @@ public abstract class BaseContainer
     {
         try {
 
+            MethodInvoker invoker = getBeanMethodInvoker(inv, inv.getBeanMethod());
+            if (invoker != null) {
+                return ((EJBSecurityManager) securityManager).invoke(
+                        invoker, inv.isLocal, inv.ejb, inv.getParameters());
+            }
             return securityManager.invoke(inv.getBeanMethod(), inv.isLocal, inv.ejb,
                                        inv.getParameters());
           
@@ -4824,6 +4855,23 @@ public abstract class BaseContainer
             throw ite.getCause();
         }
     }
+
+    /**
+     * Return the invoker bound at initialization for the given bean class
+     * method of this invocation, or null if the method must be invoked
+     * reflectively.
+     */
+    private MethodInvoker getBeanMethodInvoker(EjbInvocation inv, Method beanClassMethod) {
+        InvocationInfo info = inv.invocationInfo;
+        if (info == null || info.targetMethod1Invoker == null
+                || !(securityManager instanceof EJBSecurityManager)) {
+            return null;
+        }
+        MethodInvoker invoker = info.targetMethod1Invoker;
+        Method method = invoker.getMethod();
+        return (method == beanClassMethod || method.equals(beanClassMethod))
+            ? invoker : null;
+    }
     
     protected abstract EjbMonitoringStatsProvider getMonitoringStatsProvider(
             String appName, String modName, String ejbName);
@@ -4951,6 +4999,14 @@ public abstract class BaseContainer
         timerProbeNotifier.ejbTimerDeliveredEvent();
     }
 
+    protected void incrementRestoredTimedObjects(int count) {
+        timerProbeNotifier.ejbTimersRestoredEvent(count);
+    }
+
+    protected void timerDeliveryStarted(long lag, int backlog) {
+        timerProbeNotifier.ejbTimerDeliveryStartedEvent(lag, backlog);
+    }
+
     private static class JndiInfo {
 
         private JndiInfo(String name, Object object) {
@@ -0,0 +1,520 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.logging.LogDomains;
+
+/**
+ * Timer engine used by the EJB Timer Service in place of the shared
+ * java.util.Timer.
+ *
+ * Pending expirations are kept in a hierarchical timing wheel: LEVELS wheels
+ * of WHEEL_SIZE slots each, where a slot on level n covers WHEEL_SIZE^n ticks.
+ * Scheduling and cancelling a task are O(1); a task is moved to a finer level
+ * when the slot it sits in comes due.  A single tick thread advances the wheel
+ * and sleeps until the next slot that holds work, so an idle wheel costs
+ * nothing.
+ *
+ * Expired tasks are handed to a fixed pool of delivery threads.  Each
+ * container gets its own queue and the delivery threads serve the non-empty
+ * queues round-robin, so a container with a burst of expirations cannot
+ * starve the timers of other containers.
+ */
+final class EJBTimerScheduler {
+
+    private static final Logger logger =
+        LogDomains.getLogger(EJBTimerScheduler.class, LogDomains.EJB_LOGGER);
+
+    private static final int WHEEL_BITS = 9;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis_;
+    private final int deliveryThreads_;
+    private final long origin_;
+
+    // Guarded by this
+    private final EJBTimerTask[][] slots_ = new EJBTimerTask[LEVELS][WHEEL_SIZE];
+    private long currentTick_;
+    private long wakeTick_ = Long.MAX_VALUE;
+    private int size_;
+    private boolean started_;
+    private volatile boolean stopped_;
+
+    // Guarded by deliveryLock_
+    private final Object deliveryLock_ = new Object();
+    private final Map<Long, ContainerQueue> containerQueues_ =
+        new HashMap<Long, ContainerQueue>();
+    private final ArrayDeque<ContainerQueue> readyQueues_ =
+        new ArrayDeque<ContainerQueue>();
+    private int backlog_;
+
+    private volatile long maxDeliveryLag_;
+
+    /**
+     * @param tickMillis resolution of the wheel
+     * @param deliveryThreads number of threads delivering expired timers
+     */
+    EJBTimerScheduler(long tickMillis, int deliveryThreads) {
+        tickMillis_ = tickMillis;
+        deliveryThreads_ = deliveryThreads;
+        origin_ = System.currentTimeMillis();
+    }
+
+    /**
+     * Schedule a task to expire at its timeout.  A timeout in the past
+     * expires on the next tick.
+     */
+    synchronized void schedule(EJBTimerTask task) {
+        if( stopped_ ) {
+            return;
+        }
+        start();
+        long now = System.currentTimeMillis();
+        if( size_ == 0 ) {
+            // Nothing is waiting, so the wheel can skip straight to now
+            // instead of replaying the idle ticks.
+            currentTick_ = Math.max(currentTick_, floorTick(now));
+        }
+        add(task);
+        if( task.deadlineTick_ < wakeTick_ ) {
+            notify();
+        }
+    }
+
+    /**
+     * Schedule a batch of tasks while holding the wheel lock only once.
+     */
+    synchronized void scheduleAll(Collection<EJBTimerTask> tasks) {
+        if( stopped_ || tasks.isEmpty() ) {
+            return;
+        }
+        start();
+        if( size_ == 0 ) {
+            currentTick_ = Math.max(currentTick_,
+                                    floorTick(System.currentTimeMillis()));
+        }
+        long earliest = Long.MAX_VALUE;
+        for(EJBTimerTask task : tasks) {
+            if( !task.isCancelled() ) {
+                add(task);
+                earliest = Math.min(earliest, task.deadlineTick_);
+            }
+        }
+        if( earliest < wakeTick_ ) {
+            notify();
+        }
+    }
+
+    /**
+     * Remove a task from the wheel.
+     * @return true if the task was still waiting to expire
+     */
+    synchronized boolean cancel(EJBTimerTask task) {
+        if( task.level_ < 0 ) {
+            return false;
+        }
+        unlink(task);
+        size_--;
+        return true;
+    }
+
+    /**
+     * Queue an expired task for delivery on behalf of the given container.
+     */
+    void dispatch(long containerId, EJBTimerTask task) {
+        synchronized(deliveryLock_) {
+            if( stopped_ ) {
+                return;
+            }
+            Long key = Long.valueOf(containerId);
+            ContainerQueue queue = containerQueues_.get(key);
+            if( queue == null ) {
+                queue = new ContainerQueue(key);
+                containerQueues_.put(key, queue);
+            }
+            queue.tasks_.add(task);
+            backlog_++;
+            if( !queue.ready_ ) {
+                queue.ready_ = true;
+                readyQueues_.add(queue);
+                deliveryLock_.notify();
+            }
+        }
+    }
+
+    boolean hasDeliveryThreads() {
+        return deliveryThreads_ > 0;
+    }
+
+    void stop() {
+        synchronized(this) {
+            stopped_ = true;
+            for(int level = 0; level < LEVELS; level++) {
+                for(int slot = 0; slot < WHEEL_SIZE; slot++) {
+                    EJBTimerTask task = slots_[level][slot];
+                    while( task != null ) {
+                        EJBTimerTask next = task.next_;
+                        task.next_ = task.prev_ = null;
+                        task.level_ = -1;
+                        task = next;
+                    }
+                    slots_[level][slot] = null;
+                }
+            }
+            size_ = 0;
+            notifyAll();
+        }
+        synchronized(deliveryLock_) {
+            containerQueues_.clear();
+            readyQueues_.clear();
+            backlog_ = 0;
+            deliveryLock_.notifyAll();
+        }
+    }
+
+    /**
+     * @return number of timers waiting in the wheel
+     */
+    synchronized int getScheduledCount() {
+        return size_;
+    }
+
+    /**
+     * @return number of expired timers waiting for a delivery thread
+     */
+    int getDeliveryBacklog() {
+        synchronized(deliveryLock_) {
+            return backlog_;
+        }
+    }
+
+    /**
+     * @return the largest delay seen between a timer's expiration and the
+     * start of its delivery, in milliseconds
+     */
+    long getMaxDeliveryLag() {
+        return maxDeliveryLag_;
+    }
+
+    void recordDeliveryLag(long lag) {
+        if( lag > maxDeliveryLag_ ) {
+            maxDeliveryLag_ = lag;
+        }
+    }
+
+    private void start() {
+        if( started_ ) {
+            return;
+        }
+        started_ = true;
+
+        // The threads outlive any application, so make sure they do not
+        // pin the class loader of whichever application got here first.
+        ClassLoader loader = EJBTimerScheduler.class.getClassLoader();
+        Thread ticker = new Thread(new Runnable() {
+            public void run() {
+                runTicks();
+            }
+        }, "ejb-timer-wheel");
+        ticker.setDaemon(true);
+        ticker.setContextClassLoader(loader);
+        ticker.start();
+
+        for(int i = 0; i < deliveryThreads_; i++) {
+            Thread delivery = new Thread(new Runnable() {
+                public void run() {
+                    runDeliveries();
+                }
+            }, "ejb-timer-delivery-" + i);
+            delivery.setDaemon(true);
+            delivery.setContextClassLoader(loader);
+            delivery.start();
+        }
+    }
+
+    private void runTicks() {
+        List<EJBTimerTask> expired = new ArrayList<EJBTimerTask>();
+        while( awaitExpired(expired) ) {
+            for(EJBTimerTask task : expired) {
+                if( task.isCancelled() ) {
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch(Throwable t) {
+                    logger.log(Level.WARNING, "Exception expiring " +
+                               "timer task for " + task.getTimerId(), t);
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * Advance the wheel up to the current time, waiting as long as nothing
+     * is due.
+     * @return false once the scheduler has been stopped
+     */
+    private synchronized boolean awaitExpired(List<EJBTimerTask> expired) {
+        try {
+            while( !stopped_ ) {
+                long now = System.currentTimeMillis();
+                long nowTick = floorTick(now);
+                if( size_ == 0 ) {
+                    currentTick_ = Math.max(currentTick_, nowTick);
+                    wakeTick_ = Long.MAX_VALUE;
+                    wait();
+                    continue;
+                }
+                advanceTo(nowTick, expired);
+                if( !expired.isEmpty() ) {
+                    wakeTick_ = currentTick_ + 1;
+                    return true;
+                }
+                wakeTick_ = nextWorkTick();
+                long delay = origin_ + wakeTick_ * tickMillis_ - now;
+                if( delay > 0 ) {
+                    wait(delay);
+                }
+            }
+        } catch(InterruptedException e) {
+            logger.log(Level.FINE, "EJB timer wheel interrupted", e);
+        }
+        return false;
+    }
+
+    /**
+     * Process every tick up to and including the given one.
+     * @param expired receives the tasks that expire, in deadline order
+     */
+    synchronized void advanceTo(long tick, List<EJBTimerTask> expired) {
+        while( currentTick_ < tick ) {
+            advance(++currentTick_, expired);
+        }
+    }
+
+    /**
+     * Process one tick: move tasks down from every coarser slot that starts
+     * at this tick, then collect the tasks of the finest slot.
+     */
+    private void advance(long tick, List<EJBTimerTask> expired) {
+        for(int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * WHEEL_BITS;
+            if( (tick & ((1L << shift) - 1)) == 0 ) {
+                int slot = (int) ((tick >> shift) & WHEEL_MASK);
+                EJBTimerTask task = slots_[level][slot];
+                slots_[level][slot] = null;
+                while( task != null ) {
+                    EJBTimerTask next = task.next_;
+                    task.next_ = task.prev_ = null;
+                    task.level_ = -1;
+                    if( task.deadlineTick_ <= tick ) {
+                        size_--;
+                        expired.add(task);
+                    } else {
+                        link(task);
+                    }
+                    task = next;
+                }
+            }
+        }
+
+        int slot = (int) (tick & WHEEL_MASK);
+        EJBTimerTask task = slots_[0][slot];
+        slots_[0][slot] = null;
+        while( task != null ) {
+            EJBTimerTask next = task.next_;
+            task.next_ = task.prev_ = null;
+            task.level_ = -1;
+            size_--;
+            expired.add(task);
+            task = next;
+        }
+    }
+
+    /**
+     * @return the next tick that has level 0 work or starts a coarser slot
+     */
+    private long nextWorkTick() {
+        long boundary = (currentTick_ | WHEEL_MASK) + 1;
+        for(long tick = currentTick_ + 1; tick < boundary; tick++) {
+            if( slots_[0][(int) (tick & WHEEL_MASK)] != null ) {
+                return tick;
+            }
+        }
+        return boundary;
+    }
+
+    private void add(EJBTimerTask task) {
+        if( task.level_ >= 0 ) {
+            unlink(task);
+        } else {
+            size_++;
+        }
+        task.scheduler_ = this;
+        task.deadlineTick_ = Math.max(ceilTick(task.getTimeout().getTime()),
+                                      currentTick_ + 1);
+        link(task);
+    }
+
+    /**
+     * Put a task on the finest level whose span still covers its deadline.
+     * Deadlines beyond the top level wait in its last slot and are placed
+     * again when that slot comes due.
+     */
+    private void link(EJBTimerTask task) {
+        long deadline = task.deadlineTick_;
+        int level = 0;
+        long index = deadline;
+        while( level < LEVELS ) {
+            int shift = level * WHEEL_BITS;
+            index = deadline >> shift;
+            if( index - (currentTick_ >> shift) < WHEEL_SIZE ) {
+                break;
+            }
+            level++;
+        }
+        if( level == LEVELS ) {
+            level = LEVELS - 1;
+            index = (currentTick_ >> (level * WHEEL_BITS)) + WHEEL_MASK;
+        }
+        int slot = (int) (index & WHEEL_MASK);
+
+        EJBTimerTask head = slots_[level][slot];
+        task.level_ = level;
+        task.slot_ = slot;
+        task.prev_ = null;
+        task.next_ = head;
+        if( head != null ) {
+            head.prev_ = task;
+        }
+        slots_[level][slot] = task;
+    }
+
+    private void unlink(EJBTimerTask task) {
+        if( task.prev_ != null ) {
+            task.prev_.next_ = task.next_;
+        } else {
+            slots_[task.level_][task.slot_] = task.next_;
+        }
+        if( task.next_ != null ) {
+            task.next_.prev_ = task.prev_;
+        }
+        task.next_ = task.prev_ = null;
+        task.level_ = -1;
+    }
+
+    private long floorTick(long time) {
+        long delta = time - origin_;
+        long tick = delta / tickMillis_;
+        return (delta < 0 && tick * tickMillis_ != delta) ? tick - 1 : tick;
+    }
+
+    private long ceilTick(long time) {
+        long tick = floorTick(time);
+        return (origin_ + tick * tickMillis_ == time) ? tick : tick + 1;
+    }
+
+    private void runDeliveries() {
+        while( true ) {
+            EJBTimerTask task;
+            int backlog;
+            synchronized(deliveryLock_) {
+                while( readyQueues_.isEmpty() && !stopped_ ) {
+                    try {
+                        deliveryLock_.wait();
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+                if( stopped_ ) {
+                    return;
+                }
+
+                // Serve the queue at the head, then move it to the tail so
+                // every container with expired timers gets its turn.
+                ContainerQueue queue = readyQueues_.poll();
+                task = queue.tasks_.poll();
+                backlog_--;
+                backlog = queue.tasks_.size();
+                if( backlog == 0 ) {
+                    queue.ready_ = false;
+                    containerQueues_.remove(queue.containerId_);
+                } else {
+                    readyQueues_.add(queue);
+                }
+            }
+
+            try {
+                task.deliver(backlog);
+            } catch(Throwable t) {
+                logger.log(Level.WARNING, "Exception delivering timer " +
+                           task.getTimerId(), t);
+            }
+        }
+    }
+
+    /**
+     * Expired tasks of one container, in expiration order.
+     */
+    private static class ContainerQueue {
+        private final Long containerId_;
+        private final ArrayDeque<EJBTimerTask> tasks_ =
+            new ArrayDeque<EJBTimerTask>();
+        private boolean ready_;
+
+        ContainerQueue(Long containerId) {
+            containerId_ = containerId;
+        }
+    }
+
+}
@@ -152,6 +152,20 @@ public class EJBTimerService {
     private static final String RESCHEDULE_FAILED_TIMER = "reschedule-failed-timer";
     private boolean rescheduleFailedTimer = false;
 
+    // Resolution of the timer wheel and number of threads delivering
+    // expired timers.  With 0 delivery threads expirations are handed to
+    // the ejb container thread pool instead.
+    private static final String TIMER_WHEEL_TICK = "timer-wheel-tick-in-millis";
+    private static final String TIMER_DELIVERY_THREADS = "timer-delivery-threads";
+    private static final long DEFAULT_TIMER_WHEEL_TICK = 10;
+    private long timerWheelTick_ = DEFAULT_TIMER_WHEEL_TICK;
+    private int timerDeliveryThreads_ = EjbContainer.DEFAULT_THREAD_CORE_POOL_SIZE;
+
+    // Number of timers handed to the scheduler at a time when restoring
+    private static final int SCHEDULE_BATCH_SIZE = 1000;
+
+    private final EJBTimerScheduler scheduler_;
+
     // Flag that allows to load EJBTimerService on the 1st access and
     // distinguish between not available and not loaded
     private static volatile boolean _timerServiceVerified = false;
@@ -172,6 +186,7 @@ public class EJBTimerService {
         isDas = env.isDas() || env.isEmbedded();
 
         initProperties();
+        scheduler_ = new EJBTimerScheduler(timerWheelTick_, timerDeliveryThreads_);
     }
 
     protected static void setEJBTimerService(EJBTimerService es) {
@@ -274,6 +289,18 @@ public class EJBTimerService {
 
                 rescheduleFailedTimer = Boolean.valueOf(ejbt.getPropertyValue(RESCHEDULE_FAILED_TIMER));
 
+                valString = ejbt.getPropertyValue(TIMER_WHEEL_TICK);
+                val = (valString != null) ? Long.parseLong(valString) : -1;
+                if( val > 0 ) {
+                    timerWheelTick_ = val;
+                }
+
+                valString = ejbt.getPropertyValue(TIMER_DELIVERY_THREADS);
+                val = (valString != null) ? Long.parseLong(valString) : -1;
+                if( val >= 0 ) {
+                    timerDeliveryThreads_ = (int) val;
+                }
+
                 // Load confing listener
                 ejbContainerUtil.getServices().getService(EJBTimerServiceConfigListener.class);
             }
@@ -286,7 +313,9 @@ public class EJBTimerService {
         logger.log(Level.FINE, "EJB Timer Service properties : " +
                    "min delivery interval = " + getMinimumDeliveryInterval() +
                    "\nmax redeliveries = " + maxRedeliveries_ +
-                   "\nredelivery interval = " + getRedeliveryInterval());
+                   "\nredelivery interval = " + getRedeliveryInterval() +
+                   "\ntimer wheel tick = " + timerWheelTick_ +
+                   "\ntimer delivery threads = " + timerDeliveryThreads_);
     }
 
     synchronized void timedObjectCount() {
@@ -353,9 +382,24 @@ public class EJBTimerService {
         }
     }
 
+    protected boolean isShutdown() {
+        return shutdown_;
+    }
+
+    /**
+     * Report timers of a container that were restored from the database.
+     */
+    protected void timersRestored(long containerId, int count) {
+        BaseContainer container = getContainer(containerId);
+        if( container != null ) {
+            container.incrementRestoredTimedObjects(count);
+        }
+    }
+
     private void shutdown() {
         // Set flag to prevent any new timer expirations.
         shutdown_ = true;
+        scheduler_.stop();
     }
 
     /**
@@ -438,37 +482,9 @@ public class EJBTimerService {
 
         if( timerState != null ) {
             synchronized(timerState) {
-
-                Date timerExpiration = expiration;
-                if( !rescheduled ) {
-                    // Guard against very small timer intervals. The EJB Timer 
-                    // service is defined in units of milliseconds, but it is
-                    // intended for coarse-grained events.  Very small timer
-                    // intervals (e.g. 1 millisecond) are likely to overload 
-                    // the server, so compensate by adjusting to a configurable
-                    // minimum interval. 
-                    Date cutoff = new Date(new Date().getTime() + 
-                                           getMinimumDeliveryInterval());
-                    if( expiration.before(cutoff) ) {
-                        timerExpiration = cutoff;
-                    }
-                }
-
                 EJBTimerTask timerTask = 
-                    new EJBTimerTask(timerExpiration, timerId, this);
-                if( logger.isLoggable(Level.FINE) ) {
-                    logger.log(Level.FINE, (rescheduled ? "RE-" : "") + 
-                               "Scheduling " + timerState + 
-                               " for timeout at " + timerExpiration);
-                }
-                if( rescheduled ) {
-                    timerState.rescheduled(timerTask);
-                } else {
-                    timerState.scheduled(timerTask);
-                }
-
-                java.util.Timer jdkTimer = ejbContainerUtil.getTimer();
-                jdkTimer.schedule(timerTask, timerExpiration);            
+                    createTask(timerState, expiration, rescheduled);
+                scheduler_.schedule(timerTask);
             }
         } else {
             
@@ -479,6 +495,85 @@ public class EJBTimerService {
         }
     }
 
+    /**
+     * Schedule the first expiration of a group of timers, e.g. when timers
+     * are restored at startup.  The tasks are handed to the scheduler in
+     * batches rather than one at a time.
+     */
+    protected void scheduleTasks(Map<TimerPrimaryKey, Date> expirations) {
+        List<EJBTimerTask> batch = new ArrayList<EJBTimerTask>();
+        for(Map.Entry<TimerPrimaryKey, Date> next : expirations.entrySet()) {
+            TimerPrimaryKey timerId = next.getKey();
+            RuntimeTimerState timerState = getTimerState(timerId);
+            if( timerState == null ) {
+                logger.log(Level.FINE, "No timer state found for " +
+                           "schedule request of " + timerId + 
+                           " for timeout at " + next.getValue());
+                continue;
+            }
+            synchronized(timerState) {
+                batch.add(createTask(timerState, next.getValue(), false));
+            }
+            if( batch.size() == SCHEDULE_BATCH_SIZE ) {
+                scheduler_.scheduleAll(batch);
+                batch.clear();
+            }
+        }
+        scheduler_.scheduleAll(batch);
+    }
+
+    /**
+     * Hand the given work to a worker thread once the delay has passed.
+     * The delay is kept by the same scheduler as the timer expirations,
+     * and the work is dropped if the timer service is shut down first.
+     */
+    protected void scheduleWork(final Runnable work, long delay) {
+        Date due = new Date(System.currentTimeMillis() + delay);
+        scheduler_.schedule(new EJBTimerTask(due, null, this) {
+            public void run() {
+                ejbContainerUtil.addWork(work);
+            }
+        });
+    }
+
+    /**
+     * Create the task for the next expiration of a timer and move the timer
+     * to the scheduled state.  Must be called while holding the timer state
+     * lock.
+     */
+    private EJBTimerTask createTask(RuntimeTimerState timerState, 
+                                    Date expiration, boolean rescheduled) {
+        TimerPrimaryKey timerId = timerState.getTimerId();
+        Date timerExpiration = expiration;
+        if( !rescheduled ) {
+            // Guard against very small timer intervals. The EJB Timer 
+            // service is defined in units of milliseconds, but it is
+            // intended for coarse-grained events.  Very small timer
+            // intervals (e.g. 1 millisecond) are likely to overload 
+            // the server, so compensate by adjusting to a configurable
+            // minimum interval. 
+            Date cutoff = new Date(new Date().getTime() + 
+                                   getMinimumDeliveryInterval());
+            if( expiration.before(cutoff) ) {
+                timerExpiration = cutoff;
+            }
+        }
+
+        EJBTimerTask timerTask = 
+            new EJBTimerTask(timerExpiration, timerId, this);
+        if( logger.isLoggable(Level.FINE) ) {
+            logger.log(Level.FINE, (rescheduled ? "RE-" : "") + 
+                       "Scheduling " + timerState + 
+                       " for timeout at " + timerExpiration);
+        }
+        if( rescheduled ) {
+            timerState.rescheduled(timerTask);
+        } else {
+            timerState.scheduled(timerTask);
+        }
+        return timerTask;
+    }
+
 
     /**
      * Called by #cancelTimerSynchronization() to cancel the next scheduled expiration 
@@ -1399,26 +1494,37 @@ public class EJBTimerService {
 
     /**
      * This method is called back from the EJBTimerTask object 
-     * on the JDK Timer Thread.  Work performed in this callback 
+     * on the timer wheel thread.  Work performed in this callback 
      * should be short-lived, so do a little bookkeeping and then
-     * launch a separate thread to invoke ejbTimeout, etc.
+     * hand the expiration to a delivery thread to invoke ejbTimeout, etc.
      */
-
-    void taskExpired(TimerPrimaryKey timerId) {
+    void taskExpired(TimerPrimaryKey timerId, EJBTimerTask timerTask) {
         RuntimeTimerState timerState = getTimerState(timerId);
 
         if( timerState != null ) {
             synchronized(timerState) {
-                if( timerState.isScheduled() ) {
+                // A task that was replaced by a reschedule after it
+                // expired must not deliver the new expiration early.
+                if( timerState.isScheduled() && 
+                    timerState.getCurrentTimerTask() == timerTask ) {
                     timerState.delivered();
 
-                    if( logger.isLoggable(Level.FINE) ) {
-                        logger.log(Level.FINE, 
-                           "Adding work pool task for timer " + timerId);
-                    }
+                    if( scheduler_.hasDeliveryThreads() ) {
+                        if( logger.isLoggable(Level.FINE) ) {
+                            logger.log(Level.FINE, 
+                               "Queueing delivery of timer " + timerId);
+                        }
+                        scheduler_.dispatch(timerState.getContainerId(), 
+                                            timerTask);
+                    } else {
+                        if( logger.isLoggable(Level.FINE) ) {
+                            logger.log(Level.FINE, 
+                               "Adding work pool task for timer " + timerId);
+                        }
 
-                    TaskExpiredWork work = new TaskExpiredWork(this, timerId);
-                    ejbContainerUtil.addWork(work);
+                        TaskExpiredWork work = new TaskExpiredWork(this, timerId);
+                        ejbContainerUtil.addWork(work);
+                    }
                 } else {
                     logger.log(Level.FINE, "Timer " + timerId + 
                                " is not in scheduled state.  Current state = "
@@ -1432,6 +1538,28 @@ public class EJBTimerService {
         return;
     }
 
+    /**
+     * Called from a delivery thread of the EJBTimerScheduler.  Records how
+     * late the delivery starts and how many expirations of the same 
+     * container are still queued behind it, then delivers the timeout.
+     */
+    void deliverExpiredTask(EJBTimerTask timerTask, int backlog) {
+        TimerPrimaryKey timerId = timerTask.getTimerId();
+        long lag = Math.max(0, System.currentTimeMillis() - 
+                            timerTask.getTimeout().getTime());
+        scheduler_.recordDeliveryLag(lag);
+
+        RuntimeTimerState timerState = getTimerState(timerId);
+        if( timerState != null ) {
+            BaseContainer container = getContainer(timerState.getContainerId());
+            if( container != null ) {
+                container.timerDeliveryStarted(lag, backlog);
+            }
+        }
+
+        deliverTimeout(timerId);
+    }
+
     /**
      * Generate a unique key for the persistent timer object.
      * Key must be unique across server shutdown and startup, and
@@ -52,7 +52,8 @@ import javax.ejb.Timer;
 import com.sun.logging.LogDomains;
 
 /*
- * JDK timer task for timer expirations.  
+ * Timer task for timer expirations.  Scheduled on the EJBTimerScheduler
+ * owned by the EJBTimerService.
  *
  * @author Kenneth Saks
  */
@@ -62,6 +63,16 @@ public class EJBTimerTask extends TimerTask {
     private TimerPrimaryKey timerId_;
     private EJBTimerService timerService_;
 
+    private volatile boolean cancelled_;
+
+    // Position in the EJBTimerScheduler wheel.  Guarded by the scheduler.
+    volatile EJBTimerScheduler scheduler_;
+    EJBTimerTask prev_;
+    EJBTimerTask next_;
+    int level_ = -1;
+    int slot_;
+    long deadlineTick_;
+
     EJBTimerTask(Date timeout, TimerPrimaryKey timerId, 
                  EJBTimerService timerService)
     { 
@@ -72,12 +83,36 @@ public class EJBTimerTask extends TimerTask {
     
     public void run() {
         // Delegate to Timer Service.
-        timerService_.taskExpired(timerId_);
+        timerService_.taskExpired(timerId_, this);
     }
-    
+
+    /**
+     * Called on a delivery thread of the EJBTimerScheduler.
+     * @param backlog number of expirations of the same container still
+     * waiting for delivery
+     */
+    void deliver(int backlog) {
+        timerService_.deliverExpiredTask(this, backlog);
+    }
+
+    public boolean cancel() {
+        cancelled_ = true;
+        EJBTimerScheduler scheduler = scheduler_;
+        boolean result = (scheduler != null) && scheduler.cancel(this);
+        return super.cancel() || result;
+    }
+
+    boolean isCancelled() {
+        return cancelled_;
+    }
+
     public Date getTimeout() {
         return timeout_;
     }
 
+    TimerPrimaryKey getTimerId() {
+        return timerId_;
+    }
+
 } 
 
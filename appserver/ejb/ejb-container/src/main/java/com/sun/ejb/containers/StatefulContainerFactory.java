@@ -62,6 +62,7 @@ import com.sun.ejb.containers.util.cache.NRUSessionCache;
 import com.sun.ejb.containers.util.cache.UnBoundedSessionCache;
 import com.sun.enterprise.config.serverbeans.AvailabilityService;
 import com.sun.enterprise.config.serverbeans.Config;
+import com.sun.enterprise.container.common.spi.util.ClassDescriptorDictionary;
 import com.sun.enterprise.security.SecurityManager;
 import com.sun.enterprise.util.Utility;
 import com.sun.logging.LogDomains;
@@ -175,6 +176,9 @@ public class StatefulContainerFactory extends BaseContainerFactory
 
     private static final Level TRACE_LEVEL = Level.FINE;
 
+    // ejb-container property that selects the compact passivation format
+    private static final String COMPACT_SERIALIZATION = "sfsb-compact-serialization";
+
     private EjbDescriptor		    ejbDescriptor;
 
     private StatefulSessionContainer sfsbContainer;
@@ -305,6 +309,13 @@ public class StatefulContainerFactory extends BaseContainerFactory
             }
         }
 
+        // Class descriptor ids are only meaningful to this container in this
+        // JVM, so the compact format is limited to state that never leaves it
+        if ("file".equals(persistenceStoreType) && !HAEnabled
+                && !ejbDescriptor.getApplication().getKeepStateResolved()
+                && Boolean.valueOf(ejbContainerConfig.getPropertyValue(COMPACT_SERIALIZATION))) {
+            sfsbContainer.setClassDescriptorDictionary(new ClassDescriptorDictionary());
+        }
 
 
         BackingStoreConfiguration<Serializable, SimpleMetadata> conf = new BackingStoreConfiguration<Serializable, SimpleMetadata>();
@@ -55,6 +55,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimerTask;
@@ -101,6 +102,7 @@ import com.sun.enterprise.admin.monitor.callflow.ComponentType;
 import com.sun.enterprise.container.common.impl.EntityManagerFactoryWrapper;
 import com.sun.enterprise.container.common.impl.EntityManagerWrapper;
 import com.sun.enterprise.container.common.impl.PhysicalEntityManagerWrapper;
+import com.sun.enterprise.container.common.spi.util.ClassDescriptorDictionary;
 import com.sun.enterprise.container.common.spi.util.IndirectlySerializable;
 import com.sun.enterprise.container.common.spi.util.SerializableObjectFactory;
 import com.sun.enterprise.deployment.EntityManagerReferenceDescriptor;
@@ -300,6 +302,10 @@ public final class StatefulSessionContainer
     private LruSessionCache sessionBeanCache;
     private BackingStore<Serializable, SimpleMetadata> backingStore;
     private SFSBUUIDUtil uuidGenerator;
+
+    // Non-null if passivated state is written in the compact format
+    private ClassDescriptorDictionary classDescriptors;
+
     private ArrayList scheduledTimerTasks = new ArrayList();
 
     private int statMethodReadyCount = 0;
@@ -1537,6 +1543,7 @@ public final class StatefulSessionContainer
         // session bean context lookup will be done lazily whenever
         // the reference is actually accessed.  This avoids I/O in the
         // case that the reference points to a passivated session bean.
+        // Its state, if any, is prefetched in the background instead.
         // It's also consistent with the deserialization approach used
         // throughout the container.  e.g. a timer reference is deserialized
         // from its handle without checking it against the timer database.
@@ -1551,6 +1558,8 @@ public final class StatefulSessionContainer
             throw ejbEx;
         }
 
+        prefetchSession(sessionKey);
+
         return localObjImpl;
     }
 
@@ -1561,6 +1570,7 @@ public final class StatefulSessionContainer
         // session bean context lookup will be done lazily whenever
         // the reference is actually accessed.  This avoids I/O in the
         // case that the reference points to a passivated session bean.
+        // Its state, if any, is prefetched in the background instead.
         // It's also consistent with the deserialization approach used
         // throughout the container.  e.g. a timer reference is deserialized
         // from its handle without checking it against the timer database.
@@ -1578,6 +1588,8 @@ public final class StatefulSessionContainer
             throw ejbEx;
         }
 
+        prefetchSession(sessionKey);
+
         return localBusinessObjImpl;
     }
 
@@ -1588,6 +1600,7 @@ public final class StatefulSessionContainer
         // session bean context lookup will be done lazily whenever
         // the reference is actually accessed.  This avoids I/O in the
         // case that the reference points to a passivated session bean.
+        // Its state, if any, is prefetched in the background instead.
         // It's also consistent with the deserialization approach used
         // throughout the container.  e.g. a timer reference is deserialized
         // from its handle without checking it against the timer database.
@@ -1605,6 +1618,8 @@ public final class StatefulSessionContainer
             throw ejbEx;
         }
 
+        prefetchSession(sessionKey);
+
         return localBusinessObjImpl;
     }
 
@@ -2671,7 +2686,8 @@ public final class StatefulSessionContainer
     }
 
     public Object deserializeData(byte[] data) throws Exception {
-        Object o = ejbContainerUtilImpl.getJavaEEIOUtils().deserializeObject(data, true, getClassLoader());
+        Object o = ejbContainerUtilImpl.getJavaEEIOUtils().deserializeObject(data, true, getClassLoader(),
+                classDescriptors);
         if (o instanceof SessionContextImpl) {
             SessionContextImpl ctx = (SessionContextImpl)o;
             Object ejb = ctx.getEJB();
@@ -2709,7 +2725,7 @@ public final class StatefulSessionContainer
             ctx.setEJB(null);
             ctx.setEJB(new SerializableEJB(ejb));
         }
-        return ejbContainerUtilImpl.getJavaEEIOUtils().serializeObject(ctx, true);
+        return ejbContainerUtilImpl.getJavaEEIOUtils().serializeObject(ctx, true, classDescriptors);
     }
 
     private void decrementRefCountsForEEMs(SessionContextImpl context) {
@@ -3191,19 +3207,27 @@ public final class StatefulSessionContainer
                                 }
                             });
                 }
-                ComponentContext ctx = null;
+                ComponentContext[] batch = null;
 
                 do {
+                    // Take the oldest candidates a batch at a time so that
+                    // trimEvent() contends for the semaphore once per batch
+                    // rather than once per bean.
                     synchronized (asyncTaskSemaphore) {
                         int sz = passivationCandidates.size();
                         if (sz > 0) {
-                            ctx = (ComponentContext)
-                                    passivationCandidates.remove(sz - 1);
+                            List head = passivationCandidates.subList(0,
+                                    Math.min(sz, passivationBatchCount));
+                            batch = (ComponentContext[]) head.toArray(
+                                    new ComponentContext[head.size()]);
+                            head.clear();
                         } else {
                             return;
                         }
                     }
-                    passivateEJB(ctx);
+                    for (ComponentContext ctx : batch) {
+                        passivateEJB(ctx);
+                    }
                 } while (true);
 
             } catch (Throwable th) {
@@ -3243,6 +3267,27 @@ public final class StatefulSessionContainer
         this.sessionBeanCache = cache;
     }
 
+    /**
+     * Passivated state is written with class descriptors replaced by ids from
+     * the given dictionary.  Only valid for a backing store that is local to
+     * this JVM and is not read by any other container.
+     */
+    public void setClassDescriptorDictionary(ClassDescriptorDictionary dictionary) {
+        this.classDescriptors = dictionary;
+    }
+
+    /**
+     * Starts loading the passivated state of the given session in the
+     * background, so that a subsequent activation does not have to wait for
+     * the backing store.  Called when a local reference to the session is
+     * deserialized, since an invocation on it usually follows.
+     */
+    private void prefetchSession(Object sessionKey) {
+        if (sessionBeanCache != null && sessionKey instanceof Serializable) {
+            sessionBeanCache.prefetch((Serializable) sessionKey);
+        }
+    }
+
     public void setRemovalGracePeriodInSeconds(int val) {
         this.removalGracePeriodInSeconds = val;
     }
@@ -65,6 +65,7 @@ import com.sun.ejb.EjbInvocation;
 import com.sun.ejb.containers.util.pool.AbstractPool;
 import com.sun.ejb.containers.util.pool.NonBlockingPool;
 import com.sun.ejb.containers.util.pool.ObjectFactory;
+import com.sun.ejb.containers.util.pool.StripedPool;
 import com.sun.ejb.monitoring.stats.EjbMonitoringStatsProvider;
 import com.sun.ejb.monitoring.stats.EjbPoolStatsProvider;
 import com.sun.ejb.monitoring.stats.StatelessSessionBeanStatsProvider;
@@ -127,6 +128,12 @@ public class StatelessSessionContainer
 
     private PoolProperties poolProp 		 = null;
 
+    // glassfish-ejb-jar.xml <enterprise-beans> property selecting the pool
+    // implementation of the stateless session beans of the module, and its
+    // value that selects StripedPool
+    private static final String BEAN_POOL_TYPE_PROP = "bean-pool-type";
+    private static final String STRIPED_POOL_TYPE = "striped";
+
     /**
      * This constructor is called from the JarManager when a Jar is deployed.
      * @exception Exception on error
@@ -255,10 +262,19 @@ public class StatelessSessionContainer
 
         poolProp = new PoolProperties(ejbContainer, beanPoolDes);
         String val = ejbDescriptor.getEjbBundleDescriptor().getEnterpriseBeansProperty(SINGLETON_BEAN_POOL_PROP);
-        pool= new NonBlockingPool(getContainerId(), ejbDescriptor.getName(),
-           sessionCtxFactory, poolProp.steadyPoolSize,
-           poolProp.poolResizeQuantity, poolProp.maxPoolSize,
-           poolProp.poolIdleTimeoutInSeconds, loader, Boolean.parseBoolean(val));
+        boolean singletonBeanPool = Boolean.parseBoolean(val);
+        String poolType = ejbDescriptor.getEjbBundleDescriptor().getEnterpriseBeansProperty(BEAN_POOL_TYPE_PROP);
+        if (!singletonBeanPool && STRIPED_POOL_TYPE.equalsIgnoreCase(poolType)) {
+            pool= new StripedPool(getContainerId(), ejbDescriptor.getName(),
+               sessionCtxFactory, poolProp.steadyPoolSize,
+               poolProp.poolResizeQuantity, poolProp.maxPoolSize,
+               poolProp.poolIdleTimeoutInSeconds, loader);
+        } else {
+            pool= new NonBlockingPool(getContainerId(), ejbDescriptor.getName(),
+               sessionCtxFactory, poolProp.steadyPoolSize,
+               poolProp.poolResizeQuantity, poolProp.maxPoolSize,
+               poolProp.poolIdleTimeoutInSeconds, loader, singletonBeanPool);
+        }
     }
 
     protected void registerMonitorableComponents() {
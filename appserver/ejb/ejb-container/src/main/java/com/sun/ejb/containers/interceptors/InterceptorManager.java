@@ -58,6 +58,7 @@ import javax.interceptor.InvocationContext;
 import com.sun.ejb.EJBUtils;
 import com.sun.ejb.containers.BaseContainer;
 import com.sun.ejb.containers.EJBContextImpl;
+import com.sun.ejb.containers.util.MethodInvoker;
 import com.sun.enterprise.container.common.spi.util.InterceptorInfo;
 import com.sun.enterprise.deployment.EjbInterceptor;
 import com.sun.enterprise.deployment.InterceptorDescriptor;
@@ -838,6 +839,7 @@ class AroundInvokeChainImpl
 class AroundInvokeInterceptor {
     protected int index;
     protected Method method;
+    protected MethodInvoker invoker;
 
     AroundInvokeInterceptor(int index, Method method) {
         this.index = index;
@@ -859,6 +861,7 @@ class AroundInvokeInterceptor {
                         return null;
                     }});
             }
+            invoker = MethodInvoker.create(method);
         } catch(Exception e) {
             throw new EJBException(e);
         }
@@ -880,7 +883,7 @@ class AroundInvokeInterceptor {
                     });
             } else {
 
-                 return method.invoke(interceptors[index], invCtx);
+                 return invoker.invokeUnary(interceptors[index], invCtx);
 
             }
         } catch (java.lang.reflect.InvocationTargetException invEx) {
@@ -921,7 +924,7 @@ class BeanAroundInvokeInterceptor
                         }
                     });
             } else {
-                return method.invoke(invCtx.getTarget(), invCtx);
+                return invoker.invokeUnary(invCtx.getTarget(), invCtx);
             }
         } catch (java.lang.reflect.InvocationTargetException invEx) {
             throw invEx.getCause();
@@ -938,6 +941,7 @@ class BeanAroundInvokeInterceptor
 class CallbackInterceptor {
     protected int index;
     protected Method method;
+    protected MethodInvoker invoker;
 
     CallbackInterceptor(int index, Method method) {
         this.index = index;
@@ -959,6 +963,7 @@ class CallbackInterceptor {
                     return null;
                 }});
         }
+        invoker = MethodInvoker.create(method);
         } catch(Exception e) {
             throw new EJBException(e);
         }
@@ -983,7 +988,7 @@ class CallbackInterceptor {
                         }
                     });
             } else {
-                return method.invoke(interceptors[index], invContext);
+                return invoker.invokeUnary(interceptors[index], invContext);
                                      
             }
         } catch (java.lang.reflect.InvocationTargetException invEx) {
@@ -1032,7 +1037,7 @@ class BeanCallbackInterceptor
                         }
                     });
             } else {
-                method.invoke(invContext.getTarget(), NULL_ARGS);
+                invoker.invoke(invContext.getTarget(), NULL_ARGS);
             }
 
             return invContext.proceed();
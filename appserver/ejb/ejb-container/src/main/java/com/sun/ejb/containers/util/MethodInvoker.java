@@ -0,0 +1,215 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invokes a java.lang.reflect.Method through a MethodHandle bound once,
+ * typically at deployment, instead of through Method.invoke on every call.
+ * Method.invoke checks access and the arguments on each call, and only
+ * switches to a generated accessor after a number of invocations per
+ * Method instance; the handle skips both.
+ *
+ * The invoke methods have the exception semantics of Method.invoke: any
+ * exception thrown by the target method is propagated as the cause of an
+ * InvocationTargetException, so that a MethodInvoker can replace a
+ * Method.invoke call without changing the surrounding exception handling.
+ * A null target of an instance method throws a NullPointerException, and
+ * a target or arguments of the wrong type or number throw an
+ * IllegalArgumentException, as they do with Method.invoke.
+ *
+ * A MethodInvoker is immutable and can be shared by any number of threads.
+ */
+public final class MethodInvoker {
+
+    // (Throwable t) -> Object, throws InvocationTargetException(t)
+    private static final MethodHandle WRAP_TARGET_EXCEPTION;
+
+    static {
+        try {
+            WRAP_TARGET_EXCEPTION = MethodHandles.lookup().findStatic(
+                MethodInvoker.class, "wrapTargetException",
+                MethodType.methodType(Object.class, Throwable.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Method method;
+
+    private final boolean isStatic;
+
+    // (Object target, Object[] args) -> Object
+    private final MethodHandle spreadHandle;
+
+    // (Object target, Object arg) -> Object, null unless the method takes
+    // exactly one parameter, as interceptor methods do
+    private final MethodHandle unaryHandle;
+
+    private MethodInvoker(Method method, MethodHandle handle) {
+        this.method = method;
+        this.isStatic = Modifier.isStatic(method.getModifiers());
+
+        // A varargs method takes its trailing array as is, like Method.invoke
+        handle = handle.asFixedArity();
+        int paramCount = method.getParameterTypes().length;
+        if (isStatic) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+
+        // Wrap what the method throws before the generic conversions are
+        // added, so that a conversion failure is not mistaken for it
+        MethodType type = handle.type();
+        MethodHandle wrapper = MethodHandles.dropArguments(
+            WRAP_TARGET_EXCEPTION, 1, type.parameterList());
+        handle = MethodHandles.catchException(handle, Throwable.class,
+            wrapper.asType(type.insertParameterTypes(0, Throwable.class)));
+        MethodHandle generic = handle.asType(
+            MethodType.genericMethodType(paramCount + 1));
+        this.spreadHandle = generic.asSpreader(Object[].class, paramCount);
+        this.unaryHandle = (paramCount == 1) ? generic : null;
+    }
+
+    /**
+     * Create an invoker for the given method.  The caller must already have
+     * made the method accessible if it is not public.
+     *
+     * @exception IllegalAccessException if the method is not accessible
+     */
+    public static MethodInvoker create(Method method)
+        throws IllegalAccessException {
+        return new MethodInvoker(method,
+                                 MethodHandles.lookup().unreflect(method));
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Same as method.invoke(target, args).
+     */
+    public Object invoke(Object target, Object[] args)
+        throws InvocationTargetException {
+        checkTarget(target);
+        try {
+            return spreadHandle.invokeExact(target, args);
+        } catch (InvocationTargetException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw argumentMismatch(e);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            // Cannot happen: only conversions run outside of the wrapper
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Same as method.invoke(target, arg) for a method taking exactly one
+     * parameter, without allocating an argument array.
+     */
+    public Object invokeUnary(Object target, Object arg)
+        throws InvocationTargetException {
+        if (unaryHandle == null) {
+            return invoke(target, new Object[] { arg });
+        }
+        checkTarget(target);
+        try {
+            return unaryHandle.invokeExact(target, arg);
+        } catch (InvocationTargetException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw argumentMismatch(e);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            // Cannot happen: only conversions run outside of the wrapper
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private void checkTarget(Object target) {
+        if (target == null && !isStatic) {
+            throw new NullPointerException(
+                "null target for instance method " + method);
+        }
+    }
+
+    /**
+     * Map an exception thrown while converting the target or the arguments
+     * to the IllegalArgumentException thrown by Method.invoke: a
+     * ClassCastException for a value of the wrong type, a
+     * NullPointerException for null passed as a primitive, or a
+     * WrongMethodTypeException or IllegalArgumentException for an argument
+     * array of the wrong length.
+     */
+    private IllegalArgumentException argumentMismatch(RuntimeException e) {
+        if (e instanceof ClassCastException
+                || e instanceof NullPointerException) {
+            return new IllegalArgumentException(
+                "argument type mismatch for " + method, e);
+        }
+        if (e instanceof WrongMethodTypeException
+                || e instanceof IllegalArgumentException) {
+            return new IllegalArgumentException(
+                "wrong number of arguments for " + method, e);
+        }
+        throw e;
+    }
+
+    private static Object wrapTargetException(Throwable t)
+        throws InvocationTargetException {
+        throw new InvocationTargetException(t);
+    }
+
+    public String toString() {
+        return "MethodInvoker[" + method + "]";
+    }
+}
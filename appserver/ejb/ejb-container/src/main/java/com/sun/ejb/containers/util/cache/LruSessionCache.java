@@ -56,6 +56,8 @@ import org.glassfish.ha.store.api.BackingStoreException;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.*;
 
 
@@ -135,6 +137,19 @@ public class LruSessionCache
     protected boolean removeIfIdle = false;
     
     private int numVictimsAccessed = 0;
+
+    // Upper bound on the passivated states held in memory by prefetch()
+    private static final int MAX_PREFETCHED_STATES = 1024;
+
+    // A prefetched state not taken by an activation within this time is
+    // dropped when room is needed for a new one
+    private static final long PREFETCH_TIMEOUT_IN_MILLIS = 60*1000L;
+
+    // Passivated states loaded ahead of activation.  An entry is dropped
+    // before and after every write or removal of the stored state of its
+    // session, so a load racing with the write cannot leave a stale state.
+    private final ConcurrentMap<Serializable, PrefetchedState> prefetched =
+        new ConcurrentHashMap<Serializable, PrefetchedState>();
     
     protected SFSBContainerCallback     container;
     protected BackingStore<Serializable, SimpleMetadata> backingStore;
@@ -166,6 +181,7 @@ public class LruSessionCache
     public void destroy() {
         this.currentCacheState = STATE_DESTROYED;
         this.container = null;
+        prefetched.clear();
 
         super.destroy();
     }
@@ -204,22 +220,16 @@ public class LruSessionCache
     
     /**
      * trim the item from the cache and notify listeners
+     *
+     * The item is only handed to the listeners here; it is passivated (or
+     * removed, once its removal-timeout has elapsed) by the container's
+     * passivation workers, so that no serialization or store I/O happens
+     * while the caller holds the cache locks.
      * @param item to be trimmed
      */
     protected void trimItem(CacheItem item) {
         LruCacheItem removed = (LruCacheItem) item;
 
-        if (removeIfIdle) {
-            StatefulEJBContext ctx = (StatefulEJBContext) item.getValue();
-            
-            long idleThreshold = 
-                System.currentTimeMillis() - removalTimeoutInSeconds*1000L;
-            if (ctx.getLastAccessTime() <= idleThreshold) {
-                container.passivateEJB(ctx);
-                return;
-            }
-        }
-
         for (int i = 0; i < listeners.size(); i++) {
             CacheListener listener = (CacheListener) listeners.get(i);
             listener.trimEvent(removed.getKey(), removed.getValue());
@@ -406,12 +416,15 @@ public class LruSessionCache
 
             //  remove it from BackingStore outside sync block
 	    if (removeFromStore) {
+		prefetched.remove(sessionKey);
 		try {
             if (backingStore != null) {
 		        backingStore.remove((Serializable) sessionKey);
             }
 		} catch (BackingStoreException sfsbEx) {
 		    _logger.log(Level.WARNING, EXCEPTION_BACKING_STORE_REMOVE, new Object[]{cacheName, sessionKey, sfsbEx});
+		} finally {
+		    prefetched.remove(sessionKey);
 		}
 	    }
 	}
@@ -525,13 +538,108 @@ public class LruSessionCache
         return false;
     } //passivateEJB
 
+    /**
+     * Starts loading the passivated state of the given session on a
+     * container thread.  A later activation of the session uses the loaded
+     * state instead of going to the backing store.
+     */
+    public void prefetch(final Serializable sessionKey) {
+        if (backingStore == null || currentCacheState != STATE_RUNNING
+                || isCached(sessionKey)) {
+            return;
+        }
+        if (prefetched.size() >= MAX_PREFETCHED_STATES) {
+            purgeStalePrefetchedStates();
+            if (prefetched.size() >= MAX_PREFETCHED_STATES) {
+                return;
+            }
+        }
+
+        final PrefetchedState entry = new PrefetchedState();
+        if (prefetched.putIfAbsent(sessionKey, entry) != null) {
+            return;
+        }
+
+        try {
+            addPrefetchWork(new Runnable() {
+                public void run() {
+                    try {
+                        entry.state = backingStore.load(sessionKey, null);
+                    } catch (Exception ex) {
+                        // Activation loads the state again and reports the error
+                        if (_logger.isLoggable(Level.FINE)) {
+                            _logger.log(Level.FINE, cacheName
+                                + ": prefetch failed for key: " + sessionKey, ex);
+                        }
+                    } finally {
+                        entry.loaded = true;
+                        if (entry.state == null) {
+                            prefetched.remove(sessionKey, entry);
+                        }
+                    }
+                }
+            });
+        } catch (Exception ex) {
+            prefetched.remove(sessionKey, entry);
+        }
+    }
+
+    /**
+     * Hands a prefetch load to the container's thread pool.
+     */
+    protected void addPrefetchWork(Runnable work) {
+        EjbContainerUtilImpl.getInstance().addWork(work);
+    }
+
+    private boolean isCached(Serializable sessionKey) {
+        int hashCode = hash(sessionKey);
+        int index = getIndex(hashCode);
+
+        synchronized (bucketLocks[index]) {
+            for (CacheItem item = buckets[index]; item != null; item = item.getNext()) {
+                if ( (hashCode == item.getHashCode()) && 
+                     (item.getKey().equals(sessionKey)) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void purgeStalePrefetchedStates() {
+        long staleBefore = System.currentTimeMillis() - PREFETCH_TIMEOUT_IN_MILLIS;
+        for (Map.Entry<Serializable, PrefetchedState> e : prefetched.entrySet()) {
+            PrefetchedState entry = e.getValue();
+            if (entry.loaded && entry.createdAt < staleBefore) {
+                prefetched.remove(e.getKey(), entry);
+            }
+        }
+    }
+
+    private SimpleMetadata takePrefetchedState(Serializable sessionKey) {
+        PrefetchedState entry = prefetched.remove(sessionKey);
+        if (entry == null || !entry.loaded) {
+            return null;
+        }
+
+        SimpleMetadata beanState = entry.state;
+        if (beanState != null && removalTimeoutInSeconds > 0
+                && beanState.getLastAccessTime() + removalTimeoutInSeconds*1000L
+                    < System.currentTimeMillis()) {
+            // Let the store decide whether the session is still there
+            return null;
+        }
+        return beanState;
+    }
+
     private Object getStateFromStore(Serializable sessionKey, SFSBContainerCallback container) {
 
         Object object = null;
 
         try {
-            SimpleMetadata beanState = null;
-            if (backingStore != null) {
+            SimpleMetadata beanState = takePrefetchedState(sessionKey);
+            if (beanState == null && backingStore != null) {
                 beanState = backingStore.load(sessionKey, null);
             }
             byte[] data = (beanState != null)
@@ -573,7 +681,12 @@ public class LruSessionCache
         beanState.setVersion(ctx.getVersion());
 	    try {
             if(backingStore != null) {
-                backingStore.save(sessionKey, beanState, !ctx.existsInStore());
+                prefetched.remove(sessionKey);
+                try {
+                    backingStore.save(sessionKey, beanState, !ctx.existsInStore());
+                } finally {
+                    prefetched.remove(sessionKey);
+                }
                 // sfsbStoreMonitor.setPassivationSize(data.length);
                 status = true;
             }
@@ -635,6 +748,7 @@ public class LruSessionCache
     }
     
     public void shutdown() {
+        prefetched.clear();
         ArrayList<StatefulEJBContext> valueList = new ArrayList<StatefulEJBContext>();
 
         synchronized (this) {
@@ -832,6 +946,12 @@ public class LruSessionCache
         return numVictimsAccessed;
     }
 
+    private static final class PrefetchedState {
+        final long createdAt = System.currentTimeMillis();
+        volatile SimpleMetadata state;
+        volatile boolean loaded;
+    }
+
     protected CacheItem createItem(int hashCode, Object sessionKey, 
             Object value, int size)
     {
@@ -78,10 +78,11 @@ public class NonBlockingPool
 
     private String	  poolName;
     private TimerTask	  poolTimerTask;
-    protected boolean	  addedResizeTask = false;
+    //written under the list lock, read without it by StripedPool.getObject()
+    volatile protected boolean	  addedResizeTask = false;
     volatile protected boolean	  addedIdleBeanWork = false;
     protected boolean	  inResizing = false;
-    private boolean	  maintainSteadySize = false;
+    protected boolean	  maintainSteadySize = false;
 
     /**
      * If glassfish-ejb-jar.xml <enterprise-beans><property>singleton-bean-pool is
@@ -254,7 +255,7 @@ public class NonBlockingPool
         }
     }
     
-    private void addResizeTaskForImmediateExecution() {
+    protected void addResizeTaskForImmediateExecution() {
         try {
             ReSizeWork work = new ReSizeWork();
             EjbContainerUtilImpl.getInstance().addWork(work);
@@ -510,7 +511,7 @@ public class NonBlockingPool
                 enteredResizeBlock = true;
                 inResizing = true;
                 
-                int curSize = list.size();
+                int curSize = getSize();
 
                 if (curSize > steadyPoolSize) {
 
@@ -529,18 +530,7 @@ public class NonBlockingPool
                                     "[Pool-"+poolName+"]: Resize:: reducing "
                                     + " pool size by: " + victimCount);
                     }
-                    for (int i=0; i<victimCount; i++) {
-                        //removeList.add(list.remove(--curSize));
-               		//destroyedCount++;
-                        EJBContextImpl ctx = (EJBContextImpl) list.get(0);
-                        if (ctx.getLastTimeUsed() <= allowedIdleTime) {
-                            removeList.add(list.remove(0));
-                            poolProbeNotifier.ejbObjectDestroyedEvent(beanId, appName, modName, ejbName);
-                            destroyedCount++;
-                        } else {
-                            break;
-                        }
-                    }
+                    collectIdleVictims(victimCount, allowedIdleTime, removeList);
                 } else if (curSize < steadyPoolSize) {
 
                     //Need to populate....
@@ -579,7 +569,7 @@ public class NonBlockingPool
                     _logger.log(Level.FINE, 
                             "[Pool-"+poolName+"]: Attempting to preload "
                             + populateCount + " beans. CurSize/MaxPoolSize: "
-                            + list.size() + "/" + maxPoolSize);
+                            + getSize() + "/" + maxPoolSize);
                 }
 
                 preload((int)populateCount);
@@ -588,7 +578,7 @@ public class NonBlockingPool
                     _logger.log(Level.FINE, 
                             "[Pool-"+poolName+"]: After preload "
                             + "CurSize/MaxPoolSize: "
-                            + list.size() + "/" + maxPoolSize);
+                            + getSize() + "/" + maxPoolSize);
                 }
             }
             
@@ -628,11 +618,34 @@ public class NonBlockingPool
         }
     }
 
+    /**
+     * Move up to victimCount objects that have been idle since allowedIdleTime
+     * from the pool to removeList. Called with the list lock held.
+     * @param victimCount maximum number of objects to remove
+     * @param allowedIdleTime objects last used at or before this time are idle
+     * @param removeList the list to add the removed objects to
+     */
+    protected void collectIdleVictims(int victimCount, long allowedIdleTime,
+            ArrayList removeList) {
+        for (int i=0; i<victimCount; i++) {
+            //removeList.add(list.remove(--curSize));
+            //destroyedCount++;
+            EJBContextImpl ctx = (EJBContextImpl) list.get(0);
+            if (ctx.getLastTimeUsed() <= allowedIdleTime) {
+                removeList.add(list.remove(0));
+                poolProbeNotifier.ejbObjectDestroyedEvent(beanId, appName, modName, ejbName);
+                destroyedCount++;
+            } else {
+                break;
+            }
+        }
+    }
+
     public String getAllAttrValues() {
         StringBuffer sbuf = new StringBuffer("[Pool-"+poolName+"] ");
         sbuf.append("CC=").append(createdCount).append("; ")
             .append("DC=").append(destroyedCount).append("; ")
-            .append("CS=").append(list.size()).append("; ")
+            .append("CS=").append(getSize()).append("; ")
             .append("SS=").append(steadyPoolSize).append("; ")
             .append("MS=").append(maxPoolSize).append(";");
         return sbuf.toString();
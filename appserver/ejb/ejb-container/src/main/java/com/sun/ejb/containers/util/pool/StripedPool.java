@@ -0,0 +1,297 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util.pool;
+
+import com.sun.ejb.containers.EJBContextImpl;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * <p>StripedPool spreads the pooled objects over a number of sub-pools
+ * (stripes), one per processor. A thread returns objects to, and takes
+ * objects from, its own stripe. When its stripe is empty it steals the
+ * least recently returned object of another stripe. getObject() and
+ * returnObject() therefore do not take a pool-wide lock.
+ * <p>The steady size, max size, idle timeout and resize behaviour are those
+ * of NonBlockingPool: the same PoolResizeTimerTask and resize works call
+ * doResize(), which reaches the stripes through getSize(),
+ * collectIdleVictims() and preload(). The list lock is only taken for
+ * bookkeeping when objects are created or destroyed.
+ * <p>The singleton-bean-pool mode is not supported by this pool.
+ */
+public class StripedPool
+    extends NonBlockingPool
+{
+
+    private final ConcurrentLinkedDeque[] stripes;
+    private final int stripeMask;
+    private final AtomicInteger pooledCount = new AtomicInteger();
+    private final LongAdder successCount = new LongAdder();
+
+    public StripedPool(long beanId, String poolName, ObjectFactory factory,
+        int steadyPoolSize, int resizeQuantity,
+        int maxPoolSize, int idleTimeoutInSeconds,
+        ClassLoader loader)
+    {
+        super(beanId, poolName, factory,
+              steadyPoolSize, resizeQuantity,
+              maxPoolSize, idleTimeoutInSeconds,
+              loader, false);
+
+        int count = Math.min(Runtime.getRuntime().availableProcessors(),
+                             this.maxPoolSize);
+        int size = 1;
+        while (size < count) {
+            size <<= 1;
+        }
+        stripes = new ConcurrentLinkedDeque[size];
+        for (int i=0; i<size; i++) {
+            stripes[i] = new ConcurrentLinkedDeque();
+        }
+        stripeMask = size - 1;
+
+        if(_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "[Pool-" + poolName + "]: Created "
+                        + size + " stripes");
+        }
+    }
+
+    private int homeStripe() {
+        return (int) Thread.currentThread().getId() & stripeMask;
+    }
+
+    private Object pollObject() {
+        int home = homeStripe();
+        // most recently returned object of this thread's stripe is the warmest
+        Object obj = stripes[home].pollLast();
+        for (int i=1; (obj == null) && (i < stripes.length); i++) {
+            obj = stripes[(home + i) & stripeMask].pollFirst();
+        }
+        if (obj != null) {
+            pooledCount.decrementAndGet();
+        }
+        return obj;
+    }
+
+    private boolean offerObject(Object obj, int stripe) {
+        if (pooledCount.incrementAndGet() <= maxPoolSize) {
+            stripes[stripe].offerLast(obj);
+            return true;
+        }
+        pooledCount.decrementAndGet();
+        return false;
+    }
+
+    private void scheduleResize() {
+        synchronized (list) {
+            if (addedResizeTask) {
+                return;
+            }
+            addedResizeTask = true;
+        }
+        addResizeTaskForImmediateExecution();
+    }
+
+    @Override
+    public Object getObject(Object param)
+    {
+        Object obj = pollObject();
+        if (obj != null) {
+            successCount.increment();
+            if (maintainSteadySize && (addedResizeTask == false)
+                    && (pooledCount.get() < steadyPoolSize)) {
+                scheduleResize();
+            }
+            return obj;
+        }
+
+        if (maintainSteadySize && (addedResizeTask == false)) {
+            scheduleResize();
+        }
+        synchronized (list) {
+            poolProbeNotifier.ejbObjectAddedEvent(beanId, appName, modName, ejbName);
+            createdCount++;	//hope that everything will be OK.
+        }
+
+        try {
+            return factory.create(param);
+        } catch (RuntimeException th) {
+            synchronized (list) {
+                poolProbeNotifier.ejbObjectAddFailedEvent(beanId, appName, modName, ejbName);
+                createdCount--;
+            }
+            throw th;
+        }
+    }
+
+    @Override
+    public void returnObject(Object object) {
+        if (offerObject(object, homeStripe())) {
+            return;
+        }
+
+        synchronized (list) {
+            poolProbeNotifier.ejbObjectDestroyedEvent(beanId, appName, modName, ejbName);
+            destroyedCount++;
+        }
+        try {
+            factory.destroy(object);
+        } catch (Exception ex) {
+            _logger.log(Level.FINE, "exception in returnObj", ex);
+        }
+    }
+
+    @Override
+    protected void preload(int count) {
+
+        ArrayList instances = new ArrayList(count);
+        try {
+            for (int i=0; i<count; i++) {
+                instances.add(factory.create(null));
+            }
+        } catch (Exception ex) {
+            //Need not throw this exception up since we are pre-populating
+        }
+
+        int sz = instances.size();
+        if (sz == 0) {
+            return;
+        }
+        synchronized (list) {
+            createdCount += sz;
+        }
+
+        int i = 0;
+        while ((i < sz) && offerObject(instances.get(i), i & stripeMask)) {
+            i++;
+        }
+
+        // destroys unnecessary instances
+        for (; i < sz; i++) {
+            destroyObject(instances.get(i));
+        }
+    }
+
+    @Override
+    public void close() {
+        // hand the pooled objects to NonBlockingPool.close() for destruction
+        synchronized (list) {
+            for (ConcurrentLinkedDeque stripe : stripes) {
+                Object obj;
+                while ((obj = stripe.pollFirst()) != null) {
+                    pooledCount.decrementAndGet();
+                    list.add(obj);
+                }
+            }
+        }
+        super.close();
+    }
+
+    @Override
+    protected void remove(int count) {
+        ArrayList removeList = new ArrayList();
+        Object obj;
+        for (int i=0; (i<count) && ((obj = pollObject()) != null); i++) {
+            removeList.add(obj);
+        }
+        synchronized (list) {
+            for (int i=0; i<removeList.size(); i++) {
+                poolProbeNotifier.ejbObjectDestroyedEvent(beanId, appName, modName, ejbName);
+                destroyedCount++;
+            }
+        }
+
+        for (Object o : removeList) {
+            try {
+                factory.destroy(o);
+            } catch (Throwable th) {
+                _logger.log(Level.FINE, "exception in remove", th);
+            }
+        }
+    }
+
+    /**
+     * The least recently returned objects are at the head of each stripe.
+     */
+    @Override
+    protected void collectIdleVictims(int victimCount, long allowedIdleTime,
+            ArrayList removeList) {
+        int removed = 0;
+        for (int i=0; (i < stripes.length) && (removed < victimCount); i++) {
+            ConcurrentLinkedDeque stripe = stripes[i];
+            while (removed < victimCount) {
+                Object obj = stripe.pollFirst();
+                if (obj == null) {
+                    break;
+                }
+                if (getLastTimeUsed(obj) <= allowedIdleTime) {
+                    pooledCount.decrementAndGet();
+                    removeList.add(obj);
+                    poolProbeNotifier.ejbObjectDestroyedEvent(beanId, appName, modName, ejbName);
+                    destroyedCount++;
+                    removed++;
+                } else {
+                    stripe.offerFirst(obj);
+                    break;
+                }
+            }
+        }
+    }
+
+    // package-private so that tests can pool objects other than contexts
+    long getLastTimeUsed(Object obj) {
+        return ((EJBContextImpl) obj).getLastTimeUsed();
+    }
+
+    @Override
+    public int getSize() {
+        return pooledCount.get();
+    }
+
+    @Override
+    public int getPoolSuccess() {
+        return successCount.intValue();
+    }
+}
@@ -61,4 +61,12 @@ public class EjbTimedObjectProbeProvider {
     @Probe(name="timerDeliveredEvent")
     public void ejbTimerDeliveredEvent() {}
 
+    @Probe(name="timersRestoredEvent")
+    public void ejbTimersRestoredEvent(@ProbeParam("count") int count) {}
+
+    @Probe(name="timerDeliveryStartedEvent")
+    public void ejbTimerDeliveryStartedEvent(
+            @ProbeParam("lag") long lag,
+            @ProbeParam("backlog") int backlog) {}
+
 }
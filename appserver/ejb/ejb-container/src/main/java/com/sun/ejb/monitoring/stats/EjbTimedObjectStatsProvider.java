@@ -70,6 +70,19 @@ public class EjbTimedObjectStatsProvider {
     private CountStatisticImpl timerDeliveredStat = new CountStatisticImpl("NumTimersDelivered",
             "count", "Number of timers delivered by the system");
 
+    private CountStatisticImpl timerRestoredStat = new CountStatisticImpl("NumTimersRestored",
+            "count", "Number of persistent timers restored from the database");
+
+    private TimeStatisticImpl timerDeliveryLagStat = new TimeStatisticImpl(0, 0, 0, 0,
+            "TimerDeliveryLag", "milliseconds",
+            "Delay between the expiration of a timer and the start of its delivery",
+            System.currentTimeMillis(), System.currentTimeMillis());
+
+    private RangeStatisticImpl timerBacklogStat = new RangeStatisticImpl(0, 0, 0,
+            "TimerDeliveryBacklog", "count",
+            "Number of expired timers waiting for delivery",
+            System.currentTimeMillis(), System.currentTimeMillis());
+
     private static final Logger _logger = EjbContainerUtilImpl.getLogger();
 
     private String appName = null;
@@ -118,6 +131,21 @@ public class EjbTimedObjectStatsProvider {
         timerDeliveredStat.increment();
     }
 
+    @ProbeListener("glassfish:ejb:timers:timersRestoredEvent")
+    public void ejbTimersRestoredEvent(@ProbeParam("count") int count) {
+        _logger.fine("=== timersRestoredEvent");
+        timerRestoredStat.increment(count);
+    }
+
+    @ProbeListener("glassfish:ejb:timers:timerDeliveryStartedEvent")
+    public void ejbTimerDeliveryStartedEvent(
+            @ProbeParam("lag") long lag,
+            @ProbeParam("backlog") int backlog) {
+        _logger.fine("=== timerDeliveryStartedEvent");
+        timerDeliveryLagStat.incrementCount(lag);
+        timerBacklogStat.setCurrent(backlog);
+    }
+
     @ManagedAttribute(id="numtimerscreated")
     @Description( "Number of timers created in the system")
     public CountStatistic getNumTimersCreated() {
@@ -135,4 +163,22 @@ public class EjbTimedObjectStatsProvider {
     public CountStatistic getNumTimersDelivered() {
         return timerDeliveredStat;
     }
+
+    @ManagedAttribute(id="numtimersrestored")
+    @Description( "Number of persistent timers restored from the database")
+    public CountStatistic getNumTimersRestored() {
+        return timerRestoredStat;
+    }
+
+    @ManagedAttribute(id="timerdeliverylag")
+    @Description( "Delay between the expiration of a timer and the start of its delivery")
+    public TimeStatistic getTimerDeliveryLag() {
+        return timerDeliveryLagStat;
+    }
+
+    @ManagedAttribute(id="timerdeliverybacklog")
+    @Description( "Number of expired timers waiting for delivery")
+    public RangeStatistic getTimerDeliveryBacklog() {
+        return timerBacklogStat;
+    }
 }
@@ -85,6 +85,7 @@ import org.glassfish.internal.api.Globals;
 import org.glassfish.security.common.Role;
 
 import com.sun.ejb.EjbInvocation;
+import com.sun.ejb.containers.util.MethodInvoker;
 import com.sun.enterprise.deployment.EjbIORConfigurationDescriptor;
 import com.sun.enterprise.deployment.MethodDescriptor;
 import com.sun.enterprise.deployment.MethodPermission;
@@ -1170,6 +1171,33 @@ public final class EJBSecurityManager
         return ret;
     }
 
+    /**
+     * Same as invoke(Method, boolean, Object, Object[]) for the method of
+     * the given invoker, which is used instead of reflection whenever the
+     * call does not need to run privileged.
+     *
+     * @param invoker,         the invoker of the bean class method
+     * @param isLocal,         true if this invocation is through the local EJB view
+     * @param o                the object on which this method is to be
+     *                         invoked in this case the ejb,
+     * @param oa               the parameters for the method,
+     * @return Object, the result of the execution of the method.
+     */
+    public Object invoke(MethodInvoker invoker, boolean isLocal, Object o, Object[] oa)
+            throws Throwable {
+
+        if ((isLocal && this.getUsesCallerIdentity()) ||
+                System.getSecurityManager() == null) {
+            String oldCtxID = setPolicyContext(this.contextId);
+            try {
+                return invoker.invoke(o, oa);
+            } finally {
+                resetPolicyContext(oldCtxID, this.contextId);
+            }
+        }
+        return invoke(invoker.getMethod(), isLocal, o, oa);
+    }
+
     @Override
     public void resetPolicyContext() {
         if (System.getSecurityManager() == null) {
@@ -0,0 +1,247 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the wheel of EJBTimerScheduler tick by tick. The ticks are an
+ * hour long, so the scheduler's own tick thread never reaches a deadline
+ * while a test runs and all expirations come from advanceTo().
+ */
+public class EJBTimerSchedulerTest {
+
+    private static final long TICK = TimeUnit.HOURS.toMillis(1);
+    private static final int WHEEL_SIZE = 512;
+
+    private long origin;
+    private EJBTimerScheduler scheduler;
+    private final List<String> deliveries = new CopyOnWriteArrayList<String>();
+
+    @Before
+    public void setUp() {
+        origin = System.currentTimeMillis();
+        scheduler = new EJBTimerScheduler(TICK, 1);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void testExpiresInDeadlineOrder() {
+        RecordingTask third = schedule("third", 3);
+        RecordingTask first = schedule("first", 1);
+        RecordingTask second = schedule("second", 2);
+        assertEquals(3, scheduler.getScheduledCount());
+        assertEquals(0, first.level_);
+
+        assertEquals(Arrays.asList(first, second), advanceTo(2));
+        assertEquals(Arrays.asList(third), advanceTo(3));
+        assertEquals(0, scheduler.getScheduledCount());
+    }
+
+    @Test
+    public void testPastTimeoutExpiresOnNextTick() {
+        RecordingTask task = new RecordingTask("late", new Date(origin - 1000));
+        scheduler.schedule(task);
+
+        assertEquals(Arrays.asList(task), advanceTo(1));
+    }
+
+    @Test
+    public void testCascadesFromLevelOne() {
+        RecordingTask task = schedule("task", WHEEL_SIZE + 88);
+        assertEquals(1, task.level_);
+
+        assertTrue(advanceTo(WHEEL_SIZE - 1).isEmpty());
+        assertTrue(advanceTo(WHEEL_SIZE).isEmpty());
+        assertEquals("moved down when its level 1 slot came due", 0, task.level_);
+
+        assertTrue(advanceTo(WHEEL_SIZE + 87).isEmpty());
+        assertEquals(Arrays.asList(task), advanceTo(WHEEL_SIZE + 88));
+    }
+
+    @Test
+    public void testCascadesFromLevelTwo() {
+        long levelTwoSpan = (long) WHEEL_SIZE * WHEEL_SIZE;
+        long deadline = levelTwoSpan + WHEEL_SIZE + 188;
+        RecordingTask task = schedule("task", deadline);
+        RecordingTask early = schedule("early", 100);
+        assertEquals(2, task.level_);
+
+        assertEquals(Arrays.asList(early), advanceTo(levelTwoSpan));
+        assertEquals(1, task.level_);
+        assertTrue(advanceTo(levelTwoSpan + WHEEL_SIZE).isEmpty());
+        assertEquals(0, task.level_);
+        assertTrue(advanceTo(deadline - 1).isEmpty());
+        assertEquals(Arrays.asList(task), advanceTo(deadline));
+    }
+
+    @Test
+    public void testCancelBeforeExpiry() {
+        RecordingTask first = schedule("first", WHEEL_SIZE + 10);
+        RecordingTask cancelled = schedule("cancelled", WHEEL_SIZE + 10);
+        RecordingTask last = schedule("last", WHEEL_SIZE + 10);
+        assertEquals(3, scheduler.getScheduledCount());
+
+        // in the middle of its slot's list
+        assertTrue(cancelled.cancel());
+        assertTrue(cancelled.isCancelled());
+        assertEquals(-1, cancelled.level_);
+        assertEquals(2, scheduler.getScheduledCount());
+        assertFalse(scheduler.cancel(cancelled));
+
+        List<EJBTimerTask> expired = advanceTo(WHEEL_SIZE + 10);
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains(first));
+        assertTrue(expired.contains(last));
+        assertEquals(0, scheduler.getScheduledCount());
+        assertFalse("already expired", scheduler.cancel(first));
+    }
+
+    @Test
+    public void testRescheduleMovesTask() {
+        RecordingTask task = schedule("task", 5);
+        task.setTimeout(timeoutAt(WHEEL_SIZE + 5));
+        scheduler.schedule(task);
+        assertEquals(1, scheduler.getScheduledCount());
+
+        assertTrue(advanceTo(WHEEL_SIZE + 4).isEmpty());
+        assertEquals(Arrays.asList(task), advanceTo(WHEEL_SIZE + 5));
+    }
+
+    @Test
+    public void testDeliveriesAreFifoPerContainerAndRoundRobin() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(6);
+        for (String name : new String[] { "a1", "a2", "a3", "a4" }) {
+            scheduler.dispatch(1L, new RecordingTask(name, new Date(origin), delivered));
+        }
+        for (String name : new String[] { "b1", "b2" }) {
+            scheduler.dispatch(2L, new RecordingTask(name, new Date(origin), delivered));
+        }
+        assertEquals(6, scheduler.getDeliveryBacklog());
+
+        // the delivery thread is started with the first scheduled timer
+        schedule("trigger", 1000);
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+
+        // name:expirations of the same container still waiting
+        assertEquals(Arrays.asList("a1:3", "b1:1", "a2:2", "b2:0", "a3:1", "a4:0"),
+                deliveries);
+        assertEquals(0, scheduler.getDeliveryBacklog());
+    }
+
+    private RecordingTask schedule(String name, long deadlineTick) {
+        RecordingTask task = new RecordingTask(name, timeoutAt(deadlineTick));
+        scheduler.schedule(task);
+        return task;
+    }
+
+    /**
+     * A time whose ceiling on the scheduler's wheel is the given tick.
+     */
+    private Date timeoutAt(long tick) {
+        return new Date(origin + tick * TICK - TICK / 2);
+    }
+
+    private List<EJBTimerTask> advanceTo(long tick) {
+        List<EJBTimerTask> expired = new ArrayList<EJBTimerTask>();
+        scheduler.advanceTo(tick, expired);
+        return expired;
+    }
+
+    private class RecordingTask extends EJBTimerTask {
+        private final String name;
+        private final CountDownLatch delivered;
+        private Date timeout;
+
+        RecordingTask(String name, Date timeout) {
+            this(name, timeout, null);
+        }
+
+        RecordingTask(String name, Date timeout, CountDownLatch delivered) {
+            super(timeout, new TimerPrimaryKey(name), null);
+            this.name = name;
+            this.timeout = timeout;
+            this.delivered = delivered;
+        }
+
+        void setTimeout(Date timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public Date getTimeout() {
+            return timeout;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        void deliver(int backlog) {
+            deliveries.add(name + ":" + backlog);
+            delivered.countDown();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a MethodInvoker behaves as Method.invoke does, for the
+ * results as well as for the exceptions.
+ */
+public class MethodInvokerTest {
+
+    @Test
+    public void testInstanceMethodWithPrimitives() throws Exception {
+        MethodInvoker invoker = invoker("add", int.class, long.class);
+        assertEquals(Long.valueOf(5L),
+                     invoker.invoke(new Target(), new Object[] { 2, 3L }));
+    }
+
+    @Test
+    public void testStaticMethodIgnoresTarget() throws Exception {
+        MethodInvoker invoker = invoker("twice", String.class);
+        assertEquals("abab", invoker.invoke(null, new Object[] { "ab" }));
+        assertEquals("abab", invoker.invokeUnary(new Object(), "ab"));
+    }
+
+    @Test
+    public void testVarargsTakeTheirArray() throws Exception {
+        MethodInvoker invoker = invoker("join", String.class, String[].class);
+        Object[] args = { "-", new String[] { "a", "b", "c" } };
+        assertEquals("a-b-c", invoker.invoke(new Target(), args));
+        assertEquals(method("join", String.class, String[].class)
+                         .invoke(new Target(), args),
+                     invoker.invoke(new Target(), args));
+    }
+
+    @Test
+    public void testNoArgumentsAndVoid() throws Exception {
+        Target target = new Target();
+        assertNull(invoker("touch").invoke(target, null));
+        assertNull(invoker("touch").invoke(target, new Object[0]));
+        assertEquals(2, target.touched);
+    }
+
+    @Test
+    public void testUnary() throws Exception {
+        MethodInvoker invoker = invoker("length", Object.class);
+        assertEquals(3, invoker.invokeUnary(new Target(), "abc"));
+        assertEquals(3, invoker.invoke(new Target(), new Object[] { "abc" }));
+    }
+
+    @Test
+    public void testNonPublicMethod() throws Exception {
+        Method method = Target.class.getDeclaredMethod("hidden");
+        method.setAccessible(true);
+        assertEquals("hidden",
+                     MethodInvoker.create(method).invoke(new Target(), null));
+    }
+
+    @Test
+    public void testTargetExceptionsAreWrapped() throws Exception {
+        MethodInvoker invoker = invoker("fail", Throwable.class);
+        Throwable[] failures = {
+            new IOException(), new ClassCastException(),
+            new NullPointerException(), new IllegalArgumentException(),
+            new InvocationTargetException(null), new AssertionError() };
+        for (Throwable failure : failures) {
+            try {
+                invoker.invokeUnary(new Target(), failure);
+                fail("expected " + failure);
+            } catch (InvocationTargetException e) {
+                assertSame(failure, e.getCause());
+            }
+            try {
+                invoker.invoke(new Target(), new Object[] { failure });
+                fail("expected " + failure);
+            } catch (InvocationTargetException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void testArgumentOfWrongType() throws Exception {
+        MethodInvoker invoker = invoker("twice", String.class);
+        assertArgumentMismatch(invoker, null, new Object[] { 1 });
+        try {
+            invoker.invokeUnary(null, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getCause() instanceof ClassCastException);
+        }
+    }
+
+    @Test
+    public void testNullForPrimitive() throws Exception {
+        assertArgumentMismatch(invoker("add", int.class, long.class),
+                               new Target(), new Object[] { null, 1L });
+    }
+
+    @Test
+    public void testWrongNumberOfArguments() throws Exception {
+        MethodInvoker invoker = invoker("add", int.class, long.class);
+        assertArgumentMismatch(invoker, new Target(), new Object[] { 1 });
+        assertArgumentMismatch(invoker, new Target(), null);
+        try {
+            invoker.invokeUnary(new Target(), 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTargetOfWrongType() throws Exception {
+        assertArgumentMismatch(invoker("touch"), "not a target", null);
+    }
+
+    @Test
+    public void testNullTarget() throws Exception {
+        MethodInvoker invoker = invoker("touch");
+        try {
+            method("touch").invoke(null);
+            fail();
+        } catch (NullPointerException e) {
+            // expected
+        }
+        try {
+            invoker.invoke(null, null);
+            fail();
+        } catch (NullPointerException e) {
+            // expected
+        }
+        try {
+            invoker("length", Object.class).invokeUnary(null, "abc");
+            fail();
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    private static Method method(String name, Class<?>... types)
+            throws NoSuchMethodException {
+        return Target.class.getDeclaredMethod(name, types);
+    }
+
+    private static MethodInvoker invoker(String name, Class<?>... types)
+            throws Exception {
+        return MethodInvoker.create(method(name, types));
+    }
+
+    /**
+     * Method.invoke and the invoker must both throw an
+     * IllegalArgumentException for these arguments.
+     */
+    private static void assertArgumentMismatch(MethodInvoker invoker,
+            Object target, Object[] args) throws Exception {
+        try {
+            invoker.getMethod().invoke(target, args);
+            fail("Method.invoke accepted the arguments");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            invoker.invoke(target, args);
+            fail("MethodInvoker accepted the arguments");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public static class Target {
+
+        int touched;
+
+        public long add(int a, long b) {
+            return a + b;
+        }
+
+        public static String twice(String s) {
+            return s + s;
+        }
+
+        public String join(String separator, String... parts) {
+            StringBuilder sb = new StringBuilder();
+            for (String part : parts) {
+                if (sb.length() > 0) {
+                    sb.append(separator);
+                }
+                sb.append(part);
+            }
+            return sb.toString();
+        }
+
+        public void touch() {
+            touched++;
+        }
+
+        public int length(Object o) {
+            return o.toString().length();
+        }
+
+        public void fail(Throwable t) throws Throwable {
+            throw t;
+        }
+
+        private String hidden() {
+            return "hidden";
+        }
+    }
+}
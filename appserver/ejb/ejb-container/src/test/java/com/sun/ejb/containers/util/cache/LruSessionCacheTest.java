@@ -0,0 +1,369 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util.cache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ejb.SessionContext;
+
+import com.sun.ejb.spi.container.SFSBContainerCallback;
+import com.sun.ejb.spi.container.StatefulEJBContext;
+
+import org.glassfish.ha.store.api.BackingStore;
+import org.glassfish.ha.store.api.BackingStoreException;
+import org.glassfish.ha.store.api.BackingStoreFactory;
+import org.glassfish.ha.store.util.SimpleMetadata;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that LruSessionCache activates a session from its prefetched
+ * state, and that a prefetched state never outlives a write or removal of
+ * the stored state of its session.
+ */
+public class LruSessionCacheTest {
+
+    private RecordingStore store;
+    private RecordingContainer container;
+    private TestCache cache;
+
+    @Before
+    public void setUp() {
+        store = new RecordingStore();
+        container = new RecordingContainer();
+        cache = new TestCache(container);
+        cache.init(1, 0.75f, null);
+        cache.setBackingStore(store);
+    }
+
+    @Test
+    public void testActivationUsesPrefetchedState() {
+        store.put("a", "v1");
+
+        cache.prefetch("a");
+        assertEquals(1, cache.work.size());
+        cache.runWork();
+        assertEquals(1, store.loads);
+
+        assertEquals("v1", lookup("a").state);
+        assertEquals(1, store.loads);
+        assertEquals(1, container.activations);
+    }
+
+    @Test
+    public void testPrefetchIgnoresCachedSession() {
+        cache.put("a", new TestContext("v1"));
+
+        cache.prefetch("a");
+        assertTrue(cache.work.isEmpty());
+    }
+
+    @Test
+    public void testMissingStateIsNotKept() {
+        cache.prefetch("a");
+        cache.runWork();
+
+        store.put("a", "v1");
+        assertEquals("v1", lookup("a").state);
+        assertEquals(2, store.loads);
+    }
+
+    @Test
+    public void testRejectedWorkIsNotKept() {
+        store.put("a", "v1");
+        cache.rejectWork = true;
+
+        cache.prefetch("a");
+        assertEquals("v1", lookup("a").state);
+        assertEquals(1, store.loads);
+    }
+
+    @Test
+    public void testPassivationDropsPrefetchedState() throws Exception {
+        store.put("a", "v1");
+        cache.prefetch("a");
+        cache.runWork();
+
+        passivate("a", new TestContext("v2"));
+        assertEquals("v2", store.get("a"));
+
+        assertEquals("v2", lookup("a").state);
+        assertEquals(2, store.loads);
+    }
+
+    @Test
+    public void testLoadOverlappingPassivationIsDropped() throws Exception {
+        store.put("a", "v1");
+        cache.prefetch("a");
+
+        // the load reads v1, then v2 is written before the load completes
+        store.afterRead = new Runnable() {
+            public void run() {
+                try {
+                    passivate("a", new TestContext("v2"));
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+        cache.runWork();
+        store.afterRead = null;
+
+        assertEquals("v2", lookup("a").state);
+    }
+
+    @Test
+    public void testRemoveDropsPrefetchedState() {
+        store.put("a", "v1");
+        cache.prefetch("a");
+        cache.runWork();
+
+        cache.remove("a", true);
+        assertNull(store.get("a"));
+        assertNull(cache.lookupEJB("a", container, null));
+        assertEquals(0, container.activations);
+    }
+
+    @Test
+    public void testPrefetchDuringRemoveIsDropped() {
+        store.put("a", "v1");
+        cache.put("a", new TestContext("v1"));
+
+        // prefetch runs after the session left the cache, before the store
+        // removed its state
+        store.beforeRemove = new Runnable() {
+            public void run() {
+                cache.prefetch("a");
+                cache.runWork();
+            }
+        };
+        cache.remove("a", true);
+        store.beforeRemove = null;
+        assertEquals(1, store.loads);
+
+        assertNull(cache.lookupEJB("a", container, null));
+        assertEquals(2, store.loads);
+        assertEquals(0, container.activations);
+    }
+
+    private TestContext lookup(String key) {
+        return (TestContext) cache.lookupEJB(key, container, null);
+    }
+
+    private void passivate(String key, TestContext ctx) throws Exception {
+        // with room for one entry, adding two more trims the session
+        cache.put(key, ctx);
+        cache.put(key + "-1", new TestContext("other"));
+        cache.put(key + "-2", new TestContext("other"));
+        assertTrue(cache.passivateEJB(ctx, key));
+    }
+
+    private static class TestCache extends LruSessionCache {
+        final List<Runnable> work = new ArrayList<Runnable>();
+        boolean rejectWork;
+
+        TestCache(SFSBContainerCallback container) {
+            super("test", container, 0, 0);
+        }
+
+        @Override
+        protected void addPrefetchWork(Runnable runnable) {
+            if (rejectWork) {
+                throw new IllegalStateException("rejected");
+            }
+            work.add(runnable);
+        }
+
+        void runWork() {
+            List<Runnable> queued = new ArrayList<Runnable>(work);
+            work.clear();
+            for (Runnable runnable : queued) {
+                runnable.run();
+            }
+        }
+    }
+
+    private static class RecordingStore
+            extends BackingStore<Serializable, SimpleMetadata> {
+        private final Map<Serializable, SimpleMetadata> states =
+            new HashMap<Serializable, SimpleMetadata>();
+        int loads;
+        Runnable afterRead;
+        Runnable beforeRemove;
+
+        void put(Serializable key, String state) {
+            states.put(key, new SimpleMetadata(
+                1L, System.currentTimeMillis(), 0L, state.getBytes()));
+        }
+
+        String get(Serializable key) {
+            SimpleMetadata state = states.get(key);
+            return (state == null) ? null : new String(state.getState());
+        }
+
+        @Override
+        public SimpleMetadata load(Serializable key, String version) {
+            loads++;
+            SimpleMetadata state = states.get(key);
+            if (afterRead != null) {
+                afterRead.run();
+            }
+            return state;
+        }
+
+        @Override
+        public String save(Serializable key, SimpleMetadata value, boolean isNew) {
+            states.put(key, value);
+            return null;
+        }
+
+        @Override
+        public void remove(Serializable key) {
+            if (beforeRemove != null) {
+                beforeRemove.run();
+            }
+            states.remove(key);
+        }
+
+        @Override
+        public BackingStoreFactory getBackingStoreFactory() {
+            return null;
+        }
+
+        @Override
+        public int removeExpired(long idleForMillis) {
+            return 0;
+        }
+
+        @Override
+        public int size() {
+            return states.size();
+        }
+
+        @Override
+        public void destroy() throws BackingStoreException {
+        }
+    }
+
+    private static class RecordingContainer implements SFSBContainerCallback {
+        int activations;
+
+        public ClassLoader getClassLoader() {
+            return getClass().getClassLoader();
+        }
+
+        public int getPassivationBatchCount() {
+            return 1;
+        }
+
+        public void invokePeriodically(long delay, long periodicity, Runnable target) {
+        }
+
+        public void activateEJB(Object sessionKey, StatefulEJBContext ctx, Object cookie) {
+            activations++;
+        }
+
+        public boolean passivateEJB(StatefulEJBContext ctx) {
+            return false;
+        }
+
+        public boolean isPassivationCapable() {
+            return true;
+        }
+
+        public byte[] serializeContext(StatefulEJBContext ctx) throws IOException {
+            return ((TestContext) ctx).state.getBytes();
+        }
+
+        public Object deserializeData(byte[] data) {
+            return new TestContext(new String(data));
+        }
+    }
+
+    private static class TestContext implements StatefulEJBContext {
+        final String state;
+        private final long lastAccessTime = System.currentTimeMillis();
+
+        TestContext(String state) {
+            this.state = state;
+        }
+
+        public long getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        public boolean canBePassivated() {
+            return true;
+        }
+
+        public SessionContext getSessionContext() {
+            return null;
+        }
+
+        public boolean existsInStore() {
+            return false;
+        }
+
+        public void setExistsInStore(boolean val) {
+        }
+
+        public long getVersion() {
+            return 1L;
+        }
+
+        public long incrementAndGetVersion() {
+            return 1L;
+        }
+
+        public void setVersion(long versionInBackingStore) {
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pools plain objects, so the pool's probe provider falls back to an
+ * unregistered one and the resize tasks are run through doResize()
+ * rather than the EJB container's thread pool.
+ */
+public class StripedPoolTest {
+
+    private final CountingFactory factory = new CountingFactory();
+    private StripedPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testCheckoutCreatesAndReturnReuses() {
+        pool = newPool(0, 0, 4, 0);
+
+        Object first = pool.getObject(null);
+        assertEquals(1, factory.created.get());
+        assertEquals(0, pool.getSize());
+
+        pool.returnObject(first);
+        assertEquals(1, pool.getSize());
+        assertSame(first, pool.getObject(null));
+        assertEquals(1, factory.created.get());
+        assertEquals(1, pool.getPoolSuccess());
+    }
+
+    @Test
+    public void testReturnBeyondMaxPoolSizeDestroys() {
+        pool = newPool(0, 0, 4, 0);
+
+        List<Object> out = new ArrayList<Object>();
+        for (int i = 0; i < 6; i++) {
+            out.add(pool.getObject(null));
+        }
+        for (Object obj : out) {
+            pool.returnObject(obj);
+        }
+        assertEquals(4, pool.getSize());
+        assertEquals(2, factory.destroyed.get());
+    }
+
+    @Test
+    public void testObjectReturnedByAnotherThreadIsStolen() throws Exception {
+        pool = newPool(0, 0, 4, 0);
+        final Object obj = pool.getObject(null);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(new Runnable() {
+                public void run() {
+                    pool.returnObject(obj);
+                }
+            }).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertSame(obj, pool.getObject(null));
+        assertEquals(1, factory.created.get());
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void testConcurrentCheckoutAndReturn() throws Exception {
+        final int maxPoolSize = 8;
+        pool = newPool(0, 0, maxPoolSize, 0);
+        final int threads = 16;
+        final int iterations = 20000;
+        final Set<Object> inUse =
+                Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < iterations; i++) {
+                            Object obj = pool.getObject(null);
+                            if (!inUse.add(obj)) {
+                                throw new AssertionError("object handed out twice: " + obj);
+                            }
+                            inUse.remove(obj);
+                            pool.returnObject(obj);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(pool.getSize() <= maxPoolSize);
+        assertEquals(factory.created.get() - factory.destroyed.get(), pool.getSize());
+    }
+
+    @Test
+    public void testResizeGrowsToSteadySize() {
+        pool = newPool(3, 2, 8, 0);
+        assertEquals(0, pool.getSize());
+
+        pool.doResize();
+        //populated in steps of resizeQuantity
+        assertEquals(4, pool.getSize());
+        assertEquals(4, factory.created.get());
+
+        pool.doResize();
+        assertEquals(4, pool.getSize());
+    }
+
+    @Test
+    public void testResizeRemovesIdleObjects() {
+        pool = newPool(2, 2, 8, 60);
+
+        List<Object> out = new ArrayList<Object>();
+        for (int i = 0; i < 6; i++) {
+            out.add(pool.getObject(null));
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < out.size(); i++) {
+            PooledObject obj = (PooledObject) out.get(i);
+            //the first four were returned long ago
+            obj.lastTimeUsed = (i < 4) ? now - TimeUnit.HOURS.toMillis(1) : now;
+            pool.returnObject(obj);
+        }
+        assertEquals(6, pool.getSize());
+
+        pool.doResize();
+        assertEquals(4, pool.getSize());
+        assertEquals(2, factory.destroyed.get());
+
+        pool.doResize();
+        assertEquals(2, pool.getSize());
+        assertEquals(4, factory.destroyed.get());
+
+        //only recently used objects are left above the steady size
+        pool.returnObject(pool.getObject(null));
+        pool.doResize();
+        assertEquals(2, pool.getSize());
+    }
+
+    @Test
+    public void testCloseDestroysPooledObjects() {
+        pool = newPool(0, 0, 4, 0);
+        Object first = pool.getObject(null);
+        Object second = pool.getObject(null);
+        assertNotSame(first, second);
+        pool.returnObject(first);
+        pool.returnObject(second);
+
+        pool.close();
+        assertEquals(0, pool.getSize());
+        assertEquals(2, factory.destroyed.get());
+        pool = null;
+    }
+
+    private StripedPool newPool(int steadyPoolSize, int resizeQuantity,
+            int maxPoolSize, int idleTimeoutInSeconds) {
+        StripedPool striped = new StripedPool(1L, "test-pool", factory,
+                steadyPoolSize, resizeQuantity, maxPoolSize, idleTimeoutInSeconds,
+                StripedPoolTest.class.getClassLoader()) {
+            @Override
+            long getLastTimeUsed(Object obj) {
+                return ((PooledObject) obj).lastTimeUsed;
+            }
+        };
+        striped.setInfo("test", "test", "TestBean");
+        return striped;
+    }
+
+    private static class PooledObject {
+        volatile long lastTimeUsed = System.currentTimeMillis();
+    }
+
+    private static class CountingFactory implements ObjectFactory {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger destroyed = new AtomicInteger();
+
+        public Object create(Object param) {
+            created.incrementAndGet();
+            return new PooledObject();
+        }
+
+        public void destroy(Object obj) {
+            destroyed.incrementAndGet();
+        }
+    }
+}
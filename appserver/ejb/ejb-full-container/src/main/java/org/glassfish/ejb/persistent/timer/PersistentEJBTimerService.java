@@ -129,6 +129,32 @@ public class PersistentEJBTimerService extends EJBTimerService {
     // Possible values "redeliver" and "stop"
     private String operationOnConnectionFailure = null;
 
+    // Windowed restore.  When the window is set, single-action timers are
+    // restored at startup or migration only if they expire within the
+    // window, and later ones are restored in the background one window
+    // at a time.  Timers are read in pages of the given size.
+    private static final String RESTORE_WINDOW = "timer-restore-window-in-millis";
+    private static final String RESTORE_PAGE_SIZE = "timer-restore-page-size";
+    private static final int DEFAULT_RESTORE_PAGE_SIZE = 500;
+    private long restoreWindow = 0;
+    private int restorePageSize = DEFAULT_RESTORE_PAGE_SIZE;
+
+    // Held for the duration of a windowed restore pass so that a migration
+    // cannot interleave with a background window.
+    private final Object windowLock = new Object();
+
+    // null unless the window is set
+    private final TimerRestoreWindow windowState;
+
+    // Guards the state below
+    private final Object restoreLock = new Object();
+
+    // Timers expunged while a page was being restored.  The page may have
+    // read them before they were removed from the database.
+    private boolean restoreInProgress = false;
+    private Set<TimerPrimaryKey> expungedDuringRestore = 
+            new HashSet<TimerPrimaryKey>();
+
     private PersistentEJBTimerService(String ejbName, boolean removeOldTimers) throws Exception {
         super();
 
@@ -138,6 +164,8 @@ public class PersistentEJBTimerService extends EJBTimerService {
         this.removeOldTimers = removeOldTimers;
 
         initProperties();
+        windowState = (restoreWindow > 0)? 
+                new TimerRestoreWindow(restoreWindow) : null;
 
         // Verify that the DataSource ref is correct and store it to check if connections can be aquired if
         // the timeout fails
@@ -165,6 +193,17 @@ public class PersistentEJBTimerService extends EJBTimerService {
                     getDBReadBeforeTimeoutProperty();
 
                 operationOnConnectionFailure = ejbt.getPropertyValue(ON_CONECTION_FAILURE);
+
+                String valString = ejbt.getPropertyValue(RESTORE_WINDOW);
+                if( valString != null ) {
+                    restoreWindow = Long.parseLong(valString);
+                }
+
+                valString = ejbt.getPropertyValue(RESTORE_PAGE_SIZE);
+                int val = (valString != null) ? Integer.parseInt(valString) : -1;
+                if( val > 0 ) {
+                    restorePageSize = val;
+                }
             }
 
         } catch(Exception e) {
@@ -227,7 +266,9 @@ public class PersistentEJBTimerService extends EJBTimerService {
                               
             tm.begin();
 
-            toRestore = timerLocal_.findTimersOwnedBy(fromOwnerId);
+            if( restoreWindow <= 0 ) {
+                toRestore = timerLocal_.findTimersOwnedBy(fromOwnerId);
+            }
             totalTimersMigrated = timerLocal_.migrateTimers(fromOwnerId, ownerIdOfThisServer);
 
             tm.commit();
@@ -251,7 +292,24 @@ public class PersistentEJBTimerService extends EJBTimerService {
         }
 
 // XXX if( totalTimersMigrated  == toRestore.size() ) { XXX ???
-        if( totalTimersMigrated > 0 ) {
+        if( totalTimersMigrated > 0 && restoreWindow > 0 ) {
+
+            logger.log(Level.INFO, "Timer migration phase 1 complete. " +
+                       "Changed ownership of " + totalTimersMigrated + 
+                       " timers.  Now reactivating timers...");
+            try {
+                // The migrated timers are owned by this server now, so
+                // they are picked up by the windowed restore.
+                restoreTimersInWindow(null, true, null);
+            } catch(Exception e) {
+                logger.log(Level.FINE, "timer restoration error", e);
+
+                //Propogate any exceptions caught
+                EJBException ejbEx = createEJBException( e );
+                throw ejbEx;
+            }
+
+        } else if( totalTimersMigrated > 0 ) {
 
             boolean success = false;
             try {
@@ -366,7 +424,7 @@ public class PersistentEJBTimerService extends EJBTimerService {
                 restoreTimers();
                 rc = true;
             } else {
-                int s = (timerLocal_.findActiveTimersOwnedByThisServer()).size();
+                int s = timerLocal_.countActiveTimersOwnedByThisServer();
                 if (s > 0) {
                     logger.log(Level.INFO, "[" + s + "] EJB Timers owned by this server will be restored when timeout beans are loaded");
                 } else {
@@ -392,6 +450,15 @@ public class PersistentEJBTimerService extends EJBTimerService {
             return;
         }
 
+        if( restoreWindow > 0 ) {
+            int restored = restoreTimersInWindow(null, false, null);
+            logger.log(Level.INFO, "Restored " + restored + " timers. " + 
+                       "Single-action timers expiring after " + 
+                       new Date(windowState.getRestoredUpTo()) + 
+                       " will be restored in the background");
+            return;
+        }
+
         TransactionManager tm = ejbContainerUtil.getTransactionManager();
         try {
             // create a tx in which to do database access for all timers 
@@ -416,6 +483,178 @@ public class PersistentEJBTimerService extends EJBTimerService {
         }
     }
 
+    /**
+     * Restore the timers owned by this server that are due before the end
+     * of the current restore window.  Periodic and calendar-based timers are
+     * always restored since their next expiration is only known once they
+     * are loaded.
+     * @param containerId the container whose timers to restore, or null
+     * for all timers owned by this server
+     * @param notify true if containers need to be told about automatic 
+     * timers, i.e. when the timers were migrated from another server
+     * @param restored if not null, collects the restored timers
+     * @return the number of timers read
+     */
+    private int restoreTimersInWindow(Long containerId, boolean notify,
+            Set<TimerState> restored) throws Exception {
+        boolean more;
+        int total = 0;
+        synchronized(windowLock) {
+            long windowEnd = windowState.begin(System.currentTimeMillis());
+            total += restorePages(containerId, true, Long.MIN_VALUE, 0, 
+                                  notify, restored);
+            total += restorePages(containerId, false, Long.MIN_VALUE, windowEnd, 
+                                  notify, restored);
+            more = hasSingleActionTimersAfter(windowEnd);
+        }
+        if( more ) {
+            scheduleNextWindow();
+        }
+        return total;
+    }
+
+    /**
+     * Restore the next window of single-action timers.  Runs on a worker 
+     * thread, scheduled when half of the current window has passed.
+     */
+    private void restoreNextWindow() {
+        windowState.started();
+        if( isShutdown() ) {
+            return;
+        }
+
+        boolean more = true;
+        synchronized(windowLock) {
+            long from = windowState.getRestoredUpTo();
+            long to = windowState.nextEnd(System.currentTimeMillis());
+            try {
+                int restored = restorePages(null, false, from, to, false, null);
+                windowState.restored(to);
+                if( logger.isLoggable(Level.FINE) ) {
+                    logger.log(Level.FINE, "Restored " + restored + 
+                               " timers expiring before " + new Date(to));
+                }
+                more = hasSingleActionTimersAfter(to);
+            } catch(Exception e) {
+                // Try the same window again after a delay
+                windowState.failed();
+                logger.log(Level.WARNING, "ejb.timer_service_init_error", e);
+            }
+        }
+        if( more ) {
+            scheduleNextWindow();
+        }
+    }
+
+    private void scheduleNextWindow() {
+        if( isShutdown() ) {
+            return;
+        }
+        long delay = windowState.schedule(System.currentTimeMillis());
+        if( delay < 0 ) {
+            return;
+        }
+        scheduleWork(new Runnable() {
+            public void run() {
+                restoreNextWindow();
+            }
+        }, delay);
+    }
+
+    /**
+     * Read and restore active timers owned by this server one page at a 
+     * time, each page in its own transaction.  Pages continue after the
+     * last timer of the previous page rather than using an offset.
+     * @param containerId the container whose timers to restore, or null
+     * for all timers owned by this server
+     * @param recurring true to restore periodic and calendar-based timers, 
+     * false to restore single-action timers expiring in [from, to)
+     * @param restored if not null, collects the restored timers
+     * @return the number of timers read
+     */
+    private int restorePages(final Long containerId, final boolean recurring, 
+            long from, final long to, final boolean notify, 
+            final Set<TimerState> restored) throws Exception {
+        final TransactionManager tm = ejbContainerUtil.getTransactionManager();
+        TimerPageReader reader = new TimerPageReader(restorePageSize) {
+            protected List<TimerState> readPage(long afterExpiration, 
+                    String afterTimerId, int maxResults) throws Exception {
+                synchronized(restoreLock) {
+                    restoreInProgress = true;
+                }
+                tm.begin();
+                try {
+                    List<TimerState> page = findPage(containerId, recurring, 
+                            to, afterExpiration, afterTimerId, maxResults);
+                    if( !page.isEmpty() ) {
+                        Set<TimerState> timers = new HashSet<TimerState>(page);
+                        if( notify ) {
+                            _notifyContainers(timers);
+                        }
+                        timers = _restoreTimers(timers);
+                        if( restored != null ) {
+                            restored.addAll(timers);
+                        }
+                    }
+                    return page;
+                } finally {
+                    try {
+                        tm.commit();
+                    } catch(Exception e) {
+                        logger.log(Level.WARNING, "ejb.timer_service_init_error", e);
+                    }
+                    stopExpungedTimers();
+                }
+            }
+        };
+        return reader.readAll(from);
+    }
+
+    private List<TimerState> findPage(Long containerId, boolean recurring, 
+            long to, long afterExpiration, String afterTimerId, int maxResults) {
+        if( containerId == null ) {
+            return (recurring)?
+                    timerLocal_.findActiveRecurringTimersOwnedByThisServer(
+                            afterTimerId, maxResults) :
+                    timerLocal_.findActiveSingleActionTimersOwnedByThisServer(
+                            to, afterExpiration, afterTimerId, maxResults);
+        }
+        return (recurring)?
+                timerLocal_.findActiveRecurringTimersOwnedByThisServerByContainer(
+                        containerId, afterTimerId, maxResults) :
+                timerLocal_.findActiveSingleActionTimersOwnedByThisServerByContainer(
+                        containerId, to, afterExpiration, afterTimerId, 
+                        maxResults);
+    }
+
+    private boolean hasSingleActionTimersAfter(long time) throws Exception {
+        TransactionManager tm = ejbContainerUtil.getTransactionManager();
+        tm.begin();
+        try {
+            return !timerLocal_.findActiveSingleActionTimersOwnedByThisServer(
+                    Long.MAX_VALUE, time, "", 1).isEmpty();
+        } finally {
+            tm.commit();
+        }
+    }
+
+    /**
+     * Stop timers that were expunged while their page was being restored,
+     * in case the page was read before they were removed.
+     */
+    private void stopExpungedTimers() {
+        Set<TimerPrimaryKey> expunged;
+        synchronized(restoreLock) {
+            restoreInProgress = false;
+            if( expungedDuringRestore.isEmpty() ) {
+                return;
+            }
+            expunged = expungedDuringRestore;
+            expungedDuringRestore = new HashSet<TimerPrimaryKey>();
+        }
+        stopTimers(expunged);
+    }
+
     /**
      * The portion of timer migration that notifies containers about 
      * automatic timers being migrated to this instance
@@ -441,6 +680,7 @@ public class PersistentEJBTimerService extends EJBTimerService {
         // the JDK timer tasks.  
         
         Map timersToRestore = new HashMap();
+        Map<Long, Integer> restoredPerContainer = new HashMap<Long, Integer>();
         Set timerIdsToRemove = new HashSet();
         Set<TimerState> result = new HashSet<TimerState>();
 
@@ -580,6 +820,10 @@ public class PersistentEJBTimerService extends EJBTimerService {
                 } else {
                     timersToRestore.put(timerState, expirationTime);
                     result.add(timer);
+
+                    Integer count = restoredPerContainer.get(containerId);
+                    restoredPerContainer.put(containerId, 
+                            (count == null)? 1 : count + 1);
                 }
 
             } else {
@@ -594,16 +838,25 @@ public class PersistentEJBTimerService extends EJBTimerService {
             timerLocal_.remove(timerIdsToRemove);
         }
 
+        // Hand the restored timers to the scheduler in batches rather
+        // than one at a time.
+        Map<TimerPrimaryKey, Date> expirations = 
+                new HashMap<TimerPrimaryKey, Date>(timersToRestore.size());
         for(Iterator entries = timersToRestore.entrySet().iterator(); 
             entries.hasNext(); ) {
             Map.Entry next  = (Map.Entry) entries.next();
             RuntimeTimerState nextTimer = (RuntimeTimerState) next.getKey();
-            TimerPrimaryKey timerId    = nextTimer.getTimerId();
-            Date expiration = (Date) next.getValue();
-            scheduleTask(timerId, expiration);
-            logger.log(Level.FINE,  
-                       "EJBTimerService.restoreTimers(), scheduling timer " + 
-                       nextTimer);
+            expirations.put(nextTimer.getTimerId(), (Date) next.getValue());
+            if( logger.isLoggable(Level.FINE) ) {
+                logger.log(Level.FINE,  
+                           "EJBTimerService.restoreTimers(), scheduling timer " + 
+                           nextTimer);
+            }
+        }
+        scheduleTasks(expirations);
+
+        for(Map.Entry<Long, Integer> next : restoredPerContainer.entrySet()) {
+            timersRestored(next.getKey(), next.getValue());
         }
 
         logger.log(Level.FINE, "DONE EJBTimerService.restoreTimers()");
@@ -736,10 +989,18 @@ public class PersistentEJBTimerService extends EJBTimerService {
 
         TransactionManager tm = ejbContainerUtil.getTransactionManager();
         try {
-            tm.begin();
-
-            Set<TimerState> timers = _restoreTimers(
-                    (Set<TimerState>)timerLocal_.findActiveTimersOwnedByThisServerByContainer(containerId));
+            Set<TimerState> timers;
+            if( restoreWindow > 0 ) {
+                // Read in pages, each in its own transaction.  Single-action
+                // timers outside the window are left to the background restore.
+                timers = new HashSet<TimerState>();
+                restoreTimersInWindow(containerId, false, timers);
+                tm.begin();
+            } else {
+                tm.begin();
+                timers = _restoreTimers(
+                        (Set<TimerState>)timerLocal_.findActiveTimersOwnedByThisServerByContainer(containerId));
+            }
 
             if (timers.size() > 0) {
                 logger.log(Level.FINE, "Found " + timers.size() + 
@@ -1285,6 +1546,11 @@ public class PersistentEJBTimerService extends EJBTimerService {
         if( removeTimerBean ) {
             removeTimerBean(timerId);
         }
+        synchronized(restoreLock) {
+            if( restoreInProgress ) {
+                expungedDuringRestore.add(timerId);
+            }
+        }
         // And finish in the superclass...
         super.expungeTimer(timerId, removeTimerBean);
     }
@@ -47,6 +47,7 @@ import java.io.ObjectStreamException;
 import java.util.Date;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.logging.Logger;
@@ -545,6 +546,54 @@ public class TimerBean implements TimerLocal {
                                 EJBTimerService.STATE_CANCELLED);
     }   
 
+    public List<TimerState> findActiveSingleActionTimersOwnedByThisServer
+        (long expiresBefore, long afterExpiration, String afterTimerId, 
+         int maxResults) {
+        Query q = em.createNamedQuery("findSingleActionTimersByOwnerAndStateDueBefore");
+        q.setParameter(1, getOwnerIdOfThisServer());
+        q.setParameter(2, EJBTimerService.STATE_ACTIVE);
+        q.setParameter(3, expiresBefore);
+        q.setParameter(4, afterExpiration);
+        q.setParameter(5, afterTimerId);
+        q.setMaxResults(maxResults);
+        return q.getResultList();
+    }
+
+    public List<TimerState> findActiveRecurringTimersOwnedByThisServer
+        (String afterTimerId, int maxResults) {
+        Query q = em.createNamedQuery("findRecurringTimersByOwnerAndState");
+        q.setParameter(1, getOwnerIdOfThisServer());
+        q.setParameter(2, EJBTimerService.STATE_ACTIVE);
+        q.setParameter(3, afterTimerId);
+        q.setMaxResults(maxResults);
+        return q.getResultList();
+    }
+
+    public List<TimerState> findActiveSingleActionTimersOwnedByThisServerByContainer
+        (long containerId, long expiresBefore, long afterExpiration, 
+         String afterTimerId, int maxResults) {
+        Query q = em.createNamedQuery("findSingleActionTimersByContainerAndOwnerAndStateDueBefore");
+        q.setParameter(1, containerId);
+        q.setParameter(2, getOwnerIdOfThisServer());
+        q.setParameter(3, EJBTimerService.STATE_ACTIVE);
+        q.setParameter(4, expiresBefore);
+        q.setParameter(5, afterExpiration);
+        q.setParameter(6, afterTimerId);
+        q.setMaxResults(maxResults);
+        return q.getResultList();
+    }
+
+    public List<TimerState> findActiveRecurringTimersOwnedByThisServerByContainer
+        (long containerId, String afterTimerId, int maxResults) {
+        Query q = em.createNamedQuery("findRecurringTimersByContainerAndOwnerAndState");
+        q.setParameter(1, containerId);
+        q.setParameter(2, getOwnerIdOfThisServer());
+        q.setParameter(3, EJBTimerService.STATE_ACTIVE);
+        q.setParameter(4, afterTimerId);
+        q.setMaxResults(maxResults);
+        return q.getResultList();
+    }
+
 
     //
     // Helper query methods for timer counts
@@ -43,6 +43,7 @@ package org.glassfish.ejb.persistent.timer;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import javax.ejb.CreateException;
@@ -123,6 +124,22 @@ public interface TimerLocal {
     Set findActiveTimersOwnedBy(String owner);
     Set findCancelledTimersOwnedBy(String owner);
 
+    //
+    // Paged queries returning Timer local objects.  Each page continues
+    // after the last timer of the previous one.
+    //
+
+    List<TimerState> findActiveSingleActionTimersOwnedByThisServer
+        (long expiresBefore, long afterExpiration, String afterTimerId, 
+         int maxResults);
+    List<TimerState> findActiveRecurringTimersOwnedByThisServer
+        (String afterTimerId, int maxResults);
+    List<TimerState> findActiveSingleActionTimersOwnedByThisServerByContainer
+        (long containerId, long expiresBefore, long afterExpiration, 
+         String afterTimerId, int maxResults);
+    List<TimerState> findActiveRecurringTimersOwnedByThisServerByContainer
+        (long containerId, String afterTimerId, int maxResults);
+
 
     //
     // Queries returning counts
@@ -0,0 +1,90 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ejb.persistent.timer;
+
+import java.util.List;
+
+/**
+ * Reads timers one page at a time with keyset paging: each page continues
+ * after the (initialExpirationRaw, timerId) of the last timer of the
+ * previous page rather than at an offset, so that the pages stay correct
+ * while timers are added or removed and a page costs the same wherever it
+ * starts.  The paged named queries of TimerState order the timers by that
+ * key; those for recurring timers ignore the expiration and order by
+ * timerId alone.
+ */
+abstract class TimerPageReader {
+
+    private final int pageSize;
+
+    TimerPageReader(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Read and process at most maxResults timers ordered after the given
+     * key, in (initialExpirationRaw, timerId) order.
+     * @return the timers read
+     */
+    protected abstract List<TimerState> readPage(long afterExpiration, 
+            String afterTimerId, int maxResults) throws Exception;
+
+    /**
+     * Read all pages, starting after the given expiration.
+     * @return the number of timers read
+     */
+    int readAll(long afterExpiration) throws Exception {
+        long lastExpiration = afterExpiration;
+        String lastTimerId = "";
+        int total = 0;
+        List<TimerState> page;
+        do {
+            page = readPage(lastExpiration, lastTimerId, pageSize);
+            if( !page.isEmpty() ) {
+                TimerState last = page.get(page.size() - 1);
+                lastExpiration = last.getInitialExpirationRaw();
+                lastTimerId = last.getTimerId();
+            }
+            total += page.size();
+        } while( page.size() == pageSize );
+        return total;
+    }
+}
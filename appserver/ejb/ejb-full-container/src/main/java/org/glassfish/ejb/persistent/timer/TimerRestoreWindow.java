@@ -0,0 +1,133 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ejb.persistent.timer;
+
+/**
+ * Bookkeeping of the windowed restore of single-action timers: how far
+ * the timers have been restored, and when the next window is due.
+ *
+ * The next window is restored when half of the current one has passed.
+ * After a failed attempt it is retried after a delay that doubles with
+ * each consecutive failure, from MIN_RETRY_DELAY up to half a window.
+ */
+final class TimerRestoreWindow {
+
+    static final long MIN_RETRY_DELAY = 1000L;
+
+    // Cap the shift so that the doubling cannot overflow
+    private static final int MAX_RETRY_SHIFT = 30;
+
+    private final long window;
+
+    // All single-action timers expiring before this time have been
+    // restored.  Guarded by this.
+    private long restoredUpTo = Long.MIN_VALUE;
+    private boolean scheduled = false;
+    private int failures = 0;
+
+    TimerRestoreWindow(long window) {
+        this.window = window;
+    }
+
+    /**
+     * Start the first window at the given time unless it has been started
+     * already.
+     * @return the end of the current window
+     */
+    synchronized long begin(long now) {
+        if( restoredUpTo == Long.MIN_VALUE ) {
+            restoredUpTo = now + window;
+        }
+        return restoredUpTo;
+    }
+
+    synchronized long getRestoredUpTo() {
+        return restoredUpTo;
+    }
+
+    /**
+     * @return the end of the window following the current one
+     */
+    synchronized long nextEnd(long now) {
+        return Math.max(restoredUpTo, now) + window;
+    }
+
+    /**
+     * Record that the timers expiring before the given time are restored.
+     */
+    synchronized void restored(long upTo) {
+        restoredUpTo = upTo;
+        failures = 0;
+    }
+
+    /**
+     * Record that restoring the next window failed.
+     */
+    synchronized void failed() {
+        failures++;
+    }
+
+    /**
+     * Record that the scheduled restore is running, so that the next one
+     * can be scheduled.
+     */
+    synchronized void started() {
+        scheduled = false;
+    }
+
+    /**
+     * Mark the next restore as scheduled.
+     * @return the delay in milliseconds before it runs, or -1 if it is
+     * already scheduled
+     */
+    synchronized long schedule(long now) {
+        if( scheduled ) {
+            return -1;
+        }
+        scheduled = true;
+        if( failures > 0 ) {
+            int shift = Math.min(failures - 1, MAX_RETRY_SHIFT);
+            return Math.min(MIN_RETRY_DELAY << shift, 
+                            Math.max(MIN_RETRY_DELAY, window / 2));
+        }
+        return Math.max(0, restoredUpTo - window / 2 - now);
+    }
+}
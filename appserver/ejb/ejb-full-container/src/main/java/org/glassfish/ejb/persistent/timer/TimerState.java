@@ -126,6 +126,22 @@ import com.sun.logging.LogDomains;
         name="findTimersByOwnerAndState",
         query="SELECT t FROM Timer t WHERE t.ownerId = ?1 AND t.state=?2"
     ),
+    @NamedQuery(
+        name="findSingleActionTimersByOwnerAndStateDueBefore",
+        query="SELECT t FROM Timer t WHERE t.ownerId = ?1 AND t.state = ?2 AND t.intervalDuration = 0 AND t.schedule IS NULL AND t.initialExpirationRaw < ?3 AND (t.initialExpirationRaw > ?4 OR (t.initialExpirationRaw = ?4 AND t.timerId > ?5)) ORDER BY t.initialExpirationRaw, t.timerId"
+    ),
+    @NamedQuery(
+        name="findRecurringTimersByOwnerAndState",
+        query="SELECT t FROM Timer t WHERE t.ownerId = ?1 AND t.state = ?2 AND (t.intervalDuration <> 0 OR t.schedule IS NOT NULL) AND t.timerId > ?3 ORDER BY t.timerId"
+    ),
+    @NamedQuery(
+        name="findSingleActionTimersByContainerAndOwnerAndStateDueBefore",
+        query="SELECT t FROM Timer t WHERE t.containerId = ?1 AND t.ownerId = ?2 AND t.state = ?3 AND t.intervalDuration = 0 AND t.schedule IS NULL AND t.initialExpirationRaw < ?4 AND (t.initialExpirationRaw > ?5 OR (t.initialExpirationRaw = ?5 AND t.timerId > ?6)) ORDER BY t.initialExpirationRaw, t.timerId"
+    ),
+    @NamedQuery(
+        name="findRecurringTimersByContainerAndOwnerAndState",
+        query="SELECT t FROM Timer t WHERE t.containerId = ?1 AND t.ownerId = ?2 AND t.state = ?3 AND (t.intervalDuration <> 0 OR t.schedule IS NOT NULL) AND t.timerId > ?4 ORDER BY t.timerId"
+    ),
     @NamedQuery(
         name="countTimersByApplication",
         query="SELECT COUNT(t) FROM Timer t WHERE t.applicationId = ?1"
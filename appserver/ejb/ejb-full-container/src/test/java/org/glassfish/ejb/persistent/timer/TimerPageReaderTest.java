@@ -0,0 +1,265 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ejb.persistent.timer;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keyset paging of the timer restore.  The database is replaced by a list
+ * filtered and sorted as the paged named queries of TimerState do; the
+ * queries themselves are checked for that order separately.
+ */
+public class TimerPageReaderTest {
+
+    private final List<TimerState> table = new ArrayList<TimerState>();
+
+    @Test
+    public void testReadsEachTimerOnceAcrossEqualExpirations() throws Exception {
+        addTimer("e", 20);
+        addTimer("b", 10);
+        addTimer("d", 10);
+        addTimer("a", 10);
+        addTimer("g", 30);
+        addTimer("c", 20);
+        addTimer("f", 20);
+
+        TableReader reader = new TableReader(2, Long.MAX_VALUE);
+        assertEquals(7, reader.readAll(Long.MIN_VALUE));
+        assertEquals(ids("a", "b", "d", "c", "e", "f", "g"), reader.read);
+        assertEquals(4, reader.pages);
+    }
+
+    @Test
+    public void testFullLastPageIsFollowedByAnEmptyOne() throws Exception {
+        addTimer("a", 10);
+        addTimer("b", 20);
+        addTimer("c", 30);
+        addTimer("d", 40);
+
+        TableReader reader = new TableReader(2, Long.MAX_VALUE);
+        assertEquals(4, reader.readAll(Long.MIN_VALUE));
+        assertEquals(3, reader.pages);
+    }
+
+    @Test
+    public void testPagesContinueAfterRemovedTimers() throws Exception {
+        addTimer("a", 10);
+        addTimer("b", 20);
+        addTimer("c", 30);
+        addTimer("d", 40);
+        addTimer("e", 50);
+
+        TableReader reader = new TableReader(2, Long.MAX_VALUE) {
+            protected List<TimerState> readPage(long afterExpiration,
+                    String afterTimerId, int maxResults) {
+                List<TimerState> page = super.readPage(afterExpiration,
+                        afterTimerId, maxResults);
+                // Expunged while the page was being restored
+                table.removeAll(page);
+                return page;
+            }
+        };
+        assertEquals(5, reader.readAll(Long.MIN_VALUE));
+        assertEquals(ids("a", "b", "c", "d", "e"), reader.read);
+    }
+
+    @Test
+    public void testWindowsRestoreEachTimerOnce() throws Exception {
+        addTimer("a", 100);
+        addTimer("b", 150);
+        addTimer("c", 200);
+        addTimer("d", 200);
+        addTimer("e", 250);
+        addTimer("f", 400);
+
+        // The first window ends at 200, the next one starts there
+        TableReader first = new TableReader(1, 200);
+        assertEquals(2, first.readAll(Long.MIN_VALUE));
+        assertEquals(ids("a", "b"), first.read);
+
+        TableReader second = new TableReader(1, 300);
+        assertEquals(3, second.readAll(200));
+        assertEquals(ids("c", "d", "e"), second.read);
+
+        TableReader third = new TableReader(1, 500);
+        assertEquals(1, third.readAll(300));
+        assertEquals(ids("f"), third.read);
+    }
+
+    @Test
+    public void testPagedQueriesOrderByTheirKeyset() throws Exception {
+        Map<String, String> queries = new HashMap<String, String>();
+        for (NamedQuery query :
+                 TimerState.class.getAnnotation(NamedQueries.class).value()) {
+            queries.put(query.name(), query.query());
+        }
+
+        String singleActionKeyset =
+            "\\(t.initialExpirationRaw > \\?(\\d+) OR " +
+            "\\(t.initialExpirationRaw = \\?(\\d+) AND t.timerId > \\?(\\d+)\\)\\)" +
+            " ORDER BY t.initialExpirationRaw, t.timerId$";
+        checkQuery(queries.get("findSingleActionTimersByOwnerAndStateDueBefore"),
+                   singleActionKeyset,
+                   "findActiveSingleActionTimersOwnedByThisServer");
+        checkQuery(queries.get("findSingleActionTimersByContainerAndOwnerAndStateDueBefore"),
+                   singleActionKeyset,
+                   "findActiveSingleActionTimersOwnedByThisServerByContainer");
+
+        String recurringKeyset = "t.timerId > \\?(\\d+) ORDER BY t.timerId$";
+        checkQuery(queries.get("findRecurringTimersByOwnerAndState"),
+                   recurringKeyset,
+                   "findActiveRecurringTimersOwnedByThisServer");
+        checkQuery(queries.get("findRecurringTimersByContainerAndOwnerAndState"),
+                   recurringKeyset,
+                   "findActiveRecurringTimersOwnedByThisServerByContainer");
+    }
+
+    /**
+     * The keyset must take the last parameters of the query: the expiration
+     * twice, then the timer id.  The query takes one parameter for each
+     * argument of the TimerLocal method but maxResults, plus the owner and
+     * the state.
+     */
+    private static void checkQuery(String query, String keyset,
+                                   String timerLocalMethod) {
+        Matcher m = Pattern.compile(keyset).matcher(query);
+        assertTrue(query, m.find());
+        int parameters = countParameters(query);
+        assertEquals(query, parameters,
+                     Integer.parseInt(m.group(m.groupCount())));
+        for (int i = 1; i < m.groupCount(); i++) {
+            assertEquals(query, parameters - 1, Integer.parseInt(m.group(i)));
+        }
+        for (Method method : TimerLocal.class.getMethods()) {
+            if (method.getName().equals(timerLocalMethod)) {
+                assertEquals(query, method.getParameterTypes().length - 1 + 2,
+                             parameters);
+                return;
+            }
+        }
+        throw new AssertionError("no TimerLocal." + timerLocalMethod);
+    }
+
+    private static int countParameters(String query) {
+        int max = 0;
+        Matcher m = Pattern.compile("\\?(\\d+)").matcher(query);
+        while (m.find()) {
+            max = Math.max(max, Integer.parseInt(m.group(1)));
+        }
+        return max;
+    }
+
+    private void addTimer(String timerId, long expiration) {
+        TimerState timer = new TimerState();
+        timer.setTimerId(timerId);
+        timer.setInitialExpirationRaw(expiration);
+        table.add(timer);
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> result = new ArrayList<String>();
+        Collections.addAll(result, ids);
+        return result;
+    }
+
+    /**
+     * Reads the single-action timers expiring before the given time as
+     * findSingleActionTimersByOwnerAndStateDueBefore does.
+     */
+    private class TableReader extends TimerPageReader {
+
+        private final long expiresBefore;
+        final List<String> read = new ArrayList<String>();
+        int pages;
+
+        TableReader(int pageSize, long expiresBefore) {
+            super(pageSize);
+            this.expiresBefore = expiresBefore;
+        }
+
+        protected List<TimerState> readPage(long afterExpiration,
+                String afterTimerId, int maxResults) {
+            pages++;
+            List<TimerState> matches = new ArrayList<TimerState>();
+            for (TimerState timer : table) {
+                long expiration = timer.getInitialExpirationRaw();
+                if (expiration < expiresBefore
+                        && (expiration > afterExpiration
+                            || (expiration == afterExpiration
+                                && timer.getTimerId().compareTo(afterTimerId) > 0))) {
+                    matches.add(timer);
+                }
+            }
+            Collections.sort(matches, new Comparator<TimerState>() {
+                public int compare(TimerState t1, TimerState t2) {
+                    long e1 = t1.getInitialExpirationRaw();
+                    long e2 = t2.getInitialExpirationRaw();
+                    if (e1 != e2) {
+                        return (e1 < e2) ? -1 : 1;
+                    }
+                    return t1.getTimerId().compareTo(t2.getTimerId());
+                }
+            });
+            List<TimerState> page = new ArrayList<TimerState>(
+                matches.subList(0, Math.min(maxResults, matches.size())));
+            for (TimerState timer : page) {
+                read.add(timer.getTimerId());
+            }
+            return page;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ejb.persistent.timer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Window bookkeeping and retry back-off of the windowed timer restore.
+ */
+public class TimerRestoreWindowTest {
+
+    private static final long WINDOW = 60000L;
+    private static final long RETRY = TimerRestoreWindow.MIN_RETRY_DELAY;
+
+    private final TimerRestoreWindow window = new TimerRestoreWindow(WINDOW);
+
+    @Test
+    public void testFirstWindowStartsOnce() {
+        assertEquals(1000L + WINDOW, window.begin(1000L));
+        // A migration or a container restoring later keeps the window
+        assertEquals(1000L + WINDOW, window.begin(5000L));
+        assertEquals(1000L + WINDOW, window.getRestoredUpTo());
+    }
+
+    @Test
+    public void testNextWindowIsDueHalfWayThroughTheCurrentOne() {
+        window.begin(0L);
+        assertEquals(WINDOW / 2, window.schedule(0L));
+        window.started();
+        assertEquals(WINDOW / 2 - 10000L, window.schedule(10000L));
+        window.started();
+        assertEquals(0L, window.schedule(WINDOW));
+    }
+
+    @Test
+    public void testOnlyOneRestoreIsScheduled() {
+        window.begin(0L);
+        assertEquals(WINDOW / 2, window.schedule(0L));
+        assertEquals(-1L, window.schedule(0L));
+        window.started();
+        assertEquals(WINDOW / 2, window.schedule(0L));
+    }
+
+    @Test
+    public void testNextWindowFollowsTheRestoredOne() {
+        window.begin(0L);
+        assertEquals(2 * WINDOW, window.nextEnd(1000L));
+        window.restored(2 * WINDOW);
+        assertEquals(2 * WINDOW, window.getRestoredUpTo());
+        // Behind schedule: the window starts from now
+        assertEquals(5 * WINDOW, window.nextEnd(4 * WINDOW));
+    }
+
+    @Test
+    public void testFailedRestoreBacksOff() {
+        window.begin(0L);
+        long now = 2 * WINDOW;
+        long[] expected = { RETRY, 2 * RETRY, 4 * RETRY, 8 * RETRY,
+                            16 * RETRY, WINDOW / 2, WINDOW / 2 };
+        for (long delay : expected) {
+            window.started();
+            window.failed();
+            assertEquals(delay, window.schedule(now));
+        }
+        for (int i = 0; i < 100; i++) {
+            window.started();
+            window.failed();
+        }
+        assertEquals(WINDOW / 2, window.schedule(now));
+
+        // Back to the regular schedule once a window is restored
+        window.started();
+        window.restored(now + WINDOW);
+        assertEquals(WINDOW / 2, window.schedule(now));
+    }
+
+    @Test
+    public void testRetryDelayOfSmallWindow() {
+        TimerRestoreWindow small = new TimerRestoreWindow(500L);
+        small.begin(0L);
+        small.failed();
+        assertEquals(RETRY, small.schedule(10000L));
+        small.started();
+        small.failed();
+        assertEquals(RETRY, small.schedule(10000L));
+    }
+}
@@ -0,0 +1,845 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ha.store.adapter.file;
+
+import org.glassfish.ha.store.api.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.*;
+
+/**
+ * A BackingStore that appends the serialized state into rolling segment
+ * files instead of writing one file per key.
+ *
+ * An in-memory index maps each key to the location, version and last
+ * access time of its latest state. Segments whose live data falls below a
+ * threshold are compacted in the background: their live records are
+ * copied to the active segment and the file is deleted. Expiry uses
+ * time-bucketed indexes, so removeExpired only visits the keys that are
+ * actually idle. A key saved with its own max idle time (see
+ * {@link Storeable#_storeable_getMaxIdleTime()}) is bucketed by the time it
+ * expires; one saved without it is bucketed by its last access time and
+ * expires after the idle time passed to removeExpired. A negative max idle
+ * time never expires. The directory is listed only once, when
+ * the store is opened and the index is rebuilt from the segments.
+ *
+ * Vendor specific settings (all optional):
+ * <ul>
+ * <li>max.idle.timeout.in.seconds - idle time used by removeExpired() for keys saved without their own max idle time</li>
+ * <li>segment.size.in.kilobytes - size at which a new segment is started</li>
+ * <li>compaction.live.ratio - live/total ratio below which a segment is compacted</li>
+ * <li>compaction.interval.in.seconds - how often segments are checked</li>
+ * </ul>
+ *
+ * @see StoreSegment
+ */
+public class SegmentedFileBackingStore<K extends Serializable, V extends Serializable>
+        extends BackingStore<K, V> {
+
+    protected Logger logger =
+            Logger.getLogger(SegmentedFileBackingStore.class.getName());
+
+    private static Level TRACE_LEVEL = Level.FINE;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final long EXPIRY_BUCKET_MILLIS = 10L * 1000L;
+
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    protected File baseDir;
+
+    private volatile boolean shutdown;
+
+    private String debugStr;
+
+    private SegmentedFileBackingStoreFactory factory;
+
+    private long defaultMaxIdleTimeoutInSeconds = 10L * 60L;
+
+    private long segmentSize = 16L * 1024L * 1024L;
+
+    private double compactionLiveRatio = 0.5;
+
+    private long compactionIntervalInSeconds = 60L;
+
+    private final ConcurrentHashMap<String, Entry> index
+            = new ConcurrentHashMap<String, Entry>();
+
+    // bucket (lastAccessed / EXPIRY_BUCKET_MILLIS) -> keys without their own
+    // max idle time last accessed in it
+    private final ConcurrentSkipListMap<Long, Set<String>> idleBuckets
+            = new ConcurrentSkipListMap<Long, Set<String>>();
+
+    // bucket ((lastAccessed + maxIdle) / EXPIRY_BUCKET_MILLIS) -> keys with
+    // their own max idle time which expire in it
+    private final ConcurrentSkipListMap<Long, Set<String>> deadlineBuckets
+            = new ConcurrentSkipListMap<Long, Set<String>>();
+
+    private final ConcurrentSkipListMap<Long, StoreSegment> segments
+            = new ConcurrentSkipListMap<Long, StoreSegment>();
+
+    // Serializes appends, index updates and segment roll-over / deletion.
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private volatile StoreSegment active;
+
+    private long writeSequence;
+
+    private ScheduledFuture<?> compactionTask;
+
+    /**
+     * Location and metadata of the latest state of a key. Immutable; the
+     * index entry is replaced on every change.
+     */
+    static final class Entry {
+
+        final long segment;
+
+        final long offset;
+
+        final int length;
+
+        final long version;
+
+        final long lastAccessed;
+
+        final long maxIdle;
+
+        Entry(long segment, long offset, int length, long version,
+              long lastAccessed, long maxIdle) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.version = version;
+            this.lastAccessed = lastAccessed;
+            this.maxIdle = maxIdle;
+        }
+
+        Entry touch(long time) {
+            return new Entry(segment, offset, length, version, time, maxIdle);
+        }
+    }
+
+    /**
+     * No arg constructor
+     */
+    public SegmentedFileBackingStore() {
+    }
+
+    @Override
+    protected void initialize(BackingStoreConfiguration<K, V> conf)
+        throws BackingStoreException {
+
+        if (conf.getLogger() != null) {
+            logger = conf.getLogger();
+        }
+
+        super.initialize(conf);
+        debugStr = "[SegmentedFileBackingStore - " + conf.getStoreName() + "] ";
+
+        baseDir = conf.getBaseDirectory();
+        if (baseDir == null) {
+            baseDir = getDefaultBaseDirectory(conf.getStoreName());
+        }
+
+        Map<String, Object> vendorMap = conf.getVendorSpecificSettings();
+        defaultMaxIdleTimeoutInSeconds = getLongSetting(vendorMap,
+                "max.idle.timeout.in.seconds", defaultMaxIdleTimeoutInSeconds);
+        segmentSize = 1024L * getLongSetting(vendorMap,
+                "segment.size.in.kilobytes", segmentSize / 1024L);
+        compactionIntervalInSeconds = getLongSetting(vendorMap,
+                "compaction.interval.in.seconds", compactionIntervalInSeconds);
+        try {
+            Object ratio = vendorMap.get("compaction.live.ratio");
+            if (ratio != null) {
+                compactionLiveRatio = Double.parseDouble(ratio.toString());
+            }
+        } catch (Exception ex) {
+            //Ignore. Use default
+        }
+
+        if ((baseDir.mkdirs() == false) && (! baseDir.isDirectory())) {
+            throw new BackingStoreException("[SegmentedFileBackingStore::initialize] Create base directory ("
+                    + baseDir.getAbsolutePath() + ") failed");
+        }
+
+        try {
+            recover();
+        } catch (IOException ex) {
+            throw new BackingStoreException(debugStr + "Could not open segments in "
+                    + baseDir.getAbsolutePath(), ex);
+        }
+
+        logger.log(Level.INFO, "[SegmentedFileBackingStore::initialize] Successfully Created and initialized store. "
+                + "Working dir: " + baseDir + "; Segments: " + segments.size()
+                + "; Entries: " + index.size() + "; Configuration: " + conf);
+    }
+
+    private static File getDefaultBaseDirectory(String storeName) {
+        String root = System.getProperty("com.sun.aas.instanceRoot");
+        if (root == null) {
+            root = System.getProperty("java.io.tmpdir");
+        }
+        String name = (storeName == null) ? "default" : storeName.replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(new File(new File(root, "session-store"), "segmented"), name);
+    }
+
+    private static long getLongSetting(Map<String, Object> vendorMap, String name, long defaultValue) {
+        try {
+            Object value = vendorMap.get(name);
+            if (value != null) {
+                return Long.parseLong(value.toString());
+            }
+        } catch (Exception ex) {
+            //Ignore. Use default
+        }
+        return defaultValue;
+    }
+
+    /*package*/ void setFileBackingStoreFactory(SegmentedFileBackingStoreFactory factory) {
+        this.factory = factory;
+    }
+
+    /*package*/ void setCompactionTask(ScheduledFuture<?> compactionTask) {
+        this.compactionTask = compactionTask;
+    }
+
+    /*package*/ long getCompactionIntervalInSeconds() {
+        return compactionIntervalInSeconds;
+    }
+
+    public BackingStoreFactory getBackingStoreFactory() {
+        return factory;
+    }
+
+    @Override
+    public V load(K key, String version) throws BackingStoreException {
+        String keyStr = key.toString();
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered load(" + key + ", " + version + ")");
+        }
+
+        byte[] data = readData(keyStr);
+        if (data == null) {
+            return null;
+        }
+
+        V value = null;
+        try {
+            ObjectInputStream ois = super.createObjectInputStream(new ByteArrayInputStream(data));
+            try {
+                value = (V) ois.readObject();
+            } finally {
+                ois.close();
+            }
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done load(" + key + ", " + version + ")");
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, debugStr + "Failed to load(" + key + ", " + version + ")", ex);
+        }
+        return value;
+    }
+
+    private byte[] readData(String key) throws BackingStoreException {
+        // A concurrent compaction may move the record and delete the segment
+        // between the index lookup and the read; retry with the new location.
+        IOException failure = null;
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            StoreSegment segment = segments.get(entry.segment);
+            try {
+                if (segment != null) {
+                    return segment.read(entry.offset, entry.length).data;
+                }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+            if (index.get(key) == entry) {
+                break;
+            }
+        }
+        throw new BackingStoreException(debugStr + "Could not read state of " + key, failure);
+    }
+
+    @Override
+    public String save(K sessionKey, V value, boolean isNew)
+            throws BackingStoreException {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered save(" + sessionKey + ")");
+        }
+
+        byte[] data = getSerializedState(value);
+        long now = System.currentTimeMillis();
+        long version = -1;
+        long lastAccessed = now;
+        long maxIdle = 0;
+        if (value instanceof Storeable) {
+            Storeable storeable = (Storeable) value;
+            version = storeable._storeable_getVersion();
+            if (storeable._storeable_getLastAccessTime() > 0) {
+                lastAccessed = storeable._storeable_getLastAccessTime();
+            }
+            maxIdle = storeable._storeable_getMaxIdleTime();
+        }
+
+        String key = sessionKey.toString();
+        appendLock.lock();
+        try {
+            if (version < 0) {
+                version = ++writeSequence;
+            }
+            ByteBuffer record = StoreSegment.encode(StoreSegment.PUT, key.getBytes(UTF8),
+                    version, lastAccessed, maxIdle, data);
+            StoreSegment segment = segmentFor(record.remaining());
+            int length = record.remaining();
+            long offset = segment.append(record);
+            segment.addLiveBytes(length);
+            updateIndex(key, new Entry(segment.getId(), offset, length, version, lastAccessed, maxIdle));
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, debugStr + "save(" + sessionKey + ") failed", ex);
+            throw new BackingStoreException("Could not save session: " + sessionKey, ex);
+        } finally {
+            appendLock.unlock();
+        }
+
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Done save(" + sessionKey + ")");
+        }
+        return getBackingStoreConfiguration().getInstanceName();
+    }
+
+    public void remove(K sessionKey) throws BackingStoreException {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered remove(" + sessionKey + ")");
+        }
+        boolean status = remove(sessionKey.toString(), null);
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Done remove( " + sessionKey + "); status => " + status);
+        }
+    }
+
+    /**
+     * Removes the key, but only if it is still mapped to the expected entry
+     * (when one is given).
+     */
+    private boolean remove(String key, Entry expected) throws BackingStoreException {
+        appendLock.lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry == null || (expected != null && entry != expected)) {
+                return false;
+            }
+            ByteBuffer record = StoreSegment.encode(StoreSegment.REMOVE, key.getBytes(UTF8),
+                    entry.version, System.currentTimeMillis(), 0, null);
+            segmentFor(record.remaining()).append(record);
+            updateIndex(key, null);
+            return true;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, debugStr + "remove(" + key + ") failed", ex);
+            throw new BackingStoreException("Could not remove session: " + key, ex);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public void updateTimeStamp(K k, String version, long timeStamp)
+            throws BackingStoreException {
+        updateTimestamp(k, timeStamp);
+    }
+
+    @Override
+    public String updateTimestamp(K sessionKey, String version, Long time)
+            throws BackingStoreException {
+        updateTimestamp(sessionKey, time.longValue());
+        return getBackingStoreConfiguration().getInstanceName();
+    }
+
+    @Override
+    public void updateTimestamp(K sessionKey, long time)
+            throws BackingStoreException {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered updateTimestamp(" + sessionKey + ", " + time + ")");
+        }
+        String key = sessionKey.toString();
+        appendLock.lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                logger.log(Level.WARNING, debugStr
+                        + ": Cannot update timsestamp for: " + sessionKey
+                        + "; Entry does not exist");
+                return;
+            }
+            ByteBuffer record = StoreSegment.encode(StoreSegment.TOUCH, key.getBytes(UTF8),
+                    entry.version, time, entry.maxIdle, null);
+            segmentFor(record.remaining()).append(record);
+            updateIndex(key, entry.touch(time));
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, debugStr
+                    + ": Exception while updating timestamp", ex);
+            throw new BackingStoreException(
+                    "Cannot update timsestamp for: " + sessionKey
+                            + "; Got exception: " + ex);
+        } finally {
+            appendLock.unlock();
+        }
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Done updateTimestamp(" + sessionKey + ", " + time + ")");
+        }
+    }
+
+    public int removeExpired() {
+        return removeExpired(defaultMaxIdleTimeoutInSeconds * 1000L);
+    }
+
+    /**
+     * Removes the keys which have been idle for longer than their own max
+     * idle time, or than <code>idleForMillis</code> when they were saved
+     * without one.
+     */
+    public int removeExpired(long idleForMillis) {
+        long now = System.currentTimeMillis();
+        int expiredSessions = 0;
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered removeExpired()");
+        }
+        try {
+            expiredSessions += removeExpired(idleBuckets, now - idleForMillis, now, idleForMillis);
+            expiredSessions += removeExpired(deadlineBuckets, now, now, idleForMillis);
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done removeExpired()");
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, debugStr + " Exception while removing "
+                    + "expired entries", ex);
+        }
+
+        return expiredSessions;
+    }
+
+    /**
+     * Every bucket before the limit's bucket is entirely expired; the limit's
+     * own bucket is checked key by key.
+     */
+    private int removeExpired(ConcurrentSkipListMap<Long, Set<String>> buckets,
+            long limit, long now, long idleForMillis) throws BackingStoreException {
+        int expiredSessions = 0;
+        for (Map.Entry<Long, Set<String>> bucket
+                : buckets.headMap(bucketOf(limit), true).entrySet()) {
+            if (shutdown) {
+                break;
+            }
+            for (String key : bucket.getValue()) {
+                Entry entry = index.get(key);
+                if (entry != null && isExpired(entry, now, idleForMillis)) {
+                    if (remove(key, entry)) {
+                        expiredSessions++;
+                    }
+                }
+            }
+        }
+        return expiredSessions;
+    }
+
+    private static boolean isExpired(Entry entry, long now, long idleForMillis) {
+        if (entry.maxIdle < 0) {
+            return false;
+        }
+        long maxIdle = (entry.maxIdle > 0) ? entry.maxIdle : idleForMillis;
+        return now - entry.lastAccessed > maxIdle;
+    }
+
+    @Override
+    public int size() throws BackingStoreException {
+        return index.size();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        if (compactionTask != null) {
+            compactionTask.cancel(false);
+        }
+        //DO NOT DELETE THE WORKING DIRECTORY
+    }
+
+    @Override
+    public void close() {
+        if (compactionTask != null) {
+            compactionTask.cancel(false);
+        }
+        appendLock.lock();
+        try {
+            for (StoreSegment segment : segments.values()) {
+                segment.close();
+            }
+            active = null;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Entered destroy()");
+            }
+            shutdown = true;
+            if (compactionTask != null) {
+                compactionTask.cancel(false);
+            }
+            appendLock.lock();
+            try {
+                for (StoreSegment segment : segments.values()) {
+                    if (!segment.delete()) {
+                        logger.log(Level.WARNING, debugStr + " destroy() failed to remove: "
+                                + segment.getFile().getAbsolutePath());
+                    }
+                }
+                segments.clear();
+                index.clear();
+                idleBuckets.clear();
+                deadlineBuckets.clear();
+                active = null;
+            } finally {
+                appendLock.unlock();
+            }
+            if (baseDir.delete() == false) {
+                if (baseDir.exists()) {
+                    logger.log(Level.WARNING, debugStr + " destroy() failed to remove dir: " + baseDir.getAbsolutePath());
+                }
+            }
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done destroy()");
+            }
+        } catch (Throwable th) {
+            logger.log(Level.WARNING, debugStr + " destroy() failed ", th);
+        } finally {
+            SegmentedFileBackingStoreFactory.removemapping(getBackingStoreConfiguration().getStoreName());
+        }
+    }
+
+    /**
+     * Compacts the sealed segments whose live data is below the configured
+     * ratio. Called periodically by the factory's compaction thread.
+     */
+    /*package*/ void compact() {
+        if (shutdown) {
+            return;
+        }
+        for (StoreSegment segment : segments.values()) {
+            if (shutdown) {
+                return;
+            }
+            if (segment == active || segment.size() == 0) {
+                continue;
+            }
+            if (segment.getLiveBytes() < compactionLiveRatio * segment.size()) {
+                try {
+                    compact(segment);
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, debugStr + " compaction of "
+                            + segment.getFile() + " failed", ex);
+                }
+            }
+        }
+    }
+
+    private void compact(StoreSegment segment) throws IOException {
+        long moved = 0;
+        Set<StoreSegment> targets = new HashSet<StoreSegment>();
+        boolean olderSegments = segments.firstKey() < segment.getId();
+        StoreSegment.Reader reader = segment.openReader();
+        try {
+            StoreSegment.Record record;
+            while ((record = reader.next()) != null && !shutdown) {
+                String key = new String(record.key, UTF8);
+                appendLock.lock();
+                try {
+                    Entry entry = index.get(key);
+                    ByteBuffer copy = null;
+                    if (record.type == StoreSegment.PUT) {
+                        if (entry != null && entry.segment == segment.getId()
+                                && entry.offset == record.offset) {
+                            copy = StoreSegment.encode(StoreSegment.PUT, record.key, entry.version,
+                                    entry.lastAccessed, entry.maxIdle, record.data);
+                        }
+                    } else if (record.type == StoreSegment.REMOVE) {
+                        // Keep the tombstone while an older segment may still
+                        // hold a state for the key.
+                        if (entry == null && olderSegments) {
+                            copy = StoreSegment.encode(StoreSegment.REMOVE, record.key, record.version,
+                                    record.lastAccessed, 0, null);
+                        }
+                    } else if (record.type == StoreSegment.TOUCH) {
+                        if (entry != null && entry.segment < segment.getId()
+                                && entry.lastAccessed == record.lastAccessed) {
+                            copy = StoreSegment.encode(StoreSegment.TOUCH, record.key, entry.version,
+                                    entry.lastAccessed, entry.maxIdle, null);
+                        }
+                    }
+                    if (copy != null) {
+                        int length = copy.remaining();
+                        StoreSegment target = segmentFor(length);
+                        long offset = target.append(copy);
+                        targets.add(target);
+                        if (record.type == StoreSegment.PUT) {
+                            target.addLiveBytes(length);
+                            updateIndex(key, new Entry(target.getId(), offset, length,
+                                    entry.version, entry.lastAccessed, entry.maxIdle));
+                        }
+                        moved += length;
+                    }
+                } finally {
+                    appendLock.unlock();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (shutdown) {
+            return;
+        }
+        // The copies must be on disk before the only other copy of the
+        // records is deleted.
+        for (StoreSegment target : targets) {
+            target.force();
+        }
+        appendLock.lock();
+        try {
+            segments.remove(segment.getId());
+            if (!segment.delete()) {
+                logger.log(Level.WARNING, debugStr + " could not delete compacted segment "
+                        + segment.getFile().getAbsolutePath());
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Compacted " + segment.getFile().getName()
+                    + ": " + segment.size() + " bytes -> " + moved + " bytes moved");
+        }
+    }
+
+    /**
+     * Rebuilds the index from the segment files, oldest first.
+     */
+    private void recover() throws IOException {
+        String[] names = baseDir.list();
+        List<Long> ids = new ArrayList<Long>();
+        if (names != null) {
+            for (String name : names) {
+                long id = StoreSegment.parseId(name);
+                if (id >= 0) {
+                    ids.add(id);
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        appendLock.lock();
+        try {
+            for (Long id : ids) {
+                StoreSegment segment = new StoreSegment(baseDir, id);
+                segments.put(id, segment);
+                StoreSegment.Reader reader = segment.openReader();
+                try {
+                    StoreSegment.Record record;
+                    while ((record = reader.next()) != null) {
+                        replay(segment, record);
+                    }
+                    if (reader.position() < segment.size()) {
+                        logger.log(Level.WARNING, debugStr + "Truncating "
+                                + (segment.size() - reader.position()) + " unreadable bytes from "
+                                + segment.getFile());
+                        segment.truncate(reader.position());
+                    }
+                } finally {
+                    reader.close();
+                }
+                active = segment;
+            }
+            if (active == null) {
+                active = newSegment(0);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void replay(StoreSegment segment, StoreSegment.Record record) {
+        String key = new String(record.key, UTF8);
+        if (record.version > writeSequence) {
+            writeSequence = record.version;
+        }
+        Entry entry = index.get(key);
+        switch (record.type) {
+            case StoreSegment.PUT:
+                segment.addLiveBytes(record.length);
+                updateIndex(key, new Entry(segment.getId(), record.offset, record.length,
+                        record.version, record.lastAccessed, record.maxIdle));
+                break;
+            case StoreSegment.REMOVE:
+                updateIndex(key, null);
+                break;
+            case StoreSegment.TOUCH:
+                if (entry != null) {
+                    updateIndex(key, entry.touch(record.lastAccessed));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Replaces the index entry of the key (null removes it), keeping the live
+     * byte counts and the expiry buckets in step. Called under the append lock.
+     */
+    private void updateIndex(String key, Entry entry) {
+        Entry old = (entry == null) ? index.remove(key) : index.put(key, entry);
+        if (old != null) {
+            if (entry == null || old.segment != entry.segment || old.offset != entry.offset) {
+                StoreSegment segment = segments.get(old.segment);
+                if (segment != null) {
+                    segment.addLiveBytes(-old.length);
+                }
+            }
+            ConcurrentSkipListMap<Long, Set<String>> oldBuckets = expiryBucketsOf(old);
+            long oldBucket = expiryBucketOf(old);
+            if (entry != null && expiryBucketsOf(entry) == oldBuckets
+                    && expiryBucketOf(entry) == oldBucket) {
+                return;
+            }
+            if (oldBuckets != null) {
+                Set<String> keys = oldBuckets.get(oldBucket);
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        oldBuckets.remove(oldBucket);
+                    }
+                }
+            }
+        }
+        if (entry != null) {
+            ConcurrentSkipListMap<Long, Set<String>> buckets = expiryBucketsOf(entry);
+            if (buckets != null) {
+                long bucket = expiryBucketOf(entry);
+                Set<String> keys = buckets.get(bucket);
+                if (keys == null) {
+                    keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                    buckets.put(bucket, keys);
+                }
+                keys.add(key);
+            }
+        }
+    }
+
+    /**
+     * @return the bucket index the entry is expired from, null if it never expires
+     */
+    private ConcurrentSkipListMap<Long, Set<String>> expiryBucketsOf(Entry entry) {
+        if (entry.maxIdle > 0) {
+            return deadlineBuckets;
+        }
+        return (entry.maxIdle == 0) ? idleBuckets : null;
+    }
+
+    private static long expiryBucketOf(Entry entry) {
+        return bucketOf((entry.maxIdle > 0) ? entry.lastAccessed + entry.maxIdle : entry.lastAccessed);
+    }
+
+    private static long bucketOf(long time) {
+        return time / EXPIRY_BUCKET_MILLIS;
+    }
+
+    /**
+     * Returns the segment to append a record of the given size to, starting
+     * a new one when the active segment is full. Called under the append lock.
+     */
+    private StoreSegment segmentFor(int recordSize) throws IOException {
+        StoreSegment segment = active;
+        if (segment == null) {
+            throw new IOException(debugStr + "Store is closed");
+        }
+        if (segment.size() > 0 && segment.size() + recordSize > segmentSize) {
+            segment = newSegment(segment.getId() + 1);
+        }
+        return segment;
+    }
+
+    private StoreSegment newSegment(long id) throws IOException {
+        StoreSegment segment = new StoreSegment(baseDir, id);
+        segments.put(id, segment);
+        active = segment;
+        return segment;
+    }
+
+    private byte[] getSerializedState(V value)
+            throws BackingStoreException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            try {
+                oos.writeObject(value);
+                oos.flush();
+            } finally {
+                oos.close();
+            }
+        } catch (IOException ioEx) {
+            throw new BackingStoreException("Error during getSerializedState", ioEx);
+        }
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ha.store.adapter.file;
+
+import org.glassfish.ha.store.api.*;
+import org.jvnet.hk2.annotations.Service;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates SegmentedFileBackingStores. Selected with the persistence type
+ * "segmented-file" by the web and EJB persistence strategies.
+ *
+ * All stores share a single daemon thread for background compaction.
+ */
+@Service(name = "segmented-file")
+public class SegmentedFileBackingStoreFactory
+        implements BackingStoreFactory {
+
+    private static ConcurrentHashMap<String, SegmentedFileBackingStore> _stores
+            = new ConcurrentHashMap<String, SegmentedFileBackingStore>();
+
+    private static volatile ScheduledExecutorService _compactor;
+
+    static SegmentedFileBackingStore getSegmentedFileBackingStore(String storeName) {
+        return _stores.get(storeName);
+    }
+
+    static void removemapping(String storeName) {
+        _stores.remove(storeName);
+    }
+
+    private static ScheduledExecutorService getCompactor() {
+        if (_compactor == null) {
+            synchronized (SegmentedFileBackingStoreFactory.class) {
+                if (_compactor == null) {
+                    _compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "segmented-file-store-compactor");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                }
+            }
+        }
+        return _compactor;
+    }
+
+    @Override
+    public <K extends Serializable, V extends Serializable> BackingStore<K, V> createBackingStore(
+            BackingStoreConfiguration<K, V> conf)
+                throws BackingStoreException {
+        final SegmentedFileBackingStore<K, V> fs = new SegmentedFileBackingStore<K, V>();
+        fs.initialize(conf);
+        fs.setFileBackingStoreFactory(this);
+
+        long interval = fs.getCompactionIntervalInSeconds();
+        if (interval > 0) {
+            fs.setCompactionTask(getCompactor().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    fs.compact();
+                }
+            }, interval, interval, TimeUnit.SECONDS));
+        }
+        _stores.put(conf.getStoreName(), fs);
+        return fs;
+    }
+
+    @Override
+    public BackingStoreTransaction createBackingStoreTransaction() {
+        //Saves are applied immediately, as with the FileBackingStore
+        return new FileStoreTransaction();
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ha.store.adapter.file;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * One append-only segment file of a SegmentedFileBackingStore.
+ *
+ * Every record has the layout
+ * <pre>
+ *   byte   type  (PUT, REMOVE or TOUCH)
+ *   int    key length, followed by the UTF-8 key
+ *   long   version
+ *   long   last accessed time
+ *   long   max idle time
+ *   int    data length, followed by the serialized state (PUT only)
+ *   int    CRC32 of all of the above
+ * </pre>
+ * Appends are serialized by the owning store; reads use positional reads
+ * and may run concurrently with appends.
+ *
+ * @see SegmentedFileBackingStore
+ */
+class StoreSegment {
+
+    static final byte PUT = 1;
+
+    static final byte REMOVE = 2;
+
+    static final byte TOUCH = 3;
+
+    static final String FILE_PREFIX = "segment-";
+
+    static final String FILE_SUFFIX = ".log";
+
+    private static final int FIXED_SIZE = 1 + 4 + 8 + 8 + 8 + 4 + 4;
+
+    private final long id;
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private volatile long size;
+
+    // bytes of PUT records still referenced by the index
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    StoreSegment(File dir, long id) throws IOException {
+        this.id = id;
+        this.file = new File(dir, fileName(id));
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.size = channel.size();
+    }
+
+    static String fileName(long id) {
+        StringBuilder sb = new StringBuilder(FILE_PREFIX);
+        String s = Long.toString(id);
+        for (int i = s.length(); i < 10; i++) {
+            sb.append('0');
+        }
+        return sb.append(s).append(FILE_SUFFIX).toString();
+    }
+
+    /**
+     * @return the segment id encoded in the file name, or -1 if the name
+     *         is not a segment file name
+     */
+    static long parseId(String fileName) {
+        if (fileName.startsWith(FILE_PREFIX) && fileName.endsWith(FILE_SUFFIX)) {
+            try {
+                return Long.parseLong(fileName.substring(FILE_PREFIX.length(),
+                        fileName.length() - FILE_SUFFIX.length()));
+            } catch (NumberFormatException ex) {
+                //Not one of ours
+            }
+        }
+        return -1;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    void addLiveBytes(long delta) {
+        liveBytes.addAndGet(delta);
+    }
+
+    static ByteBuffer encode(byte type, byte[] key, long version,
+                             long lastAccessed, long maxIdle, byte[] data) {
+        int dataLength = (data == null) ? 0 : data.length;
+        ByteBuffer buf = ByteBuffer.allocate(FIXED_SIZE + key.length + dataLength);
+        buf.put(type);
+        buf.putInt(key.length);
+        buf.put(key);
+        buf.putLong(version);
+        buf.putLong(lastAccessed);
+        buf.putLong(maxIdle);
+        buf.putInt(dataLength);
+        if (dataLength > 0) {
+            buf.put(data);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Appends an encoded record. Must be called under the store's append lock.
+     *
+     * @return the offset of the record
+     */
+    long append(ByteBuffer record) throws IOException {
+        long offset = size;
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        size = position;
+        return offset;
+    }
+
+    /**
+     * Reads the record of the given length at the given offset.
+     */
+    Record read(long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buf.hasRemaining()) {
+            int count = channel.read(buf, position);
+            if (count < 0) {
+                throw new EOFException("Truncated record at " + offset + " in " + file);
+            }
+            position += count;
+        }
+        buf.flip();
+        Record record = Record.decode(buf, offset);
+        if (record == null) {
+            throw new IOException("Corrupt record at " + offset + " in " + file);
+        }
+        return record;
+    }
+
+    /**
+     * Forces the appended records to the storage device.
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Truncates a torn record at the end of the segment left by a crash.
+     */
+    void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size = newSize;
+    }
+
+    void close() {
+        try {
+            raf.close();
+        } catch (IOException ex) {
+            //Ignore
+        }
+    }
+
+    boolean delete() {
+        close();
+        return file.delete() || !file.exists();
+    }
+
+    /**
+     * Sequential reader used for recovery and compaction.
+     */
+    Reader openReader() throws IOException {
+        return new Reader();
+    }
+
+    class Reader {
+
+        private final CheckedInputStream checked;
+
+        private final DataInputStream in;
+
+        private long position;
+
+        Reader() throws IOException {
+            checked = new CheckedInputStream(new BufferedInputStream(
+                    new FileInputStream(file), 64 * 1024), new CRC32());
+            in = new DataInputStream(checked);
+        }
+
+        /**
+         * @return the next record, or null at the end of the valid data
+         */
+        Record next() throws IOException {
+            long limit = size;
+            if (limit - position < FIXED_SIZE) {
+                return null;
+            }
+            try {
+                checked.getChecksum().reset();
+                byte type = in.readByte();
+                int keyLength = in.readInt();
+                if (keyLength < 0 || keyLength > limit - position - FIXED_SIZE) {
+                    return null;
+                }
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                long version = in.readLong();
+                long lastAccessed = in.readLong();
+                long maxIdle = in.readLong();
+                int dataLength = in.readInt();
+                if (dataLength < 0 || dataLength > limit - position - FIXED_SIZE - keyLength) {
+                    return null;
+                }
+                byte[] data = new byte[dataLength];
+                in.readFully(data);
+                int crc = (int) checked.getChecksum().getValue();
+                if (in.readInt() != crc) {
+                    return null;
+                }
+                int length = FIXED_SIZE + keyLength + dataLength;
+                Record record = new Record(type, key, version, lastAccessed, maxIdle,
+                        data, position, length);
+                position += length;
+                return record;
+            } catch (EOFException ex) {
+                return null;
+            }
+        }
+
+        /**
+         * @return the offset just past the last record returned by next()
+         */
+        long position() {
+            return position;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                //Ignore
+            }
+        }
+    }
+
+    static class Record {
+
+        final byte type;
+
+        final byte[] key;
+
+        final long version;
+
+        final long lastAccessed;
+
+        final long maxIdle;
+
+        final byte[] data;
+
+        final long offset;
+
+        final int length;
+
+        Record(byte type, byte[] key, long version, long lastAccessed, long maxIdle,
+               byte[] data, long offset, int length) {
+            this.type = type;
+            this.key = key;
+            this.version = version;
+            this.lastAccessed = lastAccessed;
+            this.maxIdle = maxIdle;
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        static Record decode(ByteBuffer buf, long offset) {
+            int length = buf.remaining();
+            if (length < FIXED_SIZE) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), buf.arrayOffset() + buf.position(), length - 4);
+            if ((int) crc.getValue() != buf.getInt(buf.position() + length - 4)) {
+                return null;
+            }
+            byte type = buf.get();
+            byte[] key = new byte[buf.getInt()];
+            buf.get(key);
+            long version = buf.getLong();
+            long lastAccessed = buf.getLong();
+            long maxIdle = buf.getLong();
+            byte[] data = new byte[buf.getInt()];
+            buf.get(data);
+            return new Record(type, key, version, lastAccessed, maxIdle, data, offset, length);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ha.store.adapter.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.glassfish.ha.store.api.BackingStoreConfiguration;
+import org.glassfish.ha.store.api.BackingStoreException;
+import org.glassfish.ha.store.api.Storeable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the SegmentedFileBackingStore: the store is closed and opened
+ * again on the same directory to check what recovery rebuilds from the
+ * segment files.
+ */
+public class SegmentedFileBackingStoreTest {
+
+    private static final String STORE_NAME = "segmented-test";
+
+    private File baseDir;
+
+    private SegmentedFileBackingStore<String, Serializable> store;
+
+    @Before
+    public void setup() throws Exception {
+        baseDir = new File(System.getProperty("user.dir") + File.separator + "target"
+                + File.separator + "test-segmented-store-" + System.nanoTime());
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (store != null) {
+            store.destroy();
+        }
+    }
+
+    @Test
+    public void testSaveLoadRemove() throws Exception {
+        store.save("a", payload(1), true);
+        store.save("b", payload(2), true);
+        assertArrayEquals(payload(1), (byte[]) store.load("a", null));
+        assertEquals(2, store.size());
+
+        store.save("a", payload(3), false);
+        assertArrayEquals(payload(3), (byte[]) store.load("a", null));
+
+        store.remove("b");
+        assertNull(store.load("b", null));
+        assertNull(store.load("unknown", null));
+        assertEquals(1, store.size());
+
+        reopen();
+        assertArrayEquals(payload(3), (byte[]) store.load("a", null));
+        assertNull(store.load("b", null));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testVersions() throws Exception {
+        store.save("a", payload(1), true);
+        store.save("b", payload(2), true);
+        store.save("s", new Session(42, System.currentTimeMillis(), 0), true);
+        assertEquals(Arrays.asList(1L, 2L, 42L), versions());
+
+        // the write sequence continues after the highest version replayed
+        reopen();
+        store.save("c", payload(3), true);
+        assertEquals(Arrays.asList(1L, 2L, 42L, 43L), versions());
+    }
+
+    @Test
+    public void testRecoveryTruncatesTornRecord() throws Exception {
+        store.save("a", payload(1), true);
+        store.save("b", payload(2), true);
+        store.close();
+
+        File file = segmentFile(0);
+        long length = file.length();
+        ByteBuffer record = StoreSegment.encode(StoreSegment.PUT, "c".getBytes("UTF-8"),
+                3, System.currentTimeMillis(), 0, payload(3));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(length);
+            raf.write(record.array(), 0, record.remaining() / 2);
+        } finally {
+            raf.close();
+        }
+
+        store = open();
+        assertEquals(length, file.length());
+        assertArrayEquals(payload(1), (byte[]) store.load("a", null));
+        assertArrayEquals(payload(2), (byte[]) store.load("b", null));
+        assertNull(store.load("c", null));
+
+        // appends continue after the last valid record
+        store.save("c", payload(3), true);
+        reopen();
+        assertArrayEquals(payload(3), (byte[]) store.load("c", null));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void testRecoveryStopsAtChecksumMismatch() throws Exception {
+        store.save("a", payload(1), true);
+        long firstRecordEnd = segmentFile(0).length();
+        store.save("b", payload(2), true);
+        store.close();
+
+        File file = segmentFile(0);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long position = file.length() - 10;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        store = open();
+        assertEquals(firstRecordEnd, file.length());
+        assertArrayEquals(payload(1), (byte[]) store.load("a", null));
+        assertNull(store.load("b", null));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testCompactionKeepsLiveRecordsAndTombstones() throws Exception {
+        // segment 0: x, k1, k2 -- stays above the live ratio
+        store.save("x", payload(1), true);
+        store.save("k1", payload(2), true);
+        store.save("k2", payload(3), true);
+        // segment 1: y, tombstone of x, two newer states of y
+        store.save("y", payload(4), true);
+        store.remove("x");
+        store.save("y", payload(5), false);
+        store.save("y", payload(6), false);
+        // segment 2: the active one
+        store.save("w", payload(7), true);
+        assertTrue(segmentFile(0).exists());
+        assertTrue(segmentFile(1).exists());
+        assertTrue(segmentFile(2).exists());
+        assertFalse(segmentFile(3).exists());
+
+        store.compact();
+        assertTrue(segmentFile(0).exists());
+        assertFalse(segmentFile(1).exists());
+        assertArrayEquals(payload(6), (byte[]) store.load("y", null));
+
+        // without the copied tombstone, x would come back from segment 0
+        reopen();
+        assertNull(store.load("x", null));
+        assertArrayEquals(payload(2), (byte[]) store.load("k1", null));
+        assertArrayEquals(payload(3), (byte[]) store.load("k2", null));
+        assertArrayEquals(payload(6), (byte[]) store.load("y", null));
+        assertArrayEquals(payload(7), (byte[]) store.load("w", null));
+        assertEquals(4, store.size());
+    }
+
+    @Test
+    public void testExpiryByMaxIdle() throws Exception {
+        long now = System.currentTimeMillis();
+        store.save("expired", new Session(1, now - 60000, 1000), true);
+        store.save("idle", new Session(1, now - 60000, 3600000), true);
+        store.save("immortal", new Session(1, now - 3600000, -1), true);
+        store.save("touched", new Session(1, now - 60000, 1000), true);
+        store.updateTimestamp("touched", now);
+
+        assertEquals(1, store.removeExpired(3600000));
+        assertNull(store.load("expired", null));
+        assertNotNull(store.load("idle", null));
+        assertNotNull(store.load("immortal", null));
+        assertNotNull(store.load("touched", null));
+
+        // the idle time passed in only applies to keys without their own
+        store.save("plain", payload(1), true);
+        Thread.sleep(20);
+        assertEquals(1, store.removeExpired(10));
+        assertNull(store.load("plain", null));
+        assertNotNull(store.load("idle", null));
+        assertNotNull(store.load("immortal", null));
+
+        // the touch survives a restart
+        reopen();
+        assertNotNull(store.load("touched", null));
+        assertEquals(0, store.removeExpired(3600000));
+    }
+
+    private SegmentedFileBackingStore<String, Serializable> open() throws BackingStoreException {
+        BackingStoreConfiguration<String, Serializable> conf =
+                new BackingStoreConfiguration<String, Serializable>();
+        conf.setStoreName(STORE_NAME)
+                .setInstanceName("instance1")
+                .setBaseDirectory(baseDir)
+                .setKeyClazz(String.class)
+                .setValueClazz(Serializable.class);
+        conf.getVendorSpecificSettings().put("segment.size.in.kilobytes", "1");
+        conf.getVendorSpecificSettings().put("compaction.interval.in.seconds", "0");
+        return (SegmentedFileBackingStore<String, Serializable>)
+                new SegmentedFileBackingStoreFactory().createBackingStore(conf);
+    }
+
+    private void reopen() throws BackingStoreException {
+        store.close();
+        store = open();
+    }
+
+    private File segmentFile(long id) {
+        return new File(baseDir, StoreSegment.fileName(id));
+    }
+
+    private List<Long> versions() throws IOException {
+        List<Long> versions = new ArrayList<Long>();
+        for (long id = 0; segmentFile(id).exists(); id++) {
+            StoreSegment segment = new StoreSegment(baseDir, id);
+            try {
+                StoreSegment.Reader reader = segment.openReader();
+                try {
+                    StoreSegment.Record record;
+                    while ((record = reader.next()) != null) {
+                        versions.add(record.version);
+                    }
+                } finally {
+                    reader.close();
+                }
+            } finally {
+                segment.close();
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * A value of about 300 bytes once serialized, so that three of them
+     * fill a one kilobyte segment.
+     */
+    private static byte[] payload(int tag) {
+        byte[] data = new byte[250];
+        Arrays.fill(data, (byte) tag);
+        return data;
+    }
+
+    private static class Session implements Storeable {
+
+        private long version;
+
+        private long lastAccessTime;
+
+        private long maxIdleTime;
+
+        Session(long version, long lastAccessTime, long maxIdleTime) {
+            this.version = version;
+            this.lastAccessTime = lastAccessTime;
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public long _storeable_getVersion() {
+            return version;
+        }
+
+        public void _storeable_setVersion(long version) {
+            this.version = version;
+        }
+
+        public long _storeable_getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        public void _storeable_setLastAccessTime(long lastAccessTime) {
+            this.lastAccessTime = lastAccessTime;
+        }
+
+        public long _storeable_getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void _storeable_setMaxIdleTime(long maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public String[] _storeable_getAttributeNames() {
+            return new String[0];
+        }
+
+        public boolean[] _storeable_getDirtyStatus() {
+            return new boolean[0];
+        }
+
+        public void _storeable_writeState(OutputStream os) throws IOException {
+        }
+
+        public void _storeable_readState(InputStream is) throws IOException {
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected JMH suites once per configured thread count.
+ * <p>
+ * The thread counts are taken from the <code>benchmark.threads</code>
+ * system property (comma separated, default 1 to 128 in powers of two).
+ * Every run writes its results as JSON to
+ * <code>${benchmark.resultDir}/jmh-result-&lt;threads&gt;t.json</code> so
+ * that results of two builds can be compared with any JMH result viewer.
+ * Remaining arguments are handed to JMH unchanged, e.g.
+ * <code>-p holdTokens=0 ConnectionPoolBenchmark</code>.
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,2,4,8,16,32,64,128";
+
+    public static void main(String[] args)
+            throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        File resultDir = new File(System.getProperty("benchmark.resultDir", "target/jmh"));
+        if (!resultDir.isDirectory() && !resultDir.mkdirs()) {
+            throw new RunnerException("Cannot create result directory " + resultDir);
+        }
+
+        for (int threads : parseThreads(System.getProperty("benchmark.threads", DEFAULT_THREADS))) {
+            File result = new File(resultDir, "jmh-result-" + threads + "t.json");
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    static List<Integer> parseThreads(String value) {
+        List<Integer> threads = new ArrayList<Integer>();
+        for (String token : value.split(",")) {
+            token = token.trim();
+            if (token.length() > 0) {
+                int count = Integer.parseInt(token);
+                if (count <= 0) {
+                    throw new IllegalArgumentException("Invalid thread count: " + token);
+                }
+                threads.add(count);
+            }
+        }
+        if (threads.isEmpty()) {
+            throw new IllegalArgumentException("No thread counts in: " + value);
+        }
+        return threads;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks.cache;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.appserv.util.cache.Cache;
+import com.sun.appserv.util.cache.LruCache;
+import com.sun.appserv.util.cache.TinyLfuCache;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Get, and put on a miss, of {@link TinyLfuCache} and {@link LruCache} on
+ * a Zipfian key trace. Besides the throughput, the <code>hits</code> and
+ * <code>misses</code> counters of every run give the hit rate of each cache.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CacheBenchmark {
+
+    private static final int KEYS = 100000;
+    private static final int TRACE_LENGTH = 1 << 20;
+
+    @Param({"tinylfu", "lru"})
+    public String cacheType;
+
+    @Param({"2000"})
+    public int maxEntries;
+
+    /** Zipf exponent of the key distribution */
+    @Param({"0.9"})
+    public double skew;
+
+    private Cache cache;
+    private int[] trace;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        trace = zipfTrace(KEYS, skew, TRACE_LENGTH, 7);
+        if ("tinylfu".equals(cacheType)) {
+            cache = new TinyLfuCache();
+        } else {
+            cache = new LruCache();
+        }
+        cache.init(maxEntries, null);
+    }
+
+    /**
+     * Position of a thread in the trace. Threads start at random offsets so
+     * that they do not hit the same keys in lock step.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            next = ThreadLocalRandom.current().nextInt(TRACE_LENGTH);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HitCounts {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object getOrPut(Cursor cursor, HitCounts counts) {
+        Integer key = Integer.valueOf(trace[cursor.next++ & (TRACE_LENGTH - 1)]);
+        Object value = cache.get(key);
+        if (value != null) {
+            counts.hits++;
+        } else {
+            counts.misses++;
+            cache.put(key, key);
+            value = key;
+        }
+        return value;
+    }
+
+    /**
+     * keys drawn from [0, n) with P(k) proportional to 1 / (k + 1)^s
+     */
+    private static int[] zipfTrace(int n, double s, int length, long seed) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, s);
+            cdf[k] = sum;
+        }
+
+        Random random = new Random(seed);
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            double u = random.nextDouble() * sum;
+            int lo = 0, hi = n - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            // scatter the popular keys over the hash table
+            trace[i] = lo * 0x9e3779b1;
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks.connectors;
+
+import java.util.Hashtable;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.connectors.ConnectorConnectionPool;
+import com.sun.enterprise.resource.pool.ConnectionPool;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+
+/**
+ * A {@link ConnectionPool} configured from a {@link ConnectorConnectionPool}
+ * built in memory instead of one looked up from the connector naming service.
+ */
+public class BenchmarkConnectionPool extends ConnectionPool {
+
+    private static final ThreadLocal<ConnectorConnectionPool> configuration =
+            new ThreadLocal<ConnectorConnectionPool>();
+
+    private BenchmarkConnectionPool(PoolInfo poolInfo) throws PoolingException {
+        super(poolInfo, new Hashtable());
+    }
+
+    /**
+     * Creates a pool from the given configuration. The configuration is
+     * needed by the super class constructor, hence it is passed through a
+     * thread local rather than a field.
+     */
+    public static BenchmarkConnectionPool create(ConnectorConnectionPool poolResource)
+            throws PoolingException {
+        configuration.set(poolResource);
+        try {
+            return new BenchmarkConnectionPool(new PoolInfo(poolResource.getName()));
+        } finally {
+            configuration.remove();
+        }
+    }
+
+    /**
+     * Pool configuration with every setting the pool parses filled in.
+     * Resizing and leak tracing are off, so no timer is started.
+     */
+    public static ConnectorConnectionPool configure(String name, int steadyPoolSize,
+            int maxPoolSize, String dataStructureType, String waitQueueType) {
+        ConnectorConnectionPool poolResource = new ConnectorConnectionPool(name);
+        poolResource.setSteadyPoolSize(String.valueOf(steadyPoolSize));
+        poolResource.setMaxPoolSize(String.valueOf(maxPoolSize));
+        poolResource.setMaxWaitTimeInMillis("60000");
+        poolResource.setPoolResizeQuantity("2");
+        poolResource.setIdleTimeoutInSeconds("0");
+        poolResource.setMatchConnections(false);
+        poolResource.setMaxConnectionUsage(ConnectorConnectionPool.DEFAULT_MAX_CONNECTION_USAGE);
+        poolResource.setConCreationRetryAttempts(ConnectorConnectionPool.DEFAULT_CON_CREATION_RETRY_ATTEMPTS);
+        poolResource.setConCreationRetryInterval(ConnectorConnectionPool.DEFAULT_CON_CREATION_RETRY_INTERVAL);
+        poolResource.setValidateAtmostOncePeriod(ConnectorConnectionPool.DEFAULT_VALIDATE_ATMOST_ONCE_PERIOD);
+        poolResource.setConnectionLeakTracingTimeout(ConnectorConnectionPool.DEFAULT_LEAK_TIMEOUT);
+        poolResource.setPoolDataStructureType(dataStructureType);
+        poolResource.setPoolWaitQueue(waitQueueType);
+        return poolResource;
+    }
+
+    @Override
+    protected ConnectorConnectionPool getPoolConfigurationFromJndi(Hashtable env) {
+        return configuration.get();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks.connectors;
+
+import java.util.concurrent.TimeUnit;
+
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.ResourceSpec;
+import com.sun.enterprise.resource.pool.datastructure.ConcurrentBagDataStructure;
+import com.sun.enterprise.resource.pool.datastructure.RWLockDataStructure;
+import com.sun.enterprise.resource.pool.waitqueue.FairHandoffPoolWaitQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Acquire/release of a connector connection pool backed by a
+ * {@link StubResourceAllocator}. With more benchmark threads than
+ * <code>maxPoolSize</code> the threads queue for a connection, which is
+ * what <code>acquireLatency</code> is meant to show.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConnectionPoolBenchmark {
+
+    @Param({"rwlock", "concurrent-bag"})
+    public String dataStructure;
+
+    @Param({"default", "fair-handoff"})
+    public String waitQueue;
+
+    @Param({"16"})
+    public int maxPoolSize;
+
+    /** CPU work (in {@link Blackhole#consumeCPU} tokens) done while holding a connection */
+    @Param({"0", "500"})
+    public int holdTokens;
+
+    private BenchmarkConnectionPool pool;
+    private StubResourceAllocator allocator;
+    private ResourceSpec spec;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        spec = new ResourceSpec("jdbc/benchmark", ResourceSpec.JNDI_NAME);
+        allocator = new StubResourceAllocator(spec);
+        pool = BenchmarkConnectionPool.create(BenchmarkConnectionPool.configure(
+                "benchmark-pool", maxPoolSize / 2, maxPoolSize,
+                dataStructureClass(dataStructure), waitQueueClass(waitQueue)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.emptyPool();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void getAndReturn(Blackhole bh) throws Exception {
+        cycle(bh);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void acquireLatency(Blackhole bh) throws Exception {
+        cycle(bh);
+    }
+
+    private void cycle(Blackhole bh) throws Exception {
+        ResourceHandle handle = pool.getResource(spec, allocator, null);
+        try {
+            bh.consume(handle.getUserConnection());
+            if (holdTokens > 0) {
+                Blackhole.consumeCPU(holdTokens);
+            }
+        } finally {
+            pool.resourceClosed(handle);
+        }
+    }
+
+    static String dataStructureClass(String name) {
+        if ("rwlock".equals(name)) {
+            return RWLockDataStructure.class.getName();
+        } else if ("concurrent-bag".equals(name)) {
+            return ConcurrentBagDataStructure.class.getName();
+        }
+        return name;
+    }
+
+    static String waitQueueClass(String name) {
+        if ("default".equals(name)) {
+            return null;
+        } else if ("fair-handoff".equals(name)) {
+            return FairHandoffPoolWaitQueue.class.getName();
+        }
+        return name;
+    }
+}
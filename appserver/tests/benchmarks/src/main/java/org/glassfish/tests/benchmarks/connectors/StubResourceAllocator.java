@@ -0,0 +1,124 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks.connectors;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.ResourceSpec;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+
+/**
+ * Non transactional allocator handing out plain objects, so that a
+ * benchmark measures the pool and not a resource adapter.
+ */
+public class StubResourceAllocator implements ResourceAllocator {
+
+    private final ResourceSpec spec;
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger destroyed = new AtomicInteger();
+
+    public StubResourceAllocator(ResourceSpec spec) {
+        this.spec = spec;
+    }
+
+    public ResourceHandle createResource() throws PoolingException {
+        created.incrementAndGet();
+        return new ResourceHandle(new Object(), spec, this, null);
+    }
+
+    public void fillInResourceObjects(ResourceHandle resource) throws PoolingException {
+        resource.fillInResourceObjects(resource.getResource(), null);
+    }
+
+    public void closeUserConnection(ResourceHandle resource) throws PoolingException {
+    }
+
+    public void destroyResource(ResourceHandle resource) throws PoolingException {
+        destroyed.incrementAndGet();
+    }
+
+    public boolean matchConnection(ResourceHandle h) {
+        return true;
+    }
+
+    public boolean supportsReauthentication() {
+        return false;
+    }
+
+    public boolean isTransactional() {
+        return false;
+    }
+
+    public void cleanup(ResourceHandle resource) throws PoolingException {
+    }
+
+    public boolean shareableWithinComponent() {
+        return false;
+    }
+
+    public Object getSharedConnection(ResourceHandle h) throws PoolingException {
+        return h.getUserConnection();
+    }
+
+    public Set getInvalidConnections(Set connectionSet) {
+        return Collections.EMPTY_SET;
+    }
+
+    public boolean isConnectionValid(ResourceHandle resource) {
+        return true;
+    }
+
+    public boolean hasValidatingMCF() {
+        return false;
+    }
+
+    public int getCreatedCount() {
+        return created.get();
+    }
+
+    public int getDestroyedCount() {
+        return destroyed.get();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks.ejb;
+
+import java.util.concurrent.TimeUnit;
+
+import com.sun.ejb.containers.util.pool.NonBlockingPool;
+import com.sun.ejb.containers.util.pool.StripedPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Get/return of the stateless session bean pools backed by a
+ * {@link StubObjectFactory}. The bean pools never block; once
+ * <code>maxPoolSize</code> instances are out, contention shows as extra
+ * create/destroy calls and as time spent on the pool lock.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BeanPoolBenchmark {
+
+    @Param({"non-blocking", "striped"})
+    public String poolType;
+
+    @Param({"32"})
+    public int maxPoolSize;
+
+    /** CPU work (in {@link Blackhole#consumeCPU} tokens) done while holding an instance */
+    @Param({"0", "500"})
+    public int holdTokens;
+
+    private NonBlockingPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        StubObjectFactory factory = new StubObjectFactory();
+        ClassLoader loader = BeanPoolBenchmark.class.getClassLoader();
+        //steady size and idle timeout 0 keep the resize tasks, which need
+        //the EJB container thread pool and timer, out of the measurement
+        if ("striped".equals(poolType)) {
+            pool = new StripedPool(1L, "benchmark-pool", factory,
+                    0, 0, maxPoolSize, 0, loader);
+        } else {
+            pool = new NonBlockingPool(1L, "benchmark-pool", factory,
+                    0, 0, maxPoolSize, 0, loader);
+        }
+        //falls back to an unregistered probe provider outside the server
+        pool.setInfo("benchmark", "benchmark", "BenchmarkBean");
+
+        Object[] instances = new Object[maxPoolSize];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = pool.getObject(null);
+        }
+        for (Object instance : instances) {
+            pool.returnObject(instance);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void getAndReturn(Blackhole bh) throws Exception {
+        cycle(bh);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void acquireLatency(Blackhole bh) throws Exception {
+        cycle(bh);
+    }
+
+    private void cycle(Blackhole bh) throws Exception {
+        Object instance = pool.getObject(null);
+        try {
+            bh.consume(instance);
+            if (holdTokens > 0) {
+                Blackhole.consumeCPU(holdTokens);
+            }
+        } finally {
+            pool.returnObject(instance);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks.ejb;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.ejb.containers.util.MethodInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatch of a local business method call through a chain of
+ * <code>interceptors</code> around-invoke interceptors, the way
+ * InterceptorManager and BaseContainer dispatch it: every interceptor gets
+ * the invocation context as its single argument and the last step calls the
+ * bean method with the argument array. <code>reflection</code> calls
+ * Method.invoke at every step, as the container did before;
+ * <code>method-handle</code> goes through a {@link MethodInvoker} bound once
+ * in setup.
+ * <p>
+ * Each interceptor is a class of its own, so the shared call site inside
+ * the dispatcher sees as many targets as a real chain does. Container
+ * bookkeeping around the call (invocation manager, transactions, security)
+ * is left out; only the dispatch itself is measured.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BusinessMethodDispatchBenchmark {
+
+    private static final Class<?>[] INTERCEPTOR_CLASSES = {
+        FirstInterceptor.class, SecondInterceptor.class, ThirdInterceptor.class,
+        FourthInterceptor.class, FifthInterceptor.class
+    };
+
+    @Param({"reflection", "method-handle"})
+    public String dispatch;
+
+    @Param({"0", "1", "5"})
+    public int interceptors;
+
+    private Object bean;
+    private Dispatcher businessMethod;
+    private Object[] interceptorInstances;
+    private Dispatcher[] aroundInvoke;
+
+    private final Object[] args = { "payload" };
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (interceptors > INTERCEPTOR_CLASSES.length) {
+            throw new IllegalArgumentException("At most " + INTERCEPTOR_CLASSES.length
+                    + " interceptors: " + interceptors);
+        }
+        boolean handles = "method-handle".equals(dispatch);
+
+        bean = new EchoBean();
+        businessMethod = dispatcher(EchoBean.class.getMethod("echo", String.class), handles);
+
+        interceptorInstances = new Object[interceptors];
+        aroundInvoke = new Dispatcher[interceptors];
+        for (int i = 0; i < interceptors; i++) {
+            Class<?> interceptorClass = INTERCEPTOR_CLASSES[i];
+            interceptorInstances[i] = interceptorClass.newInstance();
+            aroundInvoke[i] = dispatcher(
+                    interceptorClass.getMethod("aroundInvoke", Invocation.class), handles);
+        }
+    }
+
+    @Benchmark
+    public Object localCall() throws Exception {
+        return new Invocation(this, args).proceed();
+    }
+
+    private static Dispatcher dispatcher(Method method, boolean handles)
+            throws IllegalAccessException {
+        return handles ? new HandleDispatcher(MethodInvoker.create(method))
+                : new ReflectiveDispatcher(method);
+    }
+
+    /**
+     * Invocation context handed to every interceptor; proceed() calls the
+     * next interceptor or, at the end of the chain, the bean method.
+     */
+    public static final class Invocation {
+        private final BusinessMethodDispatchBenchmark benchmark;
+        private final Object[] args;
+        private int index = 0;
+
+        Invocation(BusinessMethodDispatchBenchmark benchmark, Object[] args) {
+            this.benchmark = benchmark;
+            this.args = args;
+        }
+
+        public Object proceed() throws Exception {
+            int current = index++;
+            try {
+                if (current < benchmark.aroundInvoke.length) {
+                    return benchmark.aroundInvoke[current].invokeUnary(
+                            benchmark.interceptorInstances[current], this);
+                }
+                return benchmark.businessMethod.invoke(benchmark.bean, args);
+            } catch (InvocationTargetException ite) {
+                Throwable cause = ite.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    abstract static class Dispatcher {
+        abstract Object invoke(Object target, Object[] args)
+                throws InvocationTargetException, IllegalAccessException;
+
+        abstract Object invokeUnary(Object target, Object arg)
+                throws InvocationTargetException, IllegalAccessException;
+    }
+
+    static final class ReflectiveDispatcher extends Dispatcher {
+        private final Method method;
+
+        ReflectiveDispatcher(Method method) {
+            this.method = method;
+        }
+
+        Object invoke(Object target, Object[] args)
+                throws InvocationTargetException, IllegalAccessException {
+            return method.invoke(target, args);
+        }
+
+        Object invokeUnary(Object target, Object arg)
+                throws InvocationTargetException, IllegalAccessException {
+            return method.invoke(target, arg);
+        }
+    }
+
+    static final class HandleDispatcher extends Dispatcher {
+        private final MethodInvoker invoker;
+
+        HandleDispatcher(MethodInvoker invoker) {
+            this.invoker = invoker;
+        }
+
+        Object invoke(Object target, Object[] args) throws InvocationTargetException {
+            return invoker.invoke(target, args);
+        }
+
+        Object invokeUnary(Object target, Object arg) throws InvocationTargetException {
+            return invoker.invokeUnary(target, arg);
+        }
+    }
+
+    public static class EchoBean {
+        public String echo(String value) {
+            return value;
+        }
+    }
+
+    public static class FirstInterceptor {
+        public Object aroundInvoke(Invocation invocation) throws Exception {
+            return invocation.proceed();
+        }
+    }
+
+    public static class SecondInterceptor {
+        public Object aroundInvoke(Invocation invocation) throws Exception {
+            return invocation.proceed();
+        }
+    }
+
+    public static class ThirdInterceptor {
+        public Object aroundInvoke(Invocation invocation) throws Exception {
+            return invocation.proceed();
+        }
+    }
+
+    public static class FourthInterceptor {
+        public Object aroundInvoke(Invocation invocation) throws Exception {
+            return invocation.proceed();
+        }
+    }
+
+    public static class FifthInterceptor {
+        public Object aroundInvoke(Invocation invocation) throws Exception {
+            return invocation.proceed();
+        }
+    }
+}
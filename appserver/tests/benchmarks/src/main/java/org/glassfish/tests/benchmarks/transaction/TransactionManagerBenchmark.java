@@ -0,0 +1,129 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks.transaction;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.Synchronization;
+
+import com.sun.enterprise.transaction.JavaEETransactionManagerSimplified;
+import com.sun.enterprise.transaction.JavaEETransactionManagerSimplifiedDelegate;
+import com.sun.enterprise.transaction.spi.JavaEETransactionManagerDelegate;
+import org.glassfish.api.invocation.InvocationManagerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Local transaction begin/commit through a
+ * {@link JavaEETransactionManagerSimplified} wired the way the jta unit
+ * tests wire it, i.e. without the JTS delegate. With
+ * <code>monitoring</code> on every transaction goes through the active
+ * transaction bookkeeping as well.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransactionManagerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean monitoring;
+
+    private JavaEETransactionManagerSimplified tm;
+
+    private final Synchronization sync = new Synchronization() {
+        public void beforeCompletion() {
+        }
+
+        public void afterCompletion(int status) {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tm = new BenchmarkTransactionManager();
+        tm.postConstruct();
+        JavaEETransactionManagerDelegate d = new JavaEETransactionManagerSimplifiedDelegate();
+        tm.setDelegate(d);
+        d.setTransactionManager(tm);
+        tm.setMonitoringEnabled(monitoring);
+    }
+
+    @Benchmark
+    public void beginCommit() throws Exception {
+        tm.begin();
+        tm.commit();
+    }
+
+    @Benchmark
+    public void beginRollback() throws Exception {
+        tm.begin();
+        tm.rollback();
+    }
+
+    @Benchmark
+    public void beginSynchronizationCommit() throws Exception {
+        tm.begin();
+        tm.getTransaction().registerSynchronization(sync);
+        tm.commit();
+    }
+
+    /**
+     * Supplies the invocation manager that is normally injected.
+     */
+    static class BenchmarkTransactionManager extends JavaEETransactionManagerSimplified {
+        BenchmarkTransactionManager() {
+            invMgr = new InvocationManagerImpl();
+        }
+    }
+}
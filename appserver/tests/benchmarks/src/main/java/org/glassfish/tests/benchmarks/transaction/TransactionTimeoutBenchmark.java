@@ -0,0 +1,186 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.tests.benchmarks.transaction;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transaction timeout bookkeeping of the JTS TimeoutManager with
+ * <code>inFlight</code> long running transactions already registered.
+ * <p>
+ * <code>beginComplete</code> sets and removes the timeout of one short
+ * transaction, the work every transaction with a timeout adds to begin and
+ * completion. <code>check</code> is one pass of the timeout thread; all
+ * registered timeouts are far in the future, so it measures what a check
+ * costs when nothing is due. Every parameter combination runs in its own
+ * fork because the TimeoutManager state is static.
+ * <p>
+ * TimeoutManager is package-private, so its methods are reached through
+ * method handles rather than through a class added to the JTS package.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TransactionTimeoutBenchmark {
+
+    private static final int LONG_TIMEOUT_SECONDS = 3600;
+
+    private static final int ACTIVE_TIMEOUT = 1;
+    private static final int NO_TIMEOUT = 0;
+
+    private static final MethodHandle INITIALISE;
+    private static final MethodHandle SET_TIMEOUT;
+    private static final MethodHandle CHECK_TIMEOUTS;
+
+    static {
+        try {
+            Class<?> timeoutManager = Class.forName("com.sun.jts.CosTransactions.TimeoutManager");
+            INITIALISE = handle(timeoutManager.getDeclaredMethod("initialise"));
+            SET_TIMEOUT = handle(timeoutManager.getDeclaredMethod(
+                    "setTimeout", Long.class, int.class, int.class));
+            CHECK_TIMEOUTS = handle(timeoutManager.getDeclaredMethod("checkTimeouts"));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    @Param({"0", "10000", "100000"})
+    public int inFlight;
+
+    //local transaction ids of the benchmark threads start above this
+    private final AtomicLong nextThreadBase = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        INITIALISE.invokeExact();
+        for (long tid = 0; tid < inFlight; tid++) {
+            begin(tid, LONG_TIMEOUT_SECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        for (long tid = 0; tid < inFlight; tid++) {
+            complete(tid);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean beginComplete(TransactionIds ids) throws Throwable {
+        Long tid = ids.next();
+        begin(tid, 60);
+        return complete(tid);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int check() throws Throwable {
+        Enumeration timedOut = (Enumeration) CHECK_TIMEOUTS.invokeExact();
+        int count = 0;
+        if (timedOut != null) {
+            while (timedOut.hasMoreElements()) {
+                timedOut.nextElement();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sets an active timeout, as a transaction begin does.
+     */
+    private static boolean begin(Long tid, int seconds) throws Throwable {
+        return (boolean) SET_TIMEOUT.invokeExact(tid, ACTIVE_TIMEOUT, seconds);
+    }
+
+    /**
+     * Removes the timeout, as a transaction completion does.
+     */
+    private static boolean complete(Long tid) throws Throwable {
+        return (boolean) SET_TIMEOUT.invokeExact(tid, NO_TIMEOUT, 0);
+    }
+
+    private static MethodHandle handle(Method method) throws IllegalAccessException {
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+
+    /**
+     * Hands out local transaction ids per thread so that id generation does
+     * not add a shared counter to the measurement.
+     */
+    @State(Scope.Thread)
+    public static class TransactionIds {
+        private long next;
+
+        @Setup(Level.Trial)
+        public void setUp(TransactionTimeoutBenchmark benchmark) {
+            next = (benchmark.nextThreadBase.incrementAndGet() << 40);
+        }
+
+        Long next() {
+            return next++;
+        }
+    }
+}
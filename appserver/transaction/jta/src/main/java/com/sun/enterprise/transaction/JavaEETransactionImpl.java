@@ -41,6 +41,7 @@
 package com.sun.enterprise.transaction;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.*;
 
 import javax.transaction.*;
@@ -84,7 +85,7 @@ public final class JavaEETransactionImpl extends TimerTask implements
 
     // Local Tx ids are just numbers: they dont need to be unique across
     // processes or across multiple activations of this server process.
-    private static long txIdCounter = 1;
+    private static final AtomicLong txIdCounter = new AtomicLong(1);
 
     // Fall back to the old (wrong) behavior for the case when setRollbackOnly
     // was called before XA transaction started
@@ -210,9 +211,8 @@ public final class JavaEETransactionImpl extends TimerTask implements
     }
     // END: local transaction timeout
 
-    private static synchronized long getNewTxId() {
-        long newTxId = txIdCounter++;
-        return newTxId;
+    private static long getNewTxId() {
+        return txIdCounter.getAndIncrement();
     }
 
     public boolean equals(Object other) {
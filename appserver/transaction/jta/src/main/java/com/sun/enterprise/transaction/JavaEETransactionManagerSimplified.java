@@ -41,6 +41,8 @@
 package com.sun.enterprise.transaction;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.*;
 import java.rmi.RemoteException;
 
@@ -131,28 +133,38 @@ public class JavaEETransactionManagerSimplified
     private int purgeCancelledTtransactions = 0;
 
     // admin and monitoring related parameters
-    private  static final Hashtable statusMap = new Hashtable();
-    private List activeTransactions = Collections.synchronizedList(new ArrayList());
-    private boolean monitoringEnabled = false;
+    // Indexed by the javax.transaction.Status constants; read-only after class init
+    private  static final String[] statusNames = new String[Status.STATUS_ROLLING_BACK + 1];
+
+    // Transactions are added and removed on every begin/completion while monitoring
+    // is on, so keep them in a concurrent map instead of a globally locked list.
+    // The value is the order in which they were added, which getActiveTransactions()
+    // restores.
+    private final Map<Object, Long> activeTransactions =
+            new ConcurrentHashMap<Object, Long>();
+    private final AtomicLong activeSequence = new AtomicLong();
+    private volatile boolean monitoringEnabled = false;
 
     private TransactionServiceProbeProvider monitor;
-    private Hashtable txnTable = null;
+
+    // txnId -> Transaction view, built lazily by getActiveTransactions()
+    private volatile Map<String, Transaction> txnTable = null;
 
     private Cache resourceTable;
 
     private  Timer _timer = new Timer("transaction-manager", true);
 
     static {
-        statusMap.put(Status.STATUS_ACTIVE, "Active");
-        statusMap.put(Status.STATUS_MARKED_ROLLBACK, "MarkedRollback");
-        statusMap.put(Status.STATUS_PREPARED, "Prepared");
-        statusMap.put(Status.STATUS_COMMITTED, "Committed");
-        statusMap.put(Status.STATUS_ROLLEDBACK, "RolledBack");
-        statusMap.put(Status.STATUS_UNKNOWN, "UnKnown");
-        statusMap.put(Status.STATUS_NO_TRANSACTION, "NoTransaction");
-        statusMap.put(Status.STATUS_PREPARING, "Preparing");
-        statusMap.put(Status.STATUS_COMMITTING, "Committing");
-        statusMap.put(Status.STATUS_ROLLING_BACK, "RollingBack");
+        statusNames[Status.STATUS_ACTIVE] = "Active";
+        statusNames[Status.STATUS_MARKED_ROLLBACK] = "MarkedRollback";
+        statusNames[Status.STATUS_PREPARED] = "Prepared";
+        statusNames[Status.STATUS_COMMITTED] = "Committed";
+        statusNames[Status.STATUS_ROLLEDBACK] = "RolledBack";
+        statusNames[Status.STATUS_UNKNOWN] = "UnKnown";
+        statusNames[Status.STATUS_NO_TRANSACTION] = "NoTransaction";
+        statusNames[Status.STATUS_PREPARING] = "Preparing";
+        statusNames[Status.STATUS_COMMITTING] = "Committing";
+        statusNames[Status.STATUS_ROLLING_BACK] = "RollingBack";
 
     }
     public JavaEETransactionManagerSimplified() {
@@ -430,7 +442,7 @@ public class JavaEETransactionManagerSimplified
 
         // The local Transaction was promoted to global Transaction
         if (monitoringEnabled){
-            if(activeTransactions.remove(tx)){
+            if(activeTransactions.remove(tx) != null){
                 monitor.transactionDeactivatedEvent();
             }
         }
@@ -824,7 +836,7 @@ public class JavaEETransactionManagerSimplified
             getDelegate().getReadLock().lock(); // XXX acquireReadLock();
             try{
                 JavaEETransactionImpl tx = initJavaEETransaction(timeout);
-                activeTransactions.add(tx);
+                addActiveTransaction(tx);
                 monitor.transactionActivatedEvent();
                 ComponentInvocation inv = invMgr.getCurrentInvocation();
                 if (inv != null && inv.getInstance() != null) {
@@ -1121,16 +1133,26 @@ public class JavaEETransactionManagerSimplified
    /*
     *  This method returns the details of the Currently Active Transactions
     *  Called by Admin Framework when transaction monitoring is enabled
+    *  The view is computed from a weakly consistent snapshot of the active
+    *  transactions, in the order they began, so begin and completion never wait
+    *  for it.
     *  @return ArrayList of TransactionAdminBean
     *  @see TransactionAdminBean
     */
     public ArrayList getActiveTransactions() {
         ArrayList tranBeans = new ArrayList();
-        txnTable = new Hashtable();
-        Object[] activeCopy = activeTransactions.toArray(); // get the clone of the active transactions
-        for(int i=0;i<activeCopy.length;i++){
+        Map<String, Transaction> table = new HashMap<String, Transaction>();
+        // get the clone of the active transactions
+        List<Map.Entry<Object, Long>> activeCopy =
+                new ArrayList<Map.Entry<Object, Long>>(activeTransactions.entrySet());
+        Collections.sort(activeCopy, new Comparator<Map.Entry<Object, Long>>() {
+            public int compare(Map.Entry<Object, Long> e1, Map.Entry<Object, Long> e2) {
+                return e1.getValue().compareTo(e2.getValue());
+            }
+        });
+        for(Map.Entry<Object, Long> active : activeCopy){
             try{
-                Transaction tran = (Transaction)activeCopy[i];
+                Transaction tran = (Transaction)active.getKey();
                 TransactionAdminBean tBean = getDelegate().getTransactionAdminBean(tran);
                 if (tBean == null) {
                     // Shouldn't happen
@@ -1139,7 +1161,7 @@ public class JavaEETransactionManagerSimplified
                     if (_logger.isLoggable(Level.FINE))
                         _logger.log(Level.FINE, "TM: Adding txnId " + tBean.getId() + " to txnTable");
 
-                    txnTable.put(tBean.getId(), tran);
+                    table.put(tBean.getId(), tran);
                     tranBeans.add(tBean);
                 }
             }catch(Exception ex){
@@ -1147,6 +1169,7 @@ public class JavaEETransactionManagerSimplified
                     "transaction.monitor.error_while_getting_monitor_attr", ex);
             }
         }
+        txnTable = table;
         return tranBeans;
     }
 
@@ -1174,19 +1197,24 @@ public class JavaEETransactionManagerSimplified
      *  Called by Admin Framework when transaction monitoring is enabled
      */
     public void forceRollback(String txnId) throws IllegalStateException, SystemException{
-         // XXX - WORK AROUND MONITORING BUG
-         if (txnTable == null || txnTable.size() == 0)
+         // The table is only a snapshot of the last monitoring query; refresh it
+         // once if the id was not known at that time.
+         Map<String, Transaction> table = txnTable;
+         Transaction tran = (table == null)? null : table.get(txnId);
+         if (tran == null) {
              getActiveTransactions();
-         // XXX - WORK AROUND MONITORING BUG
+             table = txnTable;
+             tran = (table == null)? null : table.get(txnId);
+         }
 
-         if (txnTable == null || txnTable.get(txnId) == null) {
+         if (tran == null) {
             String result = sm.getString("transaction.monitor.rollback_invalid_id");
             throw new  IllegalStateException(result);
         } else {
             if (_logger.isLoggable(Level.FINE))
                 _logger.log(Level.FINE, "TM: Marking txnId " + txnId + " for rollback");
 
-             ((Transaction) txnTable.get(txnId)).setRollbackOnly();
+             tran.setRollbackOnly();
          }
 
     }
@@ -1195,6 +1223,7 @@ public class JavaEETransactionManagerSimplified
         monitoringEnabled = enabled;
         //reset the variables
         activeTransactions.clear();
+        txnTable = null;
     }
 
     private void _monitorTxCompleted(Object obj, boolean committed){
@@ -1205,7 +1234,7 @@ public class JavaEETransactionManagerSimplified
                     obj = t.getJTSTx();
                 }
             }
-            if(activeTransactions.remove(obj)) {
+            if(activeTransactions.remove(obj) != null) {
                 if(committed){
                     monitor.transactionCommittedEvent();
                 }else{
@@ -1256,7 +1285,10 @@ public class JavaEETransactionManagerSimplified
 /************************* Helper Methods ***********************************/
 /****************************************************************************/
     public static String getStatusAsString(int status) {
-        return (String)statusMap.get(status);
+        if (status < 0 || status >= statusNames.length) {
+            return null;
+        }
+        return statusNames[status];
     }
 
     private void delistComponentResources(ComponentInvocation inv,
@@ -1541,11 +1573,17 @@ public class JavaEETransactionManagerSimplified
 
     public void monitorTxBegin(Transaction tx) {
         if (monitoringEnabled) {
-            activeTransactions.add(tx);
+            addActiveTransaction(tx);
             monitor.transactionActivatedEvent();
         }
     }
 
+    private void addActiveTransaction(Object tx) {
+        if (!activeTransactions.containsKey(tx)) {
+            activeTransactions.put(tx, activeSequence.incrementAndGet());
+        }
+    }
+
     public boolean resourceEnlistable(TransactionalResource h) {
         return (h.isTransactional() &&
                 (!h.isEnlisted() || !h.isShareable() || multipleEnlistDelists));
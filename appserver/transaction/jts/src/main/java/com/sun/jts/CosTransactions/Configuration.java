@@ -200,6 +200,35 @@ public class Configuration extends Object {
      */
     public final static String KEYPOINT_COUNT = "com.sun.jts.keypointCount"/*#Frozen*/;
 
+    /**The property key used to enable group commit for forced transaction log
+     * writes.  Concurrent forced writes are then made durable by a single force
+     * of the log, instead of one force each.
+     * <p>
+     * The value is <em><b>com.sun.jts.logGroupCommit</b></em>.
+     * <p>
+     * The default value for this property is false.
+     */
+    public final static String LOG_GROUP_COMMIT = "com.sun.jts.logGroupCommit"/*#Frozen*/;
+
+    /**The property key used to specify how long, in microseconds, a group commit
+     * waits for further forced writes before forcing the log.
+     * <p>
+     * The value is <em><b>com.sun.jts.logGroupCommitWindow</b></em>.
+     * <p>
+     * The default value for this property is 0: the log is forced as soon as
+     * possible, and writes arriving during a force are grouped into the next one.
+     */
+    public final static String LOG_GROUP_COMMIT_WINDOW = "com.sun.jts.logGroupCommitWindow"/*#Frozen*/;
+
+    /**The property key used to specify the number of pending forced writes that
+     * ends the group commit window early.
+     * <p>
+     * The value is <em><b>com.sun.jts.logGroupCommitSize</b></em>.
+     * <p>
+     * The default value for this property is 0, meaning no limit.
+     */
+    public final static String LOG_GROUP_COMMIT_SIZE = "com.sun.jts.logGroupCommitSize"/*#Frozen*/;
+
     // Property to specify the instance name
     public final static String INSTANCE_NAME = "com.sun.jts.instancename"/*#Frozen*/;
 
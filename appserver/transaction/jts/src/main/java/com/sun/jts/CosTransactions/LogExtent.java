@@ -124,6 +124,11 @@ class LogExtent extends Object {
      */
     boolean writtenSinceLastForce = false;
 
+    /**Indicates whether data has been flushed to the file system by group commit
+     * but the force has not completed yet.
+     */
+    boolean flushedSinceLastForce = false;
+
     /**The cursor position in the log extent.
      */
     int cursorPosition = 0;
@@ -149,6 +154,37 @@ class LogExtent extends Object {
         file = extentFile;
     }
 
+    /**Returns true if the extent holds data that has not been forced yet.
+     *
+     * @param
+     *
+     * @return
+     *
+     * @see
+     */
+    boolean needsForce() {
+        return writtenSinceLastForce || flushedSinceLastForce;
+    }
+
+    /**Forces all data written to the extent to permanent storage.
+     *
+     * @param
+     *
+     * @return
+     *
+     * @exception LogException The force failed.
+     *
+     * @see
+     */
+    void force() throws LogException {
+        if( writtenSinceLastForce )
+            fileHandle.fileSync();
+        else if( flushedSinceLastForce )
+            fileHandle.fileForce();
+        writtenSinceLastForce = false;
+        flushedSinceLastForce = false;
+    }
+
     /**Default LogExtent destructor.
      *
      * @param
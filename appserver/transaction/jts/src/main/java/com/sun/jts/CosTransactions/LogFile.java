@@ -105,6 +105,12 @@ class LogFile {
      */
     LogHandle handle = null;
 
+    /**Forced writes waiting for a group commit without holding the monitor,
+     * and whether close has started waiting for them.
+     */
+    private int groupCommitWrites = 0;
+    private boolean closing = false;
+
     /**LogFile constructor.
      *
      * @param LogHandle
@@ -136,16 +142,63 @@ class LogFile {
      * @param record      Log record data.
      * @param recordType  Log record type.
      * @param recordLSN   LSN of the written record.
+     * <p>
+     * Writes are serialised with the other operations on the log, except a
+     * forced write with group commit enabled: the log handle serialises the
+     * append itself, and that write must not hold the monitor while it waits
+     * for the force, so that other forced writes can join the same one.
+     * Close waits until these writes have returned.
      *
      * @return
      *
      * @see
      */
-    synchronized boolean write( int    writeType,
+    boolean write( int    writeType,
                                 byte[] record,
                                 int    recordType,
                                 LogLSN recordLSN ) {
 
+        if( writeType == LogFile.FORCED &&
+            handle.groupCommit != null &&
+            enterGroupCommit() ) {
+            try {
+                return writeRecord(writeType,record,recordType,recordLSN);
+            } finally {
+                exitGroupCommit();
+            }
+        }
+
+        synchronized( this ) {
+            return writeRecord(writeType,record,recordType,recordLSN);
+        }
+    }
+
+    /**Registers a forced write that waits for a group commit outside of the
+     * monitor, unless the log is being closed.
+     *
+     * @param
+     *
+     * @return  Indicates whether the write may proceed without the monitor.
+     *
+     * @see
+     */
+    private synchronized boolean enterGroupCommit() {
+        if( closing )
+            return false;
+        groupCommitWrites++;
+        return true;
+    }
+
+    private synchronized void exitGroupCommit() {
+        if( --groupCommitWrites == 0 )
+            notifyAll();
+    }
+
+    private boolean writeRecord( int    writeType,
+                                 byte[] record,
+                                 int    recordType,
+                                 LogLSN recordLSN ) {
+
         boolean result = true;
 
         // Write the record.
@@ -267,6 +320,21 @@ class LogFile {
 
         boolean result = true;
 
+        // Let the forced writes waiting for a group commit finish first, so
+        // that the file is not closed under them.
+
+        closing = true;
+        boolean interrupted = false;
+        while( groupCommitWrites > 0 ) {
+            try {
+                wait();
+            } catch( InterruptedException ie ) {
+                interrupted = true;
+            }
+        }
+        if( interrupted )
+            Thread.currentThread().interrupt();
+
         // Call to close the physical log.
 
         try {
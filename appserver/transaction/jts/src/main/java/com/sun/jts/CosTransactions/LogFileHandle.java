@@ -58,6 +58,7 @@ package com.sun.jts.CosTransactions;
 
 import com.sun.enterprise.util.i18n.StringManager;
 import java.io.*;
+import java.nio.channels.FileChannel;
 
 /**This class encapsulates file I/O operations and the file handle.
  *
@@ -130,6 +131,7 @@ class LogFileHandle {
      */
     private RandomAccessFile fhandle = null;
     private FileDescriptor   fd      = null;
+    private volatile FileChannel channel = null;
     private byte[] bufferData = null;
     boolean buffered = false;
     int bufferUpdateStart = -1;
@@ -358,6 +360,7 @@ class LogFileHandle {
         try {
             fhandle = new RandomAccessFile(file,fileMode);
             fd = fhandle.getFD();
+            channel = fhandle.getChannel();
 
             // If buffering, and the opened file has contents, then allocate the buffer
             // and read the file contents in.  Otherwise make the buffer an empty array.
@@ -409,6 +412,7 @@ class LogFileHandle {
 
         fhandle = null;
         fd = null;                                                            //@MA
+        channel = null;
 
     }
 
@@ -487,6 +491,67 @@ class LogFileHandle {
 
     }
 
+    /**Writes the updated part of the buffer to the file system without forcing it
+     * to the device.  Used by group commit, which forces separately via
+     * {@link #fileForce} so that the force can run outside the log latch.
+     *
+     * @param
+     *
+     * @return  true if anything was written.
+     *
+     * @exception LogException The write failed
+     *
+     * @see
+     */
+    boolean fileFlush() throws LogException {
+
+        if( bufferUpdateStart == -1 )
+            return false;
+
+        try {
+            fhandle.seek(bufferUpdateStart);
+            fhandle.write(bufferData,bufferUpdateStart,bufferUpdateEnd-bufferUpdateStart);
+
+            bufferUpdateStart = -1;
+            bufferUpdateEnd   = -1;
+        } catch (Throwable e) {
+            throw new LogException(LogException.LOG_WRITE_FAILURE,1,
+                    sm.getString("jts.log_write_failed"), e);
+        }
+
+        return true;
+    }
+
+    /**Forces everything written to the file so far to the device.
+     * <p>
+     * This does not touch the buffer and may be called without holding the log
+     * latch, concurrently with further writes.  The data (and the file length
+     * needed to read it back) is forced, other file metadata is not.
+     *
+     * @param
+     *
+     * @return
+     *
+     * @exception LogException The force failed
+     *
+     * @see
+     */
+    void fileForce() throws LogException {
+
+        if (dsyncProp != null)
+            return;
+
+        FileChannel fc = channel;
+        try {
+            if (fc == null)
+                throw new IOException("closed");
+            fc.force(false);
+        } catch (Throwable e) {
+            throw new LogException(LogException.LOG_ERROR_FORCING_LOG,1,
+                    sm.getString("jts.log_file_sync_failed"), e);
+        }
+    }
+
     /**Reads a vector of records from the file.
      *
      * @param vector  The vector to contain the records to be read.
@@ -0,0 +1,291 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+//----------------------------------------------------------------------------
+//
+// Module:      LogGroupCommit.java
+//
+// Description: Group commit of forced log writes.
+//
+// Product:     com.sun.jts.CosTransactions
+//
+//----------------------------------------------------------------------------
+
+package com.sun.jts.CosTransactions;
+
+// Import required classes.
+
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.enterprise.util.i18n.StringManager;
+import com.sun.logging.LogDomains;
+
+/**Coalesces the forces of concurrent forced log writes into a single force of
+ * the log extents.
+ * <p>
+ * A forced write appends its record under the log latch as a buffered write and
+ * receives a ticket.  It then waits, outside the latch, until a force covering
+ * its ticket has completed.  The first waiting thread becomes the leader: it
+ * optionally waits for the commit window to collect more records, flushes the
+ * dirty extents under the latch, forces them without the latch and releases
+ * every thread whose record was included.  Records appended while a force is in
+ * progress are picked up by the next leader, so the batch size adapts to the
+ * force latency even with a zero window.
+ * <p>
+ * The on-disk format is not changed; only the timing of the force differs.
+ *
+ * @see LogHandle#writeRecord
+*/
+class LogGroupCommit {
+    private static final StringManager sm = StringManager.getManager(LogGroupCommit.class);
+
+    static Logger _logger = LogDomains.getLogger(LogGroupCommit.class, LogDomains.TRANSACTION_LOGGER);
+
+    /**The log whose extents are forced.
+     */
+    private final LogHandle handle;
+
+    /**How long a leader waits for more records before forcing, in nanoseconds.
+     */
+    private final long windowNanos;
+
+    /**Number of pending records that ends the window early, 0 for no limit.
+     */
+    private final int maxRecords;
+
+    /**Ticket of the last appended record.  Updated under the log latch.
+     */
+    private long appended = 0;
+
+    /**Ticket of the last record known to be on permanent storage.
+     */
+    private long durable = 0;
+
+    /**Highest ticket included in a failed force, and the failure.
+     */
+    private long failedUpTo = 0;
+    private LogException failure = null;
+
+    /**Whether a leader is currently collecting or forcing a batch.
+     */
+    private boolean forcing = false;
+
+    /**Creates the group commit support for the given log.
+     *
+     * @param handle       The log handle.
+     * @param windowMicros The commit window in microseconds.
+     * @param maxRecords   The number of records that ends the window early.
+     *
+     * @return
+     *
+     * @see
+     */
+    LogGroupCommit( LogHandle handle, long windowMicros, int maxRecords ) {
+        this.handle = handle;
+        this.windowNanos = Math.max(0, windowMicros) * 1000L;
+        this.maxRecords = Math.max(0, maxRecords);
+    }
+
+    /**Returns a LogGroupCommit for the given log if group commit is enabled
+     * through the transaction service properties, null otherwise.
+     *
+     * @param handle  The log handle.
+     *
+     * @return  The group commit support, or null.
+     *
+     * @see
+     */
+    static LogGroupCommit create( LogHandle handle ) {
+        if( !"true".equalsIgnoreCase(Configuration.getPropertyValue(Configuration.LOG_GROUP_COMMIT)) )
+            return null;
+
+        long window = parse(Configuration.LOG_GROUP_COMMIT_WINDOW, 0);
+        int size = (int)parse(Configuration.LOG_GROUP_COMMIT_SIZE, 0);
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "Group commit enabled for log " + handle.logFileName
+                    + ": window=" + window + "us, size=" + size);
+        }
+        return new LogGroupCommit(handle, window, size);
+    }
+
+    private static long parse( String property, long defaultValue ) {
+        String value = Configuration.getPropertyValue(property);
+        if( value != null ) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch( NumberFormatException e ) {
+                _logger.log(Level.WARNING, "jts.invalid_log_group_commit_property",
+                        new Object[] {property, value});
+            }
+        }
+        return defaultValue;
+    }
+
+    /**Records that a forced record has been appended to the log.
+     * Must be called under the log latch, right after the record was written.
+     *
+     * @param
+     *
+     * @return  The ticket to wait for.
+     *
+     * @see
+     */
+    synchronized long recordAppended() {
+        long ticket = ++appended;
+        if( forcing && maxRecords > 0 && ticket - durable >= maxRecords )
+            notifyAll();
+        return ticket;
+    }
+
+    /**Waits until the record with the given ticket is on permanent storage,
+     * forcing the log if no other thread is doing so.
+     * Must be called without holding the log latch.
+     *
+     * @param ticket  The ticket returned by recordAppended.
+     *
+     * @return
+     *
+     * @exception LogException The force that included the record failed.
+     *
+     * @see
+     */
+    void awaitDurable( long ticket ) throws LogException {
+        boolean interrupted = false;
+        try {
+            while( true ) {
+                synchronized( this ) {
+                    while( durable < ticket && forcing ) {
+                        if( ticket <= failedUpTo )
+                            break;
+                        try {
+                            wait();
+                        } catch( InterruptedException e ) {
+                            interrupted = true;
+                        }
+                    }
+                    if( ticket <= failedUpTo && durable < ticket )
+                        throw new LogException(LogException.LOG_ERROR_FORCING_LOG, 14,
+                                sm.getString("jts.log_file_sync_failed"), failure);
+                    if( durable >= ticket )
+                        return;
+
+                    // Nobody is forcing: lead the next batch.
+
+                    forcing = true;
+                    interrupted |= collect();
+                }
+                force();
+            }
+        } finally {
+            if( interrupted )
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**Waits for the commit window, or until enough records are pending.
+     * Called by the leader holding this object's monitor.
+     */
+    private boolean collect() {
+        boolean interrupted = false;
+        if( windowNanos > 0 ) {
+            long deadline = System.nanoTime() + windowNanos;
+            long remaining = windowNanos;
+            while( remaining > 0 && (maxRecords == 0 || appended - durable < maxRecords) ) {
+                try {
+                    wait(remaining / 1000000L, (int)(remaining % 1000000L));
+                } catch( InterruptedException e ) {
+                    interrupted = true;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+        }
+        return interrupted;
+    }
+
+    /**Flushes the dirty extents under the log latch, forces them outside of it
+     * and publishes the result.  Called by the leader without any monitor held.
+     */
+    private void force() {
+        long target = 0;
+        List<LogExtent> extents = Collections.emptyList();
+        LogException error = null;
+        try {
+            synchronized( handle ) {
+                synchronized( this ) {
+                    target = appended;
+                }
+                extents = handle.flushExtents();
+            }
+
+            for( LogExtent extent : extents )
+                extent.fileHandle.fileForce();
+
+            synchronized( handle ) {
+                for( LogExtent extent : extents )
+                    extent.flushedSinceLastForce = false;
+            }
+        } catch( LogException le ) {
+            error = le;
+        } catch( RuntimeException re ) {
+            error = new LogException(LogException.LOG_ERROR_FORCING_LOG, 14,
+                    sm.getString("jts.log_file_sync_failed"), re);
+        }
+
+        synchronized( this ) {
+            if( error == null ) {
+                if( target > durable )
+                    durable = target;
+            } else {
+                failedUpTo = Math.max(failedUpTo, target == 0 ? appended : target);
+                failure = error;
+            }
+            forcing = false;
+            notifyAll();
+        }
+
+        if (_logger.isLoggable(Level.FINEST)) {
+            _logger.log(Level.FINEST, "Group commit forced " + extents.size()
+                    + " extent(s) up to ticket " + target + (error == null ? "" : " (failed)"));
+        }
+    }
+}
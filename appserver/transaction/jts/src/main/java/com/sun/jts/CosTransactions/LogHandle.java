@@ -227,6 +227,7 @@ class LogHandle {
     LogFileHandle        logFileHandle = null;
     LogControlDescriptor logControlDescriptor = null;
     LogControl           logControl = null;
+    LogGroupCommit       groupCommit = null;
 
 
     /**Creates a LogHandle object for the given log instance.
@@ -258,6 +259,7 @@ class LogHandle {
         logControlDescriptor = new LogControlDescriptor();
         cursors = new ArrayList();
         extentTable = new Hashtable(EXTENT_TABLE_SIZE);
+        groupCommit = LogGroupCommit.create(this);
 
     }
 
@@ -273,9 +275,45 @@ class LogHandle {
      *
      * @see
      */
-    synchronized LogLSN writeRecord( byte[] record,
-                                     int    recordType,
-                                     int    writeMode )
+    LogLSN writeRecord( byte[] record,
+                        int    recordType,
+                        int    writeMode )
+        throws LogException {
+
+        // With group commit, a forced write is appended like a buffered one
+        // under the latch and then waits, without the latch, for a force that
+        // covers it, so that concurrent forced writes share a single force.
+
+        LogGroupCommit gc = groupCommit;
+        if( writeMode != FORCE || gc == null )
+            return appendRecord(record,recordType,writeMode);
+
+        LogLSN result;
+        long ticket;
+        synchronized( this ) {
+            result = appendRecord(record,recordType,BUFFER);
+            ticket = gc.recordAppended();
+        }
+        gc.awaitDurable(ticket);
+
+        return result;
+    }
+
+    /**Appends a record to the log under the log latch.
+     *
+     * @param record      The log record.
+     * @param recordType  The log record type.
+     * @param writeMode   The write mode.
+     *
+     * @return  The LSN of the written record
+     *
+     * @exception LogException The write failed.
+     *
+     * @see
+     */
+    private synchronized LogLSN appendRecord( byte[] record,
+                                              int    recordType,
+                                              int    writeMode )
         throws LogException {
 
         // Check BlockValid field in Log_FileDescriptor block pointed to
@@ -558,10 +596,9 @@ class LogHandle {
             Enumeration extents = extentTable.elements();
             while( extents.hasMoreElements() ) {
                 LogExtent nextEDP = (LogExtent)extents.nextElement();
-                if( nextEDP.writtenSinceLastForce )
+                if( nextEDP.needsForce() )
                     try {
-                        nextEDP.fileHandle.fileSync();
-                        nextEDP.writtenSinceLastForce = false;
+                        nextEDP.force();
                     } catch (LogException le) {
                         throw new LogException(LogException.LOG_ERROR_FORCING_LOG, 14,
                                 sm.getString("jts.log_file_sync_failed"), le);
@@ -951,9 +988,8 @@ class LogHandle {
             //   IF not successful
             //     Return LOG_WRITE_FAILURE
 
-            if( logEDP.writtenSinceLastForce ) {
-                logEDP.fileHandle.fileSync();
-                logEDP.writtenSinceLastForce = false;
+            if( logEDP.needsForce() ) {
+                logEDP.force();
                 forced = true;
             }
 
@@ -1406,9 +1442,8 @@ class LogHandle {
 
             LogExtent logEDP = (LogExtent)extentTable.get(extent);
             if( logEDP != null &&
-                logEDP.writtenSinceLastForce ) {
-                logEDP.fileHandle.fileSync();
-                logEDP.writtenSinceLastForce = false;
+                logEDP.needsForce() ) {
+                logEDP.force();
             }
         }
 
@@ -1714,6 +1749,34 @@ class LogHandle {
 
     }
 
+    /**Writes the buffered data of all extents written since the last force to
+     * the file system, without forcing it.  Called by group commit under the
+     * log latch; the returned extents are then forced outside of it.
+     *
+     * @param
+     *
+     * @return  The extents that need to be forced.
+     *
+     * @exception LogException The write failed.
+     *
+     * @see
+     */
+    List<LogExtent> flushExtents() throws LogException {
+        List<LogExtent> result = new ArrayList<LogExtent>();
+        Enumeration extents = extentTable.elements();
+        while( extents.hasMoreElements() ) {
+            LogExtent nextEDP = (LogExtent)extents.nextElement();
+            if( nextEDP.writtenSinceLastForce ) {
+                nextEDP.fileHandle.fileFlush();
+                nextEDP.writtenSinceLastForce = false;
+                nextEDP.flushedSinceLastForce = true;
+            }
+            if( nextEDP.flushedSinceLastForce )
+                result.add(nextEDP);
+        }
+        return result;
+    }
+
     /**Writes the control file.
      * This internal method does not need to be synchronized.
      *
@@ -1741,10 +1804,9 @@ class LogHandle {
         Enumeration extents = extentTable.elements();
         while (extents.hasMoreElements()) {
             LogExtent nextEDP = (LogExtent) extents.nextElement();
-            if (nextEDP.writtenSinceLastForce) {
+            if (nextEDP.needsForce()) {
                 try {
-                    nextEDP.fileHandle.fileSync();
-                    nextEDP.writtenSinceLastForce = false;
+                    nextEDP.force();
                 } catch (LogException le) {
                     throw new LogException(LogException.LOG_ERROR_FORCING_LOG, 14, null, le);
                 }
@@ -69,6 +69,10 @@ import com.sun.jts.utils.LogFormatter;
 /**
  * This class records state for timing out transactions, and runs a thread
  * which performs occasional checks to time out transactions.
+ * <p>
+ * The timeouts are kept in striped TimeoutTables keyed by local transaction
+ * id and in a TimeoutWheel, so that setting and cancelling a timeout does
+ * not take a global lock and a check only looks at the timeouts due.
  *
  * @version 0.01
  *
@@ -98,12 +102,13 @@ class TimeoutManager {
      */
     private static boolean initialised = false;
 
-    private static Hashtable     pendingTimeouts = new Hashtable();
-    private static Hashtable     indoubtTimeouts = new Hashtable();
+    private static final TimeoutTable pendingTimeouts = new TimeoutTable();
+    private static final TimeoutTable indoubtTimeouts = new TimeoutTable();
     private static TimeoutThread timeoutThread = null;
+    private static volatile TimeoutWheel timeoutWheel = null;
     private static boolean       timeoutActive = false;
     private static boolean       quiescing = false;
-    private static boolean       isSetTimeout = false;
+    private static volatile boolean isSetTimeout = false;
 
 	/*
 		Logger to log transaction messages
@@ -141,8 +146,9 @@ class TimeoutManager {
     static synchronized void initSetTimeout() {
 	if (isSetTimeout)
 	   return;
-        isSetTimeout = true;
         timeoutThread = new TimeoutThread();
+        timeoutWheel = new TimeoutWheel(timeoutThread.getTimeoutInterval());
+        isSetTimeout = true;
         timeoutThread.start();
     }
 
@@ -184,10 +190,10 @@ class TimeoutManager {
                  }
                  timeoutInfo = new TimeoutInfo();
                  timeoutInfo.expireTime  =
-                    new Date().getTime() + seconds * 1000L;
+                    System.currentTimeMillis() + seconds * 1000L;
                  timeoutInfo.localTID    = localTID;
                  timeoutInfo.timeoutType = timeoutType;
-                 pendingTimeouts.put(localTID,timeoutInfo);
+                 pendingTimeouts.put(timeoutInfo);
                  break;
             case TimeoutManager.IN_DOUBT_TIMEOUT :
 		 if (!isSetTimeout) {
@@ -196,10 +202,10 @@ class TimeoutManager {
                  }
                 timeoutInfo = new TimeoutInfo();
                 timeoutInfo.expireTime  =
-                    new Date().getTime() + seconds * 1000L;
+                    System.currentTimeMillis() + seconds * 1000L;
                 timeoutInfo.localTID    = localTID;
                 timeoutInfo.timeoutType = timeoutType;
-                indoubtTimeouts.put(localTID,timeoutInfo);
+                indoubtTimeouts.put(timeoutInfo);
                 break;
 
             // For any other type, remove the timeout if there is one.
@@ -207,9 +213,10 @@ class TimeoutManager {
             default:
 		if (!isSetTimeout)
 		  break;
-                   result = (pendingTimeouts.remove(localTID) != null);
-		   if (!result)
-                      result = (indoubtTimeouts.remove(localTID) != null);
+                   timeoutInfo = pendingTimeouts.remove(localTID);
+		   if (timeoutInfo == null)
+                      timeoutInfo = indoubtTimeouts.remove(localTID);
+                   result = (timeoutInfo != null);
 
                     // If the transaction service is quiescing and
                     // there are no more pending timeouts,
@@ -355,7 +362,11 @@ class TimeoutManager {
      * Periodically checks the existing timeouts.
      * <p>
      * This is done to discover if any transactions have overrun their allotted
-     * time.  Those which have are returned as an Enumeration.
+     * time.  Those which have are returned as an Enumeration. The timeouts
+     * set since the previous check are placed in the TimeoutWheel, which is
+     * then advanced to the current time, so only the timeouts which fall due
+     * are looked at, and the ones which expired earlier and have not been
+     * cancelled yet are returned again.
      * <p>
      * Note that this method should not do anything that will cause a
      * synchronized method in the RecoveryManager to be called, as this could
@@ -374,69 +385,34 @@ class TimeoutManager {
 
         Enumeration result = null;
 
-        // When woken up, go through all current timeouts and identify those
-        // which have expired.
-
-        if (timeoutActive && ((pendingTimeouts.size() != 0) || (indoubtTimeouts.size() != 0))) {
-            Vector timedOut = null;
-
-            Enumeration timeouts = null;
-          
-            synchronized (pendingTimeouts) {
-                timeouts = pendingTimeouts.elements();
-
-                while (timeouts.hasMoreElements()) {
-
-                    TimeoutInfo timeoutInfo = (TimeoutInfo)timeouts.nextElement();
-
-                    // For each timeout in the list, check whether it has expired.
-                    // If so, look up the Coordinator and roll it back.
-
-                    if (new Date().getTime() > timeoutInfo.expireTime) {
-
-                       // Add the TimeoutInfo to the queue of
-                       //those that have timed out.
-
-                       if (timedOut == null) {
-                           timedOut = new Vector();
-                       }
-
-                       timedOut.addElement(timeoutInfo);
-                    }
-               }
-            }
-
-	    synchronized (indoubtTimeouts) {
-
-                timeouts = indoubtTimeouts.elements();
-
-                while (timeouts.hasMoreElements()) {
-
-                    TimeoutInfo timeoutInfo = (TimeoutInfo)timeouts.nextElement();
-
-                    // For each timeout in the list, check whether it has expired.
-                    // If so, look up the Coordinator and roll it back.
-
-                    if (new Date().getTime() > timeoutInfo.expireTime) {
-
-                       // Add the TimeoutInfo to the queue of
-                       //those that have timed out.
-
-                       if (timedOut == null) {
-                           timedOut = new Vector();
-                       }
-
-                       timedOut.addElement(timeoutInfo);
-                    }
+        if (timeoutActive) {
+            List<TimeoutInfo> newTimeouts = new ArrayList<TimeoutInfo>();
+            pendingTimeouts.drainNewTimeouts(newTimeouts);
+            indoubtTimeouts.drainNewTimeouts(newTimeouts);
+            List<TimeoutInfo> timedOut = timeoutWheel.expire(
+                System.currentTimeMillis(), newTimeouts,
+                pendingTimeouts.size() + indoubtTimeouts.size());
+
+            // The cancelled flag is only a hint, so make sure that each
+            // timeout is still the one held for its transaction.
+
+            for (Iterator<TimeoutInfo> it = timedOut.iterator(); it.hasNext(); ) {
+                TimeoutInfo timeoutInfo = it.next();
+                TimeoutTable table =
+                    (timeoutInfo.timeoutType == TimeoutManager.IN_DOUBT_TIMEOUT)
+                    ? indoubtTimeouts : pendingTimeouts;
+                if (!table.isCurrent(timeoutInfo)) {
+                    timeoutInfo.cancelled = true;
+                    it.remove();
                 }
-
             }
+
             // Enumerate the transactions which have timed out.
 
-            if (timedOut != null) {
-                result = timedOut.elements();
+            if (!timedOut.isEmpty()) {
+                result = Collections.enumeration(timedOut);
             }
-           }
+        }
 
         // The remainder of the timeout processing is not carried out here
         // because we would get deadlocked with addCoordinator or
@@ -452,14 +428,9 @@ class TimeoutManager {
      */
     static XID[] getInDoubtXids() {
         
-       synchronized (indoubtTimeouts) {
         Vector inDoubtList = new Vector();
         
-        Enumeration timeouts = indoubtTimeouts.elements();
-
-        while (timeouts.hasMoreElements()) {
-
-            TimeoutInfo timeoutInfo = (TimeoutInfo) timeouts.nextElement();
+        for (TimeoutInfo timeoutInfo : indoubtTimeouts.values()) {
 
             // Look up the Coordinator for the transaction.
             // If there is none, then the transaction has already gone.
@@ -476,7 +447,6 @@ class TimeoutManager {
         }
         
         return (XID[]) inDoubtList.toArray(new XID[] {});
-       }
     }
 
     /**
@@ -492,9 +462,9 @@ class TimeoutManager {
      */
     static long timeLeft(Long localTID) {
 
-        TimeoutInfo timeoutInfo = (TimeoutInfo) pendingTimeouts.get(localTID);
+        TimeoutInfo timeoutInfo = pendingTimeouts.get(localTID);
         if (timeoutInfo == null)
-            timeoutInfo = (TimeoutInfo) indoubtTimeouts.get(localTID);
+            timeoutInfo = indoubtTimeouts.get(localTID);
         long result = -1;
         if (timeoutInfo != null) {
             result = timeoutInfo.expireTime - new Date().getTime();
@@ -527,17 +497,13 @@ class TimeoutManager {
         // timeouts, there is nothing to quiesce so
         // shutdown immediately regardless.
 
-        if (immediate ||
-                pendingTimeouts == null || pendingTimeouts.isEmpty()) {
+        if (immediate || pendingTimeouts.isEmpty()) {
             if (timeoutThread != null) {
                 timeoutThread.stop();
             }
 
-            if (pendingTimeouts != null) {
-                pendingTimeouts.clear();
-            }
+            pendingTimeouts.clear();
 
-            pendingTimeouts = null;
             timeoutThread = null;
             timeoutActive = false;
         } else {
@@ -610,6 +576,14 @@ class TimeoutInfo extends Object {
     Long localTID = null;
     long expireTime = 0;
     int  timeoutType = TimeoutManager.NO_TIMEOUT;
+
+    // set under the TimeoutTable stripe lock when the timeout is replaced or
+    // removed; the timeout thread reads it without that lock, so it only
+    // tells the TimeoutWheel which timeouts it may drop
+    boolean cancelled = false;
+
+    // full turns of the TimeoutWheel left before the timeout is due
+    long rounds = 0;
 }
 
 /**
@@ -666,6 +640,13 @@ class TimeoutThread extends Thread {
         }
     }
 
+    /**
+     * Returns the interval between two timeout checks in milliseconds.
+     */
+    int getTimeoutInterval() {
+        return TIMEOUT_INTERVAL;
+    }
+
     /**
      * Performs timeout checking on a regular basis (every ten seconds or so).
      *
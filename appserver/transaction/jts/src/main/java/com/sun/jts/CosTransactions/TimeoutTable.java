@@ -0,0 +1,226 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.jts.CosTransactions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the timeouts of the TimeoutManager, keyed by local transaction id.
+ * <p>
+ * The table is split into stripes, each guarded by its own monitor, so that
+ * transactions beginning and completing on different threads rarely meet on
+ * the same lock, while a single thread pays no more than for the Hashtable
+ * the TimeoutManager used before. Every stripe also collects the timeouts
+ * added to it since the last check, which the timeout thread takes over and
+ * places in the TimeoutWheel. A transaction that completes before the next
+ * check therefore never reaches the wheel, and its timeout is unlinked from
+ * the new timeouts right away when it was the last one added to the stripe,
+ * which is the usual case for a short transaction. The other cancelled new
+ * timeouts are swept once they outnumber the live timeouts of the stripe.
+ */
+class TimeoutTable {
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    TimeoutTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Adds a timeout, replacing the one of the same transaction if any.
+     *
+     * @param timeoutInfo  The timeout, with its local transaction id set.
+     *
+     * @return  The replaced timeout, now cancelled, or null.
+     */
+    TimeoutInfo put(TimeoutInfo timeoutInfo) {
+        Stripe stripe = stripe(timeoutInfo.localTID);
+        synchronized (stripe) {
+            TimeoutInfo previous = stripe.timeouts.put(timeoutInfo.localTID, timeoutInfo);
+            if (previous != null) {
+                previous.cancelled = true;
+            }
+            if (stripe.newTimeouts.size() > 2 * stripe.timeouts.size() + 64) {
+                stripe.purgeNewTimeouts();
+            }
+            stripe.newTimeouts.add(timeoutInfo);
+            return previous;
+        }
+    }
+
+    /**
+     * Removes the timeout of a transaction.
+     *
+     * @param localTID  The local identifier for the transaction.
+     *
+     * @return  The removed timeout, now cancelled, or null.
+     */
+    TimeoutInfo remove(Long localTID) {
+        Stripe stripe = stripe(localTID);
+        synchronized (stripe) {
+            TimeoutInfo previous = stripe.timeouts.remove(localTID);
+            if (previous != null) {
+                previous.cancelled = true;
+                List<TimeoutInfo> newTimeouts = stripe.newTimeouts;
+                int last = newTimeouts.size() - 1;
+                if (last >= 0 && newTimeouts.get(last) == previous) {
+                    newTimeouts.remove(last);
+                }
+            }
+            return previous;
+        }
+    }
+
+    TimeoutInfo get(Long localTID) {
+        Stripe stripe = stripe(localTID);
+        synchronized (stripe) {
+            return stripe.timeouts.get(localTID);
+        }
+    }
+
+    /**
+     * Tells whether the timeout is still the one held for its transaction,
+     * that is whether it was neither replaced nor removed.
+     */
+    boolean isCurrent(TimeoutInfo timeoutInfo) {
+        return get(timeoutInfo.localTID) == timeoutInfo;
+    }
+
+    boolean isEmpty() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (!stripe.timeouts.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.timeouts.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns a snapshot of the timeouts in the table.
+     */
+    List<TimeoutInfo> values() {
+        List<TimeoutInfo> values = new ArrayList<TimeoutInfo>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                values.addAll(stripe.timeouts.values());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Moves the timeouts added since the last call to the given list,
+     * leaving out those already replaced or removed.
+     */
+    void drainNewTimeouts(List<TimeoutInfo> to) {
+        for (Stripe stripe : stripes) {
+            List<TimeoutInfo> added;
+            synchronized (stripe) {
+                if (stripe.newTimeouts.isEmpty()) {
+                    continue;
+                }
+                added = stripe.newTimeouts;
+                stripe.newTimeouts = new ArrayList<TimeoutInfo>();
+            }
+            for (TimeoutInfo timeoutInfo : added) {
+                if (!timeoutInfo.cancelled) {
+                    to.add(timeoutInfo);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes and cancels every timeout in the table.
+     */
+    void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (TimeoutInfo timeoutInfo : stripe.timeouts.values()) {
+                    timeoutInfo.cancelled = true;
+                }
+                stripe.timeouts.clear();
+                stripe.newTimeouts = new ArrayList<TimeoutInfo>();
+            }
+        }
+    }
+
+    private Stripe stripe(Long localTID) {
+        // take the top bits of the scrambled hash, the HashMap of the
+        // stripe indexes its buckets with the low ones
+        return stripes[(localTID.hashCode() * 0x9e3779b9) >>> (32 - STRIPE_BITS)];
+    }
+
+    private static final class Stripe {
+        final Map<Long, TimeoutInfo> timeouts = new HashMap<Long, TimeoutInfo>();
+        List<TimeoutInfo> newTimeouts = new ArrayList<TimeoutInfo>();
+
+        void purgeNewTimeouts() {
+            List<TimeoutInfo> live = new ArrayList<TimeoutInfo>();
+            for (TimeoutInfo timeoutInfo : newTimeouts) {
+                if (!timeoutInfo.cancelled) {
+                    live.add(timeoutInfo);
+                }
+            }
+            newTimeouts = live;
+        }
+    }
+}
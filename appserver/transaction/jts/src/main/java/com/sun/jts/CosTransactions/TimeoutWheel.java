@@ -0,0 +1,182 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.jts.CosTransactions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel holding the timeouts of the TimeoutManager.
+ * <p>
+ * Threads that begin or complete a transaction never touch the wheel itself:
+ * they only update the TimeoutTable, and on every check the timeout thread
+ * places the timeouts added since the previous check into their buckets.
+ * Each tick then looks only at the bucket of that tick instead of scanning
+ * every transaction in flight.
+ * <p>
+ * A timeout that is cancelled while in the wheel is only flagged. Flagged
+ * timeouts are dropped when their bucket comes up, and the whole wheel is
+ * swept for them as soon as it holds more than twice as many timeouts as
+ * the tables, so long timeouts of completed transactions do not pile up.
+ * <p>
+ * A timeout that expired is handed out again on every following tick until
+ * it is cancelled, which is what the periodic scan of the timeout tables
+ * used to do.
+ */
+class TimeoutWheel {
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final long tickMillis;
+    private final long startTime;
+    private final List<TimeoutInfo>[] buckets;
+
+    // next tick to be processed
+    private long currentTick = 0;
+
+    // number of timeouts in the buckets, cancelled ones included
+    private int size = 0;
+
+    TimeoutWheel(long tickMillis) {
+        this.tickMillis = tickMillis;
+        this.startTime = System.currentTimeMillis();
+        buckets = new List[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets[i] = new ArrayList<TimeoutInfo>();
+        }
+    }
+
+    /**
+     * Advances the wheel up to the given time.
+     *
+     * @param now  The current time in milliseconds.
+     * @param newTimeouts  The timeouts added since the previous call.
+     * @param live  The number of timeouts currently held by the tables.
+     *
+     * @return  The timeouts which have expired and were not cancelled.
+     */
+    synchronized List<TimeoutInfo> expire(long now, List<TimeoutInfo> newTimeouts, int live) {
+        for (TimeoutInfo timeoutInfo : newTimeouts) {
+            place(timeoutInfo, deadlineTick(timeoutInfo.expireTime));
+        }
+        if (size > 2 * live + WHEEL_SIZE) {
+            purge();
+        }
+
+        List<TimeoutInfo> expired = new ArrayList<TimeoutInfo>();
+        List<TimeoutInfo> early = null;
+        long nowTick = (now - startTime) / tickMillis;
+        while (currentTick <= nowTick) {
+            List<TimeoutInfo> bucket = buckets[(int) (currentTick & MASK)];
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                TimeoutInfo timeoutInfo = bucket.get(i);
+                if (timeoutInfo.cancelled) {
+                    removeAt(bucket, i);
+                } else if (timeoutInfo.rounds > 0) {
+                    timeoutInfo.rounds--;
+                } else {
+                    removeAt(bucket, i);
+                    if (now > timeoutInfo.expireTime) {
+                        expired.add(timeoutInfo);
+                    } else {
+                        if (early == null) {
+                            early = new ArrayList<TimeoutInfo>();
+                        }
+                        early.add(timeoutInfo);
+                    }
+                }
+            }
+            currentTick++;
+        }
+
+        // Expired timeouts stay in the wheel until they are cancelled,
+        // and are handed out again on the next tick.
+        for (TimeoutInfo info : expired) {
+            place(info, currentTick);
+        }
+        if (early != null) {
+            for (TimeoutInfo info : early) {
+                place(info, currentTick);
+            }
+        }
+        return expired;
+    }
+
+    private long deadlineTick(long expireTime) {
+        long delay = expireTime - startTime;
+        if (delay <= 0) {
+            return 0;
+        }
+        return (delay + tickMillis - 1) / tickMillis;
+    }
+
+    private void place(TimeoutInfo timeoutInfo, long tick) {
+        if (tick < currentTick) {
+            tick = currentTick;
+        }
+        timeoutInfo.rounds = (tick - currentTick) / WHEEL_SIZE;
+        buckets[(int) (tick & MASK)].add(timeoutInfo);
+        size++;
+    }
+
+    /**
+     * Drops the cancelled timeouts from every bucket.
+     */
+    private void purge() {
+        for (List<TimeoutInfo> bucket : buckets) {
+            for (int i = bucket.size() - 1; i >= 0; i--) {
+                if (bucket.get(i).cancelled) {
+                    removeAt(bucket, i);
+                }
+            }
+        }
+    }
+
+    private void removeAt(List<TimeoutInfo> bucket, int i) {
+        int last = bucket.size() - 1;
+        if (i != last) {
+            bucket.set(i, bucket.get(last));
+        }
+        bucket.remove(last);
+        size--;
+    }
+}
@@ -152,6 +152,21 @@ public class TransactionServiceProperties {
                                 jtsProperties.put("pending-txn-cleanup-interval", value);
                             }
         
+                        } else if (name.equals("log-group-commit")) {
+                            if (isValueSet(value)) {
+                                jtsProperties.put(Configuration.LOG_GROUP_COMMIT, value);
+                            }
+
+                        } else if (name.equals("log-group-commit-window")) {
+                            if (isValueSet(value)) {
+                                jtsProperties.put(Configuration.LOG_GROUP_COMMIT_WINDOW, value);
+                            }
+
+                        } else if (name.equals("log-group-commit-size")) {
+                            if (isValueSet(value)) {
+                                jtsProperties.put(Configuration.LOG_GROUP_COMMIT_SIZE, value);
+                            }
+
                         } else if (name.equals(Configuration.COMMIT_ONE_PHASE_DURING_RECOVERY)) {
                             if (isValueSet(value)) {
                                 jtsProperties.put(Configuration.COMMIT_ONE_PHASE_DURING_RECOVERY, value);
@@ -139,7 +139,9 @@ public interface WebContainerAvailability extends ConfigBeanProxy,
      *
      * The persistence scope used by the session persistence framework, when
      * persistence-type = "ha". Values may be "session", "modified-session",
-     * "modified-attribute". If it is missing, then the persistence-type will
+     * "modified-attribute", "fingerprinted-attribute". The latter also
+     * replicates attributes mutated in place, found by comparing a
+     * fingerprint of their serialized form. If it is missing, then the persistence-type will
      * revert to "memory".
      * 
      * @return possible object is
@@ -112,6 +112,12 @@ public class WebappClassLoader
 
     private static final ResourceBundle rb = logger.getResourceBundle();
 
+    static {
+        // Classes are loaded under a lock per class name rather than under
+        // the lock of the class loader
+        registerAsParallelCapable();
+    }
+
     /**
      * Set of package names which are not allowed to be loaded from a webapp
      * class loader without delegating first.
@@ -231,6 +237,15 @@ public class WebappClassLoader
      */
     protected List<String> jarNames = new ArrayList<String>();
 
+    /**
+     * Index of the JARs containing entries under each directory, keyed by
+     * directory path without trailing '/' and holding positions in
+     * <code>jarFiles</code> in search order. A path whose directory is not
+     * indexed is not contained in any JAR.
+     */
+    protected ConcurrentHashMap<String, int[]> jarIndex =
+        new ConcurrentHashMap<String, int[]>();
+
     /**
      * The list of JARs last modified dates, in the order they should be
      * searched for locally loaded classes or resources.
@@ -815,6 +830,7 @@ public class WebappClassLoader
             result2[i] = jarFiles[i];
         }
         result2[jarFiles.length] = jarFile;
+        indexJar(jarFile, jarFiles.length);
         jarFiles = result2;
 
         // Add the file to the list
@@ -827,6 +843,46 @@ public class WebappClassLoader
     }
 
 
+    /**
+     * Add the directories of the given JAR to the JAR index.
+     *
+     * @param jarFile the JAR
+     * @param position position of the JAR in <code>jarFiles</code>
+     */
+    private void indexJar(JarFile jarFile, int position) {
+        Set<String> directories = new HashSet<String>();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            directories.add(getJarIndexKey(entries.nextElement().getName()));
+        }
+        for (String directory : directories) {
+            int[] positions = jarIndex.get(directory);
+            if (positions == null) {
+                positions = new int[] { position };
+            } else {
+                positions = Arrays.copyOf(positions, positions.length + 1);
+                positions[positions.length - 1] = position;
+            }
+            jarIndex.put(directory, positions);
+        }
+    }
+
+
+    /**
+     * Return the JAR index key of the given entry path, which is the path of
+     * its parent directory. A trailing '/' is ignored, as
+     * <code>JarFile.getJarEntry</code> also finds directories without it.
+     */
+    private static String getJarIndexKey(String path) {
+        int end = path.length();
+        if (end > 0 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        int pos = path.lastIndexOf('/', end - 1);
+        return (pos <= 0) ? "" : path.substring(0, pos);
+    }
+
+
     /**
      * Have one or more classes or resources been modified so that a reload
      * is appropriate?
@@ -993,7 +1049,7 @@ public class WebappClassLoader
                 // Create the code source object
                 CodeSource codeSource =
                     new CodeSource(entry.codeBase, entry.certificates);
-                synchronized (this) {
+                synchronized (getClassLoadingLock(name)) {
                     if (entry.loadedClass == null) {
                         /* START GlassFish [680]
                         clazz = defineClass(name, entry.binaryContent, 0,
@@ -1457,7 +1513,20 @@ public class WebappClassLoader
      * @exception ClassNotFoundException if the class was not found
      */
     @Override
-    protected synchronized Class<?> loadClass(String name, boolean resolve)
+    protected Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+
+        synchronized (getClassLoadingLock(name)) {
+            return loadClass0(name, resolve);
+        }
+    }
+
+
+    /**
+     * Load the class with the specified name, holding the lock for that
+     * class name.
+     */
+    private Class<?> loadClass0(String name, boolean resolve)
         throws ClassNotFoundException {
 
         if (logger.isLoggable(Level.FINER)) {
@@ -1792,6 +1861,7 @@ public class WebappClassLoader
 
         notFoundResources.clear();
         resourceEntries.clear();
+        jarIndex.clear();
         resources = null;
         repositories = null;
         repositoryURLs = null;
@@ -2542,7 +2612,7 @@ public class WebappClassLoader
         if (entry == null)
                throw new ClassNotFoundException(name);
 
-        synchronized (this) {
+        synchronized (getClassLoadingLock(name)) {
             Class<?> clazz = entry.loadedClass;
             if (clazz != null)
                 return entry;
@@ -2646,9 +2716,7 @@ public class WebappClassLoader
         entry = findResourceInternalFromRepositories(name, path);
 
         if (entry == null) {
-            synchronized (jarFiles) {
-                entry = findResourceInternalFromJars(name, path);
-            }
+            entry = findResourceInternalFromJars(name, path);
         }
 
         if (entry == null) {
@@ -2770,13 +2838,25 @@ public class WebappClassLoader
         int contentLength = -1;
         InputStream binaryStream = null;
 
+        // Only the JARs with entries in the same directory need to be
+        // searched, and none of them if there are no such JARs
+        int[] positions = jarIndex.get(getJarIndexKey(path));
+        if (positions == null) {
+            return null;
+        }
+
         if (!openJARs()){
             return null;
         }
 
-        int jarFilesLength = jarFiles.length;
+        JarFile[] jarFiles = this.jarFiles;
+        int positionsLength = positions.length;
 
-        for (int i=0; (entry == null) && (i < jarFilesLength); i++) {
+        for (int p=0; (entry == null) && (p < positionsLength); p++) {
+            int i = positions[p];
+            if (i >= jarFiles.length) {
+                break;
+            }
             jarEntry = jarFiles[i].getJarEntry(path);
 
             if (jarEntry != null) {
@@ -3000,9 +3080,7 @@ public class WebappClassLoader
 
         ResourceEntry entry = resourceEntries.get(name);
         if (entry != null) {
-            synchronized(this) {
-                return entry.loadedClass;
-            }
+            return entry.loadedClass;
         }
         return (null);  // FIXME - findLoadedResource()
 
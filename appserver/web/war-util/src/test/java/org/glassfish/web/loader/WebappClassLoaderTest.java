@@ -0,0 +1,247 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.naming.resources.FileDirContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the parallel class loading and the JAR index of
+ * {@link WebappClassLoader}, using a web application with two JARs in
+ * WEB-INF/lib.
+ */
+public class WebappClassLoaderTest {
+
+    private static final String PAYLOAD = Payload.class.getName();
+
+    private File docBase;
+
+    private File jarA;
+
+    private File jarB;
+
+    private List<WebappClassLoader> loaders = new ArrayList<WebappClassLoader>();
+
+    @Before
+    public void setUp() throws Exception {
+        docBase = new File(System.getProperty("user.dir") + File.separator
+                + "target" + File.separator + "test-webapp-" + System.nanoTime());
+        File lib = new File(docBase, "WEB-INF" + File.separator + "lib");
+        assertTrue(lib.mkdirs());
+
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put(PAYLOAD.replace('.', '/') + ".class", classBytes(Payload.class));
+        entries.put("com/example/one/A.txt", "A".getBytes("UTF-8"));
+        jarA = createJar(new File(lib, "a.jar"), entries);
+
+        entries.clear();
+        entries.put("com/example/one/B.txt", "B".getBytes("UTF-8"));
+        entries.put("com/example/two/C.txt", "C".getBytes("UTF-8"));
+        entries.put("root.txt", "root".getBytes("UTF-8"));
+        jarB = createJar(new File(lib, "b.jar"), entries);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (WebappClassLoader loader : loaders) {
+            loader.closeJARs(true);
+            loader.close();
+        }
+        delete(docBase);
+    }
+
+    @Test
+    public void testConcurrentLoadClassDefinesOnce() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 20; round++) {
+                final WebappClassLoader loader = createLoader();
+                final CountDownLatch start = new CountDownLatch(1);
+                List<Future<Class<?>>> results = new ArrayList<Future<Class<?>>>();
+                for (int i = 0; i < threads; i++) {
+                    results.add(executor.submit(new Callable<Class<?>>() {
+                        @Override
+                        public Class<?> call() throws Exception {
+                            start.await();
+                            return loader.loadClass(PAYLOAD);
+                        }
+                    }));
+                }
+                start.countDown();
+
+                Class<?> first = results.get(0).get();
+                assertSame(loader, first.getClassLoader());
+                assertNotSame(Payload.class, first);
+                for (Future<Class<?>> result : results) {
+                    assertSame(first, result.get());
+                }
+                assertSame(first, loader.loadClass(PAYLOAD));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testJarIndexAfterCloseJARs() throws Exception {
+        WebappClassLoader loader = createLoader();
+
+        assertFromJar("a.jar", loader.findResource("com/example/one/A.txt"));
+
+        loader.closeJARs(true);
+        // Directories shared by both JARs search both, in order
+        assertFromJar("b.jar", loader.findResource("com/example/one/B.txt"));
+        assertFromJar("b.jar", loader.findResource("com/example/two/C.txt"));
+        assertFromJar("b.jar", loader.findResource("root.txt"));
+        assertNull(loader.findResource("com/example/one/D.txt"));
+        assertNull(loader.findResource("com/example/three/E.txt"));
+
+        loader.closeJARs(true);
+        Class<?> clazz = loader.loadClass(PAYLOAD);
+        assertSame(loader, clazz.getClassLoader());
+
+        loader.closeJARs(true);
+        InputStream in = loader.getResourceAsStream("com/example/two/C.txt");
+        assertNotNull(in);
+        try {
+            assertEquals('C', in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    private WebappClassLoader createLoader() throws IOException {
+        FileDirContext resources = new FileDirContext();
+        resources.setDocBase(docBase.getAbsolutePath());
+
+        WebappClassLoader loader =
+            new WebappClassLoader(getClass().getClassLoader());
+        loaders.add(loader);
+        loader.setResources(resources);
+        loader.addJar("/WEB-INF/lib/a.jar", new JarFile(jarA), jarA);
+        loader.addJar("/WEB-INF/lib/b.jar", new JarFile(jarB), jarB);
+        loader.start();
+        return loader;
+    }
+
+    private static void assertFromJar(String jarName, URL url) {
+        assertNotNull(url);
+        assertTrue(url.toString(), url.toString().contains(jarName + "!/"));
+    }
+
+    private static byte[] classBytes(Class<?> clazz) throws IOException {
+        String name = clazz.getName();
+        InputStream in = clazz.getResourceAsStream(
+            name.substring(name.lastIndexOf('.') + 1) + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File createJar(File file, Map<String, byte[]> entries)
+            throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Class packaged into a.jar, loaded by the web application loader
+     * itself since delegation is off.
+     */
+    public static class Payload {
+    }
+}
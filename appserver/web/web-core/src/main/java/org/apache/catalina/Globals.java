@@ -269,4 +269,42 @@ public final class Globals {
     public static final String ISO_8859_1_ENCODING = "ISO-8859-1";
 
     public static final String FACES_INITIALIZER = "com.sun.faces.config.FacesInitializer";
+
+
+    /**
+     * The request attribute that is set to <code>Boolean.TRUE</code> if
+     * the connector is able to hand a file region to the network layer
+     * without copying it (sendfile).
+     */
+    public static final String SENDFILE_SUPPORTED_ATTR =
+        "org.apache.tomcat.sendfile.support";
+
+
+    /**
+     * The request attribute that a servlet may set to the absolute path of
+     * a file, to have the connector send (a region of) that file as the
+     * response body once the servlet returns. The region is given by
+     * <code>SENDFILE_FILE_START_ATTR</code> and
+     * <code>SENDFILE_FILE_END_ATTR</code>.
+     */
+    public static final String SENDFILE_FILENAME_ATTR =
+        "org.apache.tomcat.sendfile.filename";
+
+
+    /**
+     * The request attribute holding the offset (a <code>Long</code>) of the
+     * first byte of the file region to send. If it is not set, the region
+     * starts at the beginning of the file.
+     */
+    public static final String SENDFILE_FILE_START_ATTR =
+        "org.apache.tomcat.sendfile.start";
+
+
+    /**
+     * The request attribute holding the offset (a <code>Long</code>) just
+     * past the last byte of the file region to send. If it is not set, the
+     * region ends at the end of the file.
+     */
+    public static final String SENDFILE_FILE_END_ATTR =
+        "org.apache.tomcat.sendfile.end";
 }
@@ -3606,4 +3606,20 @@ public class LogFacade {
             level = "WARNING"
     )
     public static final String REPOSITORY_PATH_CONTAIN_NULL_CHARACTER = prefix + "00550";
+
+    @LogMessageInfo(
+            message = "Exception generating session identifiers in the background",
+            level = "WARNING",
+            cause = "The random number generator failed",
+            action = "Check the security provider configuration"
+    )
+    public static final String SESSION_ID_GENERATION_EXCEPTION = prefix + "00551";
+
+    @LogMessageInfo(
+            message = "Not sending the file region requested via the sendfile request attributes: {0}",
+            level = "WARNING",
+            cause = "The sendfile request attributes set by a servlet do not describe a region of a readable file",
+            action = "Verify the file name and offsets the servlet sets"
+    )
+    public static final String INVALID_SENDFILE_ATTRIBUTES = prefix + "00552";
 }
@@ -17,6 +17,8 @@
 
 package org.apache.catalina.connector;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
@@ -198,6 +200,9 @@ public class CoyoteAdapter extends HttpHandler {
         try {
             doService(req, request, res, response, v3Enabled);
 
+            // Servlet may have asked for a file region to be sent
+            sendfile(request, response, res);
+
             // Request may want to initialize async processing
             request.onExitService();
         } catch (Throwable t) {
@@ -205,6 +210,81 @@ public class CoyoteAdapter extends HttpHandler {
         }
     }
 
+    /**
+     * Sends the file region a servlet has asked for via the sendfile
+     * request attributes (see <code>Globals.SENDFILE_FILENAME_ATTR</code>).
+     *
+     * The region is handed to Grizzly, which transfers it straight from
+     * the file to the socket, suspending the response until the transfer
+     * has completed. If the response has been committed in the meantime,
+     * or Grizzly refuses the transfer, the region is copied into the
+     * response instead, since the servlet has already set the headers for
+     * it. If the attributes do not describe a region of a readable file,
+     * an error is logged and, unless it has been committed, the response
+     * is turned into an empty 500 response.
+     */
+    private void sendfile(final Request request,
+                          final Response response,
+                          final org.glassfish.grizzly.http.server.Response res)
+            throws IOException {
+
+        Object filename = request.getAttribute(Globals.SENDFILE_FILENAME_ATTR);
+        if (filename == null || response.isError()
+                || request.isAsyncStarted()) {
+            return;
+        }
+
+        SendfileRegion region;
+        try {
+            region = SendfileRegion.of(filename,
+                    request.getAttribute(Globals.SENDFILE_FILE_START_ATTR),
+                    request.getAttribute(Globals.SENDFILE_FILE_END_ATTR));
+        } catch (IllegalArgumentException e) {
+            log.log(Level.WARNING, LogFacade.INVALID_SENDFILE_ATTRIBUTES,
+                    e.getMessage());
+            if (!res.isCommitted()) {
+                response.reset();
+                response.setStatus(
+                        HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                response.setContentLength(0);
+            }
+            return;
+        }
+
+        // Grizzly transfers at most 2GB per response
+        if (!res.isCommitted() && region.getLength() < Integer.MAX_VALUE) {
+            try {
+                res.getOutputBuffer().sendfile(region.getFile(),
+                        region.getStart(), region.getLength(), null);
+                return;
+            } catch (Exception e) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.log(Level.FINE, "Copying " + region.getFile()
+                            + " as sendfile failed", e);
+                }
+            }
+        }
+
+        final org.glassfish.grizzly.http.io.OutputBuffer outputBuffer =
+                res.getOutputBuffer();
+        region.copyTo(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                outputBuffer.writeByte(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                outputBuffer.write(b, off, len);
+            }
+        });
+
+        // Grizzly may have suspended the response before failing
+        if (res.isSuspended()) {
+            res.resume();
+        }
+    }
+
     private void enteringServletContainer(Request req, Response res) {
         if (interceptors == null)
             return;
@@ -22,6 +22,7 @@ import org.apache.catalina.LogFacade;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ResourceBundle;
 
 /**
@@ -114,6 +115,21 @@ public class CoyoteOutputStream
     }
 
 
+    /**
+     * Write the remaining bytes of the given buffer, without copying them
+     * into the output buffer first.
+     */
+    public void write(ByteBuffer byteBuffer)
+        throws IOException {
+        // Disallow operation if the object has gone out of scope
+        if (ob == null) {
+            throw new IllegalStateException(rb.getString(LogFacade.OBJECT_INVALID_SCOPE_EXCEPTION));
+        }
+
+        ob.write(byteBuffer);
+    }
+
+
     /**
      * Will send the buffer to the client.
      */
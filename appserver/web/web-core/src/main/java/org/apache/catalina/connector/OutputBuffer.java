@@ -19,6 +19,7 @@ package org.apache.catalina.connector;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.channels.InterruptedByTimeoutException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -299,6 +300,27 @@ public class OutputBuffer extends Writer
     }
 
 
+    /**
+     * Write the remaining bytes of the given buffer. The buffer is handed
+     * to the connector as is, without being copied.
+     */
+    public void write(ByteBuffer byteBuffer) throws IOException {
+
+        if (suspended)
+            return;
+
+        if (grizzlyOutputBuffer.isClosed())
+            return;
+        if (log.isLoggable(Level.FINE))
+            log.log(Level.FINE, "write(ByteBuffer)");
+
+        int len = byteBuffer.remaining();
+        grizzlyOutputBuffer.writeByteBuffer(byteBuffer);
+        bytesWritten += len;
+
+    }
+
+
     // XXX Char or byte ?
     public void writeByte(int b)
         throws IOException {
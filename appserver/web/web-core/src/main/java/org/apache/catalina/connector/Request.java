@@ -1167,6 +1167,11 @@ public class Request
         } else if (name.equals(Globals.CONSTRAINT_URI)) {
             return getRequestPathMB() != null
                     ? getRequestPathMB().toString() : null;
+        } else if (name.equals(Globals.SENDFILE_SUPPORTED_ATTR)) {
+            // Grizzly cannot transfer a file region over an encrypted
+            // connection without copying it
+            return Boolean.valueOf(coyoteRequest.getResponse().isSendFileEnabled()
+                    && !coyoteRequest.isSecure());
         }
 
         Object attr = attributes.get(name);
@@ -1801,7 +1806,7 @@ public class Request
 
         // Do the security check before any updates are made
         if (Globals.IS_SECURITY_ENABLED &&
-                name.equals("org.apache.tomcat.sendfile.filename")) {
+                name.equals(Globals.SENDFILE_FILENAME_ATTR)) {
             // Use the canonical file name to avoid any possible symlink and
             // relative path issues
             String canonicalPath;
@@ -0,0 +1,166 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.connector;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A region of a file that a servlet has asked the connector to send as the
+ * response body, via the sendfile request attributes (see
+ * <code>Globals.SENDFILE_FILENAME_ATTR</code>).
+ *
+ * The attributes are checked before anything is sent, so that a servlet
+ * setting them wrongly gets an error logged rather than a response whose
+ * body does not match its headers.
+ */
+final class SendfileRegion {
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final File file;
+    private final long start;
+    private final long end;
+
+    private SendfileRegion(File file, long start, long end) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Creates the region described by the values of the sendfile request
+     * attributes. A missing start offset stands for the beginning of the
+     * file, a missing end offset for the end of the file.
+     *
+     * @param filename The absolute path of the file (a <code>String</code>)
+     * @param start The offset of the first byte to send (a <code>Long</code>)
+     * or null
+     * @param end The offset just past the last byte to send (a
+     * <code>Long</code>) or null
+     *
+     * @return The region
+     *
+     * @throws IllegalArgumentException if the values do not describe a
+     * region of a readable file
+     */
+    static SendfileRegion of(Object filename, Object start, Object end) {
+
+        if (!(filename instanceof String)) {
+            throw new IllegalArgumentException(
+                "File name " + filename + " is not a String");
+        }
+        File file = new File((String) filename);
+        if (!file.isFile() || !file.canRead()) {
+            throw new IllegalArgumentException(
+                "File " + filename + " is not a readable file");
+        }
+        long length = file.length();
+        long from = offset(start, 0L, filename);
+        long to = offset(end, length, filename);
+        if (from < 0 || from > to || to > length) {
+            throw new IllegalArgumentException(
+                "Region " + from + "-" + to + " is not within the "
+                + length + " bytes of file " + filename);
+        }
+        return new SendfileRegion(file, from, to);
+
+    }
+
+    private static long offset(Object value, long defaultValue,
+                               Object filename) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Long)) {
+            throw new IllegalArgumentException(
+                "Offset " + value + " into file " + filename
+                + " is not a Long");
+        }
+        return ((Long) value).longValue();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getLength() {
+        return end - start;
+    }
+
+    /**
+     * Copies the region to the given stream, for when it cannot be handed
+     * to the network layer as it is.
+     */
+    void copyTo(OutputStream out) throws IOException {
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(
+                (int) Math.min(end - start, COPY_BUFFER_SIZE));
+            long position = start;
+            while (position < end) {
+                buffer.clear();
+                if (end - position < buffer.capacity()) {
+                    buffer.limit((int) (end - position));
+                }
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    break;
+                }
+                out.write(buffer.array(), 0, n);
+                position += n;
+            }
+        } finally {
+            fis.close();
+        }
+
+    }
+}
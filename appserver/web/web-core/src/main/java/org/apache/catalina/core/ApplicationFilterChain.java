@@ -79,6 +79,13 @@ final class ApplicationFilterChain implements FilterChain {
         new ApplicationFilterConfig[0];
 
 
+    /**
+     * Whether the filters array is shared with other chains, in which case
+     * it must be copied before it is modified.
+     */
+    private boolean sharedFilters = false;
+
+
     /**
      * The int which is used to maintain the current position 
      * in the filter chain.
@@ -309,20 +316,37 @@ final class ApplicationFilterChain implements FilterChain {
      * @param filterConfig The FilterConfig for the servlet to be executed
      */
     void addFilter(ApplicationFilterConfig filterConfig) {
-        if (n == filters.length) {
+        if (sharedFilters || n == filters.length) {
             ApplicationFilterConfig[] newFilters =
                 new ApplicationFilterConfig[n + INCREMENT];
             System.arraycopy(filters, 0, newFilters, 0, n);
             filters = newFilters;
+            sharedFilters = false;
         }
         filters[n++] = filterConfig;
     }
 
 
+    /**
+     * Set the filters that will be executed in this chain. The array is
+     * shared with other chains and is never modified.
+     *
+     * @param filters The FilterConfigs of the filters to be executed, in order
+     */
+    void setFilters(ApplicationFilterConfig[] filters) {
+        this.filters = filters;
+        this.n = filters.length;
+        this.sharedFilters = true;
+    }
+
+
     /**
      * Release references to the filters and wrapper executed by this chain.
      */
     void release() {
+        if (sharedFilters) {
+            filters = FilterChainCache.NO_FILTERS;
+        }
         n = 0;
         pos = 0;
         servlet = null;
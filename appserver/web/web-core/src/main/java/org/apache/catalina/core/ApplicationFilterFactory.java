@@ -25,7 +25,7 @@ import org.apache.catalina.deploy.FilterMap;
 import javax.servlet.DispatcherType;
 import javax.servlet.Servlet;
 import javax.servlet.ServletRequest;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
@@ -121,15 +121,46 @@ public final class ApplicationFilterFactory {
             requestPath = attribute.toString();
         }
 
+        // The matching filters are computed once per wrapper, dispatcher
+        // type and class of request path, and shared afterwards
+        ApplicationFilterConfig[] filters = context.getFilterChainCache()
+            .getFilters(wrapper, dispatcher, requestPath);
+
+        // START IASRI 4665318
+        // Create a filter chain only when there are filters to add
+        if (filters.length > 0) {
+            filterChain = internalCreateFilterChain(request, wrapper, servlet);
+            filterChain.setFilters(filters);
+        }
+        // END IASRI 4665318
+
+        // Return the completed filter chain
+        return (filterChain);
+
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+
+    /**
+     * Return the filters of the given mappings which apply to a request with
+     * the given target, dispatcher type and context relative path: first
+     * those mapped by URL pattern, then those mapped by servlet name, each
+     * in mapping order.
+     */
+    ApplicationFilterConfig[] findFilters(StandardContext context,
+            FilterMap[] filterMaps, Wrapper wrapper,
+            DispatcherType dispatcher, String requestPath) {
+
         // Acquire the information we will need to match filter mappings
         String servletName = wrapper.getName();
 
-        int n = 0;
+        List<ApplicationFilterConfig> filters =
+            new ArrayList<ApplicationFilterConfig>();
 
         // Add the relevant path-mapped filters to this filter chain
-        Iterator<FilterMap> i = filterMaps.iterator(); 
-        while (i.hasNext()) {
-            FilterMap filterMap = i.next();
+        for (FilterMap filterMap : filterMaps) {
             if (!filterMap.getDispatcherTypes().contains(dispatcher)) {
                 continue;
             }
@@ -148,20 +179,11 @@ public final class ApplicationFilterFactory {
                 // FIXME - log configuration problem
                 continue;
             }
-            // START IASRI 4665318
-            // Create a filter chain only when there are filters to add
-            if (filterChain == null)
-                filterChain = internalCreateFilterChain(request, wrapper,
-                                                        servlet);
-            // END IASRI 4665318
-            filterChain.addFilter(filterConfig);
-            n++;
+            filters.add(filterConfig);
         }
 
         // Add filters that match on servlet name second
-        i = filterMaps.iterator(); 
-        while (i.hasNext()) {
-            FilterMap filterMap = i.next();
+        for (FilterMap filterMap : filterMaps) {
             if (!filterMap.getDispatcherTypes().contains(dispatcher)) {
                 continue;
             }
@@ -173,18 +195,13 @@ public final class ApplicationFilterFactory {
                 // FIXME - log configuration problem
                 continue;
             }
-            // START IASRI 4665318
-            // Create a filter chain only when there are filters to add
-            if (filterChain == null)
-                filterChain = internalCreateFilterChain(request, wrapper,
-                                                        servlet);
-            // END IASRI 4665318
-            filterChain.addFilter(filterConfig);
-            n++;
+            filters.add(filterConfig);
         }
 
-        // Return the completed filter chain
-        return (filterChain);
+        if (filters.isEmpty()) {
+            return FilterChainCache.NO_FILTERS;
+        }
+        return filters.toArray(new ApplicationFilterConfig[filters.size()]);
 
     }
 
@@ -0,0 +1,294 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.core;
+
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.deploy.FilterMap;
+
+import javax.servlet.DispatcherType;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the filters to apply for a request, kept per context.
+ * <p>
+ * Which filter mappings match a request depends only on the target
+ * wrapper, the dispatcher type and, for URL pattern mappings, on three
+ * properties of the request path: whether it is equal to one of the
+ * mapped patterns, the longest mapped "/.../*" prefix it falls under, and
+ * its extension if some "*.ext" pattern is mapped for it. The cache is
+ * keyed on that class of path rather than on the path itself, so its size
+ * is bounded by the mappings of the application, and it holds the matching
+ * filters as an immutable array shared by all requests of the class.
+ * <p>
+ * The cache is dropped whenever filter mappings or filter configurations
+ * change.
+ *
+ * @see ApplicationFilterFactory
+ */
+final class FilterChainCache {
+
+    /**
+     * Number of chains kept before new ones stop being cached. Only paths
+     * with many distinct unmapped extensions can get near this.
+     */
+    private static final int MAX_CHAINS = 4096;
+
+    static final ApplicationFilterConfig[] NO_FILTERS =
+        new ApplicationFilterConfig[0];
+
+    private final StandardContext context;
+
+    private volatile Snapshot snapshot;
+
+    // Incremented on every invalidation, guarded by this
+    private int version;
+
+
+    FilterChainCache(StandardContext context) {
+        this.context = context;
+    }
+
+
+    /**
+     * Return the filters to execute, in order, for a request with the given
+     * target, dispatcher type and context relative path.
+     */
+    ApplicationFilterConfig[] getFilters(Wrapper wrapper,
+            DispatcherType dispatcher, String requestPath) {
+
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = createSnapshot();
+        }
+
+        ChainKey key = current.keyFor(wrapper, dispatcher, requestPath);
+        ApplicationFilterConfig[] filters = current.chains.get(key);
+        if (filters == null) {
+            filters = ApplicationFilterFactory.getInstance().findFilters(
+                context, current.filterMaps, wrapper, dispatcher,
+                requestPath);
+            if (current.chains.size() < MAX_CHAINS) {
+                current.chains.putIfAbsent(key, filters);
+            }
+        }
+        return filters;
+    }
+
+
+    /**
+     * Forget all cached chains, to be called when filter mappings or filter
+     * configurations change.
+     */
+    synchronized void invalidate() {
+        version++;
+        snapshot = null;
+    }
+
+
+    private Snapshot createSnapshot() {
+        int expectedVersion;
+        synchronized (this) {
+            expectedVersion = version;
+        }
+        Snapshot created = new Snapshot(context.findFilterMaps(),
+            context.isCaseSensitiveMapping());
+        synchronized (this) {
+            // Do not publish it if the mappings changed while it was built
+            if (expectedVersion == version) {
+                snapshot = created;
+            }
+        }
+        return created;
+    }
+
+
+    /**
+     * The URL patterns of the filter mappings at one point in time, and the
+     * chains computed from them.
+     */
+    private static final class Snapshot {
+
+        final FilterMap[] filterMaps;
+        final boolean caseSensitiveMapping;
+
+        // All URL patterns, matched literally
+        final Set<String> patterns = new HashSet<String>();
+        // Prefix of "/.../*" patterns other than "/*", without the "/*"
+        final String[] prefixes;
+        // Extension of "*.ext" patterns, without the "*."
+        final String[] extensions;
+
+        final ConcurrentHashMap<ChainKey, ApplicationFilterConfig[]> chains =
+            new ConcurrentHashMap<ChainKey, ApplicationFilterConfig[]>();
+
+        Snapshot(List<FilterMap> filterMapList, boolean caseSensitiveMapping) {
+            this.filterMaps =
+                filterMapList.toArray(new FilterMap[filterMapList.size()]);
+            this.caseSensitiveMapping = caseSensitiveMapping;
+
+            Set<String> prefixSet = new HashSet<String>();
+            Set<String> extensionSet = new HashSet<String>();
+            for (FilterMap filterMap : filterMaps) {
+                String pattern = filterMap.getURLPattern();
+                if (pattern == null) {
+                    continue;
+                }
+                if (!caseSensitiveMapping) {
+                    pattern = pattern.toLowerCase(Locale.ENGLISH);
+                }
+                patterns.add(pattern);
+                if (pattern.endsWith("/*")) {
+                    if (!pattern.equals("/*")) {
+                        prefixSet.add(
+                            pattern.substring(0, pattern.length() - 2));
+                    }
+                } else if (pattern.startsWith("*.")) {
+                    extensionSet.add(pattern.substring(2));
+                }
+            }
+            prefixes = prefixSet.toArray(new String[prefixSet.size()]);
+            extensions = extensionSet.toArray(new String[extensionSet.size()]);
+        }
+
+        ChainKey keyFor(Wrapper wrapper, DispatcherType dispatcher,
+                String requestPath) {
+
+            if (requestPath == null) {
+                return new ChainKey(wrapper, dispatcher, false, null, null,
+                                    null);
+            }
+            if (!caseSensitiveMapping) {
+                requestPath = requestPath.toLowerCase(Locale.ENGLISH);
+            }
+
+            String exact = patterns.contains(requestPath) ? requestPath : null;
+
+            String prefix = null;
+            for (String candidate : prefixes) {
+                if (requestPath.startsWith(candidate)
+                        && (requestPath.length() == candidate.length()
+                            || requestPath.charAt(candidate.length()) == '/')
+                        && (prefix == null
+                            || candidate.length() > prefix.length())) {
+                    prefix = candidate;
+                }
+            }
+
+            String extension = null;
+            int slash = requestPath.lastIndexOf('/');
+            int period = requestPath.lastIndexOf('.');
+            if ((slash >= 0) && (period > slash)
+                    && (period != requestPath.length() - 1)) {
+                int length = requestPath.length() - period - 1;
+                for (String candidate : extensions) {
+                    if (candidate.length() == length
+                            && requestPath.regionMatches(period + 1,
+                                   candidate, 0, length)) {
+                        extension = candidate;
+                        break;
+                    }
+                }
+            }
+
+            return new ChainKey(wrapper, dispatcher, true, exact, prefix,
+                                extension);
+        }
+    }
+
+
+    private static final class ChainKey {
+
+        private final Wrapper wrapper;
+        private final DispatcherType dispatcher;
+        private final boolean hasPath;
+        private final String exact;
+        private final String prefix;
+        private final String extension;
+        private final int hash;
+
+        ChainKey(Wrapper wrapper, DispatcherType dispatcher, boolean hasPath,
+                 String exact, String prefix, String extension) {
+            this.wrapper = wrapper;
+            this.dispatcher = dispatcher;
+            this.hasPath = hasPath;
+            this.exact = exact;
+            this.prefix = prefix;
+            this.extension = extension;
+            int h = System.identityHashCode(wrapper);
+            h = 31 * h + (dispatcher == null ? 0 : dispatcher.hashCode());
+            h = 31 * h + (hasPath ? 1 : 0);
+            h = 31 * h + (exact == null ? 0 : exact.hashCode());
+            h = 31 * h + (prefix == null ? 0 : prefix.hashCode());
+            h = 31 * h + (extension == null ? 0 : extension.hashCode());
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ChainKey)) {
+                return false;
+            }
+            ChainKey other = (ChainKey) o;
+            return wrapper == other.wrapper
+                && dispatcher == other.dispatcher
+                && hasPath == other.hasPath
+                && equal(exact, other.exact)
+                && equal(prefix, other.prefix)
+                && equal(extension, other.extension);
+        }
+
+        private static boolean equal(String a, String b) {
+            return (a == null) ? b == null : a.equals(b);
+        }
+    }
+}
@@ -327,6 +327,13 @@ public class StandardContext
      */
     private List<FilterMap> filterMaps = new ArrayList<FilterMap>();
 
+    /**
+     * The filters matching each kind of request, computed from the filter
+     * mappings and filter configurations above.
+     */
+    private final FilterChainCache filterChainCache =
+        new FilterChainCache(this);
+
     /**
      * The list of classnames of InstanceListeners that will be added
      * to each newly created Wrapper by <code>createWrapper()</code>.
@@ -557,6 +564,12 @@ public class StandardContext
      */
     protected int cacheTTL = 5000;
 
+    /**
+     * Class name of the static resource cache, null for the default
+     * {@link org.apache.naming.resources.ConcurrentResourceCache}.
+     */
+    protected String cacheClassName = null;
+
     /**
      * Non proxied resources.
      */
@@ -771,6 +784,7 @@ public class StandardContext
      */
     public void setCaseSensitiveMapping(boolean caseSensitiveMap) {
         caseSensitiveMapping = caseSensitiveMap;
+        filterChainCache.invalidate();
     }
 
     /**
@@ -823,6 +837,21 @@ public class StandardContext
         this.cacheMaxSize = cacheMaxSize;
     }
 
+    /**
+     * Return the class name of the static resource cache.
+     */
+    public String getCacheClassName() {
+        return cacheClassName;
+    }
+
+    /**
+     * Set the class name of the static resource cache, e.g.
+     * org.apache.naming.resources.ResourceCache.
+     */
+    public void setCacheClassName(String cacheClassName) {
+        this.cacheClassName = cacheClassName;
+    }
+
     /**
      * Return the "follow standard delegation model" flag used to configure
      * our ClassLoader.
@@ -1809,6 +1838,7 @@ public class StandardContext
             baseDirContext.setCached(isCachingAllowed());
             baseDirContext.setCacheTTL(getCacheTTL());
             baseDirContext.setCacheMaxSize(getCacheMaxSize());
+            baseDirContext.setCacheClassName(getCacheClassName());
         }
         if (resources instanceof FileDirContext) {
             filesystemBased = true;
@@ -1844,6 +1874,7 @@ public class StandardContext
             ((BaseDirContext) resources).setCached(isCachingAllowed());
             ((BaseDirContext) resources).setCacheTTL(getCacheTTL());
             ((BaseDirContext) resources).setCacheMaxSize(getCacheMaxSize());
+            ((BaseDirContext) resources).setCacheClassName(getCacheClassName());
         }
         if (resources instanceof FileDirContext) {
             filesystemBased = true;
@@ -2479,6 +2510,7 @@ public class StandardContext
         } else {
             filterMaps.add(0, filterMap);
         }
+        filterChainCache.invalidate();
 
         if (notifyContainerListeners) {
             fireContainerEvent("addFilterMap", filterMap);
@@ -4023,6 +4055,13 @@ public class StandardContext
         return filterMaps;
     }
 
+    /**
+     * Return the cache of filters matching each kind of request.
+     */
+    FilterChainCache getFilterChainCache() {
+        return filterChainCache;
+    }
+
     /**
      * Return the list of InstanceListener classes that will be added to
      * newly created Wrappers automatically.
@@ -4476,6 +4515,7 @@ public class StandardContext
             throw new IllegalArgumentException(rb.getString(LogFacade.NO_WRAPPER_EXCEPTION));
 
         super.removeChild(child);
+        filterChainCache.invalidate();
     }
 
     /**
@@ -4584,6 +4624,7 @@ public class StandardContext
             }
         }
         filterMaps.clear();
+        filterChainCache.invalidate();
     }
 
     /**
@@ -4946,6 +4987,7 @@ public class StandardContext
                 }
             }
         }
+        filterChainCache.invalidate();
 
         return (ok);
 
@@ -4973,6 +5015,7 @@ public class StandardContext
             }
             filterConfigs.clear();
         }
+        filterChainCache.invalidate();
         return (true);
     }
 
@@ -35,6 +35,8 @@ import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.AccessController;
 import java.text.MessageFormat;
 import java.util.*;
@@ -63,6 +65,7 @@ import javax.xml.transform.stream.StreamSource;
 
 import org.apache.catalina.Globals;
 import org.apache.catalina.LogFacade;
+import org.apache.catalina.connector.CoyoteOutputStream;
 import org.apache.catalina.core.ContextsAdapterUtility;
 import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.URLEncoder;
@@ -224,6 +227,32 @@ public class DefaultServlet
      * Minimum size for sendfile usage in bytes.
      */
     protected int sendfileSize = 48 * 1024;
+
+
+    /**
+     * Maximum size (in bytes) of a file region that is written from a
+     * memory mapping of the file, rather than read through a stream.
+     * 0 disables memory mapping.
+     */
+    protected int mapSize = 0;
+
+
+    /**
+     * Should pre-compressed variants of a resource (<code>.br</code> and
+     * <code>.gz</code> files next to it) be served to clients accepting
+     * them?
+     */
+    protected boolean precompressed = false;
+
+
+    /**
+     * The content codings of pre-compressed variants, and the extensions
+     * of the files holding them, in order of preference.
+     */
+    private static final String[][] PRECOMPRESSED_VARIANTS = {
+        { "br", ".br" },
+        { "gzip", ".gz" }
+    };
     
     
     /**
@@ -327,6 +356,12 @@ public class DefaultServlet
             sendfileSize = 
                 Integer.parseInt(sc.getInitParameter("sendfileSize")) * 1024;
 
+        if (sc.getInitParameter("mapSize") != null)
+            mapSize = Integer.parseInt(sc.getInitParameter("mapSize")) * 1024;
+
+        if (sc.getInitParameter("precompressed") != null)
+            precompressed = Boolean.parseBoolean(sc.getInitParameter("precompressed"));
+
         if (sc.getInitParameter("maxHeaderRangeItems") != null) {
             maxHeaderRangeItems = 
                 Integer.parseInt(sc.getInitParameter("maxHeaderRangeItems"));
@@ -779,21 +814,8 @@ public class DefaultServlet
                     path + "' headers only");
         }
 
-        CacheEntry cacheEntry = null;
         ProxyDirContext proxyDirContext = resources;
-        if (alternateDocBases == null
-                || alternateDocBases.size() == 0) {
-            cacheEntry = proxyDirContext.lookupCache(path);
-        } else {
-            AlternateDocBase match = AlternateDocBase.findMatch(
-                                            path, alternateDocBases);
-            if (match != null) {
-                cacheEntry = ((ProxyDirContext) ContextsAdapterUtility.unwrap(match.getResources())).lookupCache(path);
-            } else {
-                // None of the url patterns for alternate docbases matched
-                cacheEntry = proxyDirContext.lookupCache(path);
-            }
-        }
+        CacheEntry cacheEntry = lookupCache(path);
 
         if (!cacheEntry.exists) {
             // Check if we're included so we can return the appropriate 
@@ -849,13 +871,31 @@ public class DefaultServlet
             }
         }
 
+        // Find content type.
+        String contentType = cacheEntry.attributes.getMimeType();
+        if (contentType == null && !cacheEntry.attributes.isMimeTypeInitialized()) {
+            contentType = getServletContext().getMimeType(cacheEntry.name);
+            cacheEntry.attributes.setMimeType(contentType);
+        }
+
         // Check if the conditions specified in the optional If headers are
         // satisfied.
         if (cacheEntry.context == null) {
 
-            // Checking If headers
             boolean included =
                 (request.getAttribute(RequestDispatcher.INCLUDE_CONTEXT_PATH) != null);
+
+            // Serve a pre-compressed variant instead, if there is one the
+            // client accepts. It keeps the content type of the resource.
+            if (precompressed && !included) {
+                CacheEntry variant =
+                    findPrecompressedVariant(request, response, path);
+                if (variant != null) {
+                    cacheEntry = variant;
+                }
+            }
+
+            // Checking If headers
             if (!included
                 && !checkIfHeaders(request, response, cacheEntry.attributes)) {
                 return;
@@ -863,13 +903,6 @@ public class DefaultServlet
 
         }
 
-        // Find content type.
-        String contentType = cacheEntry.attributes.getMimeType();
-        if (contentType == null && !cacheEntry.attributes.isMimeTypeInitialized()) {
-            contentType = getServletContext().getMimeType(cacheEntry.name);
-            cacheEntry.attributes.setMimeType(contentType);
-        }
-
         ArrayList<Range> ranges = null;
         long contentLength = -1L;
 
@@ -1065,6 +1098,102 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Look up the cache entry of the resource with the given path, taking
+     * alternate docroots into account.
+     *
+     * @param path The path of the resource
+     * @return The cache entry
+     */
+    private CacheEntry lookupCache(String path) {
+        if (alternateDocBases == null
+                || alternateDocBases.size() == 0) {
+            return resources.lookupCache(path);
+        }
+        AlternateDocBase match = AlternateDocBase.findMatch(
+                                        path, alternateDocBases);
+        if (match != null) {
+            return ((ProxyDirContext) ContextsAdapterUtility.unwrap(match.getResources())).lookupCache(path);
+        }
+        // None of the url patterns for alternate docbases matched
+        return resources.lookupCache(path);
+    }
+
+
+    /**
+     * Find the pre-compressed variant of a resource to serve to the client,
+     * and set the Content-Encoding header accordingly. The Vary header is
+     * set whenever the resource has a pre-compressed variant, whether or not
+     * the client accepts it.
+     *
+     * @param request The servlet request we are processing
+     * @param response The servlet response we are creating
+     * @param path The path of the resource
+     * @return The cache entry of the variant to serve, or null if the
+     * resource itself is to be served
+     */
+    protected CacheEntry findPrecompressedVariant(HttpServletRequest request,
+                                                  HttpServletResponse response,
+                                                  String path) {
+
+        CacheEntry found = null;
+        boolean hasVariants = false;
+        for (String[] variant : PRECOMPRESSED_VARIANTS) {
+            CacheEntry entry = lookupCache(path + variant[1]);
+            if (!entry.exists || entry.context != null) {
+                continue;
+            }
+            hasVariants = true;
+            if (found == null && acceptsEncoding(request, variant[0])) {
+                found = entry;
+                response.setHeader("Content-Encoding", variant[0]);
+            }
+        }
+        if (hasVariants) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        return found;
+
+    }
+
+
+    /**
+     * Does the Accept-Encoding header of the given request accept the
+     * given content coding (with a non-zero quality)?
+     */
+    private boolean acceptsEncoding(HttpServletRequest request,
+                                    String encoding) {
+
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        while (headers.hasMoreElements()) {
+            StringTokenizer codings =
+                new StringTokenizer(headers.nextElement(), ",");
+            while (codings.hasMoreTokens()) {
+                String coding = codings.nextToken();
+                String params = "";
+                int semicolon = coding.indexOf(';');
+                if (semicolon >= 0) {
+                    params = coding.substring(semicolon + 1).trim();
+                    coding = coding.substring(0, semicolon);
+                }
+                if (!encoding.equalsIgnoreCase(coding.trim())) {
+                    continue;
+                }
+                if (params.startsWith("q=")) {
+                    try {
+                        return Float.parseFloat(params.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+
+    }
+
+
     /**
      * Parse the content-range header.
      *
@@ -1878,17 +2007,19 @@ public class DefaultServlet
         if ((sendfileSize > 0)
             && (entry.resource != null)
             && ((length > sendfileSize) || (entry.resource.getContent() == null))
+            // Grizzly transfers at most 2GB per request
+            && (length < Integer.MAX_VALUE)
             && (entry.attributes.getCanonicalPath() != null)
-            && (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support")))
+            && (Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR)))
             && (request.getClass().getName().equals("org.apache.catalina.connector.RequestFacade"))
             && (response.getClass().getName().equals("org.apache.catalina.connector.ResponseFacade"))) {
-            request.setAttribute("org.apache.tomcat.sendfile.filename", entry.attributes.getCanonicalPath());
+            request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, entry.attributes.getCanonicalPath());
             if (range == null) {
-                request.setAttribute("org.apache.tomcat.sendfile.start", Long.valueOf(0L));
-                request.setAttribute("org.apache.tomcat.sendfile.end", Long.valueOf(length));
+                request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(0L));
+                request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(length));
             } else {
-                request.setAttribute("org.apache.tomcat.sendfile.start", Long.valueOf(range.start));
-                request.setAttribute("org.apache.tomcat.sendfile.end", Long.valueOf(range.end + 1));
+                request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, Long.valueOf(range.start));
+                request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, Long.valueOf(range.end + 1));
             }
             request.setAttribute("org.apache.tomcat.sendfile.token", this);
             return true;
@@ -2096,7 +2227,20 @@ public class DefaultServlet
         if (cacheEntry.resource != null) {
             byte buffer[] = cacheEntry.resource.getContent();
             if (buffer != null) {
-                ostream.write(buffer, 0, buffer.length);
+                if (ostream instanceof CoyoteOutputStream) {
+                    // Hand the connector a view of the cached content instead
+                    // of copying it again for every request
+                    ((CoyoteOutputStream) ostream).write(
+                        cacheEntry.resource.getContentBuffer());
+                } else {
+                    ostream.write(buffer, 0, buffer.length);
+                }
+                return;
+            }
+            String file = cacheEntry.attributes.getCanonicalPath();
+            if (file != null) {
+                copyRange(file, ostream, 0,
+                          cacheEntry.attributes.getContentLength() - 1);
                 return;
             }
             resourceInputStream = cacheEntry.resource.streamContent();
@@ -2181,6 +2325,12 @@ public class DefaultServlet
                         Range range)
         throws IOException {
 
+        String file = cacheEntry.attributes.getCanonicalPath();
+        if (file != null) {
+            copyRange(file, ostream, range.start, range.end);
+            return;
+        }
+
         IOException exception = null;
 
         InputStream resourceInputStream = cacheEntry.resource.streamContent();
@@ -2255,35 +2405,55 @@ public class DefaultServlet
 
         IOException exception = null;
 
-        while ( (exception == null) && (ranges.hasNext()) ) {
+        // A file is opened once, for all ranges
+        String file = cacheEntry.attributes.getCanonicalPath();
+        FileInputStream fis = null;
+        if (file != null) {
+            fis = new FileInputStream(file);
+        }
 
-            InputStream resourceInputStream = cacheEntry.resource.streamContent();
-            InputStream istream = null;
-            try {
-                istream = 
-                    new BufferedInputStream(resourceInputStream, input);
+        try {
+            while ( (exception == null) && (ranges.hasNext()) ) {
+
+                InputStream istream = null;
+                try {
+                    if (fis == null) {
+                        istream = new BufferedInputStream(
+                            cacheEntry.resource.streamContent(), input);
+                    }
 
-                Range currentRange = ranges.next();
+                    Range currentRange = ranges.next();
 
-                // Writing MIME header.
-                ostream.println();
-                ostream.println("--" + mimeSeparation);
-                if (contentType != null)
-                    ostream.println("Content-Type: " + contentType);
-                ostream.println("Content-Range: bytes " + currentRange.start
-                               + "-" + currentRange.end + "/"
-                               + currentRange.length);
-                ostream.println();
+                    // Writing MIME header.
+                    ostream.println();
+                    ostream.println("--" + mimeSeparation);
+                    if (contentType != null)
+                        ostream.println("Content-Type: " + contentType);
+                    ostream.println("Content-Range: bytes " + currentRange.start
+                                   + "-" + currentRange.end + "/"
+                                   + currentRange.length);
+                    ostream.println();
 
-                // Printing content
-                exception = copyRange(istream, ostream, currentRange.start,
-                                      currentRange.end);
+                    // Printing content
+                    if (fis != null) {
+                        copyRange(fis.getChannel(), ostream,
+                                  currentRange.start, currentRange.end);
+                    } else {
+                        exception = copyRange(istream, ostream,
+                                              currentRange.start,
+                                              currentRange.end);
+                    }
 
-            } finally {
-                if (istream != null) {
-                    istream.close();
+                } finally {
+                    if (istream != null) {
+                        istream.close();
+                    }
                 }
             }
+        } finally {
+            if (fis != null) {
+                fis.close();
+            }
         }
 
         ostream.println();
@@ -2473,6 +2643,83 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Copy the specified range of the specified file to the specified
+     * output stream.
+     *
+     * @param file The path of the file to read from
+     * @param ostream The output stream to write to
+     * @param start Start of the range which will be copied
+     * @param end End of the range which will be copied
+     * @exception IOException if an input/output error occurs
+     */
+    protected void copyRange(String file, ServletOutputStream ostream,
+                             long start, long end)
+        throws IOException {
+
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            copyRange(fis.getChannel(), ostream, start, end);
+        } finally {
+            fis.close();
+        }
+
+    }
+
+
+    /**
+     * Copy the specified range of the file behind the specified channel to
+     * the specified output stream. The file is read at the given positions
+     * rather than skipped to, so the channel may be used for several ranges.
+     *
+     * Ranges of at most <code>mapSize</code> bytes are memory mapped and
+     * handed to the connector as they are, without being copied into the
+     * heap (the file must not be truncated while the response is being
+     * written).
+     *
+     * @param channel The channel to read from
+     * @param ostream The output stream to write to
+     * @param start Start of the range which will be copied
+     * @param end End of the range which will be copied
+     * @exception IOException if an input/output error occurs
+     */
+    protected void copyRange(FileChannel channel, ServletOutputStream ostream,
+                             long start, long end)
+        throws IOException {
+
+        if (debug > 10)
+            log("Serving bytes:" + start + "-" + end);
+
+        long length = end - start + 1;
+        if (length <= 0) {
+            return;
+        }
+
+        if ((length <= mapSize) && (ostream instanceof CoyoteOutputStream)) {
+            ((CoyoteOutputStream) ostream).write(
+                channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+            return;
+        }
+
+        byte buffer[] = new byte[input];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long position = start;
+        while (position <= end) {
+            byteBuffer.clear();
+            if (end - position + 1 < buffer.length) {
+                byteBuffer.limit((int) (end - position + 1));
+            }
+            int len = channel.read(byteBuffer, position);
+            if (len < 0) {
+                break;
+            }
+            ostream.write(buffer, 0, len);
+            position += len;
+        }
+
+    }
+
+
     /**
      * Copy the contents of the specified input stream to the specified
      * output stream, and ensure that both streams are closed before returning
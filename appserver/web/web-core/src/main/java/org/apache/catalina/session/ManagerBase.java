@@ -18,7 +18,6 @@
 package org.apache.catalina.session;
 
 import com.sun.enterprise.util.uuid.UuidGenerator;
-import com.sun.enterprise.util.uuid.UuidGeneratorImpl;
 import org.apache.catalina.*;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.core.StandardHost;
@@ -39,6 +38,8 @@ import java.security.PrivilegedAction;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 //end HERCULES:added
@@ -132,7 +133,16 @@ public abstract class ManagerBase implements Manager {
      * when generating universally unique session identifiers.
      * HERCULES: add
      */
-    protected UuidGenerator uuidGenerator = new UuidGeneratorImpl();     
+    protected UuidGenerator uuidGenerator =
+        PooledSessionIdGenerator.getInstance();
+
+
+    /**
+     * Number of session identifiers generated, and the time it took.
+     */
+    private final LongAdder sessionIdCount = new LongAdder();
+    private final LongAdder sessionIdNanos = new LongAdder();
+    private final AtomicLong sessionIdMaxNanos = new AtomicLong();
 
 
     /**
@@ -910,19 +920,64 @@ public abstract class ManagerBase implements Manager {
      * Generate and return a new session identifier.
      * Hercules:added
      */
-    protected synchronized String generateSessionId(Object obj) {
-        return uuidGenerator.generateUuid(obj);
+    protected String generateSessionId(Object obj) {
+        long start = System.nanoTime();
+        String id;
+        UuidGenerator generator = uuidGenerator;
+        if (generator instanceof PooledSessionIdGenerator) {
+            id = generator.generateUuid(obj);
+        } else {
+            // Custom generators have always been called one at a time
+            synchronized (this) {
+                id = generator.generateUuid(obj);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        sessionIdCount.increment();
+        sessionIdNanos.add(elapsed);
+        long max = sessionIdMaxNanos.get();
+        while (elapsed > max
+                && !sessionIdMaxNanos.compareAndSet(max, elapsed)) {
+            max = sessionIdMaxNanos.get();
+        }
+        return id;
     }   
     
     /**
      * Generate and return a new session identifier.
      * Hercules:modified
      */
-    protected synchronized String generateSessionId() {
+    protected String generateSessionId() {
         return generateSessionId(new Object());
     }    
 
 
+    /**
+     * Return the number of session identifiers generated by this Manager.
+     */
+    public long getSessionIdGenerationCount() {
+        return sessionIdCount.sum();
+    }
+
+
+    /**
+     * Return the total time spent generating session identifiers, in
+     * nanoseconds.
+     */
+    public long getSessionIdGenerationNanos() {
+        return sessionIdNanos.sum();
+    }
+
+
+    /**
+     * Return the longest time spent generating a session identifier, in
+     * nanoseconds.
+     */
+    public long getSessionIdGenerationMaxNanos() {
+        return sessionIdMaxNanos.get();
+    }
+
+
     // ------------------------------------------------------ Protected Methods
 
 
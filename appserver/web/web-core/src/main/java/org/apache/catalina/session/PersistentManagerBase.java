@@ -29,9 +29,18 @@ import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 /**
@@ -202,6 +211,63 @@ public abstract class PersistentManagerBase
     // END SJSAS 6406580
 
 
+    /**
+     * Whether sessions handed to <code>queueWrite</code> are written to the
+     * Store by background threads instead of the request thread.
+     */
+    private boolean writeBehind = false;
+
+
+    /**
+     * The maximum time in milliseconds a queued session may wait before
+     * it is written to the Store.
+     */
+    private int writeBehindWindow = 1000;
+
+
+    /**
+     * The maximum number of sessions written by one background task.
+     */
+    private int writeBehindBatchSize = 100;
+
+
+    /**
+     * The number of background threads writing queued sessions.
+     */
+    private int writeBehindThreads = 2;
+
+
+    /**
+     * Sessions waiting to be written, keyed by session identifier. A
+     * session queued again before it was written is only written once.
+     */
+    private final ConcurrentHashMap<String, Session> pendingWrites
+        = new ConcurrentHashMap<String, Session>();
+
+
+    /**
+     * Sessions being written by a background thread, keyed by session
+     * identifier. A session is never written by two threads at once.
+     */
+    private final ConcurrentHashMap<String, Session> inFlightWrites
+        = new ConcurrentHashMap<String, Session>();
+
+
+    /**
+     * Identifiers of the sessions removed while a background thread was
+     * writing them. That thread removes them from the Store again once
+     * the write is done, so the write cannot bring them back.
+     */
+    private final ConcurrentHashMap<String, Boolean> removedWrites
+        = new ConcurrentHashMap<String, Boolean>();
+
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+
+    private volatile ScheduledThreadPoolExecutor writeBehindExecutor;
+
+
     // ------------------------------------------------------------- Properties
 
     /**
@@ -322,6 +388,95 @@ public abstract class PersistentManagerBase
     }
 
 
+    /**
+     * Is write-behind of queued sessions enabled?
+     */
+    public boolean isWriteBehind() {
+
+        return writeBehind;
+
+    }
+
+
+    /**
+     * Enables or disables write-behind: when enabled, sessions handed to
+     * <code>queueWrite</code> are coalesced by id and written to the Store
+     * in batches by background threads. Takes effect on the next start.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+
+        this.writeBehind = writeBehind;
+
+    }
+
+
+    /**
+     * The maximum time in milliseconds a queued session may wait before
+     * it is written to the Store.
+     */
+    public int getWriteBehindWindow() {
+
+        return writeBehindWindow;
+
+    }
+
+
+    /**
+     * Sets the maximum time in milliseconds a queued session may wait
+     * before it is written to the Store; this bounds how much is lost if
+     * the server fails.
+     */
+    public void setWriteBehindWindow(int window) {
+
+        if (window > 0)
+            this.writeBehindWindow = window;
+
+    }
+
+
+    /**
+     * The maximum number of sessions written by one background task.
+     */
+    public int getWriteBehindBatchSize() {
+
+        return writeBehindBatchSize;
+
+    }
+
+
+    /**
+     * Sets the maximum number of sessions written by one background task.
+     * A flush is also started as soon as that many sessions are queued.
+     */
+    public void setWriteBehindBatchSize(int batchSize) {
+
+        if (batchSize > 0)
+            this.writeBehindBatchSize = batchSize;
+
+    }
+
+
+    /**
+     * The number of background threads writing queued sessions.
+     */
+    public int getWriteBehindThreads() {
+
+        return writeBehindThreads;
+
+    }
+
+
+    /**
+     * Sets the number of background threads writing queued sessions.
+     */
+    public void setWriteBehindThreads(int threads) {
+
+        if (threads > 0)
+            this.writeBehindThreads = threads;
+
+    }
+
+
     /**
      * Set the Container with which this Manager has been associated.  If
      * it is a Context (the usual case), listen for changes to the session
@@ -822,7 +977,13 @@ public abstract class PersistentManagerBase
         super.remove (session);
 
         if (persistentRemove && store != null){
-            removeSession(session.getIdInternal());
+            String id = session.getIdInternal();
+            removedWrites.put(id, Boolean.TRUE);
+            pendingWrites.remove(id);
+            if (!inFlightWrites.containsKey(id)) {
+                removedWrites.remove(id);
+            }
+            removeSession(id);
         }
     }    
     
@@ -940,6 +1101,12 @@ public abstract class PersistentManagerBase
      */
     protected Session swapIn(String id, String version) throws IOException {
 
+        // A session waiting to be written is newer than the stored copy
+        Session pending = findPendingWrite(id, version);
+        if (pending != null) {
+            return pending;
+        }
+
         ClassLoader webappCl = null;
         ClassLoader curCl = null;
 
@@ -1100,6 +1267,268 @@ public abstract class PersistentManagerBase
     }
 
 
+    /**
+     * Queue the given session to be written to the Store by a background
+     * thread within <code>writeBehindWindow</code> milliseconds. Does
+     * nothing and returns <code>false</code> if write-behind is not
+     * enabled, in which case the caller must write the session itself.
+     *
+     * @param session The Session to write out
+     */
+    public boolean queueWrite(Session session) {
+
+        if (writeBehindExecutor == null) {
+            return false;
+        }
+        pendingWrites.put(session.getIdInternal(), session);
+        if (pendingWrites.size() >= writeBehindBatchSize
+                && flushRequested.compareAndSet(false, true)) {
+            try {
+                writeBehindExecutor.execute(new Runnable() {
+                    public void run() {
+                        flushRequested.set(false);
+                        flushPendingWrites();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Stopping; the remaining sessions are written by stop()
+                flushRequested.set(false);
+            }
+        }
+        return true;
+
+    }
+
+
+    /**
+     * Return the session with the given id that is waiting to be (or being)
+     * written to the Store, after putting it back among the active sessions
+     * if it had been removed from them, or <code>null</code> if there is
+     * none.
+     *
+     * @param id The session id
+     * @param version The requested session version, or <code>null</code>
+     */
+    protected Session findPendingWrite(String id, String version) {
+
+        Session session = pendingWrites.get(id);
+        if (session == null) {
+            session = inFlightWrites.get(id);
+        }
+        if (session == null || !session.isValid()
+                || removedWrites.containsKey(id)) {
+            return null;
+        }
+        if (version != null) {
+            long requiredVersion;
+            try {
+                requiredVersion = Long.parseLong(version);
+            } catch (NumberFormatException e) {
+                requiredVersion = -1L;
+            }
+            if (session.getVersion() < requiredVersion) {
+                // Superseded elsewhere: must not overwrite the stored copy
+                pendingWrites.remove(id, session);
+                return null;
+            }
+        }
+        if (sessions.get(id) == null) {
+            add(session);
+        }
+        return session;
+
+    }
+
+
+    /**
+     * Hand the queued sessions to the background threads, in batches of at
+     * most <code>writeBehindBatchSize</code>. A session still being written
+     * from the previous flush is left queued for the next one.
+     */
+    protected void flushPendingWrites() {
+
+        ScheduledThreadPoolExecutor executor = writeBehindExecutor;
+        List<Session> batch = null;
+        Iterator<String> ids = pendingWrites.keySet().iterator();
+        while (ids.hasNext()) {
+            String id = ids.next();
+            Session session = pendingWrites.get(id);
+            if (session == null
+                    || inFlightWrites.putIfAbsent(id, session) != null) {
+                continue;
+            }
+            if (!pendingWrites.remove(id, session)) {
+                // Queued again meanwhile; it is written by the next flush
+                inFlightWrites.remove(id);
+                continue;
+            }
+            if (batch == null) {
+                batch = new ArrayList<Session>(writeBehindBatchSize);
+            }
+            batch.add(session);
+            if (batch.size() >= writeBehindBatchSize) {
+                submitBatch(executor, batch);
+                batch = null;
+            }
+        }
+        if (batch != null) {
+            submitBatch(executor, batch);
+        }
+
+    }
+
+
+    private void submitBatch(ScheduledThreadPoolExecutor executor,
+                             final List<Session> batch) {
+
+        if (executor != null) {
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        writeBatch(batch);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                // Stopping, write them here
+            }
+        }
+        writeBatch(batch);
+
+    }
+
+
+    private void writeBatch(List<Session> batch) {
+
+        ClassLoader webappCl = null;
+        ClassLoader curCl = Thread.currentThread().getContextClassLoader();
+        if (getContainer() != null
+                    && getContainer().getLoader() != null) {
+            webappCl = getContainer().getLoader().getClassLoader();
+        }
+        if (webappCl != null && curCl != webappCl) {
+            Thread.currentThread().setContextClassLoader(webappCl);
+        }
+        try {
+            for (Session session : batch) {
+                String id = session.getIdInternal();
+                try {
+                    if (!session.isValid()) {
+                        continue;
+                    }
+                    StandardSession stdSession = (StandardSession) session;
+                    //if session cannot be background locked, retry next time
+                    if (!stdSession.lockBackground()) {
+                        requeueWrite(id, session);
+                        continue;
+                    }
+                    try {
+                        writeQueuedSession(session);
+                    } finally {
+                        stdSession.unlockBackground();
+                    }
+                } catch (IOException e) {
+                    // This is logged in writeSession(), retry next time
+                    requeueWrite(id, session);
+                } catch (ConcurrentModificationException e) {
+                    // Modified while being serialized, retry next time
+                    requeueWrite(id, session);
+                } catch (Exception e) {
+                    log.log(Level.SEVERE,
+                            LogFacade.STORE_WRITE_SESSION_EXCEPTION, e);
+                } finally {
+                    inFlightWrites.remove(id);
+                    if (removedWrites.remove(id) != null) {
+                        removeSession(id);
+                    }
+                }
+            }
+        } finally {
+            if (webappCl != null && curCl != webappCl) {
+                Thread.currentThread().setContextClassLoader(curCl);
+            }
+        }
+
+    }
+
+
+    /**
+     * Queue again a session which could not be written, unless it has been
+     * removed or queued again meanwhile.
+     */
+    private void requeueWrite(String id, Session session) {
+
+        if (!removedWrites.containsKey(id)) {
+            pendingWrites.putIfAbsent(id, session);
+        }
+
+    }
+
+
+    /**
+     * Write a session queued by <code>queueWrite</code> to the Store. Called
+     * by a background thread holding the background lock of the session.
+     *
+     * @param session The Session to write out
+     */
+    protected void writeQueuedSession(Session session) throws IOException {
+
+        writeSession(session);
+
+    }
+
+
+    private void startWriteBehind() {
+
+        if (!writeBehind || writeBehindExecutor != null) {
+            return;
+        }
+        final String threadName = "session-write-behind-" + getName();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                writeBehindThreads, new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                threadName + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        flushPendingWrites();
+                    }
+                }, writeBehindWindow, writeBehindWindow, TimeUnit.MILLISECONDS);
+        writeBehindExecutor = executor;
+
+    }
+
+
+    /**
+     * Stop the background threads and write what is still queued, so that
+     * no session handed to <code>queueWrite</code> is lost on a clean stop.
+     */
+    private void stopWriteBehind() {
+
+        ScheduledThreadPoolExecutor executor = writeBehindExecutor;
+        if (executor == null) {
+            return;
+        }
+        writeBehindExecutor = null;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(writeBehindWindow * 2L,
+                                      TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Executor is gone: write the rest on this thread
+        flushPendingWrites();
+
+    }
+
+
     // -------------------------------------------------- Lifecycle Methods
 
 
@@ -1171,6 +1600,9 @@ public abstract class PersistentManagerBase
         else if (store instanceof Lifecycle)
             ((Lifecycle)store).start();
 
+        if (store != null)
+            startWriteBehind();
+
     }
 
 
@@ -1198,6 +1630,8 @@ public abstract class PersistentManagerBase
         lifecycle.fireLifecycleEvent(STOP_EVENT, null);
         setStarted(false);
 
+        stopWriteBehind();
+
         if (getStore() != null && saveOnRestart) {
             unload();
         } else {
@@ -1363,6 +1797,10 @@ public abstract class PersistentManagerBase
                 int timeIdle = // Truncate, do not round up
                     (int) ((timeNow - session.getLastAccessedTime()) / 1000L);
                 if (timeIdle > maxIdleBackup) { 
+                    if (queueWrite(session)) {
+                        // Written by a write-behind thread
+                        continue;
+                    }
                     //if session cannot be background locked then skip it
                     if (session.lockBackground()) {                         
                         if (log.isLoggable(Level.FINE)) {
@@ -0,0 +1,351 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.session;
+
+import com.sun.enterprise.util.uuid.UuidGenerator;
+import org.apache.catalina.LogFacade;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Session identifier generator which keeps the random part of identifiers
+ * ready in advance, so that creating a session neither waits on a shared
+ * random number generator nor holds a lock.
+ * <p>
+ * A daemon thread draws random bits round robin from several independently
+ * seeded <code>SecureRandom</code> instances and keeps a bounded lock-free
+ * queue topped up; it is woken up when the queue falls below half full.
+ * If sessions are created faster than the thread can refill the queue,
+ * callers generate the random part themselves from one of the sources
+ * picked at random, so they never wait for the thread.
+ * <p>
+ * The thread is started when the first identifier is requested and runs
+ * until {@link #stopRefiller} is called on web container shutdown; it is
+ * started again if identifiers are requested after that.
+ * <p>
+ * Identifiers keep the layout of the ones produced by
+ * {@link com.sun.enterprise.util.uuid.UuidUtil}: 7 hex digits of the
+ * current time, 7 hex digits of the identity hash code of the given object,
+ * and 14 hex digits of random bits.
+ */
+public final class PooledSessionIdGenerator implements UuidGenerator {
+
+    private static final Logger log = LogFacade.getLogger();
+
+    /**
+     * Number of identifiers kept ready, must be a power of two.
+     */
+    private static final int CAPACITY = 4096;
+
+    private static final int LOW_WATERMARK = CAPACITY / 2;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final PooledSessionIdGenerator INSTANCE =
+        new PooledSessionIdGenerator();
+
+    private final SecureRandom[] sources;
+
+    private final RandomPartQueue queue = new RandomPartQueue(CAPACITY);
+
+    private final LongAdder fallbackCount = new LongAdder();
+
+    private volatile Thread refiller;
+
+    private volatile boolean refillerParked;
+
+
+    PooledSessionIdGenerator() {
+        int count = Math.max(2,
+            Math.min(Runtime.getRuntime().availableProcessors(), 8));
+        SecureRandom seeder = new SecureRandom();
+        sources = new SecureRandom[count];
+        for (int i = 0; i < count; i++) {
+            sources[i] = createSource(seeder);
+        }
+    }
+
+
+    /**
+     * Return the generator shared by all session managers.
+     */
+    public static PooledSessionIdGenerator getInstance() {
+        return INSTANCE;
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    public String generateUuid() {
+        return generateUuid(new Object());
+    }
+
+
+    public String generateUuid(Object obj) {
+        String randomPart = queue.poll();
+        if (randomPart == null) {
+            fallbackCount.increment();
+            randomPart = nextRandomPart(sources[
+                ThreadLocalRandom.current().nextInt(sources.length)]);
+        }
+        if (queue.size() < LOW_WATERMARK) {
+            wakeRefiller();
+        }
+
+        char[] id = new char[28];
+        appendHex(id, 0, (int) System.currentTimeMillis());
+        appendHex(id, 7, System.identityHashCode(obj));
+        randomPart.getChars(0, 14, id, 14);
+        return new String(id);
+    }
+
+
+    /**
+     * Return the number of identifiers currently ready.
+     */
+    public int getPooledCount() {
+        return queue.size();
+    }
+
+
+    /**
+     * Return the number of identifiers whose random part had to be
+     * generated by the caller because none was ready.
+     */
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+
+    /**
+     * Stop the thread which keeps identifiers ready and wait for it to
+     * exit. Identifiers already pooled are still handed out.
+     */
+    public void stopRefiller() {
+        Thread thread;
+        synchronized (this) {
+            thread = refiller;
+            refiller = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    private static SecureRandom createSource(SecureRandom seeder) {
+        byte[] seed = new byte[32];
+        seeder.nextBytes(seed);
+        try {
+            SecureRandom source = SecureRandom.getInstance("SHA1PRNG");
+            // Seeding before first use replaces the self seeding
+            source.setSeed(seed);
+            return source;
+        } catch (NoSuchAlgorithmException e) {
+            SecureRandom source = new SecureRandom();
+            source.setSeed(seed);
+            return source;
+        }
+    }
+
+
+    private static String nextRandomPart(SecureRandom source) {
+        long bits = source.nextLong();
+        char[] part = new char[14];
+        appendHex(part, 0, (int) (bits >>> 32));
+        appendHex(part, 7, (int) bits);
+        return new String(part);
+    }
+
+
+    /**
+     * Write the low 28 bits of the given value as 7 hex digits.
+     */
+    private static void appendHex(char[] buf, int offset, int value) {
+        for (int i = 6; i >= 0; i--) {
+            buf[offset + i] = HEX[value & 0xf];
+            value >>>= 4;
+        }
+    }
+
+
+    private void wakeRefiller() {
+        Thread thread = refiller;
+        if (thread == null) {
+            startRefiller();
+        } else if (refillerParked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+
+    private synchronized void startRefiller() {
+        if (refiller != null) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                refill();
+            }
+        }, "session-id-generator");
+        thread.setDaemon(true);
+        // shared by all web modules; must not pin the loader of the one
+        // which happened to start it
+        thread.setContextClassLoader(PooledSessionIdGenerator.class.getClassLoader());
+        // published before it runs, since it exits once no longer current
+        refiller = thread;
+        thread.start();
+    }
+
+
+    private void refill() {
+        Thread current = Thread.currentThread();
+        int next = 0;
+        while (refiller == current) {
+            boolean failed = false;
+            try {
+                while (queue.offer(nextRandomPart(sources[next]))) {
+                    next = (next + 1) % sources.length;
+                }
+            } catch (Throwable t) {
+                log.log(Level.WARNING,
+                        LogFacade.SESSION_ID_GENERATION_EXCEPTION, t);
+                failed = true;
+            }
+            refillerParked = true;
+            // Callers fall back to generating identifiers themselves while
+            // the queue stays low after a failure
+            if ((failed || queue.size() >= LOW_WATERMARK)
+                    && refiller == current) {
+                LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+            }
+            refillerParked = false;
+        }
+    }
+
+
+    /**
+     * Bounded queue of random parts for a single producer and any number of
+     * consumers, after Dmitry Vyukov's array based queue: each slot carries
+     * a sequence number telling whose turn it is to use it.
+     */
+    static final class RandomPartQueue {
+
+        private final AtomicReferenceArray<String> slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        RandomPartQueue(int capacity) {
+            slots = new AtomicReferenceArray<String>(capacity);
+            sequences = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        /**
+         * Add an element, or return false if the queue is full. Must only be
+         * called by the producer.
+         */
+        boolean offer(String element) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            if (sequences.get(index) != position) {
+                return false;
+            }
+            slots.lazySet(index, element);
+            sequences.set(index, position + 1);
+            tail.lazySet(position + 1);
+            return true;
+        }
+
+        /**
+         * Remove and return an element, or return null if the queue is
+         * empty.
+         */
+        String poll() {
+            while (true) {
+                long position = head.get();
+                int index = (int) position & mask;
+                long difference = sequences.get(index) - (position + 1);
+                if (difference < 0) {
+                    return null;
+                }
+                if (difference == 0
+                        && head.compareAndSet(position, position + 1)) {
+                    String element = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                // Another consumer took this slot first
+            }
+        }
+
+        int size() {
+            long size = tail.get() - head.get();
+            return (int) Math.max(0, Math.min(size, mask + 1));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SendfileRegion}, which checks the sendfile request
+ * attributes before CoyoteAdapter sends or copies the region.
+ */
+public class SendfileRegionTest {
+
+    private File dir;
+
+    private File file;
+
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File(System.getProperty("user.dir") + File.separator
+                + "target" + File.separator + "test-sendfile-" + System.nanoTime());
+        assertTrue(dir.mkdirs());
+        // Larger than the copy buffer, so that copies take several reads
+        content = new byte[20000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        file = new File(dir, "data.bin");
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(content);
+        } finally {
+            fos.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testRegion() throws Exception {
+        SendfileRegion region = SendfileRegion.of(file.getPath(),
+                Long.valueOf(100), Long.valueOf(12345));
+        assertEquals(file, region.getFile());
+        assertEquals(100, region.getStart());
+        assertEquals(12245, region.getLength());
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 12345),
+                copy(region));
+    }
+
+    @Test
+    public void testFilenameOnly() throws Exception {
+        SendfileRegion region = SendfileRegion.of(file.getPath(), null, null);
+        assertEquals(0, region.getStart());
+        assertEquals(content.length, region.getLength());
+        assertArrayEquals(content, copy(region));
+    }
+
+    @Test
+    public void testStartOnly() throws Exception {
+        SendfileRegion region = SendfileRegion.of(file.getPath(),
+                Long.valueOf(19000), null);
+        assertEquals(1000, region.getLength());
+        assertArrayEquals(Arrays.copyOfRange(content, 19000, 20000),
+                copy(region));
+    }
+
+    @Test
+    public void testEmptyRegion() throws Exception {
+        SendfileRegion region = SendfileRegion.of(file.getPath(),
+                Long.valueOf(20000), Long.valueOf(20000));
+        assertEquals(0, region.getLength());
+        assertEquals(0, copy(region).length);
+    }
+
+    @Test
+    public void testInvalidAttributes() {
+        String path = file.getPath();
+        assertInvalid(file, null, null);
+        assertInvalid(new File(dir, "missing.bin").getPath(), null, null);
+        assertInvalid(dir.getPath(), null, null);
+        assertInvalid(path, Integer.valueOf(0), null);
+        assertInvalid(path, null, "100");
+        assertInvalid(path, Long.valueOf(-1), Long.valueOf(10));
+        assertInvalid(path, Long.valueOf(11), Long.valueOf(10));
+        assertInvalid(path, null, Long.valueOf(20001));
+        assertInvalid(path, Long.valueOf(20001), null);
+    }
+
+    private static void assertInvalid(Object filename, Object start,
+                                      Object end) {
+        try {
+            SendfileRegion.of(filename, start, end);
+            fail(filename + " " + start + "-" + end);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static byte[] copy(SendfileRegion region) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        region.copyTo(out);
+        return out.toByteArray();
+    }
+}
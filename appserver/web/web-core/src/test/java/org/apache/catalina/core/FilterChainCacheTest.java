@@ -0,0 +1,290 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.deploy.FilterDef;
+import org.apache.catalina.deploy.FilterMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+
+/**
+ * Checks that the chains shared through {@link FilterChainCache} are the
+ * ones a per request walk of the mappings with matchFiltersURL and
+ * matchFiltersServlet selects, for every path of each class of paths.
+ */
+public class FilterChainCacheTest {
+
+    private static final String[] PATHS = {
+        "/", "/index.html", "/index.jsp", "/INDEX.JSP", "/a.do", "/a.do/b",
+        "/dir.jsp/file", "/file.", "/file.jspx", "/x.jsp.bak",
+        "/admin", "/admin/", "/admin/index.jsp", "/administrator",
+        "/Admin/index.html", "/ADMIN/SECURE/x", "/admin/secure",
+        "/admin/secure/", "/admin/secure/page.do", "/admin/secure.jsp",
+        "/exact/page.html", "/Exact/Page.HTML", "/exact/page.html/more",
+        "/exact/other.html", "/Upper/Case/x", "/upper/case/x", "/upper",
+        "/static/img/logo.png", "/static/LOGO.PNG", null
+    };
+
+    private StandardContext context;
+
+    private Wrapper jsp;
+
+    private Wrapper other;
+
+
+    @Before
+    public void setUp() throws Exception {
+        context = new StandardContext();
+        jsp = wrapper("jsp");
+        other = wrapper("other");
+
+        map("all", "/*", null);
+        map("admin", "/admin/*", null, DispatcherType.REQUEST,
+            DispatcherType.FORWARD);
+        map("secure", "/admin/secure/*", null);
+        map("jspExt", "*.jsp", null, DispatcherType.REQUEST,
+            DispatcherType.INCLUDE);
+        map("doExt", "*.do", null);
+        map("pngExt", "*.png", null, DispatcherType.ERROR);
+        map("exact", "/exact/page.html", null);
+        map("upper", "/Upper/Case/*", null);
+        map("jspServlet", null, "jsp", DispatcherType.REQUEST,
+            DispatcherType.FORWARD, DispatcherType.INCLUDE);
+        map("anyServlet", null, "*", DispatcherType.ASYNC,
+            DispatcherType.REQUEST);
+        // Mapped twice, once by pattern and once by name
+        map("all", null, "other");
+
+        context.filterStart();
+    }
+
+
+    @Test
+    public void testCaseSensitiveMapping() {
+        context.setCaseSensitiveMapping(true);
+        assertChainsMatch();
+    }
+
+
+    @Test
+    public void testCaseInsensitiveMapping() {
+        context.setCaseSensitiveMapping(false);
+        assertChainsMatch();
+    }
+
+
+    @Test
+    public void testDispatcherTypes() {
+        assertEquals(Arrays.asList("all", "admin", "jspExt", "jspServlet",
+                                   "anyServlet"),
+                     names(jsp, DispatcherType.REQUEST, "/admin/index.jsp"));
+        assertEquals(Arrays.asList("jspExt", "jspServlet"),
+                     names(jsp, DispatcherType.INCLUDE, "/admin/index.jsp"));
+        assertEquals(Arrays.asList("admin", "jspServlet"),
+                     names(jsp, DispatcherType.FORWARD, "/admin/index.jsp"));
+        assertEquals(Arrays.asList("anyServlet"),
+                     names(jsp, DispatcherType.ASYNC, "/admin/index.jsp"));
+        assertEquals(Arrays.asList("pngExt"),
+                     names(other, DispatcherType.ERROR, "/static/img/logo.png"));
+    }
+
+
+    @Test
+    public void testServletNameMapping() {
+        assertEquals(Arrays.asList("all", "anyServlet", "all"),
+                     names(other, DispatcherType.REQUEST, "/index.html"));
+        // Without a path only the servlet name mappings apply
+        assertEquals(Arrays.asList("jspServlet", "anyServlet"),
+                     names(jsp, DispatcherType.REQUEST, null));
+    }
+
+
+    @Test
+    public void testChainsShared() {
+        FilterChainCache cache = context.getFilterChainCache();
+        assertSame(cache.getFilters(jsp, DispatcherType.REQUEST, "/a/b.jsp"),
+                   cache.getFilters(jsp, DispatcherType.REQUEST, "/c.jsp"));
+        assertSame(cache.getFilters(other, DispatcherType.REQUEST, "/a/b"),
+                   cache.getFilters(other, DispatcherType.REQUEST, "/c/d.txt"));
+    }
+
+
+    @Test
+    public void testInvalidation() throws Exception {
+        assertChainsMatch();
+
+        map("late", "*.html", null);
+        context.filterStart();
+        assertChainsMatch();
+        assertEquals(Arrays.asList("all", "exact", "late", "anyServlet",
+                                   "all"),
+                     names(other, DispatcherType.REQUEST, "/exact/page.html"));
+
+        context.removeFilterMaps();
+        map("exact", "/exact/page.html", null);
+        assertChainsMatch();
+        assertEquals(Arrays.asList("exact"),
+                     names(other, DispatcherType.REQUEST, "/exact/page.html"));
+
+        context.filterStop();
+        assertEquals(0, names(other, DispatcherType.REQUEST,
+                              "/exact/page.html").size());
+    }
+
+
+    /**
+     * Request every path of PATHS, in several orders so that each chain is
+     * computed for a different path of its class, and compare the cached
+     * chain with the uncached one. The first round runs on whatever the
+     * cache holds, so it also checks that changes invalidated it.
+     */
+    private void assertChainsMatch() {
+        List<String> paths = new ArrayList<String>(Arrays.asList(PATHS));
+        Random random = new Random(42);
+        for (int round = 0; round < 4; round++) {
+            if (round > 0) {
+                context.getFilterChainCache().invalidate();
+            }
+            Collections.shuffle(paths, random);
+            for (Wrapper wrapper : new Wrapper[] { jsp, other }) {
+                for (DispatcherType dispatcher : DispatcherType.values()) {
+                    for (String path : paths) {
+                        assertChainMatches(wrapper, dispatcher, path);
+                        assertChainMatches(wrapper, dispatcher, path);
+                    }
+                }
+            }
+        }
+    }
+
+
+    private void assertChainMatches(Wrapper wrapper,
+            DispatcherType dispatcher, String path) {
+        List<FilterMap> filterMaps = context.findFilterMaps();
+        ApplicationFilterConfig[] expected =
+            ApplicationFilterFactory.getInstance().findFilters(context,
+                filterMaps.toArray(new FilterMap[filterMaps.size()]),
+                wrapper, dispatcher, path);
+        ApplicationFilterConfig[] actual = context.getFilterChainCache()
+            .getFilters(wrapper, dispatcher, path);
+        assertArrayEquals(wrapper.getName() + " " + dispatcher + " " + path
+                          + " case sensitive "
+                          + context.isCaseSensitiveMapping(),
+                          expected, actual);
+    }
+
+
+    private List<String> names(Wrapper wrapper, DispatcherType dispatcher,
+            String path) {
+        List<String> names = new ArrayList<String>();
+        for (ApplicationFilterConfig filterConfig :
+                context.getFilterChainCache().getFilters(wrapper, dispatcher,
+                                                         path)) {
+            names.add(filterConfig.getFilterName());
+        }
+        return names;
+    }
+
+
+    private void map(String filterName, String urlPattern, String servletName,
+            DispatcherType... dispatcherTypes) {
+        if (context.findFilterDef(filterName) == null) {
+            FilterDef filterDef = new FilterDef();
+            filterDef.setFilterName(filterName);
+            filterDef.setFilterClassName(NoopFilter.class.getName());
+            filterDef.setFilterClass(NoopFilter.class);
+            context.addFilterDef(filterDef);
+        }
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(filterName);
+        filterMap.setURLPattern(urlPattern);
+        filterMap.setServletName(servletName);
+        if (dispatcherTypes.length > 0) {
+            filterMap.setDispatcherTypes(EnumSet.of(dispatcherTypes[0],
+                                                    dispatcherTypes));
+        }
+        context.addFilterMap(filterMap);
+    }
+
+
+    private static Wrapper wrapper(String name) {
+        StandardWrapper wrapper = new StandardWrapper();
+        wrapper.setName(name);
+        return wrapper;
+    }
+
+
+    public static class NoopFilter implements Filter {
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response,
+                FilterChain chain) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
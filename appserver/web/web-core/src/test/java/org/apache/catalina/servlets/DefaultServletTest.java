@@ -0,0 +1,501 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.Globals;
+import org.apache.naming.resources.FileDirContext;
+import org.apache.naming.resources.ProxyDirContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the responses of {@link DefaultServlet}: full and partial
+ * content, read with positional reads, and pre-compressed variants.
+ */
+public class DefaultServletTest {
+
+    private static final String BOUNDARY = "CATALINA_MIME_BOUNDARY";
+
+    private File docBase;
+
+    private byte[] text;
+
+    private byte[] gzipped;
+
+    private byte[] brotli;
+
+    private DefaultServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        docBase = new File(System.getProperty("user.dir") + File.separator
+                + "target" + File.separator + "test-docbase-" + System.nanoTime());
+        assertTrue(docBase.mkdirs());
+
+        // Larger than the input buffer, so that copies take several reads
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 10000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        text = sb.toString().getBytes("UTF-8");
+        gzipped = "not really gzip".getBytes("UTF-8");
+        brotli = "not really brotli".getBytes("UTF-8");
+        write("data.txt", text);
+        write("app.js", text);
+        write("app.js.gz", gzipped);
+        write("style.css", text);
+        write("style.css.gz", gzipped);
+        write("style.css.br", brotli);
+
+        servlet = createServlet(true);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : docBase.listFiles()) {
+            file.delete();
+        }
+        docBase.delete();
+    }
+
+    @Test
+    public void testFullContent() throws Exception {
+        Exchange exchange = get("/data.txt");
+        assertEquals(200, exchange.status);
+        assertEquals("text/plain", exchange.contentType);
+        assertEquals(text.length, exchange.contentLength);
+        assertEquals("bytes", exchange.header("Accept-Ranges"));
+        assertArrayEquals(text, exchange.body());
+        // No pre-compressed variant
+        assertNull(exchange.header("Vary"));
+        assertNull(exchange.header("Content-Encoding"));
+    }
+
+    @Test
+    public void testHead() throws Exception {
+        Exchange exchange = new Exchange("HEAD", "/data.txt");
+        servlet.doHead(exchange.request(), exchange.response());
+        assertEquals(200, exchange.status);
+        assertEquals(text.length, exchange.contentLength);
+        assertEquals(0, exchange.body().length);
+    }
+
+    @Test
+    public void testSingleRange() throws Exception {
+        Exchange exchange = get("/data.txt", "Range", "bytes=5000-9000");
+        assertEquals(206, exchange.status);
+        assertEquals("bytes 5000-9000/" + text.length,
+                exchange.header("Content-Range"));
+        assertEquals(4001, exchange.contentLength);
+        assertEquals("text/plain", exchange.contentType);
+        assertArrayEquals(Arrays.copyOfRange(text, 5000, 9001),
+                exchange.body());
+    }
+
+    @Test
+    public void testSuffixRange() throws Exception {
+        Exchange exchange = get("/data.txt", "Range", "bytes=-100");
+        assertEquals(206, exchange.status);
+        assertArrayEquals(Arrays.copyOfRange(text, text.length - 100,
+                text.length), exchange.body());
+    }
+
+    @Test
+    public void testMultipleRanges() throws Exception {
+        Exchange exchange = get("/data.txt", "Range", "bytes=0-9,6000-8999");
+        assertEquals(206, exchange.status);
+        assertEquals("multipart/byteranges; boundary=" + BOUNDARY,
+                exchange.contentType);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(part(0, 9));
+        expected.write(Arrays.copyOfRange(text, 0, 10));
+        expected.write(part(6000, 8999));
+        expected.write(Arrays.copyOfRange(text, 6000, 9000));
+        expected.write(("\r\n--" + BOUNDARY + "--").getBytes("ISO-8859-1"));
+        assertArrayEquals(expected.toByteArray(), exchange.body());
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        Exchange exchange = get("/data.txt", "Range",
+                "bytes=" + text.length + "-");
+        assertEquals(416, exchange.status);
+        assertEquals("bytes */" + text.length,
+                exchange.header("Content-Range"));
+    }
+
+    @Test
+    public void testPrecompressed() throws Exception {
+        Exchange exchange = get("/app.js", "Accept-Encoding", "gzip, deflate");
+        assertEquals(200, exchange.status);
+        assertEquals("gzip", exchange.header("Content-Encoding"));
+        assertEquals("Accept-Encoding", exchange.header("Vary"));
+        // The content type of the resource, not of the variant
+        assertEquals("application/javascript", exchange.contentType);
+        assertEquals(gzipped.length, exchange.contentLength);
+        assertArrayEquals(gzipped, exchange.body());
+    }
+
+    @Test
+    public void testPrecompressedPreference() throws Exception {
+        Exchange exchange = get("/style.css", "Accept-Encoding", "gzip, br");
+        assertEquals("br", exchange.header("Content-Encoding"));
+        assertArrayEquals(brotli, exchange.body());
+
+        exchange = get("/style.css", "Accept-Encoding", "br;q=0, gzip");
+        assertEquals("gzip", exchange.header("Content-Encoding"));
+        assertArrayEquals(gzipped, exchange.body());
+    }
+
+    @Test
+    public void testPrecompressedNotAccepted() throws Exception {
+        for (String acceptEncoding : new String[] { null, "identity", "gzip;q=0" }) {
+            Exchange exchange = acceptEncoding == null
+                ? get("/app.js")
+                : get("/app.js", "Accept-Encoding", acceptEncoding);
+            assertEquals(200, exchange.status);
+            assertNull(exchange.header("Content-Encoding"));
+            // The response still depends on Accept-Encoding
+            assertEquals("Accept-Encoding", exchange.header("Vary"));
+            assertArrayEquals(text, exchange.body());
+        }
+    }
+
+    @Test
+    public void testPrecompressedDisabled() throws Exception {
+        servlet = createServlet(false);
+        Exchange exchange = get("/app.js", "Accept-Encoding", "gzip");
+        assertNull(exchange.header("Content-Encoding"));
+        assertNull(exchange.header("Vary"));
+        assertArrayEquals(text, exchange.body());
+    }
+
+    @Test
+    public void testPrecompressedRange() throws Exception {
+        Exchange exchange = get("/app.js", "Accept-Encoding", "gzip",
+                "Range", "bytes=4-9");
+        assertEquals(206, exchange.status);
+        assertEquals("gzip", exchange.header("Content-Encoding"));
+        assertEquals("bytes 4-9/" + gzipped.length,
+                exchange.header("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(gzipped, 4, 10), exchange.body());
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        String eTag = get("/data.txt").header("ETag");
+        Exchange exchange = get("/data.txt", "If-None-Match", eTag);
+        assertEquals(304, exchange.status);
+        assertEquals(eTag, exchange.header("ETag"));
+        assertEquals(0, exchange.body().length);
+    }
+
+    @Test
+    public void testPrecompressedNotModified() throws Exception {
+        String identityETag = get("/app.js").header("ETag");
+        String gzipETag = get("/app.js", "Accept-Encoding", "gzip").header("ETag");
+        assertTrue(!identityETag.equals(gzipETag));
+
+        Exchange exchange = get("/app.js", "Accept-Encoding", "gzip",
+                "If-None-Match", gzipETag);
+        assertEquals(304, exchange.status);
+        assertEquals(gzipETag, exchange.header("ETag"));
+        assertEquals("Accept-Encoding", exchange.header("Vary"));
+        assertEquals("gzip", exchange.header("Content-Encoding"));
+        assertEquals(0, exchange.body().length);
+
+        // The ETag of the variant does not match the resource itself
+        exchange = get("/app.js", "If-None-Match", gzipETag);
+        assertEquals(200, exchange.status);
+        assertArrayEquals(text, exchange.body());
+    }
+
+    @Test
+    public void testNotFound() throws Exception {
+        assertEquals(404, get("/missing.txt").status);
+        // A variant is never served for a missing resource
+        assertEquals(404, get("/missing.js", "Accept-Encoding", "gzip").status);
+    }
+
+    private void write(String name, byte[] content) throws IOException {
+        FileOutputStream fos = new FileOutputStream(new File(docBase, name));
+        try {
+            fos.write(content);
+        } finally {
+            fos.close();
+        }
+    }
+
+    private byte[] part(long start, long end) throws IOException {
+        return ("\r\n--" + BOUNDARY + "\r\nContent-Type: text/plain\r\n"
+                + "Content-Range: bytes " + start + "-" + end + "/" + text.length
+                + "\r\n\r\n").getBytes("ISO-8859-1");
+    }
+
+    private DefaultServlet createServlet(boolean precompressed) throws Exception {
+        FileDirContext dirContext = new FileDirContext();
+        dirContext.setDocBase(docBase.getAbsolutePath());
+        final ProxyDirContext resources = new ProxyDirContext(
+                new Hashtable<String, String>(), dirContext);
+
+        final Map<String, String> mimeTypes = new HashMap<String, String>();
+        mimeTypes.put("txt", "text/plain");
+        mimeTypes.put("js", "application/javascript");
+        mimeTypes.put("css", "text/css");
+        final ServletContext context = proxy(ServletContext.class,
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if (name.equals("getAttribute")) {
+                        return Globals.RESOURCES_ATTR.equals(args[0])
+                            ? resources : null;
+                    } else if (name.equals("getMimeType")) {
+                        String file = (String) args[0];
+                        return mimeTypes.get(
+                            file.substring(file.lastIndexOf('.') + 1));
+                    } else if (name.equals("log")) {
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(name);
+                }
+            });
+
+        final Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("precompressed", String.valueOf(precompressed));
+        ServletConfig config = proxy(ServletConfig.class,
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if (name.equals("getInitParameter")) {
+                        return parameters.get(args[0]);
+                    } else if (name.equals("getServletContext")) {
+                        return context;
+                    } else if (name.equals("getServletName")) {
+                        return "default";
+                    }
+                    throw new UnsupportedOperationException(name);
+                }
+            });
+
+        DefaultServlet servlet = new DefaultServlet();
+        servlet.init(config);
+        return servlet;
+    }
+
+    private Exchange get(String path, String... headers) throws Exception {
+        Exchange exchange = new Exchange("GET", path, headers);
+        servlet.doGet(exchange.request(), exchange.response());
+        return exchange;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(
+            DefaultServletTest.class.getClassLoader(),
+            new Class<?>[] { type }, handler);
+    }
+
+    /*
+     * A request to the servlet, and the response it has produced.
+     */
+    private static final class Exchange {
+
+        private final String method;
+        private final String path;
+        private final Map<String, List<String>> requestHeaders =
+            new HashMap<String, List<String>>();
+        private final Map<String, Object> attributes =
+            new HashMap<String, Object>();
+
+        private final Map<String, List<String>> responseHeaders =
+            new HashMap<String, List<String>>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int status = 200;
+        String contentType;
+        int contentLength = -1;
+
+        Exchange(String method, String path, String... headers) {
+            this.method = method;
+            this.path = path;
+            for (int i = 0; i < headers.length; i += 2) {
+                add(requestHeaders, headers[i], headers[i + 1]);
+            }
+        }
+
+        String header(String name) {
+            List<String> values = responseHeaders.get(name.toLowerCase());
+            if (values == null) {
+                return null;
+            }
+            assertEquals(name, 1, values.size());
+            return values.get(0);
+        }
+
+        byte[] body() {
+            return body.toByteArray();
+        }
+
+        HttpServletRequest request() {
+            return proxy(HttpServletRequest.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method m, Object[] args) {
+                    String name = m.getName();
+                    if (name.equals("getMethod")) {
+                        return method;
+                    } else if (name.equals("getServletPath")
+                            || name.equals("getRequestURI")) {
+                        return path;
+                    } else if (name.equals("getPathInfo")) {
+                        return null;
+                    } else if (name.equals("getContextPath")) {
+                        return "";
+                    } else if (name.equals("getAttribute")) {
+                        return attributes.get(args[0]);
+                    } else if (name.equals("setAttribute")) {
+                        attributes.put((String) args[0], args[1]);
+                        return null;
+                    } else if (name.equals("getHeader")) {
+                        List<String> values = requestHeaders.get(
+                            ((String) args[0]).toLowerCase());
+                        return values == null ? null : values.get(0);
+                    } else if (name.equals("getHeaders")) {
+                        List<String> values = requestHeaders.get(
+                            ((String) args[0]).toLowerCase());
+                        return Collections.enumeration(values == null
+                            ? Collections.<String>emptyList() : values);
+                    } else if (name.equals("getDateHeader")) {
+                        // Only ETags are used for conditional requests
+                        assertNull(requestHeaders.get(
+                            ((String) args[0]).toLowerCase()));
+                        return Long.valueOf(-1L);
+                    }
+                    throw new UnsupportedOperationException(name);
+                }
+            });
+        }
+
+        HttpServletResponse response() {
+            final ServletOutputStream ostream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+            };
+            return proxy(HttpServletResponse.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method m, Object[] args) {
+                    String name = m.getName();
+                    if (name.equals("setHeader")) {
+                        responseHeaders.remove(((String) args[0]).toLowerCase());
+                        add(responseHeaders, (String) args[0], (String) args[1]);
+                    } else if (name.equals("addHeader")) {
+                        add(responseHeaders, (String) args[0], (String) args[1]);
+                    } else if (name.equals("setStatus")
+                            || name.equals("sendError")) {
+                        status = (Integer) args[0];
+                    } else if (name.equals("setContentType")) {
+                        contentType = (String) args[0];
+                    } else if (name.equals("setContentLength")) {
+                        contentLength = (Integer) args[0];
+                    } else if (name.equals("getOutputStream")) {
+                        return ostream;
+                    } else if (name.equals("setBufferSize")) {
+                        // ignored
+                    } else {
+                        throw new UnsupportedOperationException(name);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private static void add(Map<String, List<String>> headers,
+                                String name, String value) {
+            String key = name.toLowerCase();
+            List<String> values = headers.get(key);
+            if (values == null) {
+                values = new ArrayList<String>();
+                headers.put(key, values);
+            }
+            values.add(value);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.session;
+
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.catalina.Store;
+import org.apache.catalina.core.StandardContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the write-behind queue of {@link PersistentManagerBase}.
+ */
+public class PersistentManagerWriteBehindTest {
+
+    private PersistentManager manager;
+    private RecordingStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new RecordingStore();
+        manager = new PersistentManager();
+        manager.setContainer(new StandardContext());
+        manager.setStore(store);
+        manager.setSaveOnRestart(false);
+        manager.setWriteBehind(true);
+        // Long enough for the periodic flush never to run during a test
+        manager.setWriteBehindWindow(60000);
+        manager.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (manager.isStarted()) {
+            manager.stop();
+        }
+    }
+
+    @Test
+    public void testWritesAreCoalescedAndFlushedOnStop() throws Exception {
+        Session session = newSession();
+        assertTrue(manager.queueWrite(session));
+        assertTrue(manager.queueWrite(session));
+        assertTrue(manager.queueWrite(session));
+        assertTrue(store.saved.isEmpty());
+
+        manager.stop();
+
+        assertEquals(1, store.saved.size());
+        assertSame(session, store.saved.get(0));
+    }
+
+    @Test
+    public void testSwapInReturnsPendingWrite() throws Exception {
+        Session session = newSession();
+        String id = session.getIdInternal();
+        manager.queueWrite(session);
+        manager.removeSuper(session);
+
+        assertSame(session, manager.findSession(id));
+        assertEquals(0, store.loads);
+        assertSame(session, manager.findSession(id));
+    }
+
+    @Test
+    public void testSwapInIgnoresRemovedSession() throws Exception {
+        Session session = newSession();
+        String id = session.getIdInternal();
+        manager.queueWrite(session);
+        manager.remove(session);
+
+        assertNull(manager.findSession(id));
+        assertEquals(1, store.loads);
+        manager.stop();
+        assertTrue(store.saved.isEmpty());
+    }
+
+    @Test
+    public void testRemoveDuringWriteRemovesWrittenSession()
+            throws Exception {
+        Session session = newSession();
+        String id = session.getIdInternal();
+        store.block = new CountDownLatch(1);
+        manager.queueWrite(session);
+        manager.flushPendingWrites();
+        assertTrue(store.saving.await(10, TimeUnit.SECONDS));
+
+        manager.remove(session);
+        store.block.countDown();
+        manager.stop();
+
+        assertEquals(1, store.saved.size());
+        assertNull(store.sessions.get(id));
+    }
+
+    @Test
+    public void testFailedWriteIsQueuedAgain() throws Exception {
+        Session session = newSession();
+        store.failures.add(new IOException("disk full"));
+        store.failures.add(new ConcurrentModificationException());
+        manager.queueWrite(session);
+        // Not active any more, so that stop() does not expire it
+        manager.removeSuper(session);
+
+        manager.stop();
+        assertTrue(store.saved.isEmpty());
+        manager.flushPendingWrites();
+        assertTrue(store.saved.isEmpty());
+        manager.flushPendingWrites();
+
+        assertEquals(1, store.saved.size());
+        assertSame(session, store.sessions.get(session.getIdInternal()));
+    }
+
+
+    /**
+     * Create a session and release the foreground lock taken for the
+     * request that created it.
+     */
+    private Session newSession() {
+        StandardSession session = (StandardSession) manager.createSession();
+        session.unlockForeground();
+        return session;
+    }
+
+
+    private static class RecordingStore implements Store {
+
+        final List<Session> saved = new ArrayList<Session>();
+        final Map<String, Session> sessions = new HashMap<String, Session>();
+        final List<Exception> failures = new ArrayList<Exception>();
+        final CountDownLatch saving = new CountDownLatch(1);
+        volatile CountDownLatch block;
+        int loads;
+        private Manager manager;
+
+        public String getInfo() {
+            return "RecordingStore/1.0";
+        }
+
+        public Manager getManager() {
+            return manager;
+        }
+
+        public void setManager(Manager manager) {
+            this.manager = manager;
+        }
+
+        public synchronized int getSize() {
+            return sessions.size();
+        }
+
+        public void addPropertyChangeListener(PropertyChangeListener l) {
+        }
+
+        public synchronized String[] keys() {
+            return sessions.keySet().toArray(new String[sessions.size()]);
+        }
+
+        public synchronized Session load(String id) {
+            loads++;
+            return sessions.get(id);
+        }
+
+        public synchronized void remove(String id) {
+            sessions.remove(id);
+        }
+
+        public synchronized void clear() {
+            sessions.clear();
+        }
+
+        public void removePropertyChangeListener(PropertyChangeListener l) {
+        }
+
+        public void save(Session session) throws IOException {
+            saving.countDown();
+            if (block != null) {
+                try {
+                    block.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            synchronized (this) {
+                if (!failures.isEmpty()) {
+                    Exception failure = failures.remove(0);
+                    if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    }
+                    throw (RuntimeException) failure;
+                }
+                saved.add(session);
+                sessions.put(session.getIdInternal(), session);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PooledSessionIdGenerator}.
+ */
+public class PooledSessionIdGeneratorTest {
+
+    private static final Pattern ID = Pattern.compile("[0-9a-f]{28}");
+
+    private PooledSessionIdGenerator generator;
+
+    @Before
+    public void setUp() {
+        generator = new PooledSessionIdGenerator();
+    }
+
+    @After
+    public void tearDown() {
+        generator.stopRefiller();
+    }
+
+    @Test
+    public void testFormat() {
+        Object obj = new Object();
+        long before = System.currentTimeMillis();
+        String id = generator.generateUuid(obj);
+        long after = System.currentTimeMillis();
+
+        assertEquals(28, id.length());
+        assertTrue(id, ID.matcher(id).matches());
+
+        long time = Long.parseLong(id.substring(0, 7), 16);
+        if ((before & 0xfffffff) <= (after & 0xfffffff)) {
+            assertTrue(id, time >= (before & 0xfffffff)
+                    && time <= (after & 0xfffffff));
+        }
+        assertEquals(System.identityHashCode(obj) & 0xfffffff,
+                Integer.parseInt(id.substring(7, 14), 16));
+
+        for (int i = 0; i < 10000; i++) {
+            id = generator.generateUuid();
+            assertTrue(id, ID.matcher(id).matches());
+        }
+    }
+
+    @Test
+    public void testUniqueUnderConcurrency() throws Exception {
+        final int threads = 8;
+        final int perThread = 25000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> results =
+                new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws Exception {
+                        start.await();
+                        List<String> ids = new ArrayList<String>(perThread);
+                        for (int j = 0; j < perThread; j++) {
+                            ids.add(generator.generateUuid());
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            start.countDown();
+
+            Set<String> randomParts = new HashSet<String>();
+            for (Future<List<String>> result : results) {
+                for (String id : result.get()) {
+                    assertTrue(id, randomParts.add(id.substring(14)));
+                }
+            }
+            assertEquals(threads * perThread, randomParts.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFallbackWhenPoolIsEmpty() throws Exception {
+        assertEquals(0, generator.getPooledCount());
+        assertEquals(0, generator.getFallbackCount());
+
+        // Nothing is pooled until the first request starts the refiller
+        String id = generator.generateUuid();
+        assertTrue(id, ID.matcher(id).matches());
+        assertEquals(1, generator.getFallbackCount());
+
+        waitForPooled(1);
+        long fallbacks = generator.getFallbackCount();
+        generator.generateUuid();
+        assertEquals(fallbacks, generator.getFallbackCount());
+
+        // Draining faster than the pool can be refilled never blocks
+        for (int i = 0; i < 100000; i++) {
+            id = generator.generateUuid();
+            assertTrue(id, ID.matcher(id).matches());
+        }
+        assertTrue(generator.getFallbackCount() <= 100000 + fallbacks);
+    }
+
+    @Test
+    public void testStopRefiller() throws Exception {
+        Set<Thread> existing = refillerThreads();
+        generator.generateUuid();
+        waitForPooled(1);
+
+        Set<Thread> started = refillerThreads();
+        started.removeAll(existing);
+        assertEquals(1, started.size());
+        Thread refiller = started.iterator().next();
+        assertTrue(refiller.isDaemon());
+
+        generator.stopRefiller();
+        assertFalse(refiller.isAlive());
+
+        // Pooled identifiers are still handed out, and the refiller comes
+        // back once they run low
+        int pooled = generator.getPooledCount();
+        for (int i = 0; i <= pooled; i++) {
+            assertNotNull(generator.generateUuid());
+        }
+        waitForPooled(1);
+    }
+
+    private void waitForPooled(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (generator.getPooledCount() < count) {
+            assertTrue("pool not refilled",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static Set<Thread> refillerThreads() {
+        Set<Thread> threads = new HashSet<Thread>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("session-id-generator".equals(thread.getName())) {
+                threads.add(thread);
+            }
+        }
+        return threads;
+    }
+}
@@ -85,6 +85,10 @@ public abstract class BasePersistenceStrategyBuilder
     protected int sessionMaxInactiveInterval = DEFAULT_SESSION_TIMEOUT;
     protected String persistentCookieName = "GLASSFISHCOOKIE";
     protected boolean relaxCacheVersionSemantics;
+    protected boolean writeBehind = false;
+    protected int writeBehindWindow = 1000;   // milliseconds
+    protected int writeBehindBatchSize = 100;
+    protected int writeBehindThreads = 2;
 
     // Special constant for Java Server Faces
     protected static final String JSF_HA_ENABLED = "com.sun.appserver.enableHighAvailability";    
@@ -302,6 +306,26 @@ public abstract class BasePersistenceStrategyBuilder
                         }                        
                     } */else if (name.equalsIgnoreCase("relaxCacheVersionSemantics")) {
                         relaxCacheVersionSemantics = Boolean.parseBoolean(value);
+                    } else if (name.equalsIgnoreCase("writeBehind")) {
+                        writeBehind = Boolean.parseBoolean(value);
+                    } else if (name.equalsIgnoreCase("writeBehindWindowMillis")) {
+                        try {
+                            writeBehindWindow = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            // XXX need error message
+                        }
+                    } else if (name.equalsIgnoreCase("writeBehindBatchSize")) {
+                        try {
+                            writeBehindBatchSize = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            // XXX need error message
+                        }
+                    } else if (name.equalsIgnoreCase("writeBehindThreads")) {
+                        try {
+                            writeBehindThreads = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            // XXX need error message
+                        }
                     } else if (name.equalsIgnoreCase("sessionFilename")) {
                         sessionFilename = value;                        
                     } else if (name.equalsIgnoreCase("persistenceFrequency")) {
@@ -67,6 +67,10 @@ public class FileStrategyBuilder extends BasePersistenceStrategyBuilder {
         PersistentManager mgr = new PersistentManager();
         mgr.setMaxActiveSessions(maxSessions);
         mgr.setMaxIdleBackup(0);     // FIXME: Make configurable
+        mgr.setWriteBehind(writeBehind);
+        mgr.setWriteBehindWindow(writeBehindWindow);
+        mgr.setWriteBehindBatchSize(writeBehindBatchSize);
+        mgr.setWriteBehindThreads(writeBehindThreads);
 
         FileStore store = new FileStore();
         store.setDirectory(directory);
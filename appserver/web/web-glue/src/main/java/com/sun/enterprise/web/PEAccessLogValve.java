@@ -42,6 +42,7 @@ package com.sun.enterprise.web;
 
 import com.sun.enterprise.config.serverbeans.*;
 import com.sun.enterprise.config.serverbeans.VirtualServer;
+import com.sun.enterprise.web.accesslog.AccessLogBuffer;
 import com.sun.enterprise.web.accesslog.AccessLogFormatter;
 import com.sun.enterprise.web.accesslog.CombinedAccessLogFormatterImpl;
 import com.sun.enterprise.web.accesslog.CommonAccessLogFormatterImpl;
@@ -58,14 +59,14 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.String;
-import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -77,7 +78,12 @@ import java.util.logging.Logger;
  * automatic rollover of log files at a specified interval is also supported.
  *
  * </p>This class uses a direct <code>ByteBuffer</code> to store and write 
- * logs. 
+ * logs. Request threads format and encode their entries into one of a
+ * fixed number of buffers, one per processor (see {@link AccessLogBuffer}),
+ * picked by thread, and all buffers are written to the access log file with
+ * a single gathering write. Request threads therefore rarely wait for one
+ * another while logging, and the direct memory held does not grow with the
+ * number of request threads.
  *
  * @author Jean-Francois Arcand
  * @author Charlie J. Hunt
@@ -232,9 +238,15 @@ public final class PEAccessLogValve
 
     
     /**
-     * The <code>CharBuffer</code> used to store the logs.
+     * The buffers used to store the logs, shared by the request threads.
      */
-    private CharBuffer charBuffer;
+    private volatile AccessLogBuffer[] buffers = null;
+
+
+    /**
+     * Held while the buffers are written to the access log file.
+     */
+    private final Object flushLock = new Object();
    
     
     /**
@@ -292,9 +304,11 @@ public final class PEAccessLogValve
     
     
     /**
-     * Simple lock
+     * Guards the <code>fileChannel</code>: writes hold the read lock (the
+     * channel itself keeps concurrent writes apart), closing and rotating
+     * the access log file holds the write lock.
      */
-    private Object lock = new Object();
+    private final ReadWriteLock channelLock = new ReentrantReadWriteLock();
     
 
     /**
@@ -580,40 +594,38 @@ public final class PEAccessLogValve
              return;
         }
         
-        synchronized (lock){
-            // Reset properly the buffer in case of an unexpected
-            // exception.
-            if (charBuffer.position() == charBuffer.limit()){
-                charBuffer.limit(charBuffer.capacity());
-            }    
-
-            int pos = charBuffer.position();
-            // We've flushed our buffer to make room for the current request.
-            // Now process the current request
-            for (int i=0; i < 2; i++){
-                try {
-                    if (formatter!=null) {
-                        formatter.appendLogEntry(request, response, charBuffer);
-                        charBuffer.put("\n");
+        if (formatter == null) {
+            return;
+        }
 
-                        if (flushRealTime){
-                            log();
-                        }
-                        break;
-                    }
-                 } catch (BufferOverflowException ex) {
-                    charBuffer.position(pos);
-                    log();
-                    
-                    if (i+1 == 2){
-                        _logger.log(
-                            Level.SEVERE,
-                            LogFacade.ACCESS_LOG_UNABLE_TO_WRITE,
-                            new Object[] {ex});   
-                        return;
-                    }
+        if (flushRealTime) {
+            rotate();
+        }
+
+        AccessLogBuffer[] all = buffers;
+        AccessLogBuffer buffer =
+            all[(int) (Thread.currentThread().getId() % all.length)];
+        if (!buffer.append(formatter, request, response)) {
+            // Flush the buffer to make room for the current request, and
+            // try again, as often as other threads fill it up meanwhile
+            rotate();
+            boolean appended;
+            do {
+                boolean written = write(buffer);
+                appended = buffer.append(formatter, request, response);
+                if (!appended && !written) {
+                    // The entry does not fit into an empty buffer
+                    _logger.log(
+                        Level.SEVERE,
+                        LogFacade.ACCESS_LOG_UNABLE_TO_WRITE,
+                        logFile);
+                    return;
                 }
-            }
+            } while (!appended);
+        }
+
+        if (flushRealTime) {
+            write(buffer);
         }
     }
 
@@ -623,7 +635,17 @@ public final class PEAccessLogValve
      * has changed since the previous log call.
      */
     public void log() throws IOException {
-        
+        rotate();
+        flush();
+    }
+
+
+    /**
+     * Switches files if the date has changed since the access log file was
+     * created.
+     */
+    private void rotate() throws IOException {
+
         if (rotatable){
 
             long systime = System.currentTimeMillis();
@@ -651,22 +673,76 @@ public final class PEAccessLogValve
                 }
             }
         }
-        
-        synchronized(lock){
-            try{
-                charBuffer.flip();
-                ByteBuffer byteBuffer =
-                    ByteBuffer.wrap(charBuffer.toString().getBytes(Charset.defaultCharset()));
-                while (byteBuffer.hasRemaining()){
-                    fileChannel.write(byteBuffer);
+    }
+
+
+    /**
+     * Writes the logs held by the given buffer.
+     *
+     * @return true if the buffer held any logs, false otherwise
+     */
+    private boolean write(AccessLogBuffer buffer) {
+        ByteBuffer byteBuffer = buffer.swap();
+        if (byteBuffer == null) {
+            return false;
+        }
+        write(new ByteBuffer[] { byteBuffer });
+        buffer.recycle(byteBuffer);
+        return true;
+    }
+
+
+    /**
+     * Writes the logs held by all buffers, with a single gathering write.
+     */
+    private void flush() {
+
+        synchronized (flushLock) {
+            AccessLogBuffer[] all = buffers;
+            if (all == null) {
+                return;
+            }
+            List<AccessLogBuffer> owners = new ArrayList<AccessLogBuffer>();
+            List<ByteBuffer> byteBuffers = new ArrayList<ByteBuffer>();
+            for (AccessLogBuffer buffer : all) {
+                ByteBuffer byteBuffer = buffer.swap();
+                if (byteBuffer != null) {
+                    owners.add(buffer);
+                    byteBuffers.add(byteBuffer);
                 }
-            } catch (IOException ex){
-                ;
-            } finally {
-                charBuffer.clear();
+            }
+
+            if (byteBuffers.isEmpty()) {
+                return;
+            }
+
+            write(byteBuffers.toArray(new ByteBuffer[byteBuffers.size()]));
+            for (int i = 0; i < owners.size(); i++) {
+                owners.get(i).recycle(byteBuffers.get(i));
             }
         }
+    }
 
+
+    /**
+     * Writes the given buffers to the access log file.
+     */
+    private void write(ByteBuffer[] byteBuffers) {
+
+        channelLock.readLock().lock();
+        try {
+            if (fileChannel == null || !fileChannel.isOpen()) {
+                return;
+            }
+            ByteBuffer last = byteBuffers[byteBuffers.length - 1];
+            while (last.hasRemaining()) {
+                fileChannel.write(byteBuffers);
+            }
+        } catch (IOException ex){
+            ;
+        } finally {
+            channelLock.readLock().unlock();
+        }
     }
 
 
@@ -903,13 +979,19 @@ public final class PEAccessLogValve
      */
     private synchronized void close() {
 
-        try{            
-            // Make sure the byteBuffer is clean
-            log();
-            fileChannel.close();
-            fos.close();
-        } catch (IOException ex){
-            ;
+        // Lock in the same order as flush() does
+        synchronized (flushLock) {
+            channelLock.writeLock().lock();
+            try{            
+                // Make sure the buffers are clean
+                flush();
+                fileChannel.close();
+                fos.close();
+            } catch (IOException ex){
+                ;
+            } finally {
+                channelLock.writeLock().unlock();
+            }
         }
     }
 
@@ -937,6 +1019,7 @@ public final class PEAccessLogValve
         }
 
         // Open the current log file
+        channelLock.writeLock().lock();
         try {
             String pathname;
             // If no rotate - no need for dateStamp in fileName
@@ -1002,7 +1085,9 @@ public final class PEAccessLogValve
             
             // Rethrow IOException
             throw ioe;
-        } 
+        } finally {
+            channelLock.writeLock().unlock();
+        }
 
     }
 
@@ -1060,7 +1145,13 @@ public final class PEAccessLogValve
             bufferSize = MIN_BUFFER_SIZE;
         }
 
-        charBuffer = CharBuffer.allocate(bufferSize);
+        Charset charset = Charset.defaultCharset();
+        AccessLogBuffer[] all = new AccessLogBuffer[
+            Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = new AccessLogBuffer(bufferSize, charset);
+        }
+        buffers = all;
 
         // Initialize the timeZone, Date formatters, and currentDate
         final TimeZone tz = TimeZone.getDefault();
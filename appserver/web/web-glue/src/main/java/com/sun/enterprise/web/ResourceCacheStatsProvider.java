@@ -0,0 +1,126 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.web;
+
+import javax.naming.directory.DirContext;
+
+import org.apache.naming.resources.ProxyDirContext;
+import org.apache.naming.resources.ResourceCache;
+import org.glassfish.external.statistics.CountStatistic;
+import org.glassfish.external.statistics.impl.CountStatisticImpl;
+import org.glassfish.external.statistics.impl.StatisticImpl;
+import org.glassfish.gmbal.AMXMetadata;
+import org.glassfish.gmbal.Description;
+import org.glassfish.gmbal.ManagedAttribute;
+import org.glassfish.gmbal.ManagedObject;
+
+/**
+ * Exposes the counters of the static resource cache of a web module.
+ */
+/* applications.<module>.<vs>.resource-cache */
+@AMXMetadata(type="resource-cache-mon", group="monitoring")
+@ManagedObject
+@Description( "Web Module Resource Cache Statistics" )
+public class ResourceCacheStatsProvider {
+
+    private final WebModule webModule;
+
+    private CountStatisticImpl hitCount = new CountStatisticImpl(
+            "HitCount", StatisticImpl.UNIT_COUNT,
+                "Number of resource lookups served from the cache" );
+    private CountStatisticImpl missCount = new CountStatisticImpl(
+            "MissCount", StatisticImpl.UNIT_COUNT,
+                "Number of resource lookups not found in the cache" );
+    private CountStatisticImpl evictionCount = new CountStatisticImpl(
+            "EvictionCount", StatisticImpl.UNIT_COUNT,
+                "Number of entries removed from the cache to make room for new ones" );
+    private CountStatisticImpl cacheSize = new CountStatisticImpl(
+            "CacheSize", "KB",
+                "Current size of the cache in KB" );
+
+    public ResourceCacheStatsProvider(WebModule webModule) {
+        this.webModule = webModule;
+    }
+
+    @ManagedAttribute(id="hitcount")
+    @Description( "Number of resource lookups served from the cache" )
+    public CountStatistic getHitCount() {
+        ResourceCache cache = getCache();
+        hitCount.setCount((cache == null) ? 0 : cache.getHitsCount());
+        return hitCount;
+    }
+
+    @ManagedAttribute(id="misscount")
+    @Description( "Number of resource lookups not found in the cache" )
+    public CountStatistic getMissCount() {
+        ResourceCache cache = getCache();
+        missCount.setCount((cache == null) ? 0 : cache.getMissesCount());
+        return missCount;
+    }
+
+    @ManagedAttribute(id="evictioncount")
+    @Description( "Number of entries removed from the cache to make room for new ones" )
+    public CountStatistic getEvictionCount() {
+        ResourceCache cache = getCache();
+        evictionCount.setCount((cache == null) ? 0 : cache.getEvictionCount());
+        return evictionCount;
+    }
+
+    @ManagedAttribute(id="cachesize")
+    @Description( "Current size of the cache in KB" )
+    public CountStatistic getCacheSize() {
+        ResourceCache cache = getCache();
+        cacheSize.setCount((cache == null) ? 0 : cache.getCacheSize());
+        return cacheSize;
+    }
+
+    /*
+     * The resources of a web module are replaced when it is reloaded, so
+     * the cache is looked up again on every read.
+     */
+    private ResourceCache getCache() {
+        DirContext resources = webModule.getResources();
+        if (resources instanceof ProxyDirContext) {
+            return ((ProxyDirContext) resources).getCache();
+        }
+        return null;
+    }
+}
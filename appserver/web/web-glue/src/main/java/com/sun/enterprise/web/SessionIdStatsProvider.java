@@ -0,0 +1,135 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.web;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.session.ManagerBase;
+import org.apache.catalina.session.PooledSessionIdGenerator;
+import org.glassfish.external.statistics.CountStatistic;
+import org.glassfish.external.statistics.impl.CountStatisticImpl;
+import org.glassfish.external.statistics.impl.StatisticImpl;
+import org.glassfish.gmbal.AMXMetadata;
+import org.glassfish.gmbal.Description;
+import org.glassfish.gmbal.ManagedAttribute;
+import org.glassfish.gmbal.ManagedObject;
+
+/**
+ * Exposes how long the session manager of a web module takes to generate
+ * session identifiers.
+ */
+/* applications.<module>.<vs>.session-id */
+@AMXMetadata(type="session-id-mon", group="monitoring")
+@ManagedObject
+@Description( "Web Module Session Identifier Generation Statistics" )
+public class SessionIdStatsProvider {
+
+    private final WebModule webModule;
+
+    private CountStatisticImpl generatedCount = new CountStatisticImpl(
+            "GeneratedCount", StatisticImpl.UNIT_COUNT,
+                "Number of session identifiers generated" );
+    private CountStatisticImpl averageGenerationTime = new CountStatisticImpl(
+            "AverageGenerationTime", StatisticImpl.UNIT_NANOSECOND,
+                "Average time taken to generate a session identifier, in nanoseconds" );
+    private CountStatisticImpl maxGenerationTime = new CountStatisticImpl(
+            "MaxGenerationTime", StatisticImpl.UNIT_NANOSECOND,
+                "Longest time taken to generate a session identifier, in nanoseconds" );
+    private CountStatisticImpl fallbackCount = new CountStatisticImpl(
+            "FallbackCount", StatisticImpl.UNIT_COUNT,
+                "Number of session identifiers generated on demand because none was pre-generated, across all web modules" );
+
+    public SessionIdStatsProvider(WebModule webModule) {
+        this.webModule = webModule;
+    }
+
+    @ManagedAttribute(id="generatedcount")
+    @Description( "Number of session identifiers generated" )
+    public CountStatistic getGeneratedCount() {
+        ManagerBase manager = getManager();
+        generatedCount.setCount(
+            (manager == null) ? 0 : manager.getSessionIdGenerationCount());
+        return generatedCount;
+    }
+
+    @ManagedAttribute(id="averagegenerationtime")
+    @Description( "Average time taken to generate a session identifier, in nanoseconds" )
+    public CountStatistic getAverageGenerationTime() {
+        ManagerBase manager = getManager();
+        long average = 0;
+        if (manager != null) {
+            long count = manager.getSessionIdGenerationCount();
+            if (count > 0) {
+                average = manager.getSessionIdGenerationNanos() / count;
+            }
+        }
+        averageGenerationTime.setCount(average);
+        return averageGenerationTime;
+    }
+
+    @ManagedAttribute(id="maxgenerationtime")
+    @Description( "Longest time taken to generate a session identifier, in nanoseconds" )
+    public CountStatistic getMaxGenerationTime() {
+        ManagerBase manager = getManager();
+        maxGenerationTime.setCount(
+            (manager == null) ? 0 : manager.getSessionIdGenerationMaxNanos());
+        return maxGenerationTime;
+    }
+
+    @ManagedAttribute(id="fallbackcount")
+    @Description( "Number of session identifiers generated on demand because none was pre-generated, across all web modules" )
+    public CountStatistic getFallbackCount() {
+        fallbackCount.setCount(
+            PooledSessionIdGenerator.getInstance().getFallbackCount());
+        return fallbackCount;
+    }
+
+    /*
+     * The manager of a web module can be replaced after it has started, so
+     * it is looked up again on every read.
+     */
+    private ManagerBase getManager() {
+        Manager manager = webModule.getManager();
+        if (manager instanceof ManagerBase) {
+            return (ManagerBase) manager;
+        }
+        return null;
+    }
+}
@@ -215,6 +215,7 @@ protected WebModule _ctx = null;
         
         // If availability-enabled is false, reset to "memory"
         if (!isAvailabilityEnabled && (persistence != PersistenceType.FILE &&
+                persistence != PersistenceType.SEGMENTED_FILE &&
                 persistence != PersistenceType.COOKIE &&
                 persistence != PersistenceType.COHERENCE_WEB)) {
             // Set back to memory option
@@ -81,6 +81,7 @@ import org.apache.catalina.Realm;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.core.StandardEngine;
+import org.apache.catalina.session.PooledSessionIdGenerator;
 import org.apache.catalina.startup.ContextConfig;
 import org.apache.catalina.util.RequestUtil;
 import org.apache.catalina.util.ServerInfo;
@@ -664,6 +665,8 @@ public class WebContainer implements org.glassfish.api.container.Container, Post
         } catch (LifecycleException le) {
             logger.log(Level.SEVERE, LogFacade.UNABLE_TO_STOP_WEB_CONTAINER, le);
             return;
+        } finally {
+            PooledSessionIdGenerator.getInstance().stopRefiller();
         }
     }
 
@@ -67,6 +67,8 @@ import org.apache.catalina.session.StandardManager;
 import org.apache.jasper.servlet.JspServlet;
 import org.glassfish.api.deployment.DeploymentContext;
 import org.glassfish.embeddable.web.Context;
+import org.glassfish.external.probe.provider.PluginPoint;
+import org.glassfish.external.probe.provider.StatsProviderManager;
 import org.glassfish.embeddable.web.config.FormLoginConfig;
 import org.glassfish.embeddable.web.config.LoginConfig;
 import org.glassfish.embeddable.web.config.SecurityConfig;
@@ -178,6 +180,10 @@ public class WebModule extends PwcWebModule implements Context {
 
     private String monitoringNodeName;
 
+    private ResourceCacheStatsProvider resourceCacheStatsProvider = null;
+
+    private SessionIdStatsProvider sessionIdStatsProvider = null;
+
     private WebModuleConfig wmInfo;
 
     // true if standalone WAR, false if embedded in EAR file
@@ -545,6 +551,8 @@ public class WebModule extends PwcWebModule implements Context {
         configureValves();
         configureCatalinaProperties();
         webModuleStartedEvent();
+        registerResourceCacheStatsProvider();
+        registerSessionIdStatsProvider();
         if (directoryListing) {
             setDirectoryListing(directoryListing);
         }
@@ -561,6 +569,8 @@ public class WebModule extends PwcWebModule implements Context {
         // successfully started, because if stop() is called during an
         // aborted start(), no monitoring mbeans will have been registered
         if (hasStarted) {
+            unregisterResourceCacheStatsProvider();
+            unregisterSessionIdStatsProvider();
             webModuleStoppedEvent();
             hasStarted = false;
         }
@@ -2132,6 +2142,45 @@ public class WebModule extends PwcWebModule implements Context {
             vsId);
     }
 
+    /*
+     * Resource cache statistics, reported next to the other statistics of
+     * this web module
+     */
+
+    private void registerResourceCacheStatsProvider() {
+        if (monitoringNodeName == null || !isCachingAllowed()) {
+            return;
+        }
+        resourceCacheStatsProvider = new ResourceCacheStatsProvider(this);
+        StatsProviderManager.register("web-container",
+            PluginPoint.APPLICATIONS, monitoringNodeName + "/" + vsId,
+            resourceCacheStatsProvider);
+    }
+
+    private void unregisterResourceCacheStatsProvider() {
+        if (resourceCacheStatsProvider != null) {
+            StatsProviderManager.unregister(resourceCacheStatsProvider);
+            resourceCacheStatsProvider = null;
+        }
+    }
+
+    private void registerSessionIdStatsProvider() {
+        if (monitoringNodeName == null) {
+            return;
+        }
+        sessionIdStatsProvider = new SessionIdStatsProvider(this);
+        StatsProviderManager.register("web-container",
+            PluginPoint.APPLICATIONS, monitoringNodeName + "/" + vsId,
+            sessionIdStatsProvider);
+    }
+
+    private void unregisterSessionIdStatsProvider() {
+        if (sessionIdStatsProvider != null) {
+            StatsProviderManager.unregister(sessionIdStatsProvider);
+            sessionIdStatsProvider = null;
+        }
+    }
+
     void processServletSecurityElement(ServletSecurityElement servletSecurityElement,
             WebBundleDescriptor wbd, WebComponentDescriptor wcd) {
 
@@ -0,0 +1,181 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.web.accesslog;
+
+import org.apache.catalina.Request;
+import org.apache.catalina.Response;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Staging area for access log entries, shared by a subset of the request
+ * threads.
+ *
+ * <p>A request thread formats its entry into the <code>CharBuffer</code> of
+ * this buffer and encodes it straight into a direct <code>ByteBuffer</code>,
+ * without an intermediate <code>String</code> or byte array. Filled byte
+ * buffers are handed out via {@link #swap} to be written to the access log
+ * file, and given back via {@link #recycle} once written.
+ *
+ * <p>All methods synchronize on this buffer. The access log valve keeps one
+ * buffer per processor, so that few request threads contend for each, and
+ * the direct memory held stays at two byte buffers per processor however
+ * many request threads there are.
+ */
+public final class AccessLogBuffer {
+
+    private final CharBuffer charBuffer;
+
+    private final CharsetEncoder encoder;
+
+    private final int bufferSize;
+
+    /**
+     * The byte buffer that entries are currently appended to.
+     */
+    private ByteBuffer current;
+
+    /**
+     * A written (and cleared) byte buffer, ready to take over from
+     * <code>current</code> on the next swap.
+     */
+    private ByteBuffer spare;
+
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize The capacity (in chars and bytes) of the buffers
+     * @param charset The charset of the access log file
+     */
+    public AccessLogBuffer(int bufferSize, Charset charset) {
+        this.bufferSize = bufferSize;
+        this.charBuffer = CharBuffer.allocate(bufferSize);
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.current = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+
+    /**
+     * Formats an access log entry line for the given request and response,
+     * and appends it to this buffer.
+     *
+     * @param formatter The access log formatter
+     * @param request The request object from which to obtain access log info
+     * @param response The response object from which to obtain access log info
+     *
+     * @return true if the entry has been appended, false if there is not
+     * enough room left in this buffer, in which case the buffer is left
+     * unchanged
+     */
+    public synchronized boolean append(AccessLogFormatter formatter,
+                                       Request request,
+                                       Response response) {
+
+        charBuffer.clear();
+        try {
+            formatter.appendLogEntry(request, response, charBuffer);
+            charBuffer.put('\n');
+        } catch (BufferOverflowException ex) {
+            return false;
+        }
+        charBuffer.flip();
+
+        int pos = current.position();
+        encoder.reset();
+        CoderResult result = encoder.encode(charBuffer, current, true);
+        if (!result.isOverflow()) {
+            result = encoder.flush(current);
+        }
+        if (result.isOverflow()) {
+            current.position(pos);
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Hands out the entries appended so far, and starts over with an empty
+     * byte buffer.
+     *
+     * @return The byte buffer holding the entries, ready to be written, or
+     * null if no entries have been appended since the last swap
+     */
+    public synchronized ByteBuffer swap() {
+
+        if (current.position() == 0) {
+            return null;
+        }
+
+        ByteBuffer full = current;
+        if (spare != null) {
+            current = spare;
+            spare = null;
+        } else {
+            current = ByteBuffer.allocateDirect(bufferSize);
+        }
+        full.flip();
+        return full;
+    }
+
+
+    /**
+     * Gives back a byte buffer previously handed out by {@link #swap},
+     * once its contents have been written.
+     *
+     * @param written The written byte buffer
+     */
+    public synchronized void recycle(ByteBuffer written) {
+        if (spare == null) {
+            written.clear();
+            spare = written;
+        }
+    }
+}
@@ -46,6 +46,7 @@ import org.apache.catalina.Response;
 import java.nio.CharBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 import java.util.TimeZone;
 
 /**
@@ -69,25 +70,37 @@ public abstract class AccessLogFormatter {
     /**
      * ThreadLocal for a date formatter to format Dates into a day string in the format
      * "dd".
+     *
+     * @deprecated The formatters of this class use {@link #getTimestamp}.
      */
+    @Deprecated
     protected volatile ThreadLocal<SimpleDateFormat> dayFormatter = null;
 
     /**
      * ThreadLocal for a date formatter to format a Date into a month string in the format
      * "MM".
+     *
+     * @deprecated The formatters of this class use {@link #getTimestamp}.
      */
+    @Deprecated
     protected volatile ThreadLocal<SimpleDateFormat> monthFormatter = null;
 
     /**
      * ThreadLocal for a date formatter to format a Date into a year string in the format
      * "yyyy".
+     *
+     * @deprecated The formatters of this class use {@link #getTimestamp}.
      */
+    @Deprecated
     protected volatile ThreadLocal<SimpleDateFormat> yearFormatter = null;
 
     /**
      * ThreadLocal for a date formatter to format a Date into a time in the format
      * "kk:mm:ss" (kk is a 24-hour representation of the hour).
+     *
+     * @deprecated The formatters of this class use {@link #getTimestamp}.
      */
+    @Deprecated
     protected volatile ThreadLocal<SimpleDateFormat> timeFormatter = null;
 
     /**
@@ -104,21 +117,35 @@ public abstract class AccessLogFormatter {
     protected boolean needTimeTaken;
 
     /**
-     * The system time when we last updated the Date that this valve
-     * uses for log lines.
+     * The date and time, rendered for the second it was last requested in.
+     * Replaced (never modified) at most once per second.
+     */
+    private volatile Timestamp currentTimestamp = new Timestamp(-1L, null);
+
+    /**
+     * Renders the date and time portion of the timestamp. Only used by the
+     * thread that replaces <code>currentTimestamp</code>.
      */
-    private Date currentDate = null;
+    private final SimpleDateFormat timestampFormatter;
 
 
     /**
      * Constructor.
      *
-     * Initialize the timeZone and currentDate.
+     * Initialize the timeZone, the timestamp formatter and, for subclasses
+     * still using them, the day, month, year and time formatters.
      */
     public AccessLogFormatter() {
         tz = TimeZone.getDefault();
         timeZone = calculateTimeZoneOffset(tz.getRawOffset());
-        currentDate = new Date(System.currentTimeMillis());
+        timestampFormatter = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss",
+                                                  Locale.ENGLISH);
+        timestampFormatter.setTimeZone(tz);
+
+        dayFormatter = createFormatter("dd");
+        monthFormatter = createFormatter("MM");
+        yearFormatter = createFormatter("yyyy");
+        timeFormatter = createFormatter("HH:mm:ss");
     }
 
 
@@ -136,24 +163,47 @@ public abstract class AccessLogFormatter {
 
 
     /**
-     * This method returns a Date object that is accurate to within one
-     * second.  If a writerThread calls this method to get a Date and it's been
-     * less than 1 second since a new Date was created, this method
-     * simply gives out the same Date again so that the system doesn't
-     * spend time creating Date objects unnecessarily.
+     * Returns the current date and time in the format
+     * <code>dd/MMM/yyyy:HH:mm:ss zone</code>, accurate to within one second.
+     * The string is rendered once per second and handed out to every
+     * request logged within that second, so the common case neither locks
+     * nor allocates.
      */
-    protected synchronized Date getDate() {
+    protected String getTimestamp() {
 
-        // Only create a new Date once per second, max.
         long systime = System.currentTimeMillis();
-        if ((systime - currentDate.getTime()) > 1000) {
-            currentDate = new Date(systime);
+        long second = systime / 1000;
+        Timestamp timestamp = currentTimestamp;
+        if (timestamp.second != second) {
+            synchronized (timestampFormatter) {
+                timestamp = currentTimestamp;
+                if (timestamp.second != second) {
+                    String text = timestampFormatter.format(new Date(systime))
+                        + SPACE + timeZone;
+                    timestamp = new Timestamp(second, text);
+                    currentTimestamp = timestamp;
+                }
+            }
         }
 
-        return currentDate;
+        return timestamp.text;
+
+    }
+
 
+    /**
+     * This method returns a Date object that is accurate to within one
+     * second.
+     *
+     * @deprecated Use {@link #getTimestamp}, which also saves formatting
+     * the date for every request.
+     */
+    @Deprecated
+    protected Date getDate() {
+        return new Date(System.currentTimeMillis());
     }
 
+
     protected String calculateTimeZoneOffset(long offset) {
         StringBuilder sb = new StringBuilder();
         if ((offset<0))  {
@@ -183,7 +233,10 @@ public abstract class AccessLogFormatter {
      * be a two-digit String.
      *
      * @param month Month number ("01" .. "12").
+     *
+     * @deprecated Only useful with {@link #monthFormatter}.
      */
+    @Deprecated
     protected String lookup(String month) {
 
         int index;
@@ -206,4 +259,32 @@ public abstract class AccessLogFormatter {
     public boolean needTimeTaken() {
         return needTimeTaken;
     }    
+
+
+    private ThreadLocal<SimpleDateFormat> createFormatter(final String pattern) {
+        final TimeZone zone = tz;
+        return new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                SimpleDateFormat f = new SimpleDateFormat(pattern);
+                f.setTimeZone(zone);
+                return f;
+            }
+        };
+    }
+
+
+    /*
+     * A rendered timestamp together with the second it was rendered for.
+     */
+    private static final class Timestamp {
+
+        final long second;
+        final String text;
+
+        Timestamp(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
 }
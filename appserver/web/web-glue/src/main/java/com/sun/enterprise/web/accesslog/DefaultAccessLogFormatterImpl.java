@@ -54,7 +54,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.nio.CharBuffer;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -133,10 +132,46 @@ public class DefaultAccessLogFormatterImpl extends AccessLogFormatter {
 
     private Container container;
 
+    /*
+     * Field types an access log pattern component is compiled into
+     */
+    private static final int FIELD_NONE = -1;
+    private static final int FIELD_ATTRIBUTE_BY_NAME = 0;
+    private static final int FIELD_SESSION_ATTRIBUTE_BY_NAME = 1;
+    private static final int FIELD_AUTH_USER_NAME = 2;
+    private static final int FIELD_CLIENT_DNS = 3;
+    private static final int FIELD_CLIENT_NAME = 4;
+    private static final int FIELD_COOKIE = 5;
+    private static final int FIELD_COOKIES = 6;
+    private static final int FIELD_COOKIE_VALUE = 7;
+    private static final int FIELD_COOKIE_BY_NAME = 8;
+    private static final int FIELD_COOKIES_BY_NAME = 9;
+    private static final int FIELD_DATE_TIME = 10;
+    private static final int FIELD_HEADER_ACCEPT = 11;
+    private static final int FIELD_HEADER_AUTH = 12;
+    private static final int FIELD_HEADER_DATE = 13;
+    private static final int FIELD_HEADER_IF_MOD_SINCE = 14;
+    private static final int FIELD_USER_AGENT = 15;
+    private static final int FIELD_REFERER = 16;
+    private static final int FIELD_HTTP_METHOD = 17;
+    private static final int FIELD_HTTP_URI = 18;
+    private static final int FIELD_HTTP_VERSION = 19;
+    private static final int FIELD_QUERY_STR = 20;
+    private static final int FIELD_REQUEST = 21;
+    private static final int FIELD_RESPONSE_LENGTH = 22;
+    private static final int FIELD_RESPONSE_CONTENT_TYPE = 23;
+    private static final int FIELD_STATUS = 24;
+    private static final int FIELD_TIME_TAKEN = 25;
+    private static final int FIELD_VS_ID = 26;
+    private static final int FIELD_HEADER_BY_NAME = 27;
+    private static final int FIELD_HEADERS_BY_NAME = 28;
+    private static final int FIELD_RESPONSE_HEADER_BY_NAME = 29;
+    private static final int FIELD_RESPONSE_HEADERS_BY_NAME = 30;
+
     /**
-     * List of access log pattern components
+     * The access log pattern, compiled into the fields of a log entry
      */
-    private LinkedList<String> patternComponents;
+    private Field[] fields;
 
     /**
      * Constructor.
@@ -148,46 +183,14 @@ public class DefaultAccessLogFormatterImpl extends AccessLogFormatter {
 
         super();
 
-        this.patternComponents = parsePattern(pattern);
+        LinkedList<String> patternComponents = parsePattern(pattern);
         if (patternComponents == null) {
             // Use default format if error in pattern
             patternComponents = parsePattern(ConfigBeansUtilities.getDefaultFormat());
         }
+        this.fields = compile(patternComponents);
         this.container = container;
 
-        final TimeZone timeZone = tz;
-        dayFormatter = new ThreadLocal<SimpleDateFormat>() {
-            @Override
-            protected SimpleDateFormat initialValue() {
-                SimpleDateFormat f = new SimpleDateFormat("dd");
-                f.setTimeZone(timeZone);
-                return f;
-            }
-        };
-        monthFormatter =  new ThreadLocal<SimpleDateFormat>() {
-            @Override
-            protected SimpleDateFormat initialValue() {
-                SimpleDateFormat f = new SimpleDateFormat("MM");
-                f.setTimeZone(timeZone);
-                return f;
-            }
-        };
-        yearFormatter = new ThreadLocal<SimpleDateFormat>() {
-            @Override
-            protected SimpleDateFormat initialValue() {
-                SimpleDateFormat f = new SimpleDateFormat("yyyy");
-                f.setTimeZone(timeZone);
-                return f;
-            }
-        };
-        timeFormatter = new ThreadLocal<SimpleDateFormat>() {
-            @Override
-            protected SimpleDateFormat initialValue() {
-                SimpleDateFormat f = new SimpleDateFormat("HH:mm:ss");
-                f.setTimeZone(timeZone);
-                return f;
-            }
-        };
     }
 
     /**
@@ -207,94 +210,208 @@ public class DefaultAccessLogFormatterImpl extends AccessLogFormatter {
         HttpServletResponse hres = (HttpServletResponse)
             response.getResponse();
 
-        for (int i=0; i<patternComponents.size(); i++) {
-            String pc = patternComponents.get(i);
+        for (Field field : fields) {
+            String arg = field.arg;
+            switch (field.type) {
+            case FIELD_ATTRIBUTE_BY_NAME:
+                appendAttributeByName(charBuffer, arg, hreq);
+                break;
+            case FIELD_SESSION_ATTRIBUTE_BY_NAME:
+                appendSessionAttributeByName(charBuffer, arg, hreq);
+                break;
+            case FIELD_AUTH_USER_NAME:
+                appendAuthUserName(charBuffer, hreq);
+                break;
+            case FIELD_CLIENT_DNS:
+                appendClientDNS(charBuffer, hreq);
+                break;
+            case FIELD_CLIENT_NAME:
+                appendClientName(charBuffer, hreq);
+                break;
+            case FIELD_COOKIE:
+                appendCookie(charBuffer, hreq);
+                break;
+            case FIELD_COOKIES:
+                appendCookies(charBuffer, hreq);
+                break;
+            case FIELD_COOKIE_VALUE:
+                appendCookieValue(charBuffer, hreq);
+                break;
+            case FIELD_COOKIE_BY_NAME:
+                appendCookieByName(charBuffer, arg, hreq);
+                break;
+            case FIELD_COOKIES_BY_NAME:
+                appendCookiesByName(charBuffer, arg, hreq);
+                break;
+            case FIELD_DATE_TIME:
+                appendCurrentDate(charBuffer);
+                break;
+            case FIELD_HEADER_ACCEPT:
+                appendHeaderAccept(charBuffer, hreq);
+                break;
+            case FIELD_HEADER_AUTH:
+                appendHeaderAuth(charBuffer, hreq);
+                break;
+            case FIELD_HEADER_DATE:
+                appendHeaderDate(charBuffer, hreq);
+                break;
+            case FIELD_HEADER_IF_MOD_SINCE:
+                appendHeaderIfModSince(charBuffer, hreq);
+                break;
+            case FIELD_USER_AGENT:
+                appendUserAgent(charBuffer, hreq);
+                break;
+            case FIELD_REFERER:
+                appendReferer(charBuffer, hreq);
+                break;
+            case FIELD_HTTP_METHOD:
+                appendHTTPMethod(charBuffer, hreq);
+                break;
+            case FIELD_HTTP_URI:
+                appendHTTPUri(charBuffer, hreq);
+                break;
+            case FIELD_HTTP_VERSION:
+                appendHTTPVersion(charBuffer, hreq);
+                break;
+            case FIELD_QUERY_STR:
+                appendQueryString(charBuffer, hreq);
+                break;
+            case FIELD_REQUEST:
+                appendRequestInfo(charBuffer, hreq);
+                break;
+            case FIELD_RESPONSE_LENGTH:
+                appendResponseLength(charBuffer, response);
+                break;
+            case FIELD_RESPONSE_CONTENT_TYPE:
+                appendResponseContentType(charBuffer, response);
+                break;
+            case FIELD_STATUS:
+                appendResponseStatus(charBuffer, response);
+                break;
+            case FIELD_TIME_TAKEN:
+                appendTimeTaken(charBuffer, request);
+                break;
+            case FIELD_VS_ID:
+                appendVirtualServerId(charBuffer);
+                break;
+            case FIELD_HEADER_BY_NAME:
+                appendHeaderByName(charBuffer, arg, hreq);
+                break;
+            case FIELD_HEADERS_BY_NAME:
+                appendHeadersByName(charBuffer, arg, hreq);
+                break;
+            case FIELD_RESPONSE_HEADER_BY_NAME:
+                appendResponseHeaderByName(charBuffer, arg, hres, response);
+                break;
+            case FIELD_RESPONSE_HEADERS_BY_NAME:
+                appendResponseHeadersByName(charBuffer, arg, hres, response);
+                break;
+            }
+
+            charBuffer.put(SPACE);
+        }
+    }
+
+    /*
+     * Compiles the given access log pattern components into the fields of
+     * a log entry, so that the token matching happens once per pattern
+     * rather than once per request.
+     *
+     * The order of the checks below is significant, it mirrors the
+     * precedence of the token names (e.g., "cookie.value" vs. "cookie.").
+     *
+     * @param patternComponents The access log pattern components
+     *
+     * @return The compiled fields
+     */
+    private static Field[] compile(List<String> patternComponents) {
+
+        Field[] compiled = new Field[patternComponents.size()];
+        int i = 0;
+        for (String pc : patternComponents) {
+            Field field;
             if (pc.startsWith(ATTRIBUTE_BY_NAME_PREFIX)) {
-                appendAttributeByName(
-                    charBuffer,
-                    pc.substring(ATTRIBUTE_BY_NAME_PREFIX_LEN),
-                    hreq);
+                field = new Field(FIELD_ATTRIBUTE_BY_NAME,
+                    pc.substring(ATTRIBUTE_BY_NAME_PREFIX_LEN));
             } else if (pc.startsWith(SESSION_ATTRIBUTE_BY_NAME_PREFIX)) {
-                appendSessionAttributeByName(
-                    charBuffer,
-                    pc.substring(SESSION_ATTRIBUTE_BY_NAME_PREFIX_LEN),
-                    hreq);
+                field = new Field(FIELD_SESSION_ATTRIBUTE_BY_NAME,
+                    pc.substring(SESSION_ATTRIBUTE_BY_NAME_PREFIX_LEN));
             } else if (AUTH_USER_NAME.equals(pc)) {
-                appendAuthUserName(charBuffer, hreq);
+                field = new Field(FIELD_AUTH_USER_NAME, null);
             } else if (CLIENT_DNS.equals(pc)) {
-                appendClientDNS(charBuffer, hreq);
+                field = new Field(FIELD_CLIENT_DNS, null);
             } else if (CLIENT_NAME.equals(pc)) {
-                appendClientName(charBuffer, hreq);
+                field = new Field(FIELD_CLIENT_NAME, null);
             } else if (COOKIE.equals(pc)) {
-                appendCookie(charBuffer, hreq);
+                field = new Field(FIELD_COOKIE, null);
             } else if (COOKIES.equals(pc)) {
-                appendCookies(charBuffer, hreq);
+                field = new Field(FIELD_COOKIES, null);
             } else if (COOKIE_VALUE.equals(pc)) {
-                appendCookieValue(charBuffer, hreq);
+                field = new Field(FIELD_COOKIE_VALUE, null);
             } else if (pc.startsWith(COOKIE_BY_NAME_PREFIX)) {
-                appendCookieByName(charBuffer,
-                                   pc.substring(COOKIE_BY_NAME_PREFIX_LEN),
-                                   hreq);
+                field = new Field(FIELD_COOKIE_BY_NAME,
+                    pc.substring(COOKIE_BY_NAME_PREFIX_LEN));
             } else if (pc.startsWith(COOKIES_BY_NAME_PREFIX)) {
-                appendCookiesByName(charBuffer,
-                                   pc.substring(COOKIES_BY_NAME_PREFIX_LEN),
-                                   hreq);
+                field = new Field(FIELD_COOKIES_BY_NAME,
+                    pc.substring(COOKIES_BY_NAME_PREFIX_LEN));
             } else if (DATE_TIME.equals(pc)) {
-                appendCurrentDate(charBuffer);       
+                field = new Field(FIELD_DATE_TIME, null);
             } else if (HEADER_ACCEPT.equals(pc)) {
-                appendHeaderAccept(charBuffer, hreq);
+                field = new Field(FIELD_HEADER_ACCEPT, null);
             } else if (HEADER_AUTH.equals(pc)) {
-                appendHeaderAuth(charBuffer, hreq);
+                field = new Field(FIELD_HEADER_AUTH, null);
             } else if (HEADER_DATE.equals(pc)) {
-                appendHeaderDate(charBuffer, hreq);
+                field = new Field(FIELD_HEADER_DATE, null);
             } else if (HEADER_IF_MOD_SINCE.equals(pc)) {
-                appendHeaderIfModSince(charBuffer, hreq);
+                field = new Field(FIELD_HEADER_IF_MOD_SINCE, null);
             } else if (HEADER_USER_AGENT.equals(pc)) {
-                appendUserAgent(charBuffer, hreq);
+                field = new Field(FIELD_USER_AGENT, null);
             } else if (HEADER_REFERER.equals(pc)) {
-                appendReferer(charBuffer, hreq);
+                field = new Field(FIELD_REFERER, null);
             } else if (HTTP_METHOD.equals(pc)) {
-                appendHTTPMethod(charBuffer, hreq);
+                field = new Field(FIELD_HTTP_METHOD, null);
             } else if (HTTP_URI.equals(pc)) {
-                appendHTTPUri(charBuffer, hreq);
+                field = new Field(FIELD_HTTP_URI, null);
             } else if (HTTP_VERSION.equals(pc)) {
-                appendHTTPVersion(charBuffer, hreq);
+                field = new Field(FIELD_HTTP_VERSION, null);
             } else if (QUERY_STR.equals(pc)) {
-                appendQueryString(charBuffer, hreq);
+                field = new Field(FIELD_QUERY_STR, null);
             } else if (REFERER.equals(pc)) {
-                appendReferer(charBuffer, hreq);
+                field = new Field(FIELD_REFERER, null);
             } else if (REQUEST.equals(pc)) {
-                appendRequestInfo(charBuffer, hreq);
+                field = new Field(FIELD_REQUEST, null);
             } else if (RESPONSE_LENGTH.equals(pc)) {
-                appendResponseLength(charBuffer, response);
+                field = new Field(FIELD_RESPONSE_LENGTH, null);
             } else if (RESPONSE_CONTENT_TYPE.equals(pc)) {
-                appendResponseContentType(charBuffer, response);
+                field = new Field(FIELD_RESPONSE_CONTENT_TYPE, null);
             } else if (STATUS.equals(pc)) {
-                appendResponseStatus(charBuffer, response);
+                field = new Field(FIELD_STATUS, null);
             } else if (TIME_TAKEN.equals(pc)) {
-                appendTimeTaken(charBuffer, request);
+                field = new Field(FIELD_TIME_TAKEN, null);
             } else if (USER_AGENT.equals(pc)) {
-                appendUserAgent(charBuffer, hreq);
+                field = new Field(FIELD_USER_AGENT, null);
             } else if (VS_ID.equals(pc)) {
-                appendVirtualServerId(charBuffer);
+                field = new Field(FIELD_VS_ID, null);
             } else if (pc.startsWith(HEADER_BY_NAME_PREFIX)) {
-                appendHeaderByName(charBuffer,
-                                   pc.substring(HEADER_BY_NAME_PREFIX_LEN),
-                                   hreq);
+                field = new Field(FIELD_HEADER_BY_NAME,
+                    pc.substring(HEADER_BY_NAME_PREFIX_LEN));
             } else if (pc.startsWith(HEADERS_BY_NAME_PREFIX)) {
-                appendHeadersByName(charBuffer,
-                                    pc.substring(HEADERS_BY_NAME_PREFIX_LEN),
-                                    hreq);
+                field = new Field(FIELD_HEADERS_BY_NAME,
+                    pc.substring(HEADERS_BY_NAME_PREFIX_LEN));
             } else if (pc.startsWith(RESPONSE_HEADER_BY_NAME_PREFIX)) {
-                appendResponseHeaderByName(charBuffer,
-                    pc.substring(RESPONSE_HEADER_BY_NAME_PREFIX_LEN), hres, response);
+                field = new Field(FIELD_RESPONSE_HEADER_BY_NAME,
+                    pc.substring(RESPONSE_HEADER_BY_NAME_PREFIX_LEN));
             } else if (pc.startsWith(RESPONSE_HEADERS_BY_NAME_PREFIX)) {
-                appendResponseHeadersByName(charBuffer,
-                    pc.substring(RESPONSE_HEADERS_BY_NAME_PREFIX_LEN), hres, response);
+                field = new Field(FIELD_RESPONSE_HEADERS_BY_NAME,
+                    pc.substring(RESPONSE_HEADERS_BY_NAME_PREFIX_LEN));
+            } else {
+                // Nothing but the separator is written for this component
+                field = new Field(FIELD_NONE, null);
             }
-
-            charBuffer.put(SPACE);
+            compiled[i++] = field;
         }
+
+        return compiled;
     }
 
     /*
@@ -487,16 +604,7 @@ public class DefaultAccessLogFormatterImpl extends AccessLogFormatter {
      */
     private void appendCurrentDate(CharBuffer cb) {
         cb.put(QUOTE);
-        Date date = getDate();
-        cb.put(dayFormatter.get().format(date));           // Day
-        cb.put('/');
-        cb.put(lookup(monthFormatter.get().format(date))); // Month
-        cb.put('/');
-        cb.put(yearFormatter.get().format(date));          // Year
-        cb.put(':');
-        cb.put(timeFormatter.get().format(date));          // Time
-        cb.put(SPACE);
-        cb.put(timeZone);                                  // Time Zone
+        cb.put(getTimestamp());                            // Date, Time, Zone
         cb.put(QUOTE);
     }
 
@@ -954,4 +1062,19 @@ public class DefaultAccessLogFormatterImpl extends AccessLogFormatter {
         cb.put(vsId);
     }
 
+
+    /*
+     * A compiled access log pattern component: the type of the field, and
+     * the name of the attribute, cookie or header it refers to, if any.
+     */
+    private static final class Field {
+
+        final int type;
+        final String arg;
+
+        Field(int type, String arg) {
+            this.type = type;
+            this.arg = arg;
+        }
+    }
 }
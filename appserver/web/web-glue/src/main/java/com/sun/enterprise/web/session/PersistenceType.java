@@ -109,6 +109,12 @@ public final class PersistenceType {
     public static final PersistenceType COHERENCE_WEB =
         new PersistenceType("coherence-web");
 
+    /**
+     * Local persistence into segmented append-only files.
+     */
+    public static final PersistenceType SEGMENTED_FILE =
+        new PersistenceType("segmented-file");
+
     // ----------------------------------------------------------- Constructors
 
     /**
@@ -176,6 +182,8 @@ public final class PersistenceType {
                 pType = REPLICATED;    
             else if (type.equalsIgnoreCase(COHERENCE_WEB.getType()))
                 pType = COHERENCE_WEB;
+            else if (type.equalsIgnoreCase(SEGMENTED_FILE.getType()))
+                pType = SEGMENTED_FILE;
         }
         return pType;
     }    
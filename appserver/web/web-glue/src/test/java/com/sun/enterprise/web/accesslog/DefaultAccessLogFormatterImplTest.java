@@ -0,0 +1,375 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.web.accesslog;
+
+import com.sun.enterprise.web.Constants;
+import org.apache.catalina.Container;
+import org.apache.catalina.HttpResponse;
+import org.apache.catalina.Request;
+import org.apache.catalina.Response;
+import org.glassfish.web.LogFacade;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the compiled access log pattern of
+ * {@link DefaultAccessLogFormatterImpl} and the cached timestamp of
+ * {@link AccessLogFormatter} produce exactly the entries the formatter
+ * produced before, as kept in {@link LegacyAccessLogFormatterImpl}.
+ */
+public class DefaultAccessLogFormatterImplTest {
+
+    private static final String[] TOKENS = {
+        "attribute.color", "attribute.missing", "auth-user-name", "client.dns", "client.name",
+        "cookie", "cookies", "cookie.value", "cookie.JSESSIONID",
+        "cookie.missing", "cookies.theme", "cookies.missing", "datetime",
+        "header.accept", "header.auth", "header.date", "header.if-mod-since",
+        "header.user-agent", "header.referer", "http-method", "http-uri",
+        "http-version", "query-str", "referer", "request", "response.length",
+        "response.content-type", "status", "time-taken", "user.agent",
+        "vs.id", "header.X-Multi", "header.missing", "headers.X-Multi",
+        "headers.missing", "response.header.Content-Length",
+        "response.header.X-Resp", "response.header.missing",
+        "response.headers.X-Resp", "response.headers.Content-Length",
+        "response.headers.missing"
+    };
+
+    private static final Container CONTAINER = proxy(Container.class,
+        Collections.<String, Object>singletonMap("getName", "server"));
+
+    private Locale defaultLocale;
+
+    private TimeZone defaultTimeZone;
+
+    private final List<LogRecord> rejected = new ArrayList<LogRecord>();
+
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getLevel() == Level.SEVERE) {
+                rejected.add(record);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Before
+    public void setUp() {
+        LogFacade.getLogger().addHandler(handler);
+        defaultLocale = Locale.getDefault();
+        defaultTimeZone = TimeZone.getDefault();
+        Locale.setDefault(Locale.US);
+        // a zone with a non-hour offset
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+    }
+
+    @After
+    public void tearDown() {
+        LogFacade.getLogger().removeHandler(handler);
+        Locale.setDefault(defaultLocale);
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void testEveryToken() {
+        List<Exchange> exchanges = Arrays.asList(fullExchange(), emptyExchange());
+        for (String token : TOKENS) {
+            for (Exchange exchange : exchanges) {
+                assertSameEntry("%" + token + "%", exchange);
+            }
+        }
+        // none of the patterns fell back to the default one
+        assertTrue(rejected.toString(), rejected.isEmpty());
+    }
+
+    @Test
+    public void testAllTokensInOnePattern() {
+        StringBuilder pattern = new StringBuilder();
+        for (String token : TOKENS) {
+            pattern.append('%').append(token).append("% ");
+        }
+        assertSameEntry(pattern.toString(), fullExchange());
+        assertSameEntry(pattern.toString(), emptyExchange());
+        assertTrue(rejected.toString(), rejected.isEmpty());
+    }
+
+    @Test
+    public void testDefaultAndInvalidPatterns() {
+        String[] patterns = {
+            "%client.name% %auth-user-name% %datetime% %request% %status% %response.length%",
+            "%client.name% %auth-user-name% %datetime% %request% %status% %response.length% %header.user-agent% %header.referer%",
+            "text %status% between %vs.id% tokens",
+            "%no-such-token%",
+            // rejected by the parser even though the formatter knows it
+            "%session.user% %session.missing%",
+            "%status",
+            "no tokens"
+        };
+        for (String pattern : patterns) {
+            assertSameEntry(pattern, fullExchange());
+        }
+    }
+
+    @Test
+    public void testCommonTimestamp() {
+        AccessLogFormatter legacy =
+            new LegacyAccessLogFormatterImpl("%datetime%", CONTAINER);
+        AccessLogFormatter common = new CommonAccessLogFormatterImpl();
+        Exchange exchange = fullExchange();
+
+        while (true) {
+            long before = System.currentTimeMillis();
+            String expected = format(legacy, exchange);
+            String actual = format(common, exchange);
+            if (before == System.currentTimeMillis()) {
+                // "dd/MMM/yyyy:HH:mm:ss zone" quoted vs. bracketed
+                String timestamp = expected.substring(1, expected.length() - 2);
+                assertTrue(actual, actual.contains(" [" + timestamp + "] "));
+                assertTrue(timestamp, timestamp.endsWith(" +0530"));
+                return;
+            }
+        }
+    }
+
+    /*
+     * Formats an entry with the old and the new formatter, within the same
+     * millisecond so that the datetime and time-taken tokens agree.
+     */
+    private static void assertSameEntry(String pattern, Exchange exchange) {
+        AccessLogFormatter legacy =
+            new LegacyAccessLogFormatterImpl(pattern, CONTAINER);
+        AccessLogFormatter compiled =
+            new DefaultAccessLogFormatterImpl(pattern, CONTAINER);
+        assertEquals(pattern, legacy.needTimeTaken(), compiled.needTimeTaken());
+
+        while (true) {
+            long before = System.currentTimeMillis();
+            String expected = format(legacy, exchange);
+            String actual = format(compiled, exchange);
+            if (before == System.currentTimeMillis()) {
+                assertEquals(pattern, expected, actual);
+                return;
+            }
+        }
+    }
+
+    private static String format(AccessLogFormatter formatter,
+                                 Exchange exchange) {
+        CharBuffer cb = CharBuffer.allocate(16384);
+        formatter.appendLogEntry(exchange.request, exchange.response, cb);
+        cb.flip();
+        return cb.toString();
+    }
+
+    private static Exchange fullExchange() {
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("color", "blue");
+        Map<String, Object> sessionAttributes = new HashMap<String, Object>();
+        sessionAttributes.put("user", "duke");
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        headers.put("Accept", Arrays.asList("text/html"));
+        headers.put("Authorization", Arrays.asList("Basic ZHVrZTpqYXZh"));
+        headers.put("Date", Arrays.asList("Tue, 15 Nov 1994 08:12:31 GMT"));
+        headers.put("If-Modified-Since", Arrays.asList("Sat, 29 Oct 1994 19:43:31 GMT"));
+        headers.put("User-Agent", Arrays.asList("Mozilla/5.0"));
+        headers.put("user-agent", Arrays.asList("Mozilla/5.0"));
+        headers.put("Referer", Arrays.asList("http://example.com/"));
+        headers.put("referer", Arrays.asList("http://example.com/"));
+        headers.put("X-Multi", Arrays.asList("one", "two"));
+        Map<String, List<String>> responseHeaders = new HashMap<String, List<String>>();
+        responseHeaders.put("X-Resp", Arrays.asList("a", "b"));
+
+        return new Exchange(attributes, sessionAttributes, headers,
+            new Cookie[] { new Cookie("JSESSIONID", "abc123"),
+                           new Cookie("theme", "dark"),
+                           new Cookie("theme", "light") },
+            "host.example.com", "192.0.2.1", "duke", "GET", "/app/index.jsp",
+            "a=1&b=2", "HTTP/1.1", Long.valueOf(System.currentTimeMillis() - 42),
+            200, 1234, 5678, "text/html;charset=UTF-8", responseHeaders);
+    }
+
+    private static Exchange emptyExchange() {
+        return new Exchange(new HashMap<String, Object>(), null,
+            new HashMap<String, List<String>>(), null, null, null, null,
+            "POST", null, null, "HTTP/1.0", null, 404, 0, -1, "text/plain",
+            new HashMap<String, List<String>>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, final Map<String, Object> values) {
+        return (T) Proxy.newProxyInstance(
+            DefaultAccessLogFormatterImplTest.class.getClassLoader(),
+            new Class<?>[] { type },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    Object value;
+                    if (args != null && args.length == 1
+                            && values.containsKey(name + ":" + args[0])) {
+                        value = values.get(name + ":" + args[0]);
+                    } else if (values.containsKey(name)) {
+                        value = values.get(name);
+                    } else if (args != null && args.length == 1
+                            && values.containsKey(name + ":*")) {
+                        value = values.get(name + ":*");
+                    } else {
+                        throw new UnsupportedOperationException(name);
+                    }
+                    // Every caller gets its own enumeration of the values
+                    if (value instanceof List
+                            && method.getReturnType() == Enumeration.class) {
+                        return Collections.enumeration((List<?>) value);
+                    }
+                    return value;
+                }
+            });
+    }
+
+    /*
+     * A request and its response.
+     */
+    private static final class Exchange {
+
+        final Request request;
+        final Response response;
+
+        Exchange(Map<String, Object> attributes,
+                 Map<String, Object> sessionAttributes,
+                 Map<String, List<String>> headers, Cookie[] cookies,
+                 String remoteHost, String remoteAddr, String remoteUser,
+                 String method, String uri, String query, String protocol,
+                 Long startTime, int status, int contentCount,
+                 int contentLength, String contentType,
+                 Map<String, List<String>> responseHeaders) {
+
+            Map<String, Object> hreqValues = new HashMap<String, Object>();
+            for (Map.Entry<String, Object> e : attributes.entrySet()) {
+                hreqValues.put("getAttribute:" + e.getKey(), e.getValue());
+            }
+            hreqValues.put("getAttribute:*", null);
+            for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+                hreqValues.put("getHeader:" + e.getKey(), e.getValue().get(0));
+                hreqValues.put("getHeaders:" + e.getKey(), e.getValue());
+            }
+            hreqValues.put("getHeader:*", null);
+            hreqValues.put("getHeaders:*", Collections.emptyList());
+            HttpSession session = null;
+            if (sessionAttributes != null) {
+                Map<String, Object> sessionValues = new HashMap<String, Object>();
+                for (Map.Entry<String, Object> e : sessionAttributes.entrySet()) {
+                    sessionValues.put("getAttribute:" + e.getKey(), e.getValue());
+                }
+                sessionValues.put("getAttribute:*", null);
+                session = proxy(HttpSession.class, sessionValues);
+            }
+            hreqValues.put("getSession:false", session);
+            hreqValues.put("getCookies", cookies);
+            hreqValues.put("getRemoteHost", remoteHost);
+            hreqValues.put("getRemoteAddr", remoteAddr);
+            hreqValues.put("getRemoteUser", remoteUser);
+            hreqValues.put("getMethod", method);
+            hreqValues.put("getRequestURI", uri);
+            hreqValues.put("getQueryString", query);
+            hreqValues.put("getProtocol", protocol);
+            HttpServletRequest hreq = proxy(HttpServletRequest.class, hreqValues);
+
+            Map<String, Object> requestValues = new HashMap<String, Object>();
+            requestValues.put("getRequest", hreq);
+            requestValues.put("getNote:" + Constants.REQUEST_START_TIME_NOTE,
+                startTime);
+            request = proxy(Request.class, requestValues);
+
+            Map<String, Object> hresValues = new HashMap<String, Object>();
+            for (Map.Entry<String, List<String>> e : responseHeaders.entrySet()) {
+                hresValues.put("getHeader:" + e.getKey(), e.getValue().get(0));
+                hresValues.put("getHeaders:" + e.getKey(),
+                    new ArrayList<String>(e.getValue()));
+            }
+            hresValues.put("getHeader:*", null);
+            hresValues.put("getHeaders:*", Collections.emptyList());
+            hresValues.put("getContentType", contentType);
+            HttpServletResponse hres = proxy(HttpServletResponse.class, hresValues);
+
+            Map<String, Object> responseValues = new HashMap<String, Object>();
+            responseValues.put("getResponse", hres);
+            responseValues.put("getRequest", request);
+            responseValues.put("getStatus", status);
+            responseValues.put("getContentCount", contentCount);
+            responseValues.put("getContentLength", contentLength);
+            responseValues.put("getContentType", contentType);
+            response = proxy(HttpResponse.class, responseValues);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.ha.session.management;
+
+import org.apache.catalina.Manager;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ModifiedAttributeHASession that also catches attribute values which
+ * have been mutated in place, without a call to setAttribute.
+ *
+ * For every attribute, the session remembers a fingerprint (serialized
+ * length and hash) of the value last shipped to the backing store. When
+ * the session is saved, ReplicationAttributeStore fingerprints the
+ * attributes not already known to be modified, and ships only those whose
+ * fingerprint has changed or is not known yet.
+ */
+public class FingerprintedAttributeHASession extends ModifiedAttributeHASession {
+
+    /**
+     * Fingerprints of the attribute values as last shipped
+     */
+    private transient Map<String, long[]> _fingerprints = new HashMap<String, long[]>();
+
+    /**
+     * Serialized values of the attributes found to be modified while
+     * fingerprinting, kept to be shipped without serializing them again
+     */
+    private transient Map<String, byte[]> _pendingStates = new HashMap<String, byte[]>();
+
+
+    /** Creates a new instance of FingerprintedAttributeHASession */
+    public FingerprintedAttributeHASession(Manager manager) {
+        super(manager);
+    }
+
+    /**
+     * return an ArrayList of Strings
+     * whose elements are the names of the attributes
+     * that must be fingerprinted to know whether they changed:
+     * persistent, not dirty and not deleted
+     */
+    List<String> getUnmodifiedAttributes() {
+        List<String> resultList = new ArrayList<String>();
+        Enumeration<String> attrNames = privateGetAttributeList();
+        while(attrNames.hasMoreElements()) {
+            String nextAttrName = attrNames.nextElement();
+            SessionAttributeState nextAttrState = getAttributeState(nextAttrName);
+            if(nextAttrState != null
+                    && nextAttrState.isPersistent()
+                    && !nextAttrState.isDirty()
+                    && !nextAttrState.isDeleted()) {
+                resultList.add(nextAttrName);
+            }
+        }
+        return resultList;
+    }
+
+    /**
+     * mark every attribute of the session as persistent and clean,
+     * so that attributes restored from the trunk state of a loaded
+     * session are fingerprinted on the next save
+     */
+    void markAttributesPersistent() {
+        Enumeration<String> attrNames = privateGetAttributeList();
+        while(attrNames.hasMoreElements()) {
+            String nextAttrName = attrNames.nextElement();
+            setAttributeStatePersistent(nextAttrName, true);
+            setAttributeStateDirty(nextAttrName, false);
+        }
+    }
+
+    /**
+     * return the fingerprint of the value of attributeName
+     * as last shipped, or null if unknown
+     * @param attributeName
+     */
+    long[] getFingerprint(String attributeName) {
+        return fingerprints().get(attributeName);
+    }
+
+    /**
+     * set the fingerprint of the value of attributeName
+     * as it is being shipped
+     * @param attributeName
+     * @param fingerprint
+     */
+    void setFingerprint(String attributeName, long[] fingerprint) {
+        fingerprints().put(attributeName, fingerprint);
+    }
+
+    /**
+     * forget the fingerprint of attributeName
+     * @param attributeName
+     */
+    void removeFingerprint(String attributeName) {
+        fingerprints().remove(attributeName);
+    }
+
+    /**
+     * return and forget the serialized value of attributeName
+     * captured while fingerprinting, or null if there is none
+     * @param attributeName
+     */
+    byte[] takePendingState(String attributeName) {
+        return pendingStates().remove(attributeName);
+    }
+
+    /**
+     * keep the serialized value of attributeName captured while
+     * fingerprinting, and mark the attribute dirty
+     * @param attributeName
+     * @param state
+     */
+    void setPendingState(String attributeName, byte[] state) {
+        pendingStates().put(attributeName, state);
+        setAttributeStateDirty(attributeName, true);
+        setDirty(true);
+    }
+
+    /**
+     * forget all serialized values captured while fingerprinting
+     */
+    void clearPendingStates() {
+        pendingStates().clear();
+    }
+
+    private Map<String, long[]> fingerprints() {
+        // transient fields are not restored on deserialization
+        if (_fingerprints == null) {
+            _fingerprints = new HashMap<String, long[]>();
+        }
+        return _fingerprints;
+    }
+
+    private Map<String, byte[]> pendingStates() {
+        if (_pendingStates == null) {
+            _pendingStates = new HashMap<String, byte[]>();
+        }
+        return _pendingStates;
+    }
+}
@@ -60,7 +60,20 @@ import java.util.logging.Level;
  * @author Rajiv Mordani
  */
 public class ReplicationAttributeStore extends ReplicationStore {
-    
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Attributes are serialized into this per-thread buffer to be
+     * fingerprinted; it is dropped after use if it grew beyond this size
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<FingerprintBuffer> fingerprintBuffers =
+            new ThreadLocal<FingerprintBuffer>();
+
 
     /** Creates a new instance of ReplicationAttributeStore */
     public ReplicationAttributeStore(JavaEEIOUtils ioUtils) {
@@ -83,7 +96,10 @@ public class ReplicationAttributeStore extends ReplicationStore {
             return;
         }
         HASession haSess = (HASession)session;
-        if( haSess.isPersistent() && !haSess.isDirty() ) {
+        // a fingerprinted session is only known to be clean once its
+        // attributes have been fingerprinted while it is saved
+        if( haSess.isPersistent() && !haSess.isDirty()
+                && !(session instanceof FingerprintedAttributeHASession) ) {
             this.updateLastAccessTime(session);
         } else {
             this.doValveSave(session);
@@ -107,7 +123,10 @@ public class ReplicationAttributeStore extends ReplicationStore {
             return;
         }
         HASession haSess = (HASession)session;
-        if( haSess.isPersistent() && !haSess.isDirty() ) {
+        // a fingerprinted session is only known to be clean once its
+        // attributes have been fingerprinted while it is saved
+        if( haSess.isPersistent() && !haSess.isDirty()
+                && !(session instanceof FingerprintedAttributeHASession) ) {
             this.updateLastAccessTime(session);
         } else {
             this.doSave(session);
@@ -368,6 +387,9 @@ public class ReplicationAttributeStore extends ReplicationStore {
         
         //now load entries from deserialized entries collection
         ((ModifiedAttributeHASession)_session).clearAttributeStates();
+        if (_session instanceof FingerprintedAttributeHASession) {
+            ((FingerprintedAttributeHASession)_session).markAttributesPersistent();
+        }
         byte[] entriesState = metadata.getState();
         Collection entries = null;
         if(entriesState != null) {
@@ -407,6 +429,9 @@ public class ReplicationAttributeStore extends ReplicationStore {
     
     private CompositeMetadata createCompositeMetadata(ModifiedAttributeHASession modAttrSession) {
         
+        if (modAttrSession instanceof FingerprintedAttributeHASession) {
+            checkFingerprints((FingerprintedAttributeHASession) modAttrSession);
+        }
         byte[] trunkState = null;
         if (modAttrSession.isNew()) {
             try {
@@ -433,6 +458,9 @@ public class ReplicationAttributeStore extends ReplicationStore {
                 SessionAttributeMetadata.Operation.UPDATE, modifiedAttrs);
         addToEntries(modAttrSession, entries,
                 SessionAttributeMetadata.Operation.DELETE, deletedAttrs);
+        if (modAttrSession instanceof FingerprintedAttributeHASession) {
+            ((FingerprintedAttributeHASession) modAttrSession).clearPendingStates();
+        }
 
         CompositeMetadata result 
             = new CompositeMetadata(modAttrSession.getVersion(),
@@ -463,9 +491,25 @@ public class ReplicationAttributeStore extends ReplicationStore {
             nextAttrName = attrList.get(i);
             nextAttrValue = ((StandardSession) modAttrSession).getAttribute(nextAttrName);
             nextValue = null;
-            try {
-                nextValue = getByteArray(nextAttrValue);
-            } catch (IOException ex) {}
+            if (modAttrSession instanceof FingerprintedAttributeHASession) {
+                FingerprintedAttributeHASession fpSession =
+                        (FingerprintedAttributeHASession) modAttrSession;
+                if (op == SessionAttributeMetadata.Operation.DELETE) {
+                    fpSession.removeFingerprint(nextAttrName);
+                } else {
+                    nextValue = fpSession.takePendingState(nextAttrName);
+                }
+            }
+            if (nextValue == null) {
+                try {
+                    nextValue = getByteArray(nextAttrValue);
+                } catch (IOException ex) {}
+            }
+            if (nextValue != null && op != SessionAttributeMetadata.Operation.DELETE
+                    && modAttrSession instanceof FingerprintedAttributeHASession) {
+                ((FingerprintedAttributeHASession) modAttrSession).setFingerprint(
+                        nextAttrName, fingerprint(nextValue, 0, nextValue.length));
+            }
             SessionAttributeMetadata nextAttrMetadata
                 = new SessionAttributeMetadata(nextAttrName, op, nextValue);
             entries.add(nextAttrMetadata);
@@ -473,45 +517,124 @@ public class ReplicationAttributeStore extends ReplicationStore {
     }
     
     /**
-    * Create an byte[] for the session that we can then pass to
-    * the HA Store.
-    *
-    * @param attributeValue
-    *   The attribute value we are serializing
-    *
-    */
-    protected byte[] getByteArray(Object attributeValue)
-      throws IOException {
-        ByteArrayOutputStream bos = null;
-        ObjectOutputStream oos = null;
-
-
-        byte[] obs;
+     * Fingerprint the attributes of session not already known to be
+     * modified, and mark dirty those whose value changed since it was last
+     * shipped, e.g. a mutable object changed without calling setAttribute.
+     * An attribute whose fingerprint is not known (the session was just
+     * loaded or failed over) is shipped as well, since its value may
+     * already differ from the one in the store.
+     *
+     * @param session the session about to be saved
+     */
+    private void checkFingerprints(FingerprintedAttributeHASession session) {
+        List<String> attrList = session.getUnmodifiedAttributes();
+        if (attrList.isEmpty()) {
+            return;
+        }
+        FingerprintBuffer buffer = fingerprintBuffers.get();
+        if (buffer == null) {
+            buffer = new FingerprintBuffer();
+            fingerprintBuffers.set(buffer);
+        }
         try {
-            bos = new ByteArrayOutputStream();
-            
+            for(int i=0; i<attrList.size(); i++) {
+                String nextAttrName = attrList.get(i);
+                Object nextAttrValue = ((StandardSession) session).getAttribute(nextAttrName);
+                buffer.reset();
+                try {
+                    writeObject(buffer, nextAttrValue);
+                } catch (IOException ex) {
+                    if (_logger.isLoggable(Level.FINE)) {
+                        _logger.log(Level.FINE, "Unable to fingerprint attribute " + nextAttrName, ex);
+                    }
+                    continue;
+                }
+                long[] previous = session.getFingerprint(nextAttrName);
+                long[] current = buffer.fingerprint();
+                if (previous == null
+                        || previous[0] != current[0] || previous[1] != current[1]) {
+                    if (_logger.isLoggable(Level.FINE)) {
+                        _logger.fine("ReplicationAttributeStore>>checkFingerprints: attribute "
+                                + nextAttrName + ((previous == null) ? " not fingerprinted yet"
+                                : " changed in place"));
+                    }
+                    session.setPendingState(nextAttrName, buffer.toByteArray());
+                }
+            }
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                fingerprintBuffers.remove();
+            }
+        }
+    }
 
+    private void writeObject(OutputStream out, Object attributeValue)
+            throws IOException {
+        ObjectOutputStream oos = null;
+        try {
             try {
-                oos = ioUtils.createObjectOutputStream(new BufferedOutputStream(bos), true);
+                oos = ioUtils.createObjectOutputStream(new BufferedOutputStream(out), true);
             } catch (Exception ex) {}
 
             //use normal ObjectOutputStream if there is a failure during stream creation
             if(oos == null) {
-                oos = new ObjectOutputStream(new BufferedOutputStream(bos)); 
-            }            
+                oos = new ObjectOutputStream(new BufferedOutputStream(out));
+            }
             oos.writeObject(attributeValue);
             oos.close();
             oos = null;
-
-            obs = bos.toByteArray();
         }
         finally {
             if ( oos != null )  {
                 oos.close();
             }
         }
+    }
 
-        return obs;
+    /**
+     * Return the fingerprint of a serialized attribute value:
+     * its length and its 64-bit FNV-1a hash.
+     */
+    private static long[] fingerprint(byte[] bytes, int offset, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= (bytes[i] & 0xff);
+            hash *= FNV_PRIME;
+        }
+        return new long[] { length, hash };
+    }
+
+    /**
+     * A ByteArrayOutputStream that is fingerprinted in place
+     */
+    private static final class FingerprintBuffer extends ByteArrayOutputStream {
+
+        FingerprintBuffer() {
+            super(1024);
+        }
+
+        long[] fingerprint() {
+            return ReplicationAttributeStore.fingerprint(buf, 0, count);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+
+    /**
+    * Create an byte[] for the session that we can then pass to
+    * the HA Store.
+    *
+    * @param attributeValue
+    *   The attribute value we are serializing
+    *
+    */
+    protected byte[] getByteArray(Object attributeValue)
+      throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeObject(bos, attributeValue);
+        return bos.toByteArray();
     }
     
     /**
@@ -66,6 +66,7 @@ import org.glassfish.hk2.api.PerLookup;
 
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -107,6 +108,14 @@ public class ReplicationWebEventPersistentManager<T extends Storeable> extends R
     private static final String name = "ReplicationWebEventPersistentManager";    
 
 
+    /**
+     * The session note holding the replica cookie info of the request
+     * that queued the session, for the write-behind thread to use.
+     */
+    private static final String HA_COOKIE_INFO_NOTE =
+            "org.glassfish.web.ha.HA_COOKIE_INFO";
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -140,6 +149,16 @@ public class ReplicationWebEventPersistentManager<T extends Storeable> extends R
             _logger.fine("in doValveSave");
         }
 
+        if (isWriteBehind()) {
+            // HACookieManager is reset when the request completes
+            HACookieInfo cookieInfo = HACookieManager.getCurrent();
+            session.setNote(HA_COOKIE_INFO_NOTE, new HACookieInfo(
+                    cookieInfo.getNewReplicaCookie(), cookieInfo.getOldReplicaCookie()));
+            if (queueWrite(session)) {
+                return;
+            }
+        }
+
             try {
                 ReplicationStore replicationStore = (ReplicationStore) this.getStore();
                 replicationStore.doValveSave(session);
@@ -156,6 +175,32 @@ public class ReplicationWebEventPersistentManager<T extends Storeable> extends R
     }
    
 
+    /**
+    * called from a write-behind thread; does the save of a session
+    * queued by doValveSave, with the replica cookie info of the
+    * request that queued it
+    *
+    * @param session
+    *   The session to store
+    */
+    @Override
+    protected void writeQueuedSession(Session session) throws IOException {
+        HACookieInfo cookieInfo = (HACookieInfo) session.getNote(HA_COOKIE_INFO_NOTE);
+        HACookieInfo oldCookieInfo = null;
+        if (cookieInfo != null) {
+            oldCookieInfo = HACookieManager.setCurrrent(cookieInfo);
+        }
+        try {
+            ReplicationStore replicationStore = (ReplicationStore) this.getStore();
+            replicationStore.doValveSave(session);
+        } finally {
+            if (cookieInfo != null) {
+                HACookieManager.setCurrrent(oldCookieInfo);
+            }
+        }
+    }
+
+
     //START OF 6364900
     public void postRequestDispatcherProcess(ServletRequest request, ServletResponse response) {
         Session sess = this.getSession(request);
@@ -99,6 +99,11 @@ public class ReplicatedWebMethodSessionStrategyBuilder extends BasePersistenceSt
                     new ModifiedAttributeSessionFactory(),
                     new ReplicationAttributeStore(ioUtils),
                     ctx, serverConfigLookup);
+        } else if (this.getPersistenceScope().equals("fingerprinted-attribute")) {
+            setupReplicationWebEventPersistentManager(CompositeMetadata.class,
+                    new FingerprintedAttributeSessionFactory(),
+                    new ReplicationAttributeStore(ioUtils),
+                    ctx, serverConfigLookup);
         } else {
             throw new IllegalArgumentException(this.getPersistenceScope());
         }
@@ -128,6 +133,10 @@ public class ReplicatedWebMethodSessionStrategyBuilder extends BasePersistenceSt
         rwepMgr.setRelaxCacheVersionSemantics(relaxCacheVersionSemantics);
         rwepMgr.setStore(store);
         rwepMgr.setDisableJreplica(disableJreplica);
+        rwepMgr.setWriteBehind(writeBehind);
+        rwepMgr.setWriteBehindWindow(writeBehindWindow);
+        rwepMgr.setWriteBehindBatchSize(writeBehindBatchSize);
+        rwepMgr.setWriteBehindThreads(writeBehindThreads);
 
         ctx.setManager(rwepMgr);
         if(!((StandardContext)ctx).isSessionTimeoutOveridden()) {
@@ -0,0 +1,305 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.ha.session.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.glassfish.ha.store.api.BackingStore;
+import org.glassfish.ha.store.api.BackingStoreException;
+import org.glassfish.ha.store.api.BackingStoreFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the fingerprinted-attribute persistence scope: sessions are
+ * saved through the manager, as HASessionStoreValve does at the end of a
+ * request, and the attributes shipped to the BackingStore are checked.
+ */
+public class ReplicationAttributeStoreTest {
+
+    private RecordingBackingStore backingStore;
+
+    private TestManager manager;
+
+    private ReplicationAttributeStore store;
+
+    @Before
+    public void setUp() {
+        backingStore = new RecordingBackingStore();
+        manager = createManager(backingStore);
+        store = (ReplicationAttributeStore) manager.getStore();
+    }
+
+    @Test
+    public void testInPlaceMutationIsShipped() throws Exception {
+        FingerprintedAttributeHASession session = createSession("s1");
+        List<String> cart = new ArrayList<String>();
+        cart.add("book");
+        session.setAttribute("cart", cart);
+        manager.doValveSave(session);
+        assertEquals(SessionAttributeMetadata.Operation.ADD,
+                lastEntries().get("cart").getOperation());
+
+        // changed without calling setAttribute
+        cart.add("pen");
+        manager.doValveSave(session);
+
+        SessionAttributeMetadata entry = lastEntries().get("cart");
+        assertNotNull(entry);
+        assertEquals(SessionAttributeMetadata.Operation.UPDATE, entry.getOperation());
+        assertEquals(Arrays.asList("book", "pen"), store.getAttributeValue(entry.getState()));
+    }
+
+    @Test
+    public void testUnchangedAttributeIsNotShipped() throws Exception {
+        FingerprintedAttributeHASession session = createSession("s1");
+        List<String> cart = new ArrayList<String>();
+        session.setAttribute("cart", cart);
+        session.setAttribute("user", "duke");
+        manager.doValveSave(session);
+        assertEquals(2, lastEntries().size());
+
+        manager.doValveSave(session);
+        assertTrue(lastEntries().isEmpty());
+
+        cart.add("book");
+        manager.doValveSave(session);
+        Map<String, SessionAttributeMetadata> entries = lastEntries();
+        assertEquals(Collections.singleton("cart"), entries.keySet());
+        assertEquals(3, backingStore.saved.size());
+    }
+
+    @Test
+    public void testDeleteClearsFingerprint() throws Exception {
+        FingerprintedAttributeHASession session = createSession("s1");
+        session.setAttribute("user", "duke");
+        manager.doValveSave(session);
+        assertTrue(backingStore.stored.getEntries().iterator().hasNext());
+        assertNotNull(session.getFingerprint("user"));
+
+        session.removeAttribute("user");
+        manager.doValveSave(session);
+
+        assertFalse(backingStore.stored.getEntries().iterator().hasNext());
+        assertNull(session.getFingerprint("user"));
+
+        // the same value set again is shipped like any new attribute
+        session.setAttribute("user", "duke");
+        manager.doValveSave(session);
+        assertEquals(SessionAttributeMetadata.Operation.ADD,
+                lastEntries().get("user").getOperation());
+        assertNotNull(session.getFingerprint("user"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFirstSaveAfterLoadShipsEveryAttribute() throws Exception {
+        FingerprintedAttributeHASession session = createSession("s1");
+        List<String> cart = new ArrayList<String>();
+        cart.add("book");
+        session.setAttribute("cart", cart);
+        session.setAttribute("user", "duke");
+        manager.doValveSave(session);
+        CompositeMetadata first = backingStore.last();
+        assertNotNull(first.getState());
+
+        // fail over to another instance which only has the trunk state,
+        // so none of the attributes has a fingerprint there
+        RecordingBackingStore otherBackingStore = new RecordingBackingStore();
+        otherBackingStore.loaded = new CompositeMetadata(first.getVersion(),
+                System.currentTimeMillis(), 1800000L,
+                new ArrayList<SessionAttributeMetadata>(), first.getState(), null);
+        TestManager otherManager = createManager(otherBackingStore);
+        FingerprintedAttributeHASession loaded = (FingerprintedAttributeHASession)
+                otherManager.getStore().load("s1");
+
+        assertNotNull(loaded);
+        assertEquals(cart, loaded.getAttribute("cart"));
+        Map<String, SessionAttributeMetadata> entries = otherBackingStore.lastEntries();
+        assertEquals(2, entries.size());
+        assertEquals(SessionAttributeMetadata.Operation.UPDATE,
+                entries.get("cart").getOperation());
+        assertEquals(cart, store.getAttributeValue(entries.get("cart").getState()));
+        assertEquals("duke", store.getAttributeValue(entries.get("user").getState()));
+        assertNotNull(loaded.getFingerprint("cart"));
+        assertNotNull(loaded.getFingerprint("user"));
+
+        // the attributes are now fingerprinted: only changes are shipped
+        otherManager.doValveSave(loaded);
+        assertTrue(otherBackingStore.lastEntries().isEmpty());
+
+        ((List<String>) loaded.getAttribute("cart")).add("pen");
+        otherManager.doValveSave(loaded);
+        assertEquals(Collections.singleton("cart"), otherBackingStore.lastEntries().keySet());
+    }
+
+    private FingerprintedAttributeHASession createSession(String id) {
+        return (FingerprintedAttributeHASession) manager.createSession(id);
+    }
+
+    private Map<String, SessionAttributeMetadata> lastEntries() {
+        return backingStore.lastEntries();
+    }
+
+    private static TestManager createManager(
+            BackingStore<String, CompositeMetadata> backingStore) {
+        TestManager manager = new TestManager();
+        manager.setContainer(new StandardContext());
+        manager.setSessionFactory(new FingerprintedAttributeSessionFactory());
+        manager.setBackingStore(backingStore);
+        manager.setStore(new ReplicationAttributeStore(null));
+        return manager;
+    }
+
+    /**
+     * A manager saving sessions on the request thread, as
+     * ReplicationWebEventPersistentManager does without write-behind
+     */
+    private static final class TestManager extends ReplicationManagerBase<CompositeMetadata> {
+
+        @Override
+        public void createBackingStore(String persistenceType, String storeName,
+                Class<CompositeMetadata> metadataClass, Map<String, Object> vendorMap) {
+        }
+
+        @Override
+        public void doValveSave(Session session) {
+            try {
+                ((ReplicationStore) getStore()).doValveSave(session);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public String getReplicaFromPredictor(String sessionId, String oldJreplicaValue) {
+            return null;
+        }
+    }
+
+    /**
+     * A BackingStore keeping every CompositeMetadata saved to it, as read
+     * back from its Storeable state, and the attributes of the session
+     * merged from all of them
+     */
+    private static final class RecordingBackingStore
+            extends BackingStore<String, CompositeMetadata> {
+
+        final List<CompositeMetadata> saved = new ArrayList<CompositeMetadata>();
+
+        final CompositeMetadata stored = new CompositeMetadata();
+
+        CompositeMetadata loaded;
+
+        CompositeMetadata last() {
+            return saved.get(saved.size() - 1);
+        }
+
+        Map<String, SessionAttributeMetadata> lastEntries() {
+            Map<String, SessionAttributeMetadata> entries =
+                    new HashMap<String, SessionAttributeMetadata>();
+            for (SessionAttributeMetadata entry : last().getEntries()) {
+                entries.put(entry.getAttributeName(), entry);
+            }
+            return entries;
+        }
+
+        @Override
+        public BackingStoreFactory getBackingStoreFactory() {
+            return null;
+        }
+
+        @Override
+        public CompositeMetadata load(String key, String version) {
+            return loaded;
+        }
+
+        @Override
+        public String save(String key, CompositeMetadata value, boolean isNew)
+                throws BackingStoreException {
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                value._storeable_writeState(bos);
+                CompositeMetadata copy = new CompositeMetadata();
+                copy._storeable_readState(new ByteArrayInputStream(bos.toByteArray()));
+                saved.add(copy);
+                stored._storeable_readState(new ByteArrayInputStream(bos.toByteArray()));
+            } catch (IOException ex) {
+                throw new BackingStoreException(ex.getMessage(), ex);
+            }
+            return null;
+        }
+
+        @Override
+        public void remove(String key) {
+        }
+
+        @Override
+        public int removeExpired(long idleForMillis) {
+            return 0;
+        }
+
+        @Override
+        public int size() {
+            return saved.size();
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -107,6 +107,12 @@ public abstract class BaseDirContext implements DirContext {
     protected int cacheMaxSize = 10240; // 10 MB
 
 
+    /**
+     * Class name of the cache, null for the default ConcurrentResourceCache.
+     */
+    protected String cacheClassName = null;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -207,6 +213,22 @@ public abstract class BaseDirContext implements DirContext {
     }
 
 
+    /**
+     * Return the class name of the cache.
+     */
+    public String getCacheClassName() {
+        return cacheClassName;
+    }
+
+
+    /**
+     * Set the class name of the cache.
+     */
+    public void setCacheClassName(String cacheClassName) {
+        this.cacheClassName = cacheClassName;
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
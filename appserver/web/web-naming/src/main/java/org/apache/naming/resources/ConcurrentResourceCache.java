@@ -0,0 +1,549 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.naming.resources;
+
+import com.sun.appserv.util.cache.FrequencySketch;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resource cache which can be read without locking and which decides what
+ * to keep using recent access frequency rather than random sampling.
+ * <p>
+ * Entries are held in hash maps, so lookups never block and adding an entry
+ * no longer copies a sorted array. Space is managed with the W-TinyLFU
+ * policy: a new entry first goes to a small LRU window; once it falls out
+ * of the window it competes with the least recently used entry of the main
+ * segmented LRU and is only kept if a count-min sketch of recent lookups
+ * says it is asked for more often. Entries read again while in the main
+ * region are promoted to its protected segment. One-off requests, such as
+ * a crawler walking the whole application, therefore cannot flush the
+ * content that is actually popular.
+ * <p>
+ * Content entries are weighted by their size in KB and bounded by the cache
+ * max size. Not found entries are kept under the same policy in a separate
+ * region bounded by the spare not found entries count, so probing for
+ * missing files cannot push out cached content either.
+ * <p>
+ * Lookups are recorded in a small lossy buffer and applied to the policy
+ * by whichever thread next takes the eviction lock. The desired entry access
+ * ratio and max allocate iterations settings of {@link ResourceCache} are
+ * not used.
+ * <p>
+ * This is the default cache of every web module. The former
+ * {@link ResourceCache} can be selected per web module with the
+ * <code>cacheClassName</code> property of the context, e.g. in
+ * META-INF/context.xml.
+ */
+public class ConcurrentResourceCache extends ResourceCache {
+
+
+    // ----------------------------------------------------- Static Variables
+
+
+    /**
+     * Number of slots in the read buffer, must be a power of two.
+     */
+    private static final int READ_BUFFER_SIZE = 128;
+
+
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+
+    static final byte WINDOW = 0;
+    static final byte PROBATION = 1;
+    static final byte PROTECTED = 2;
+    static final byte DEAD = 3;
+
+
+    // ----------------------------------------------------------- Constructors
+
+
+    public ConcurrentResourceCache() {
+        content = new Region();
+        notFound = new Region();
+        evictionLock.lock();
+        try {
+            content.setMaximum(cacheMaxSize);
+            notFound.setMaximum(spareNotFoundEntries);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * Entries for resources which exist.
+     */
+    protected final Region content;
+
+
+    /**
+     * Entries for resources which do not exist.
+     */
+    protected final Region notFound;
+
+
+    /**
+     * Guards the eviction policy of both regions.
+     */
+    protected final ReentrantLock evictionLock = new ReentrantLock();
+
+
+    /**
+     * Entries read since the policy was last updated.
+     */
+    private final AtomicReferenceArray<Node> readBuffer =
+        new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+
+
+    private final LongAdder hits = new LongAdder();
+
+
+    private final LongAdder misses = new LongAdder();
+
+
+    private final LongAdder evictions = new LongAdder();
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    @Override
+    public long getAccessCount() {
+        return hits.sum() + misses.sum();
+    }
+
+
+    @Override
+    public long getHitsCount() {
+        return hits.sum();
+    }
+
+
+    @Override
+    public long getMissesCount() {
+        return misses.sum();
+    }
+
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+
+    @Override
+    public int getCacheSize() {
+        evictionLock.lock();
+        try {
+            return (int) (content.weightedSize() + notFound.weightedSize());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    @Override
+    public void setCacheMaxSize(int cacheMaxSize) {
+        super.setCacheMaxSize(cacheMaxSize);
+        evictionLock.lock();
+        try {
+            content.setMaximum(cacheMaxSize);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    @Override
+    public void setSpareNotFoundEntries(int spareNotFoundEntries) {
+        super.setSpareNotFoundEntries(spareNotFoundEntries);
+        evictionLock.lock();
+        try {
+            notFound.setMaximum(spareNotFoundEntries);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Space is made by {@link #load} when the entry is added, so this only
+     * rejects entries which could never fit.
+     */
+    @Override
+    public boolean allocate(int space) {
+        return space <= cacheMaxSize;
+    }
+
+
+    @Override
+    public CacheEntry lookup(String name) {
+        Node node = content.data.get(name);
+        if (node == null) {
+            node = notFound.data.get(name);
+        }
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        recordRead(node);
+        return node.entry;
+    }
+
+
+    @Override
+    public boolean contains(String name) {
+        return content.data.containsKey(name)
+            || notFound.data.containsKey(name);
+    }
+
+
+    /**
+     * Adds the entry, replacing any entry already cached under its name:
+     * the caller has just read the resource, so an older entry is stale.
+     */
+    @Override
+    public void load(CacheEntry entry) {
+        Region region = entry.exists ? content : notFound;
+        Region other = entry.exists ? notFound : content;
+        Node node = new Node(entry, entry.exists ? entry.size : 1, region);
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            // A resource which was created or deleted replaces its old entry
+            Node stale = other.data.remove(entry.name);
+            if (stale != null) {
+                other.unlink(stale);
+            }
+            if (node.weight > region.maximum) {
+                stale = region.data.remove(entry.name);
+                if (stale != null) {
+                    region.unlink(stale);
+                }
+                return;
+            }
+            stale = region.data.put(entry.name, node);
+            if (stale != null) {
+                region.unlink(stale);
+            }
+            region.add(node);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    @Override
+    public boolean unload(String name) {
+        evictionLock.lock();
+        try {
+            Node node = content.data.remove(name);
+            if (node == null) {
+                node = notFound.data.remove(name);
+            }
+            if (node == null) {
+                return false;
+            }
+            node.region.unlink(node);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Record a read in a random slot of the read buffer. If the slot was
+     * still taken the buffer is filling up, so try to apply it to the
+     * policy; the overwritten read is simply lost.
+     */
+    private void recordRead(Node node) {
+        int index = ThreadLocalRandom.current().nextInt() & READ_BUFFER_MASK;
+        if ((readBuffer.getAndSet(index, node) != null)
+                && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Apply the buffered reads to the policy. Must hold the eviction lock.
+     */
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Node node = readBuffer.getAndSet(i, null);
+            if (node != null) {
+                node.region.onAccess(node);
+            }
+        }
+    }
+
+
+    // ---------------------------------------------------------- Inner Classes
+
+
+    /**
+     * Cache entry linked into one of the access queues of its region.
+     */
+    static final class Node {
+
+        final CacheEntry entry;
+        final int weight;
+        final Region region;
+
+        // Guarded by the eviction lock
+        byte queue = WINDOW;
+        Node prev;
+        Node next;
+
+        Node(CacheEntry entry, int weight, Region region) {
+            this.entry = entry;
+            this.weight = weight;
+            this.region = region;
+        }
+
+    }
+
+
+    /**
+     * Doubly linked list of nodes in access order, least recent first.
+     */
+    static final class AccessQueue {
+
+        Node head;
+        Node tail;
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+    }
+
+
+    /**
+     * A bounded set of entries with its own window, probation and protected
+     * queues and its own frequency sketch. All methods except reads of the
+     * data map must be called with the eviction lock held.
+     */
+    final class Region {
+
+        final ConcurrentHashMap<String, Node> data =
+            new ConcurrentHashMap<String, Node>();
+
+        final AccessQueue window = new AccessQueue();
+        final AccessQueue probation = new AccessQueue();
+        final AccessQueue protectedQueue = new AccessQueue();
+
+        final FrequencySketch sketch = new FrequencySketch();
+
+        long maximum;
+        long windowMaximum;
+        long protectedMaximum;
+
+        long windowWeight;
+        long probationWeight;
+        long protectedWeight;
+
+        void setMaximum(long maximum) {
+            this.maximum = Math.max(maximum, 0);
+            // 1% admission window, 80% of the main region protected
+            windowMaximum = Math.max(1, this.maximum / 100);
+            protectedMaximum = ((this.maximum - windowMaximum) * 4) / 5;
+            sketch.ensureCapacity(this.maximum);
+            evict();
+        }
+
+        long weightedSize() {
+            return windowWeight + probationWeight + protectedWeight;
+        }
+
+        void add(Node node) {
+            sketch.increment(node.entry.name.hashCode());
+            node.queue = WINDOW;
+            window.addLast(node);
+            windowWeight += node.weight;
+            evict();
+        }
+
+        void onAccess(Node node) {
+            switch (node.queue) {
+            case WINDOW:
+                sketch.increment(node.entry.name.hashCode());
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                sketch.increment(node.entry.name.hashCode());
+                probation.remove(node);
+                probationWeight -= node.weight;
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                protectedWeight += node.weight;
+                // Make room in the protected segment
+                while (protectedWeight > protectedMaximum) {
+                    Node demoted = protectedQueue.head;
+                    protectedQueue.remove(demoted);
+                    protectedWeight -= demoted.weight;
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                    probationWeight += demoted.weight;
+                }
+                break;
+            case PROTECTED:
+                sketch.increment(node.entry.name.hashCode());
+                protectedQueue.moveToLast(node);
+                break;
+            default:
+                // Removed since it was read
+                break;
+            }
+        }
+
+        void unlink(Node node) {
+            switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                probationWeight -= node.weight;
+                break;
+            case PROTECTED:
+                protectedQueue.remove(node);
+                protectedWeight -= node.weight;
+                break;
+            default:
+                break;
+            }
+            node.queue = DEAD;
+        }
+
+        void evict() {
+            // Entries leaving the window become admission candidates at the
+            // most recent end of the probation segment
+            while (windowWeight > windowMaximum) {
+                Node candidate = window.head;
+                window.remove(candidate);
+                windowWeight -= candidate.weight;
+                candidate.queue = PROBATION;
+                probation.addLast(candidate);
+                probationWeight += candidate.weight;
+            }
+            while (weightedSize() > maximum) {
+                Node victim = probation.head;
+                Node candidate = probation.tail;
+                if (victim == null) {
+                    victim = (protectedQueue.head != null)
+                        ? protectedQueue.head : window.head;
+                } else if ((victim != candidate) && !admit(candidate, victim)) {
+                    victim = candidate;
+                }
+                evict(victim);
+            }
+        }
+
+        boolean admit(Node candidate, Node victim) {
+            int candidateFrequency =
+                sketch.frequency(candidate.entry.name.hashCode());
+            int victimFrequency =
+                sketch.frequency(victim.entry.name.hashCode());
+            return candidateFrequency > victimFrequency;
+        }
+
+        void evict(Node node) {
+            unlink(node);
+            data.remove(node.entry.name, node);
+            evictions.increment();
+        }
+
+    }
+
+
+}
@@ -69,6 +69,9 @@ public class ProxyDirContext implements DirContext {
             // the caching policy.
             BaseDirContext baseDirContext = (BaseDirContext) dirContext;
             if (baseDirContext.isCached()) {
+                if (baseDirContext.getCacheClassName() != null) {
+                    cacheClassName = baseDirContext.getCacheClassName();
+                }
                 cache = (ResourceCache) 
                     Class.forName(cacheClassName).newInstance();
                 cache.setCacheMaxSize(baseDirContext.getCacheMaxSize());
@@ -103,10 +106,11 @@ public class ProxyDirContext implements DirContext {
 
 
     /**
-     * Cache class.
+     * Cache class. The sorted array ResourceCache can be selected through
+     * the cacheClassName property of the context.
      */
     protected String cacheClassName = 
-        "org.apache.naming.resources.ResourceCache";
+        "org.apache.naming.resources.ConcurrentResourceCache";
 
 
     /**
@@ -1563,7 +1567,7 @@ public class ProxyDirContext implements DirContext {
         // Add new entry to cache
         synchronized (cache) {
             // Check cache size, and remove elements if too big
-            if ((cache.lookup(name) == null) && cache.allocate(entry.size)) {
+            if (!cache.contains(name) && cache.allocate(entry.size)) {
                 cache.load(entry);
             }
         }
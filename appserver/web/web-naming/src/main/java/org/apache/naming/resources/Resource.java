@@ -20,6 +20,7 @@ package org.apache.naming.resources;
 import java.io.InputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Encapsultes the contents of a resource.
@@ -109,4 +110,20 @@ public class Resource {
     }
     
     
+    /**
+     * Binary content as a read-only buffer wrapping the cached byte array,
+     * so that it can be handed to the network layer without another copy.
+     * Each call returns an independent view with its own position and limit.
+     * 
+     * @return the content buffer, or null if the content is not loaded
+     */
+    public ByteBuffer getContentBuffer() {
+        byte[] content = binaryContent;
+        if (content == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+    
+    
 }
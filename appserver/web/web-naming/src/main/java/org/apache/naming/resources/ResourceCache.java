@@ -101,6 +101,12 @@ public class ResourceCache {
     protected long hitsCount = 0;
 
 
+    /**
+     * Number of entries removed to make room for new ones.
+     */
+    protected long evictionCount = 0;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -164,6 +170,26 @@ public class ResourceCache {
     }
 
 
+    /**
+     * Return the number of cache misses.
+     * Note: Update is not synced, so the number may not be completely 
+     * accurate.
+     */
+    public long getMissesCount() {
+        return getAccessCount() - getHitsCount();
+    }
+
+
+    /**
+     * Return the number of entries removed to make room for new ones.
+     * Note: Update is not synced, so the number may not be completely 
+     * accurate.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+
     /**
      * Return the maximum amount of iterations during a space allocation.
      */
@@ -215,6 +241,7 @@ public class ResourceCache {
         if (size > spareNotFoundEntries) {
             notFoundCache.clear();
             cacheSize -= size;
+            evictionCount += size;
             toFree -= size;
         }
 
@@ -281,6 +308,7 @@ public class ResourceCache {
         }
         cache = newCache;
         cacheSize -= totalSpace;
+        evictionCount += entriesFound;
 
         return true;
 
@@ -310,6 +338,19 @@ public class ResourceCache {
     }
 
 
+    /**
+     * Return true if an entry, found or not found, is cached under the given
+     * name. Unlike {@link #lookup} this does not count as an access.
+     */
+    public boolean contains(String name) {
+        int pos = find(cache, name);
+        if ((pos != -1) && (name.equals(cache[pos].name))) {
+            return true;
+        }
+        return notFoundCache.containsKey(name);
+    }
+
+
     public void load(CacheEntry entry) {
         if (entry.exists) {
             if (insertCache(entry)) {
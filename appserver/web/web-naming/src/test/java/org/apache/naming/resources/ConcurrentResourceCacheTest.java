@@ -0,0 +1,191 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.naming.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the W-TinyLFU resource cache: the load path, invalidation,
+ * eviction by weight and frequency based admission.
+ */
+public class ConcurrentResourceCacheTest {
+
+    private ConcurrentResourceCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ConcurrentResourceCache();
+        cache.setCacheMaxSize(100);
+        cache.setSpareNotFoundEntries(10);
+    }
+
+    @Test
+    public void testLoadAndLookup() {
+        CacheEntry entry = entry("/index.html", 4);
+        cache.load(entry);
+
+        assertSame(entry, cache.lookup("/index.html"));
+        assertNull(cache.lookup("/missing.html"));
+        assertTrue(cache.contains("/index.html"));
+        assertEquals(4, cache.getCacheSize());
+        assertEquals(1, cache.getHitsCount());
+        assertEquals(1, cache.getMissesCount());
+        assertEquals(2, cache.getAccessCount());
+    }
+
+    @Test
+    public void testLoadReplacesEntry() {
+        CacheEntry stale = entry("/index.html", 4);
+        CacheEntry fresh = entry("/index.html", 6);
+        cache.load(stale);
+        cache.load(fresh);
+
+        assertSame(fresh, cache.lookup("/index.html"));
+        assertEquals(6, cache.getCacheSize());
+
+        // A resource which was deleted, then created again
+        CacheEntry missing = notFound("/index.html");
+        cache.load(missing);
+        assertSame(missing, cache.lookup("/index.html"));
+        assertEquals(1, cache.getCacheSize());
+
+        CacheEntry created = entry("/index.html", 2);
+        cache.load(created);
+        assertSame(created, cache.lookup("/index.html"));
+        assertEquals(2, cache.getCacheSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testLoadTooLarge() {
+        cache.load(entry("/big.bin", 10));
+        assertFalse(cache.allocate(101));
+        assertTrue(cache.allocate(100));
+
+        // The new version no longer fits, so the old one must not be served
+        cache.load(entry("/big.bin", 101));
+        assertNull(cache.lookup("/big.bin"));
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void testUnload() {
+        cache.load(entry("/a.html", 3));
+        cache.load(notFound("/b.html"));
+
+        assertTrue(cache.unload("/a.html"));
+        assertTrue(cache.unload("/b.html"));
+        assertFalse(cache.unload("/a.html"));
+        assertFalse(cache.unload("/c.html"));
+        assertNull(cache.lookup("/a.html"));
+        assertNull(cache.lookup("/b.html"));
+        assertEquals(0, cache.getCacheSize());
+
+        // An entry read before it was unloaded is still in the read buffer
+        CacheEntry entry = entry("/a.html", 3);
+        cache.load(entry);
+        cache.lookup("/a.html");
+        assertTrue(cache.unload("/a.html"));
+        cache.load(entry("/d.html", 3));
+        assertNull(cache.lookup("/a.html"));
+        assertEquals(3, cache.getCacheSize());
+    }
+
+    @Test
+    public void testEvictionByWeight() {
+        for (int i = 0; i < 200; i++) {
+            cache.load(entry("/file" + i, 3));
+        }
+        assertTrue(cache.getCacheSize() <= 100);
+        assertTrue(cache.getCacheSize() > 90);
+        assertEquals(200 - (cache.getCacheSize() / 3), cache.getEvictionCount());
+
+        // Not found entries have their own bound
+        for (int i = 0; i < 50; i++) {
+            cache.load(notFound("/missing" + i));
+        }
+        assertEquals(10, cache.notFound.weightedSize());
+        assertTrue(cache.content.weightedSize() > 90);
+    }
+
+    @Test
+    public void testFrequentEntriesSurviveScan() {
+        for (int i = 0; i < 50; i++) {
+            cache.load(entry("/hot" + i, 1));
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                assertTrue(cache.lookup("/hot" + i) != null);
+            }
+        }
+
+        // A crawler requesting each resource once
+        for (int i = 0; i < 1000; i++) {
+            cache.load(entry("/cold" + i, 1));
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue("/hot" + i, cache.contains("/hot" + i));
+        }
+        assertTrue(cache.getCacheSize() <= 100);
+    }
+
+    private static CacheEntry entry(String name, int size) {
+        CacheEntry entry = new CacheEntry();
+        entry.name = name;
+        entry.size = size;
+        return entry;
+    }
+
+    private static CacheEntry notFound(String name) {
+        CacheEntry entry = new CacheEntry();
+        entry.name = name;
+        entry.exists = false;
+        return entry;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.admin.monitor;
+
+import com.sun.enterprise.config.serverbeans.Config;
+import com.sun.enterprise.config.serverbeans.MonitoringService;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.security.auth.login.LoginException;
+import org.glassfish.api.admin.ServerEnvironment;
+import org.glassfish.api.container.Adapter;
+import org.glassfish.grizzly.config.dom.NetworkListener;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+import org.glassfish.internal.api.AdminAccessController;
+import org.glassfish.internal.api.RemoteAdminAccessException;
+import org.jvnet.hk2.annotations.Optional;
+import org.jvnet.hk2.annotations.Service;
+
+/**
+ * Serves {@link MetricsExporter} output at <code>/metrics</code> on the admin
+ * listener, for Prometheus style scrapers.
+ * <p>
+ * The endpoint answers 404 unless the <code>metrics-enabled</code> property
+ * of the monitoring service is set to <code>true</code>, for instance with
+ * <code>asadmin set
+ * configs.config.server-config.monitoring-service.property.metrics-enabled=true</code>.
+ * Scrapers log in like any other admin client, with the admin user's
+ * credentials as HTTP basic authentication, and remote scrapers need secure
+ * admin to be enabled.
+ */
+@Service
+public class MetricsAdapter implements Adapter {
+
+    public static final String CONTEXT_ROOT = "/metrics";
+    public static final String ENABLED_PROPERTY = "metrics-enabled";
+    private static final int ADMIN_PORT = 4848;
+
+    @Inject
+    ServerEnvironment serverEnv;
+
+    @Inject
+    @Named(ServerEnvironment.DEFAULT_INSTANCE_NAME)
+    Config config;
+
+    @Inject
+    @Named(ServerEnvironment.DEFAULT_INSTANCE_NAME)
+    @Optional
+    MonitoringService monitoringService;
+
+    @Inject
+    @Optional
+    AdminAccessController authenticator;
+
+    private MetricsExporter exporter;
+    private HttpHandler httpHandler;
+    private boolean registered = false;
+
+    @Override
+    public synchronized HttpHandler getHttpService() {
+        if (httpHandler == null) {
+            exporter = new MetricsExporter(serverEnv.getInstanceName());
+            httpHandler = new MetricsHttpHandler();
+        }
+        return httpHandler;
+    }
+
+    @Override
+    public String getContextRoot() {
+        return CONTEXT_ROOT;
+    }
+
+    @Override
+    public int getListenPort() {
+        try {
+            return Integer.parseInt(config.getAdminListener().getPort());
+        }
+        catch (NumberFormatException ne) {
+            return ADMIN_PORT;
+        }
+    }
+
+    @Override
+    public InetAddress getListenAddress() {
+        try {
+            return InetAddress.getByName(config.getAdminListener().getAddress());
+        }
+        catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public List<String> getVirtualServers() {
+        NetworkListener nl = config.getAdminListener();
+        return Collections.singletonList(
+                nl.findHttpProtocol().getHttp().getDefaultVirtualServer());
+    }
+
+    @Override
+    public synchronized boolean isRegistered() {
+        return registered;
+    }
+
+    @Override
+    public synchronized void setRegistered(boolean registered) {
+        this.registered = registered;
+    }
+
+    private boolean isEnabled() {
+        return monitoringService != null && Boolean.parseBoolean(
+                monitoringService.getPropertyValue(ENABLED_PROPERTY, "false"));
+    }
+
+    private class MetricsHttpHandler extends HttpHandler {
+
+        @Override
+        public void service(Request request, Response response) throws Exception {
+            if (!isEnabled()) {
+                response.sendError(HttpStatus.NOT_FOUND_404.getStatusCode());
+                return;
+            }
+
+            try {
+                if (authenticator == null || authenticator.loginAsAdmin(request) == null)
+                    throw new LoginException();
+            }
+            catch (RemoteAdminAccessException e) {
+                response.sendError(HttpStatus.FORBIDDEN_403.getStatusCode());
+                return;
+            }
+            catch (LoginException e) {
+                response.setHeader("WWW-Authenticate", "BASIC");
+                response.sendError(HttpStatus.UNAUTHORIZED_401.getStatusCode());
+                return;
+            }
+
+            Method method = request.getMethod();
+
+            if (method != Method.GET && method != Method.HEAD) {
+                response.setHeader("Allow", "GET, HEAD");
+                response.sendError(HttpStatus.METHOD_NOT_ALLOWED_405.getStatusCode());
+                return;
+            }
+
+            response.setContentType(MetricsExporter.CONTENT_TYPE);
+
+            if (method == Method.HEAD)
+                return;
+
+            Writer out = response.getWriter();
+            exporter.write(out);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.admin.monitor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.glassfish.admin.monitor.StatsProviderRegistry.StatsProviderRegistryElement;
+import org.glassfish.external.probe.provider.PluginPoint;
+import org.glassfish.external.statistics.AverageRangeStatistic;
+import org.glassfish.external.statistics.BoundaryStatistic;
+import org.glassfish.external.statistics.BoundedRangeStatistic;
+import org.glassfish.external.statistics.CountStatistic;
+import org.glassfish.external.statistics.RangeStatistic;
+import org.glassfish.external.statistics.TimeStatistic;
+import org.glassfish.gmbal.AMXMetadata;
+import org.glassfish.gmbal.Description;
+import org.glassfish.gmbal.ManagedAttribute;
+
+/**
+ * Writes the statistics of all registered stats providers in the Prometheus
+ * text exposition format, reading each provider exactly once.
+ * <p>
+ * The {@link ManagedAttribute} getters of a stats provider class are looked
+ * up once and kept as method handles.  Which metric families exist and which
+ * providers feed them is worked out again only after a stats provider has
+ * been registered or unregistered, so a scrape neither walks the monitoring
+ * tree nor uses reflection.
+ * <p>
+ * Every attribute becomes a family named
+ * <code>glassfish_&lt;type&gt;_&lt;attribute&gt;</code>, where the type is
+ * the AMX type of the stats provider.  Samples carry the instance name and
+ * the path of the provider in the monitoring tree as labels.  When providers
+ * of different classes share a type and a path, their samples also carry the
+ * provider class as a <code>provider</code> label; of several providers of
+ * the same class at the same path only the first is exported.  Statistics
+ * with more than one value, such as range and time statistics, add a
+ * <code>field</code> label per value.
+ */
+public final class MetricsExporter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String PREFIX = "glassfish_";
+    private static final Logger logger = MLogger.getLogger();
+    // kept with the class itself, so that it does not hold on to the class
+    // loaders of undeployed applications
+    private static final ClassValue<List<Accessor>> accessors =
+            new ClassValue<List<Accessor>>() {
+                @Override
+                protected List<Accessor> computeValue(Class<?> statsProviderClass) {
+                    return createAccessors(statsProviderClass);
+                }
+            };
+    private static final MethodType GETTER_TYPE =
+            MethodType.methodType(Object.class, Object.class);
+
+    private final String instanceName;
+    private volatile Layout layout = null;
+    private StatsProviderRegistry observedRegistry = null;
+    // drops the layout as soon as a provider goes away, so that the layout
+    // does not keep it reachable until the next scrape
+    private final Runnable invalidator = new Runnable() {
+        @Override
+        public void run() {
+            layout = null;
+        }
+    };
+
+    public MetricsExporter(String instanceName) {
+        this.instanceName = instanceName;
+    }
+
+    /**
+     * Writes the current value of every enabled statistic to the given
+     * writer.  Nothing is written before monitoring has been initialized.
+     */
+    public void write(Writer out) throws IOException {
+        StatsProviderManagerDelegateImpl spmd =
+                StatsProviderUtil.getStatsProviderManagerDelegate();
+
+        if (spmd != null)
+            write(spmd.getStatsProviderRegistry(), out);
+    }
+
+    void write(StatsProviderRegistry registry, Writer out) throws IOException {
+        for (Family family : getLayout(registry).families)
+            family.write(out);
+    }
+
+    private Layout getLayout(StatsProviderRegistry registry) {
+        observe(registry);
+
+        // read the version first so that a concurrent change is never hidden
+        int version = registry.getVersion();
+        Layout current = layout;
+
+        if (current == null || current.registry != registry || current.version != version) {
+            current = new Layout(registry, version, instanceName);
+
+            // changes run the invalidator under the registry lock, so a
+            // layout which is already out of date is never kept
+            synchronized (registry) {
+                if (registry.getVersion() == version)
+                    layout = current;
+            }
+        }
+        return current;
+    }
+
+    private synchronized void observe(StatsProviderRegistry registry) {
+        if (observedRegistry == registry)
+            return;
+
+        if (observedRegistry != null)
+            observedRegistry.removeChangeListener(invalidator);
+        registry.addChangeListener(invalidator);
+        observedRegistry = registry;
+    }
+
+    private static List<Accessor> getAccessors(Class<?> statsProviderClass) {
+        return accessors.get(statsProviderClass);
+    }
+
+    private static List<Accessor> createAccessors(Class<?> statsProviderClass) {
+        List<Accessor> list = new ArrayList<Accessor>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        for (Method m : statsProviderClass.getMethods()) {
+            ManagedAttribute ma = m.getAnnotation(ManagedAttribute.class);
+
+            if (ma == null || m.getParameterTypes().length != 0)
+                continue;
+
+            // same naming as the monitoring tree, see StatsProviderManagerDelegateImpl
+            String id = ma.id();
+            if ((id == null) || id.isEmpty()) {
+                String methodNameLower = m.getName().toLowerCase(Locale.ENGLISH);
+                if (methodNameLower.startsWith("get") && methodNameLower.length() > 3) {
+                    id = methodNameLower.substring(3);
+                }
+            }
+            if ((id == null) || id.isEmpty())
+                continue;
+
+            try {
+                // the stats provider class itself need not be public
+                m.setAccessible(true);
+                MethodHandle getter = lookup.unreflect(m).asType(GETTER_TYPE);
+                Description description = m.getAnnotation(Description.class);
+                list.add(new Accessor(id,
+                        (description == null) ? null : description.value(), getter));
+            }
+            catch (Exception e) {
+                if (logger.isLoggable(Level.FINE))
+                    logger.log(Level.FINE, "Cannot export attribute " + id + " of "
+                            + statsProviderClass.getName(), e);
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+
+    private static String getType(Class<?> statsProviderClass) {
+        AMXMetadata am = statsProviderClass.getAnnotation(AMXMetadata.class);
+        String type = (am == null) ? null : am.type();
+
+        if (type == null || type.isEmpty())
+            type = statsProviderClass.getSimpleName();
+
+        type = toMetricName(type);
+        // every AMX monitoring type ends with -mon, it adds nothing here
+        if (type.endsWith("_mon"))
+            type = type.substring(0, type.length() - 4);
+        return type;
+    }
+
+    private static String getPath(StatsProviderRegistryElement spre) {
+        String path = spre.getSubTreePath();
+
+        if (path == null)
+            path = "";
+        if (spre.getPluginPoint() == PluginPoint.APPLICATIONS)
+            path = path.isEmpty() ? "applications" : "applications/" + path;
+        return path;
+    }
+
+    private static String toMetricName(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_')
+                sb.append(c);
+            else if (c >= 'A' && c <= 'Z')
+                sb.append(Character.toLowerCase(c));
+            else
+                sb.append('_');
+        }
+        return sb.toString();
+    }
+
+    private static String escapeLabelValue(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String escapeHelp(String s) {
+        return s.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    /*
+     * The getter of one attribute of a stats provider class.
+     */
+    private static final class Accessor implements Comparable<Accessor> {
+        private final String id;
+        private final String description;
+        private final MethodHandle getter;
+
+        Accessor(String id, String description, MethodHandle getter) {
+            this.id = id;
+            this.description = description;
+            this.getter = getter;
+        }
+
+        Object get(Object statsProvider) {
+            try {
+                return getter.invokeExact(statsProvider);
+            }
+            catch (Throwable t) {
+                if (logger.isLoggable(Level.FINE))
+                    logger.log(Level.FINE, "Cannot read attribute " + id + " of "
+                            + statsProvider.getClass().getName(), t);
+                return null;
+            }
+        }
+
+        @Override
+        public int compareTo(Accessor other) {
+            return id.compareTo(other.id);
+        }
+    }
+
+    /*
+     * One attribute of one registered stats provider.  The provider itself is
+     * read from the registry element, which forgets it on unregistration.
+     */
+    private static final class Member {
+        private final StatsProviderRegistryElement spre;
+        private final Accessor accessor;
+        // name{instance="...",path="..." -- closed by the writer
+        private final String labels;
+
+        Member(StatsProviderRegistryElement spre, Accessor accessor, String labels) {
+            this.spre = spre;
+            this.accessor = accessor;
+            this.labels = labels;
+        }
+    }
+
+    /*
+     * All samples sharing a metric name.  The text format wants them written
+     * together, hence the grouping by family rather than by stats provider.
+     */
+    private static final class Family {
+        private final String header;
+        private final List<Member> members = new ArrayList<Member>();
+
+        Family(String name, String description) {
+            StringBuilder sb = new StringBuilder();
+
+            if (description != null && !description.isEmpty())
+                sb.append("# HELP ").append(name).append(' ')
+                        .append(escapeHelp(description)).append('\n');
+            sb.append("# TYPE ").append(name).append(" untyped\n");
+            header = sb.toString();
+        }
+
+        void write(Writer out) throws IOException {
+            boolean started = false;
+
+            for (Member member : members) {
+                Object statsProvider = member.spre.getStatsProvider();
+
+                if (statsProvider == null || !member.spre.isEnabled())
+                    continue;
+
+                Object value = member.accessor.get(statsProvider);
+
+                if (!isSupported(value))
+                    continue;
+
+                if (!started) {
+                    out.write(header);
+                    started = true;
+                }
+                writeValue(out, member.labels, value);
+            }
+        }
+
+        private static boolean isSupported(Object value) {
+            return value instanceof CountStatistic || value instanceof RangeStatistic
+                    || value instanceof TimeStatistic || value instanceof BoundaryStatistic
+                    || value instanceof Number || value instanceof Boolean;
+        }
+
+        private static void writeValue(Writer out, String labels, Object value)
+                throws IOException {
+            if (value instanceof CountStatistic) {
+                writeSample(out, labels, null, ((CountStatistic) value).getCount());
+            }
+            else if (value instanceof RangeStatistic) {
+                RangeStatistic range = (RangeStatistic) value;
+                writeSample(out, labels, "current", range.getCurrent());
+                writeSample(out, labels, "highwatermark", range.getHighWaterMark());
+                writeSample(out, labels, "lowwatermark", range.getLowWaterMark());
+
+                if (value instanceof BoundedRangeStatistic) {
+                    BoundedRangeStatistic bounded = (BoundedRangeStatistic) value;
+                    writeSample(out, labels, "upperbound", bounded.getUpperBound());
+                    writeSample(out, labels, "lowerbound", bounded.getLowerBound());
+                }
+                if (value instanceof AverageRangeStatistic)
+                    writeSample(out, labels, "average",
+                            ((AverageRangeStatistic) value).getAverage());
+            }
+            else if (value instanceof TimeStatistic) {
+                TimeStatistic time = (TimeStatistic) value;
+                writeSample(out, labels, "count", time.getCount());
+                writeSample(out, labels, "maxtime", time.getMaxTime());
+                writeSample(out, labels, "mintime", time.getMinTime());
+                writeSample(out, labels, "totaltime", time.getTotalTime());
+            }
+            else if (value instanceof BoundaryStatistic) {
+                BoundaryStatistic boundary = (BoundaryStatistic) value;
+                writeSample(out, labels, "upperbound", boundary.getUpperBound());
+                writeSample(out, labels, "lowerbound", boundary.getLowerBound());
+            }
+            else if (value instanceof Boolean) {
+                writeSample(out, labels, null, ((Boolean) value) ? 1 : 0);
+            }
+            else if (value instanceof Double || value instanceof Float) {
+                double d = ((Number) value).doubleValue();
+                String s;
+
+                if (Double.isNaN(d))
+                    s = "NaN";
+                else if (Double.isInfinite(d))
+                    s = (d > 0) ? "+Inf" : "-Inf";
+                else
+                    s = Double.toString(d);
+
+                writeSample(out, labels, null, s);
+            }
+            else {
+                writeSample(out, labels, null, ((Number) value).longValue());
+            }
+        }
+
+        private static void writeSample(Writer out, String labels, String field,
+                long value) throws IOException {
+            writeSample(out, labels, field, Long.toString(value));
+        }
+
+        private static void writeSample(Writer out, String labels, String field,
+                String value) throws IOException {
+            out.write(labels);
+
+            if (field != null) {
+                out.write(",field=\"");
+                out.write(field);
+                out.write('"');
+            }
+            out.write("} ");
+            out.write(value);
+            out.write('\n');
+        }
+    }
+
+    /*
+     * The families of one version of the registry, in a stable order.
+     */
+    private static final class Layout {
+        private final StatsProviderRegistry registry;
+        private final int version;
+        private final Collection<Family> families;
+
+        Layout(StatsProviderRegistry registry, int version, String instanceName) {
+            this.registry = registry;
+            this.version = version;
+
+            SortedMap<String, Family> byName = new TreeMap<String, Family>();
+            String instanceLabel = "{instance=\"" + escapeLabelValue(
+                    (instanceName == null) ? "" : instanceName) + "\",path=\"";
+
+            List<Provider> providers = new ArrayList<Provider>();
+            Map<String, Set<String>> classesBySeries = new HashMap<String, Set<String>>();
+
+            for (StatsProviderRegistryElement spre : registry.getSpreSnapshot()) {
+                Object statsProvider = spre.getStatsProvider();
+
+                if (statsProvider == null)
+                    continue;   // being unregistered
+
+                Provider provider = new Provider(spre, statsProvider.getClass());
+                Set<String> classes = classesBySeries.get(provider.series);
+
+                if (classes == null) {
+                    classes = new HashSet<String>();
+                    classesBySeries.put(provider.series, classes);
+                }
+                classes.add(provider.statsProviderClass.getName());
+                providers.add(provider);
+            }
+            Collections.sort(providers);
+
+            Provider previous = null;
+
+            for (Provider provider : providers) {
+                // the samples of a second provider of the same class at the
+                // same path could not be told apart
+                if (previous != null && previous.compareTo(provider) == 0) {
+                    if (logger.isLoggable(Level.FINE))
+                        logger.log(Level.FINE, "Not exporting duplicate stats provider "
+                                + provider.statsProviderClass.getName() + " at " + provider.path);
+                    continue;
+                }
+                previous = provider;
+
+                String prefix = PREFIX + provider.type + "_";
+                String labels = instanceLabel + escapeLabelValue(provider.path) + "\"";
+
+                if (classesBySeries.get(provider.series).size() > 1)
+                    labels += ",provider=\"" + escapeLabelValue(
+                            provider.statsProviderClass.getName()) + "\"";
+
+                for (Accessor accessor : getAccessors(provider.statsProviderClass)) {
+                    String name = prefix + toMetricName(accessor.id);
+                    Family family = byName.get(name);
+
+                    if (family == null) {
+                        family = new Family(name, accessor.description);
+                        byName.put(name, family);
+                    }
+                    family.members.add(new Member(provider.spre, accessor, name + labels));
+                }
+            }
+            families = byName.values();
+        }
+    }
+
+    /*
+     * A registered stats provider while a layout is worked out, ordered by
+     * path and class.  Providers of the same type at the same path write the
+     * same series.
+     */
+    private static final class Provider implements Comparable<Provider> {
+        private final StatsProviderRegistryElement spre;
+        private final Class<?> statsProviderClass;
+        private final String type;
+        private final String path;
+        private final String series;
+
+        Provider(StatsProviderRegistryElement spre, Class<?> statsProviderClass) {
+            this.spre = spre;
+            this.statsProviderClass = statsProviderClass;
+            type = getType(statsProviderClass);
+            path = getPath(spre);
+            series = type + '\0' + path;
+        }
+
+        @Override
+        public int compareTo(Provider other) {
+            int result = path.compareTo(other.path);
+
+            if (result == 0)
+                result = statsProviderClass.getName().compareTo(
+                        other.statsProviderClass.getName());
+            return result;
+        }
+    }
+}
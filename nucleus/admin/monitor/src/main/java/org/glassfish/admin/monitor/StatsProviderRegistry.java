@@ -44,6 +44,7 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.glassfish.flashlight.MonitoringRuntimeDataRegistry;
@@ -59,6 +60,10 @@ public class StatsProviderRegistry {
                         statsProviderToRegistryElementMap = new HashMap();
     private boolean isAMXReady = false;
     private boolean isMBeanEnabled = true;
+    // changes whenever a stats provider is registered or unregistered
+    private volatile int version = 0;
+    // told whenever a stats provider is registered or unregistered
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<Runnable>();
     
     static final String[] defaultConfigLevels = new String[] {"LOW","HIGH"};
     public static final Map<String, Integer> configLevelsMap = new ConcurrentHashMap();
@@ -69,7 +74,7 @@ public class StatsProviderRegistry {
         }
     }
 
-    public void registerStatsProvider(StatsProviderInfo spInfo) {
+    public synchronized void registerStatsProvider(StatsProviderInfo spInfo) {
         String configLevelStr = spInfo.getConfigLevel();
 
         if (configLevelStr == null) {
@@ -96,9 +101,10 @@ public class StatsProviderRegistry {
         // add a mapping from StatsProvider to StatsProviderRegistryElement
         // would make it easy for you when unregistering
         statsProviderToRegistryElementMap.put(statsProvider, spre);
+        changed();
     }
 
-    public void unregisterStatsProvider(Object statsProvider) throws Exception {
+    public synchronized void unregisterStatsProvider(Object statsProvider) throws Exception {
 
         StatsProviderRegistryElement spre = statsProviderToRegistryElementMap.get(statsProvider);
         // Remove the entry of statsProviderRegistryElement from configToRegistryElementMap
@@ -115,7 +121,13 @@ public class StatsProviderRegistry {
 
         // Remove the reference to statsProvider in spre (so it gets picked up by GC)
         spre.setStatsProvider(null);
+        changed();
+    }
 
+    private void changed() {
+        version++;
+        for (Runnable listener : changeListeners)
+            listener.run();
     }
 
     StatsProviderRegistryElement getStatsProviderRegistryElement(Object statsProvider) {
@@ -130,6 +142,35 @@ public class StatsProviderRegistry {
         return statsProviderToRegistryElementMap.values();
     }
 
+    /**
+     * Returns a copy of the registered elements that is safe to iterate while
+     * stats providers come and go.
+     */
+    synchronized List<StatsProviderRegistryElement> getSpreSnapshot() {
+        return new ArrayList<StatsProviderRegistryElement>(
+                statsProviderToRegistryElementMap.values());
+    }
+
+    /**
+     * Returns a number that changes whenever a stats provider is registered
+     * or unregistered.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Adds a listener that is run, while this registry is locked, whenever a
+     * stats provider is registered or unregistered.
+     */
+    void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
     Collection<String> getConfigElementList() {
         return this.configToRegistryElementMap.keySet();
     }
@@ -54,6 +54,10 @@ public class StatsProviderUtil {
         spmd = lspmd;
     }
 
+    static StatsProviderManagerDelegateImpl getStatsProviderManagerDelegate() {
+        return spmd;
+    }
+
     public static void setHandlesForStatsProviders(Object statsProvider, Collection<ProbeClientMethodHandle> handles) {
         if (spmd == null) {
             return;
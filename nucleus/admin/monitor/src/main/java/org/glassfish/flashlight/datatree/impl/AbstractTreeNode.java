@@ -47,8 +47,10 @@ import static com.sun.enterprise.util.SystemPropertyConstants.SLASH;
 import org.glassfish.flashlight.datatree.TreeNode;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  *
@@ -57,10 +59,18 @@ import java.util.regex.Pattern;
  * 12/18/2010 -- Added encode/decode.  Note that the encoded form for a dot is
  * NOT something like "\\." -- there is too much code around making assumptions
  * about dots, splitting strings, etc.  So we replace with ___MONDOT___
+ *
+ * Path queries do not walk the whole tree any more.  Complete path names are
+ * cached until the shape of the tree changes, children are indexed by their
+ * normalized name, compiled patterns are reused across calls and a subtree is
+ * only visited while the pattern can still match a path below it.
  */
 public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode> {
     protected Map<String, TreeNode> children =
             new ConcurrentHashMap<String, TreeNode>();
+    // the same children, keyed by normalizeDots(name) -- see getChild()
+    private final Map<String, TreeNode> normalizedNames =
+            new ConcurrentHashMap<String, TreeNode>();
     // bnevins 6/25/2011  -- why is normalizedChildren static ?!?
     private static Map<String, TreeNode> normalizedChildren =
             new ConcurrentHashMap<String, TreeNode>();
@@ -70,6 +80,17 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
     protected boolean enabled = false;
     private static String NAME_SEPARATOR = ".";
     private static String REGEX = "(?<!\\\\)\\.";
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile(REGEX);
+    // never matches anything, stands in for patterns that do not compile
+    private static final Pattern NO_MATCH_PATTERN = Pattern.compile("(?!)");
+    private static final int MAX_CACHED_PATTERNS = 256;
+    private static final Map<String, Pattern> compiledPatterns =
+            new ConcurrentHashMap<String, Pattern>();
+    // bumped whenever a node is renamed or moved, invalidates cached path names
+    private static final AtomicLong treeVersion = new AtomicLong();
+    private volatile CompletePathName completePathName = null;
+    // the key this node was given in normalizedChildren when it was added
+    private volatile String normalizedPathName = null;
     private TreeNode parent = null;
     // Special character Regex to be converted to .* for v2 compatibility
     private String STAR = "*";
@@ -92,6 +113,7 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
             throw new RuntimeException("Flashlight-utils: Tree Node needs a"
                     + " non-null name");
         name = encodeNodeName(aname);
+        treeVersion.incrementAndGet();
     }
 
     // should be implemented at the sub-class level
@@ -123,25 +145,43 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
             return null;
         }
         newChild.setParent(this);
-        normalizedChildren.put(decodeNameToDots(newChild.getCompletePathName()), newChild);
-        return children.put(newChild.getName(), newChild);
+        String normalizedPath = decodeNameToDots(newChild.getCompletePathName());
+        normalizedChildren.put(normalizedPath, newChild);
+
+        if (newChild instanceof AbstractTreeNode)
+            ((AbstractTreeNode) newChild).normalizedPathName = normalizedPath;
+
+        String childName = newChild.getName();
+        normalizedNames.put(normalizeDots(childName), newChild);
+        return children.put(childName, newChild);
     }
 
     @Override
     public String getCompletePathName() {
+        // read the version first so that a concurrent change is never hidden
+        long version = treeVersion.get();
+        CompletePathName cached = completePathName;
+
+        if (cached != null && cached.version == version)
+            return cached.path;
+
+        String path;
 
         if (getParent() != null) {
-            return getParent().getCompletePathName()
+            path = getParent().getCompletePathName()
                     + this.NAME_SEPARATOR + getName();
         }
         else {
-            return getName();
+            path = getName();
         }
+        completePathName = new CompletePathName(version, path);
+        return path;
     }
 
     @Override
     public void setParent(TreeNode parent) {
         this.parent = parent;
+        treeVersion.incrementAndGet();
     }
 
     @Override
@@ -188,6 +228,18 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
         String child = oldChild.getName();
         if (child != null) {
             children.remove(child);
+            normalizedNames.remove(normalizeDots(child));
+        }
+
+        // the key recorded by addChild() is usually still the right one
+        if (oldChild instanceof AbstractTreeNode) {
+            String key = ((AbstractTreeNode) oldChild).normalizedPathName;
+
+            // not remove(key, value) -- that compares with equals()
+            if (key != null && normalizedChildren.get(key) == oldChild) {
+                normalizedChildren.remove(key);
+                return;
+            }
         }
 
         // too fragile to hunt for the matching key...
@@ -230,17 +282,12 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
             return null;
 
         childName = normalizeDots(childName);
-        Set<Map.Entry<String, TreeNode>> entries = children.entrySet();
+        TreeNode child = children.get(childName);
 
-        for (Map.Entry<String, TreeNode> entry : entries) {
-            String entryKey = entry.getKey();
-            String normalizedEntryKey = normalizeDots(entryKey);
-
-            if (childName.equals(entryKey) || childName.equals(normalizedEntryKey))
-                return entry.getValue();
-        }
+        if (child == null)
+            child = normalizedNames.get(childName);
 
-        return null;
+        return child;
     }
 
     @Override
@@ -249,8 +296,7 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
             return null;
         }
         completeName = encodePath(completeName);
-        Pattern pattern = Pattern.compile(AbstractTreeNode.REGEX);
-        String[] tokens = pattern.split(completeName);
+        String[] tokens = SEPARATOR_PATTERN.split(completeName);
         TreeNode n = findNodeInTree(tokens);
 
         if (n == null)
@@ -307,23 +353,24 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
     public List<TreeNode> traverse(boolean ignoreDisabled) {
 //        System.out.println ("Node: " + this.getName ()+ " is enabled "+isEnabled());
         List<TreeNode> list = new ArrayList<TreeNode>();
+        traverse(ignoreDisabled, list);
+        return list;
+    }
 
+    private void traverse(boolean ignoreDisabled, List<TreeNode> list) {
         if (ignoreDisabled) {
             if (!this.enabled) {
-                return list;
+                return;
             }
         }
         list.add(this);
 
-        if (!hasChildNodes()) {
-            return list;
-        }
-
-        Collection<TreeNode> childList = children.values();
-        for (TreeNode node : childList) {
-            list.addAll(node.traverse(ignoreDisabled));
+        for (TreeNode node : children.values()) {
+            if (node instanceof AbstractTreeNode)
+                ((AbstractTreeNode) node).traverse(ignoreDisabled, list);
+            else
+                list.addAll(node.traverse(ignoreDisabled));
         }
-        return list;
     }
 
     @Override
@@ -355,39 +402,80 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
     private List<TreeNode> getNodesInternal(String pattern, boolean ignoreDisabled, boolean gfv2Compatible) {
         List<TreeNode> regexMatchedTree = new ArrayList<TreeNode>();
 
+        if (gfv2Compatible)
+            pattern = convertGFv2PatternToRegex(pattern);
 
-        try {
-            if (gfv2Compatible)
-                pattern = convertGFv2PatternToRegex(pattern);
+        collectMatches(compilePattern(pattern), ignoreDisabled, regexMatchedTree);
+        return regexMatchedTree;
+    }
+
+    /*
+     * Adds the nodes of this subtree whose path matches the pattern, in the
+     * same order as traverse().  Every path below this node starts with the
+     * path of this node, so once the matcher fails without reaching the end
+     * of that path no longer path can match either and the subtree is skipped.
+     */
+    private void collectMatches(Pattern mPattern, boolean ignoreDisabled,
+            List<TreeNode> regexMatchedTree) {
+        if (ignoreDisabled && !enabled)
+            return;
 
-            Pattern mPattern = Pattern.compile(pattern);
-            List<TreeNode> completeTree = traverse(ignoreDisabled);
+        String path = getCompletePathName();
+        Matcher matcher = mPattern.matcher(path);
+        boolean matched = matcher.matches();
+        boolean descend = matcher.hitEnd();
 
-            for (TreeNode node : completeTree) {
-                String path = node.getCompletePathName();
-                String path2 = null;
+        if (path.indexOf("\\") >= 0) {
+            // JIRA 15500 -- there may be a backslash in the name!
+            Matcher matcher2 = mPattern.matcher(path.replace("\\", ""));
+            boolean matched2 = matcher2.matches();
+            matched = matched || matched2;
+            descend = descend || matcher2.hitEnd();
+        }
 
-                if (path.indexOf("\\") >= 0)
-                    path2 = path.replace("\\", "");
+        if (matched)
+            regexMatchedTree.add(this);
 
-                Matcher matcher = mPattern.matcher(path);
+        if (!descend)
+            return;
 
-                if (matcher.matches()) {
-                    regexMatchedTree.add(node);
-                }
-                else if (path2 != null) {
-                    Matcher matcher2 = mPattern.matcher(path2);
-                    if (matcher2.matches()) {
-                        regexMatchedTree.add(node);
-                    }
+        for (TreeNode node : children.values()) {
+            if (node instanceof AbstractTreeNode) {
+                ((AbstractTreeNode) node).collectMatches(mPattern, ignoreDisabled,
+                        regexMatchedTree);
+            }
+            else {
+                for (TreeNode n : node.traverse(ignoreDisabled)) {
+                    String p = n.getCompletePathName();
+
+                    if (mPattern.matcher(p).matches()
+                            || mPattern.matcher(p.replace("\\", "")).matches())
+                        regexMatchedTree.add(n);
                 }
             }
         }
-        catch (java.util.regex.PatternSyntaxException e) {
-            // log this
-            // e.printStackTrace ();
+    }
+
+    private static Pattern compilePattern(String regex) {
+        Pattern pattern = compiledPatterns.get(regex);
+
+        if (pattern == null) {
+            try {
+                pattern = Pattern.compile(regex);
+            }
+            catch (PatternSyntaxException e) {
+                // nothing matches a bad pattern
+                pattern = NO_MATCH_PATTERN;
+            }
+
+            // the patterns come from a handful of callers -- just start over
+            // if someone floods the cache
+            if (compiledPatterns.size() >= MAX_CACHED_PATTERNS)
+                compiledPatterns.clear();
+
+            compiledPatterns.put(regex, pattern);
         }
-        return regexMatchedTree;
+        return pattern;
     }
 
     @Override
@@ -447,29 +535,47 @@ public abstract class AbstractTreeNode implements TreeNode, Comparable<TreeNode>
         if (pattern == null || pattern.length() <= 0 || pattern.indexOf('*') >= 0)
             return null;
 
-        TreeNode node = null;
-        int longest = 0;
+        TreeNode[] node = new TreeNode[1];
+        findPossibleParentNode(pattern, node);
+        return node[0];
+    }
 
-        for (TreeNode n : traverse(true)) {
-            String aname = n.getCompletePathName();
+    /*
+     * The path of a node starts with the path of its parent, so a subtree
+     * whose root is not a prefix of the pattern holds no candidates.
+     */
+    private void findPossibleParentNode(String pattern, TreeNode[] node) {
+        if (!enabled)
+            return;
 
-            if (aname == null)
-                continue;   // defensive pgming
+        String aname = getCompletePathName();
 
-            // JIRA 15500 -- there may be a backslash in the name!
+        if (aname == null)
+            return;   // defensive pgming
 
-            if (pattern.startsWith(aname) || pattern.startsWith(aname.replace("\\", ""))) {
-                int thisLength = aname.length();
+        // JIRA 15500 -- there may be a backslash in the name!
 
-                // keep the longest match ONLY!
-                if (node == null || thisLength > longest) {
-                    node = n;
-                    longest = thisLength;
-                }
-            }
+        if (!pattern.startsWith(aname) && !pattern.startsWith(aname.replace("\\", "")))
+            return;
+
+        // keep the longest match ONLY!
+        if (node[0] == null || aname.length() > node[0].getCompletePathName().length())
+            node[0] = this;
+
+        for (TreeNode n : children.values()) {
+            if (n instanceof AbstractTreeNode)
+                ((AbstractTreeNode) n).findPossibleParentNode(pattern, node);
         }
+    }
 
-        return node;
+    private static final class CompletePathName {
+        private final long version;
+        private final String path;
+
+        CompletePathName(long version, String path) {
+            this.version = version;
+            this.path = path;
+        }
     }
 
     private String encodeNodeName(String nodeName) {
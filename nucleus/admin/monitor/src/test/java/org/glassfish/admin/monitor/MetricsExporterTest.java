@@ -0,0 +1,264 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.admin.monitor;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import org.glassfish.external.probe.provider.PluginPoint;
+import org.glassfish.external.probe.provider.StatsProviderInfo;
+import org.glassfish.external.statistics.CountStatistic;
+import org.glassfish.external.statistics.RangeStatistic;
+import org.glassfish.external.statistics.impl.CountStatisticImpl;
+import org.glassfish.external.statistics.impl.RangeStatisticImpl;
+import org.glassfish.external.statistics.impl.StatisticImpl;
+import org.glassfish.gmbal.AMXMetadata;
+import org.glassfish.gmbal.Description;
+import org.glassfish.gmbal.ManagedAttribute;
+import org.glassfish.gmbal.ManagedObject;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MetricsExporterTest {
+
+    private StatsProviderRegistry registry;
+    private MetricsExporter exporter;
+
+    @Before
+    public void setUp() {
+        registry = new StatsProviderRegistry(null);
+        exporter = new MetricsExporter("server");
+    }
+
+    @Test
+    public void testCountStatistic() throws IOException {
+        SessionStats stats = new SessionStats();
+        stats.created.setCount(7);
+        register("web-container", PluginPoint.APPLICATIONS, "hello/server", stats);
+
+        String text = write();
+        assertTrue(text, text.contains("# HELP glassfish_session_createdcount Sessions created\n"
+                + "# TYPE glassfish_session_createdcount untyped\n"
+                + "glassfish_session_createdcount{instance=\"server\",path=\"applications/hello/server\"} 7\n"));
+    }
+
+    @Test
+    public void testRangeStatistic() throws IOException {
+        SessionStats stats = new SessionStats();
+        stats.active.setCurrent(3);
+        register("web-container", PluginPoint.SERVER, "web/session", stats);
+
+        String text = write();
+        String labels = "glassfish_session_activesessions{instance=\"server\",path=\"web/session\"";
+        assertTrue(text, text.contains(labels + ",field=\"current\"} 3\n"));
+        assertTrue(text, text.contains(labels + ",field=\"highwatermark\"} 3\n"));
+        assertTrue(text, text.contains(labels + ",field=\"lowwatermark\"} 0\n"));
+    }
+
+    @Test
+    public void testFamiliesAreContiguous() throws IOException {
+        register("web-container", PluginPoint.APPLICATIONS, "app1/server", new SessionStats());
+        register("web-container", PluginPoint.APPLICATIONS, "app2/server", new SessionStats());
+
+        String text = write();
+        int first = text.indexOf("glassfish_session_createdcount{");
+        int second = text.indexOf("glassfish_session_createdcount{", first + 1);
+        assertTrue(text, first > 0 && second > first);
+        assertEquals(text, 1, count(text, "# TYPE glassfish_session_createdcount "));
+        // nothing from another family in between
+        assertEquals(-1, text.substring(first, second).indexOf("activesessions"));
+    }
+
+    @Test
+    public void testDisabledAndUnregistered() throws Exception {
+        SessionStats stats = new SessionStats();
+        register("web-container", PluginPoint.APPLICATIONS, "hello/server", stats);
+        assertTrue(write().contains("createdcount"));
+
+        registry.getStatsProviderRegistryElement(stats).setEnabled(false);
+        assertEquals("", write());
+
+        registry.getStatsProviderRegistryElement(stats).setEnabled(true);
+        registry.unregisterStatsProvider(stats);
+        assertEquals("", write());
+    }
+
+    @Test
+    public void testPrimitiveAttributes() throws IOException {
+        register("jvm", PluginPoint.SERVER, "jvm/runtime", new RuntimeStats());
+
+        String text = write();
+        assertTrue(text, text.contains("glassfish_runtimestats_uptime{instance=\"server\",path=\"jvm/runtime\"} 42\n"));
+        assertTrue(text, text.contains("glassfish_runtimestats_ready{instance=\"server\",path=\"jvm/runtime\"} 1\n"));
+        assertTrue(text, text.contains("glassfish_runtimestats_load{instance=\"server\",path=\"jvm/runtime\"} NaN\n"));
+        assertFalse(text, text.contains("vendor"));
+    }
+
+    @Test
+    public void testSharedPathLabelledByProvider() throws IOException {
+        register("web-container", PluginPoint.SERVER, "web/session", new SessionStats());
+        register("web-container", PluginPoint.SERVER, "web/session", new OtherSessionStats());
+
+        String text = write();
+        String labels = "glassfish_session_createdcount{instance=\"server\",path=\"web/session\",provider=\"";
+        assertTrue(text, text.contains(labels + OtherSessionStats.class.getName() + "\"} 0\n"));
+        assertTrue(text, text.contains(labels + SessionStats.class.getName() + "\"} 0\n"));
+        assertEquals(text, 2, count(text, "glassfish_session_createdcount{"));
+    }
+
+    @Test
+    public void testSameClassAtSamePathExportedOnce() throws IOException {
+        SessionStats first = new SessionStats();
+        SessionStats second = new SessionStats();
+        first.created.setCount(1);
+        second.created.setCount(1);
+        register("web-container", PluginPoint.SERVER, "web/session", first);
+        register("web-container", PluginPoint.SERVER, "web/session", second);
+
+        String text = write();
+        assertEquals(text, 1, count(text, "glassfish_session_createdcount{"));
+        assertTrue(text, text.contains(
+                "glassfish_session_createdcount{instance=\"server\",path=\"web/session\"} 1\n"));
+    }
+
+    @Test
+    public void testUnregisteredProviderNotRetained() throws Exception {
+        SessionStats stats = new SessionStats();
+        WeakReference<SessionStats> ref = new WeakReference<SessionStats>(stats);
+        register("web-container", PluginPoint.APPLICATIONS, "hello/server", stats);
+        assertTrue(write().contains("createdcount"));
+
+        // no scrape after this, so only unregistration can drop the layout
+        registry.unregisterStatsProvider(stats);
+        stats = null;
+
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    @Test
+    public void testLayoutRebuiltAfterRegistration() throws IOException {
+        register("web-container", PluginPoint.APPLICATIONS, "app1/server", new SessionStats());
+        assertEquals(1, count(write(), "glassfish_session_createdcount{"));
+
+        register("web-container", PluginPoint.APPLICATIONS, "app2/server", new SessionStats());
+        assertEquals(2, count(write(), "glassfish_session_createdcount{"));
+    }
+
+    private void register(String configElement, PluginPoint pp, String subTreePath,
+            Object statsProvider) {
+        registry.registerStatsProvider(
+                new StatsProviderInfo(configElement, pp, subTreePath, statsProvider));
+        registry.getStatsProviderRegistryElement(statsProvider).setEnabled(true);
+    }
+
+    private String write() throws IOException {
+        StringWriter out = new StringWriter();
+        exporter.write(registry, out);
+        return out.toString();
+    }
+
+    private static int count(String s, String sub) {
+        int n = 0;
+        for (int i = s.indexOf(sub); i >= 0; i = s.indexOf(sub, i + 1))
+            n++;
+        return n;
+    }
+
+    @AMXMetadata(type = "session-mon", group = "monitoring")
+    @ManagedObject
+    public static class SessionStats {
+        final CountStatisticImpl created = new CountStatisticImpl("CreatedCount",
+                StatisticImpl.UNIT_COUNT, "Sessions created");
+        final RangeStatisticImpl active = new RangeStatisticImpl(0, 0, 0,
+                "ActiveSessions", StatisticImpl.UNIT_COUNT, "Active sessions",
+                System.currentTimeMillis(), System.currentTimeMillis());
+
+        @ManagedAttribute(id = "createdcount")
+        @Description("Sessions created")
+        public CountStatistic getCreatedCount() {
+            return created;
+        }
+
+        @ManagedAttribute
+        @Description("Active sessions")
+        public RangeStatistic getActiveSessions() {
+            return active;
+        }
+    }
+
+    @AMXMetadata(type = "session-mon", group = "monitoring")
+    @ManagedObject
+    public static class OtherSessionStats {
+        @ManagedAttribute(id = "createdcount")
+        @Description("Sessions created")
+        public CountStatistic getCreatedCount() {
+            return new CountStatisticImpl("CreatedCount",
+                    StatisticImpl.UNIT_COUNT, "Sessions created");
+        }
+    }
+
+    public static class RuntimeStats {
+        @ManagedAttribute
+        public long getUptime() {
+            return 42;
+        }
+
+        @ManagedAttribute
+        public boolean getReady() {
+            return true;
+        }
+
+        @ManagedAttribute
+        public double getLoad() {
+            return Double.NaN;
+        }
+
+        @ManagedAttribute
+        public String getVendor() {
+            return "x";
+        }
+    }
+}
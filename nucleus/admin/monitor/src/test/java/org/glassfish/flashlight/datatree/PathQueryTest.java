@@ -0,0 +1,161 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.flashlight.datatree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.glassfish.flashlight.datatree.factory.TreeNodeFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Path queries skip subtrees that cannot match -- make sure they still find
+ * everything a full traversal would.
+ */
+public class PathQueryTest {
+
+    @Test
+    public void testPrefixQuery() {
+        TreeNode server = setupTree();
+        assertEquals(paths("server.applications.app1",
+                "server.applications.app1.servlet1",
+                "server.applications.app1.servlet2"),
+                paths(server.getNodes("server.applications.app1*")));
+        assertEquals(paths("server.applications.app1.servlet2",
+                "server.applications.app2.servlet2"),
+                paths(server.getNodes("server.applications.*.servlet2")));
+        assertTrue(server.getNodes("server.resources.*").isEmpty());
+    }
+
+    @Test
+    public void testRegexQuery() {
+        TreeNode server = setupTree();
+        assertEquals(3, server.getNodes(".*servlet.*", false, false).size());
+        assertEquals(2, server.getNodes("server.applications.app.", false, false).size());
+        assertTrue(server.getNodes("([", false, false).isEmpty());
+        // the same pattern again, this time from the cache
+        assertTrue(server.getNodes("([", false, false).isEmpty());
+    }
+
+    @Test
+    public void testDisabledSubtree() {
+        TreeNode server = setupTree();
+        server.getNode("applications.app1").setEnabled(false);
+        assertEquals(paths("server.applications.app2",
+                "server.applications.app2.servlet2"),
+                paths(server.getNodes("server.applications.app*")));
+        assertEquals(3, server.getNodes("server.applications.app1*", false, true).size());
+    }
+
+    @Test
+    public void testEscapedDotInName() {
+        TreeNode server = setupTree();
+        TreeNode app = server.getNode("applications.app2");
+        app.addChild(TreeNodeFactory.createTreeNode("jdbc.pool", this, "web"));
+        assertEquals(1, server.getNodes("server.applications.app2.jdbc\\.pool").size());
+        assertEquals(1, server.getNodes("*jdbc.pool").size());
+        assertNotNull(server.getNode("applications.app2.jdbc\\.pool"));
+        assertNotNull(app.getChild("jdbc.pool"));
+    }
+
+    @Test
+    public void testPathFollowsMove() {
+        TreeNode server = setupTree();
+        TreeNode orphan = TreeNodeFactory.createTreeNode("orphan", this, "web");
+        TreeNode child = TreeNodeFactory.createTreeNode("child", this, "web");
+        orphan.addChild(child);
+        assertEquals("orphan.child", child.getCompletePathName());
+        server.addChild(orphan);
+        assertEquals("server.orphan.child", child.getCompletePathName());
+        assertEquals(1, server.getNodes("server.orphan.*").size());
+    }
+
+    @Test
+    public void testRemoveChild() {
+        TreeNode server = setupTree();
+        TreeNode app = server.getNode("applications.app1");
+        TreeNode servlet = app.getChild("servlet1");
+        app.removeChild(servlet);
+        assertNull(app.getChild("servlet1"));
+        assertNull(server.getNode("applications.app1.servlet1"));
+        assertTrue(server.getNodes("*servlet1").isEmpty());
+    }
+
+    @Test
+    public void testPossibleParentNode() {
+        TreeNode server = setupTree();
+        TreeNode parent = server.getPossibleParentNode(
+                "server.applications.app2.servlet2.requestcount");
+        assertEquals("server.applications.app2.servlet2", parent.getCompletePathName());
+        assertNull(server.getPossibleParentNode("server.applications.app*"));
+        assertNull(server.getPossibleParentNode("instance1.applications"));
+    }
+
+    private TreeNode setupTree() {
+        TreeNode server = TreeNodeFactory.createTreeNode("server", this, "server");
+        TreeNode applications = TreeNodeFactory.createTreeNode("applications", this, "web");
+        server.addChild(applications);
+        TreeNode app1 = TreeNodeFactory.createTreeNode("app1", this, "web");
+        applications.addChild(app1);
+        app1.addChild(TreeNodeFactory.createTreeNode("servlet1", this, "web"));
+        app1.addChild(TreeNodeFactory.createTreeNode("servlet2", this, "web"));
+        TreeNode app2 = TreeNodeFactory.createTreeNode("app2", this, "web");
+        applications.addChild(app2);
+        app2.addChild(TreeNodeFactory.createTreeNode("servlet2", this, "web"));
+        return server;
+    }
+
+    private static List<String> paths(String... paths) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, paths);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static List<String> paths(List<TreeNode> nodes) {
+        List<String> list = new ArrayList<String>();
+        for (TreeNode node : nodes)
+            list.add(node.getCompletePathName());
+        Collections.sort(list);
+        return list;
+    }
+}
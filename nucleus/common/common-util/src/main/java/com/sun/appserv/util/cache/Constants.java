@@ -76,4 +76,8 @@ public class Constants {
 
     public final static String STAT_BOUNDEDMULTILRUCACHE_CURRENT_SIZE="cache.BoundedMultiLruCache.stat_currentSize";
     public final static String STAT_BOUNDEDMULTILRUCACHE_MAX_SIZE="cache.BoundedMultiLruCache.stat_maxSize";
+
+    public final static String STAT_TINYLFUCACHE_WINDOW_SIZE="cache.TinyLfuCache.stat_windowSize";
+    public final static String STAT_TINYLFUCACHE_PROTECTED_SIZE="cache.TinyLfuCache.stat_protectedSize";
+    public final static String STAT_TINYLFUCACHE_TRIM_COUNT="cache.TinyLfuCache.stat_trimCount";
 }
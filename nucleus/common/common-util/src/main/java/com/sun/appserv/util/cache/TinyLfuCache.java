@@ -0,0 +1,852 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.appserv.util.cache;
+
+import com.sun.enterprise.util.CULoggerInfo;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * TinyLfuCache
+ * in-memory bounded cache with W-TinyLFU replacement
+ *
+ * Entries live in a concurrent hash map, so a get() takes no lock.  The
+ * access is recorded in a striped, lossy buffer and applied to the
+ * replacement policy later, by whichever thread manages to take the policy
+ * lock.  Writes are queued the same way, but are never dropped: a thread
+ * leaving the policy lock applies the writes queued while it held it.
+ *
+ * New entries go to a small LRU admission window.  An entry leaving the
+ * window is only kept if it has been used more often, according to a
+ * count-min sketch of recent accesses, than the entry it would displace
+ * from the main segmented LRU.  One-off keys therefore cannot flush the
+ * frequently used ones out of the cache.
+ *
+ * Unlike BaseCache, keys are single-valued: add() replaces the value
+ * stored at an existing key.  Entries do not expire on their own.
+ *
+ * The web container's response cache uses this class when its
+ * cacheClassName property is com.sun.appserv.util.cache.TinyLfuCache.
+ */
+public class TinyLfuCache implements Cache {
+
+    // share of the capacity given to the admission window, in percent
+    public static final int DEFAULT_WINDOW_PERCENTAGE = 1;
+
+    // share of the main segment given to the protected LRU, in percent
+    static final int PROTECTED_PERCENTAGE = 80;
+
+    // read buffer stripes and their size (a power of 2)
+    static final int READ_BUFFER_STRIPES = 
+        ceilingPowerOfTwo(4 * Runtime.getRuntime().availableProcessors());
+    static final int READ_BUFFER_SIZE = 16;
+    static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    // where a node currently sits in the replacement policy
+    static final byte UNLINKED = 0;
+    static final byte WINDOW = 1;
+    static final byte PROBATION = 2;
+    static final byte PROTECTED = 3;
+
+    // maximum number of entries this cache may hold
+    protected int maxEntries;
+
+    // the number of entries kept before entries are trimmed
+    protected int threshold;
+
+    // table size used for getIndex() and refresh locks
+    protected int maxBuckets;
+
+    private int windowMaximum;
+    private int protectedMaximum;
+
+    private ConcurrentHashMap<Object, Node> data;
+
+    // replacement policy; guarded by policyLock
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final AccessQueue window = new AccessQueue();
+    private final AccessQueue probation = new AccessQueue();
+    private final AccessQueue protectedQueue = new AccessQueue();
+    private FrequencySketch sketch;
+
+    private ReadBuffer[] readBuffers;
+    private final Queue<Node> writeBuffer = new ConcurrentLinkedQueue<Node>();
+
+    // boolean status and locks for item thread-safe refreshes
+    private Object[] refreshLocks;
+    private boolean[] refreshFlags;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder removalCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder addCount = new LongAdder();
+    private final LongAdder trimCount = new LongAdder();
+
+    protected List<CacheListener> listeners = 
+        new CopyOnWriteArrayList<CacheListener>();
+
+    /**
+     * default constructor
+     */
+    public TinyLfuCache() { }
+
+    /**
+     * initialize the cache with the default load factor (0.75)
+     * @param maxEntries maximum number of entries expected in the cache
+     * @param props opaque list of properties for a given cache implementation
+     */
+    public void init(int maxEntries, Properties props) throws Exception {
+        init(maxEntries, BaseCache.DEFAULT_LOAD_FACTOR, props);
+    }
+
+    /**
+     * initialize the cache
+     * @param maxEntries maximum number of entries expected in the cache
+     * @param loadFactor the load factor; as for LruCache, entries are
+     *        trimmed once the cache holds (maxEntries * loadFactor) + 1 
+     * @param props opaque list of properties; TinyLfuWindowPercentage is
+     *        the share of the capacity (1-99) given to the admission window
+     */
+    public void init(int maxEntries, float loadFactor, Properties props) {
+        if (maxEntries <= 0) {
+            String msg = CULoggerInfo.getString(CULoggerInfo.illegalMaxEntries);
+            Object[] params = { Integer.valueOf(maxEntries) };
+            throw new IllegalArgumentException(MessageFormat.format(msg, params));
+        }
+
+        if (maxEntries > BaseCache.MAX_ENTRIES)
+            maxEntries = BaseCache.MAX_ENTRIES;
+        if (loadFactor < 0)
+            loadFactor = 0;
+
+        this.maxEntries = maxEntries;
+        threshold = (int) Math.min((long) (maxEntries * loadFactor) + 1,
+                                   BaseCache.MAX_ENTRIES);
+
+        int windowPercentage = DEFAULT_WINDOW_PERCENTAGE;
+        if (props != null) {
+            String prop = props.getProperty("TinyLfuWindowPercentage");
+            if (prop != null) {
+                try {
+                    windowPercentage = Integer.parseInt(prop);
+                } catch (NumberFormatException nfe) {}
+            }
+        }
+        windowPercentage = Math.max(1, Math.min(99, windowPercentage));
+
+        windowMaximum = (int) Math.max(1, (long) threshold * windowPercentage / 100);
+        protectedMaximum = (int) ((long) (threshold - windowMaximum) 
+                                  * PROTECTED_PERCENTAGE / 100);
+
+        maxBuckets = ceilingPowerOfTwo(maxEntries);
+        data = new ConcurrentHashMap<Object, Node>(
+            Math.min(threshold, 1 << 16));
+        sketch = new FrequencySketch(threshold);
+
+        readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+        for (int i = 0; i < readBuffers.length; i++)
+            readBuffers[i] = new ReadBuffer();
+
+        refreshLocks = new Object[maxBuckets];
+        refreshFlags = new boolean[maxBuckets];
+        for (int i = 0; i < maxBuckets; i++)
+            refreshLocks[i] = new Object();
+    }
+
+    /**
+     * add the cache module listener
+     * @param listener <code>CacheListener</code> implementation
+     */
+    public void addCacheListener(CacheListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns a hash code for non-null Object x.
+     */
+    protected int hash(Object x) {
+        int h = x.hashCode();
+        return h - (h << 7);  // i.e., -127 * h, as in BaseCache
+    }
+
+    /** 
+     * get the index of the item given a key
+     * @param key of the entry
+     * @return the index to be used in the cache
+     */
+    public final int getIndex(Object key) {
+        return (hash(key) & (maxBuckets - 1));
+    }
+
+    /**
+     * get the item stored at the key.
+     * @param key lookup key
+     * @returns the item stored at the key; null if not found.
+     */
+    public Object get(Object key) {
+        Node node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+
+        Object value = node.value;
+        hitCount.increment();
+        recordAccess(node);
+        return value;
+    }
+
+    /**
+     * get all the items with the given key.
+     * @param key lookup key
+     * @returns an Iterator over the (at most one) item stored at the key
+     */
+    public Iterator getAll(Object key) {
+        Object value = get(key);
+        if (value == null)
+            return Collections.emptyList().iterator();
+        return Collections.singletonList(value).iterator();
+    }
+
+    /**
+     * check if the cache contains the item at the key
+     * @param key lookup key
+     * @returns true if there is an item stored at the key; false if not.
+     */
+    public boolean contains(Object key) {
+        return (get(key) != null);
+    }
+
+    /**
+     * get an Iterator for the keys stored in the cache
+     * @returns an Iterator
+     */
+    public Iterator keys() {
+        return new ArrayList<Object>(data.keySet()).iterator();
+    }
+
+    /**
+     * get an Enumeration for the keys stored in the cache
+     * @returns an Enumeration
+     */
+    public Enumeration elements() {
+        return new Vector<Object>(data.keySet()).elements();
+    }
+
+    /**
+     * get an Iterator for the values stored in the cache
+     * @returns an Iterator
+     */
+    public Iterator values() {
+        ArrayList<Object> valueList = new ArrayList<Object>(data.size());
+        for (Node node : data.values()) {
+            valueList.add(node.value);
+        }
+        return valueList.iterator();
+    }
+
+    /**
+     * cache the given value at the specified key and return previous value
+     * @param key lookup key
+     * @param object item value to be stored
+     * @returns the previous item stored at the key; null if not found.
+     */
+    public Object put(Object key, Object value) {
+        return _put(key, value, -1);
+    }
+
+    /**
+     * cache the given value at the specified key and return previous value
+     * @param key lookup key
+     * @param object item value to be stored
+     * @param size in bytes of the value being cached
+     * @returns the previous item stored at the key; null if not found.
+     */
+    public Object put(Object key, Object value, int size) {
+        return _put(key, value, size);
+    }
+
+    /**
+     * add the given value to the cache at the specified key; replaces the
+     * value at an existing key, as this cache is single-valued
+     * @param key lookup key
+     * @param object item value to be stored
+     */
+    public void add(Object key, Object value) {
+        _put(key, value, -1);
+    }
+
+    /**
+     * add the given value with specified size to the cache at specified key;
+     * replaces the value at an existing key, as this cache is single-valued
+     * @param key lookup key
+     * @param object item value to be stored
+     * @param size in bytes of the value being added
+     */
+    public void add(Object key, Object value, int size) {
+        _put(key, value, size);
+    }
+
+    protected Object _put(Object key, Object value, int size) {
+        Node node = new Node(key, hash(key), value, size);
+
+        while (true) {
+            Node prior = data.putIfAbsent(key, node);
+            if (prior == null) {
+                addCount.increment();
+                afterWrite(node);
+                return null;
+            }
+
+            Object oldValue;
+            synchronized (prior) {
+                if (prior.removed) {
+                    // removed concurrently; it is no longer in the map
+                    continue;
+                }
+                oldValue = prior.value;
+                prior.value = value;
+                prior.size = size;
+            }
+            refreshCount.increment();
+            recordAccess(prior);
+            return oldValue;
+        }
+    }
+
+    /**
+     * remove the item stored at the key.
+     * @param key lookup key
+     * @returns the item stored at the key; null if not found.
+     */
+    public Object remove(Object key) {
+        return _remove(key, null);
+    }
+
+    /**
+     * remove the given value stored at the key.
+     * @param key lookup key
+     * @param value to match
+     * @returns the item stored at the key; null if not found.
+     */
+    public Object remove(Object key, Object value) {
+        return _remove(key, value);
+    }
+
+    /**
+     * remove all the item with the given key.
+     * @param key lookup key
+     */
+    public void removeAll(Object key) {
+        _remove(key, null);
+    }
+
+    protected Object _remove(Object key, Object value) {
+        Node node = data.get(key);
+        Object oldValue = null;
+        boolean removed = false;
+
+        if (node != null) {
+            synchronized (node) {
+                if (!node.removed && (value == null || value == node.value)
+                        && data.remove(key, node)) {
+                    node.removed = true;
+                    oldValue = node.value;
+                    removed = true;
+                }
+            }
+        }
+
+        if (removed) {
+            removalCount.increment();
+            hitCount.increment();
+            afterWrite(node);
+        } else {
+            missCount.increment();
+        }
+        return oldValue;
+    }
+
+    /**
+     * wait for a refresh on the object associated with the key
+     * @param index index of the entry
+     * @returns true on successful notification, or false if there is
+     *  no thread refreshing this entry.
+     */
+    public boolean waitRefresh(int index) {
+        synchronized (refreshLocks[index]) {
+            if (refreshFlags[index] == false) {
+                refreshFlags[index] = true;
+                return false;
+            }
+
+            // wait till refresh is finished
+            try {
+                while (refreshFlags[index])
+                    refreshLocks[index].wait();
+            } catch (InterruptedException ie) {}
+        }
+        return true;
+    }
+
+    /**
+     * notify threads waiting for a refresh on the object associated with the key
+     * @param index index of the entry
+     */
+    public void notifyRefresh(int index) {
+        synchronized (refreshLocks[index]) {
+            refreshFlags[index] = false;
+            refreshLocks[index].notifyAll();
+        }
+    }
+
+    /**
+     * clear all the entries from the cache.
+     * @returns the number of entries cleared from the cache
+     */
+    public int clear() {
+        int count = 0;
+        for (Node node : data.values()) {
+            synchronized (node) {
+                if (!node.removed && data.remove(node.key, node)) {
+                    node.removed = true;
+                    writeBuffer.add(node);
+                    count++;
+                }
+            }
+        }
+        drainBuffers();
+        return count;
+    }
+
+    /**
+     * entries do not expire in this cache
+     */
+    public void trimExpiredEntries(int maxCount) {}
+
+    /**
+     * get the number of entries in the cache
+     * @return the number of entries the cache currently holds
+     */
+    public int getEntryCount() {
+        return data.size();
+    }
+
+    /**
+     * is this cache empty?
+     * @returns true if the cache is empty; false otherwise.
+     */
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * get the desired statistic counter
+     * @param key to corresponding stat
+     * @return an Object corresponding to the stat
+     * See also: Constant.java for the key
+     */
+    public Object getStatByName(String key) {
+        if (key == null)
+            return null;
+        return getStats().get(key);
+    }
+
+    /**
+     * get the stats snapshot
+     * @return a Map of stats
+     * See also: Constant.java for the keys
+     */
+    public Map getStats() {
+        HashMap stats = new HashMap();
+
+        stats.put(Constants.STAT_BASECACHE_MAX_ENTRIES,
+                  Integer.valueOf(maxEntries));
+        stats.put(Constants.STAT_BASECACHE_THRESHOLD,
+                  Integer.valueOf(threshold));
+        stats.put(Constants.STAT_BASECACHE_TABLE_SIZE,
+                  Integer.valueOf(maxBuckets));
+        stats.put(Constants.STAT_BASECACHE_ENTRY_COUNT,
+                  Integer.valueOf(getEntryCount()));
+        stats.put(Constants.STAT_BASECACHE_HIT_COUNT,
+                  Integer.valueOf(hitCount.intValue()));
+        stats.put(Constants.STAT_BASECACHE_MISS_COUNT,
+                  Integer.valueOf(missCount.intValue()));
+        stats.put(Constants.STAT_BASECACHE_REMOVAL_COUNT,
+                  Integer.valueOf(removalCount.intValue()));
+        stats.put(Constants.STAT_BASECACHE_REFRESH_COUNT,
+                  Integer.valueOf(refreshCount.intValue()));
+        stats.put(Constants.STAT_BASECACHE_OVERFLOW_COUNT,
+                  Integer.valueOf(0));
+        stats.put(Constants.STAT_BASECACHE_ADD_COUNT,
+                  Integer.valueOf(addCount.intValue()));
+
+        stats.put(Constants.STAT_TINYLFUCACHE_WINDOW_SIZE,
+                  Integer.valueOf(window.size));
+        stats.put(Constants.STAT_TINYLFUCACHE_PROTECTED_SIZE,
+                  Integer.valueOf(protectedQueue.size));
+        stats.put(Constants.STAT_TINYLFUCACHE_TRIM_COUNT,
+                  Integer.valueOf(trimCount.intValue()));
+
+        return stats;
+    }
+
+    /**
+     * clear the stats
+     */
+    public void clearStats() {
+        hitCount.reset();
+        missCount.reset();
+        removalCount.reset();
+        refreshCount.reset();
+        addCount.reset();
+        trimCount.reset();
+    }
+
+    /**
+     * Destroys this cache. This method should perform final clean ups.
+     */
+    public void destroy() {
+        if (data != null) {
+            clear();
+        }
+        listeners.clear();
+    }
+
+    /*** replacement policy ***/
+
+    /**
+     * record a read of the node; drains the read buffers if they fill up
+     * and no other thread is doing so already
+     */
+    private void recordAccess(Node node) {
+        ReadBuffer buffer = readBuffers[
+            (int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+        if (buffer.offer(node)) {
+            drainBuffers();
+        }
+    }
+
+    /**
+     * queue the added or removed node and apply the pending writes, unless
+     * another thread is doing so already
+     */
+    private void afterWrite(Node node) {
+        writeBuffer.add(node);
+        drainBuffers();
+    }
+
+    private void drainBuffers() {
+        // A write queued while another thread holds the lock is seen by
+        // that thread's check of the buffer after it unlocks.
+        do {
+            if (!policyLock.tryLock())
+                return;
+
+            List<Node> trimmed;
+            try {
+                trimmed = maintenance();
+            } finally {
+                policyLock.unlock();
+            }
+            notifyTrimmed(trimmed);
+        } while (!writeBuffer.isEmpty());
+    }
+
+    /**
+     * apply the buffered reads and writes and trim the cache down to its
+     * threshold; the caller holds the policy lock
+     * @return the trimmed nodes, whose listeners are yet to be notified
+     */
+    private List<Node> maintenance() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drainTo(this);
+        }
+
+        Node node;
+        while ((node = writeBuffer.poll()) != null) {
+            if (node.removed) {
+                unlink(node);
+            } else if (node.queue == UNLINKED) {
+                sketch.increment(node.hash);
+                node.queue = WINDOW;
+                window.addLast(node);
+            }
+        }
+
+        return evict();
+    }
+
+    /**
+     * a buffered read of the node; the caller holds the policy lock
+     */
+    void onAccess(Node node) {
+        if (node.removed)
+            return;
+
+        switch (node.queue) {
+        case WINDOW:
+            sketch.increment(node.hash);
+            window.moveToBack(node);
+            break;
+        case PROBATION:
+            sketch.increment(node.hash);
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedQueue.addLast(node);
+            if (protectedQueue.size > protectedMaximum) {
+                Node demoted = protectedQueue.first;
+                protectedQueue.remove(demoted);
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+            break;
+        case PROTECTED:
+            sketch.increment(node.hash);
+            protectedQueue.moveToBack(node);
+            break;
+        default:
+            // the write that added the node has not been applied yet
+            break;
+        }
+    }
+
+    private void unlink(Node node) {
+        switch (node.queue) {
+        case WINDOW:
+            window.remove(node);
+            break;
+        case PROBATION:
+            probation.remove(node);
+            break;
+        case PROTECTED:
+            protectedQueue.remove(node);
+            break;
+        default:
+            break;
+        }
+        node.queue = UNLINKED;
+    }
+
+    /**
+     * move the window overflow to probation and trim the cache to its
+     * threshold; a candidate coming from the window is only admitted if
+     * it is used more often than the probation victim it would replace
+     */
+    private List<Node> evict() {
+        while (window.size > windowMaximum) {
+            Node node = window.first;
+            window.remove(node);
+            node.queue = PROBATION;
+            probation.addLast(node);
+        }
+
+        List<Node> trimmed = null;
+        while (window.size + probation.size + protectedQueue.size > threshold) {
+            Node victim = probation.first;
+            Node candidate = probation.last;
+            Node evicted;
+
+            if (victim == null) {
+                evicted = (protectedQueue.first != null) 
+                    ? protectedQueue.first : window.first;
+            } else if (victim == candidate) {
+                evicted = victim;
+            } else {
+                evicted = (sketch.frequency(candidate.hash) > 
+                           sketch.frequency(victim.hash)) ? victim : candidate;
+            }
+
+            unlink(evicted);
+            synchronized (evicted) {
+                if (evicted.removed || !data.remove(evicted.key, evicted))
+                    continue;
+                evicted.removed = true;
+            }
+            if (trimmed == null)
+                trimmed = new ArrayList<Node>();
+            trimmed.add(evicted);
+        }
+        return trimmed;
+    }
+
+    private void notifyTrimmed(List<Node> trimmed) {
+        if (trimmed == null)
+            return;
+
+        for (Node node : trimmed) {
+            trimCount.increment();
+            for (CacheListener listener : listeners) {
+                listener.trimEvent(node.key, node.value);
+            }
+        }
+    }
+
+    static int ceilingPowerOfTwo(int x) {
+        int n = 1;
+        while (n < x && n < (1 << 30))
+            n <<= 1;
+        return n;
+    }
+
+    /** cache entry; its value is read without a lock */
+    static final class Node {
+        final Object key;
+        final int hash;
+        volatile Object value;
+        volatile int size;
+
+        // set under the node's monitor once it has left the map
+        volatile boolean removed;
+
+        // guarded by the policy lock
+        byte queue = UNLINKED;
+        Node prev;
+        Node next;
+
+        Node(Object key, int hash, Object value, int size) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /** access ordered list of nodes; guarded by the policy lock */
+    static final class AccessQueue {
+        Node first;
+        Node last;
+        int size;
+
+        void addLast(Node node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null)
+                first = node;
+            else
+                last.next = node;
+            last = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null)
+                first = node.next;
+            else
+                node.prev.next = node.next;
+            if (node.next == null)
+                last = node.prev;
+            else
+                node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToBack(Node node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * bounded buffer of reads; writers never block and drop the read when
+     * the buffer is full or contended, which only costs policy accuracy
+     */
+    static final class ReadBuffer {
+        final AtomicReferenceArray<Node> buffer = 
+            new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        // written by the draining thread only
+        volatile long readCounter;
+
+        /**
+         * @return true if the buffer should be drained
+         */
+        boolean offer(Node node) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            long pending = tail - head;
+            if (pending >= READ_BUFFER_SIZE)
+                return true;
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & (READ_BUFFER_SIZE - 1)), node);
+                pending++;
+            }
+            return pending >= READ_BUFFER_DRAIN_THRESHOLD;
+        }
+
+        void drainTo(TinyLfuCache cache) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & (READ_BUFFER_SIZE - 1));
+                Node node = buffer.get(index);
+                if (node == null) {
+                    // claimed, but not yet published
+                    break;
+                }
+                buffer.lazySet(index, null);
+                cache.onAccess(node);
+            }
+            readCounter = head;
+        }
+    }
+}
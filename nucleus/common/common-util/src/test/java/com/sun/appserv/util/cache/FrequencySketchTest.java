@@ -0,0 +1,102 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.appserv.util.cache;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Counting, saturation and aging of the TinyLFU frequency sketch.
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        int item = "/index.html".hashCode();
+        assertEquals(0, sketch.frequency(item));
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment(item);
+            assertEquals(Math.min(i, 15), sketch.frequency(item));
+        }
+    }
+
+    @Test
+    public void testFewCollisions() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        for (int i = 0; i < 256; i++) {
+            sketch.increment(i);
+        }
+        int overcounted = 0;
+        for (int i = 0; i < 256; i++) {
+            if (sketch.frequency(i) > 1) {
+                overcounted++;
+            }
+        }
+        assertTrue("overcounted " + overcounted, overcounted < 8);
+    }
+
+    @Test
+    public void testReset() {
+        FrequencySketch sketch = new FrequencySketch(8);
+        int hot = 42;
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(hot);
+        }
+        assertEquals(15, sketch.frequency(hot));
+        // the sample size is ten times the capacity
+        for (int i = 0; i < 80 && sketch.frequency(hot) == 15; i++) {
+            sketch.increment(1000 + i);
+        }
+        assertEquals(7, sketch.frequency(hot));
+    }
+
+    @Test
+    public void testEnsureCapacity() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.increment(1);
+        sketch.ensureCapacity(4);
+        assertEquals(1, sketch.frequency(1));
+        // growing starts over
+        sketch.ensureCapacity(1024);
+        assertEquals(0, sketch.frequency(1));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.appserv.util.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Behavior of TinyLfuCache, and its hit rate against LruCache on a
+ * Zipfian trace.  Throughput is measured by the cache suite of the
+ * benchmarks module.
+ */
+public class TinyLfuCacheTest {
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        TinyLfuCache cache = new TinyLfuCache();
+        cache.init(100, null);
+
+        assertNull(cache.put("a", "1"));
+        assertEquals("1", cache.put("a", "2"));
+        assertEquals("2", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertTrue(cache.getAll("a").hasNext());
+        assertFalse(cache.getAll("b").hasNext());
+
+        String value = "3";
+        cache.put("c", value);
+        assertNull(cache.remove("c", new String("3")));
+        assertSame(value, cache.remove("c", value));
+        assertEquals("2", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertTrue(cache.isEmpty());
+
+        assertEquals(Integer.valueOf(2), 
+                     cache.getStatByName(Constants.STAT_BASECACHE_ADD_COUNT));
+        assertEquals(Integer.valueOf(1), 
+                     cache.getStatByName(Constants.STAT_BASECACHE_REFRESH_COUNT));
+        assertEquals(Integer.valueOf(2), 
+                     cache.getStatByName(Constants.STAT_BASECACHE_REMOVAL_COUNT));
+    }
+
+    @Test
+    public void testTrimmedEntriesAreReported() throws Exception {
+        TinyLfuCache cache = new TinyLfuCache();
+        cache.init(100, null);
+        final List<Object> trimmed = new ArrayList<Object>();
+        cache.addCacheListener(new CacheListener() {
+            public void trimEvent(Object key, Object value) {
+                trimmed.add(key);
+            }
+        });
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(Integer.valueOf(i), Integer.valueOf(i));
+        }
+
+        // same threshold as LruCache: (maxEntries * 0.75) + 1
+        assertEquals(76, cache.getEntryCount());
+        assertEquals(1000 - 76, trimmed.size());
+        for (Object key : trimmed) {
+            assertFalse(cache.contains(key));
+        }
+        assertEquals(Integer.valueOf(trimmed.size()),
+                     cache.getStatByName(Constants.STAT_TINYLFUCACHE_TRIM_COUNT));
+        assertEquals(76, cache.clear());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testFrequentKeysSurviveScan() throws Exception {
+        TinyLfuCache cache = new TinyLfuCache();
+        cache.init(1000, 1.0f, null);
+
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 500; i++) {
+                if (cache.get("hot" + i) == null)
+                    cache.put("hot" + i, "v");
+            }
+        }
+        for (int i = 0; i < 100000; i++) {
+            if (cache.get("scan" + i) == null)
+                cache.put("scan" + i, "v");
+        }
+
+        int retained = 0;
+        for (int i = 0; i < 500; i++) {
+            if (cache.get("hot" + i) != null)
+                retained++;
+        }
+        assertTrue("hot keys retained: " + retained, retained > 450);
+    }
+
+    @Test
+    public void testZipfianHitRate() throws Exception {
+        int[] trace = zipfTrace(100000, 0.9, 1000000, 42);
+
+        TinyLfuCache tinyLfu = new TinyLfuCache();
+        tinyLfu.init(2000, 1.0f, null);
+        LruCache lru = new LruCache();
+        lru.init(2000, 1.0f, null);
+
+        double tinyLfuHitRate = hitRate(tinyLfu, trace);
+        double lruHitRate = hitRate(lru, trace);
+        assertTrue("TinyLfuCache " + tinyLfuHitRate + ", LruCache " + lruHitRate,
+                   tinyLfuHitRate > lruHitRate);
+    }
+
+    private static double hitRate(Cache cache, int[] trace) {
+        int hits = 0;
+        for (int key : trace) {
+            Integer k = Integer.valueOf(key);
+            if (cache.get(k) != null) {
+                hits++;
+            } else {
+                cache.put(k, k);
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    /**
+     * keys drawn from [0, n) with P(k) proportional to 1 / (k + 1)^s
+     */
+    private static int[] zipfTrace(int n, double s, int length, long seed) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, s);
+            cdf[k] = sum;
+        }
+
+        Random random = new Random(seed);
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            double u = random.nextDouble() * sum;
+            int lo = 0, hi = n - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            // scatter the popular keys over the hash table
+            trace[i] = lo * 0x9e3779b1;
+        }
+        return trace;
+    }
+}
@@ -47,6 +47,13 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.text.FieldPosition;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -59,6 +66,9 @@ import java.util.Vector;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.ErrorManager;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
@@ -71,6 +81,8 @@ import javax.inject.Singleton;
 
 import org.glassfish.api.logging.Task;
 import org.glassfish.config.support.TranslatedConfigView;
+import org.glassfish.external.probe.provider.PluginPoint;
+import org.glassfish.external.probe.provider.StatsProviderManager;
 import org.glassfish.hk2.api.PostConstruct;
 import org.glassfish.hk2.api.PreDestroy;
 import org.glassfish.hk2.api.ServiceLocator;
@@ -84,12 +96,19 @@ import com.sun.appserv.server.util.Version;
 import com.sun.common.util.logging.BooleanLatch;
 import com.sun.enterprise.admin.monitor.callflow.Agent;
 import com.sun.enterprise.module.bootstrap.EarlyLogHandler;
+import com.sun.enterprise.server.logging.logviewer.backend.LogFileIndex;
 import com.sun.enterprise.util.LocalStringManagerImpl;
 import com.sun.enterprise.util.io.FileUtils;
 import com.sun.enterprise.v3.logging.AgentFormatterDelegate;
 
 /**
  * GFFileHandler publishes formatted log Messages to a FILE.
+ * <p/>
+ * Setting <code>ringBufferSize</code> in logging.properties switches the
+ * handler to a high-throughput mode backed by a pre-allocated ring buffer.
+ * <code>overflowPolicy</code> (block, drop-below-level or sample),
+ * <code>overflowDropLevel</code> and <code>overflowSampleRate</code> then
+ * control what happens to records published while the buffer is full.
  *
  * @AUTHOR: Jerome Dochez
  * @AUTHOR: Carla Mott
@@ -142,6 +161,49 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
 
     private BlockingQueue<LogRecord> pendingRecords = new ArrayBlockingQueue<LogRecord>(5000);
 
+    /**
+     * What publish() does when the ring buffer of the high-throughput mode
+     * is full.
+     */
+    enum OverflowPolicy {
+        /** wait for the pump to free a slot, like the default mode does */
+        BLOCK,
+        /** discard records below overflowDropLevel, wait for the others */
+        DROP_BELOW_LEVEL,
+        /** like DROP_BELOW_LEVEL but keep one in overflowSampleRate of the
+            records below the level */
+        SAMPLE
+    }
+
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long PUMP_PARK_NANOS = 100L * 1000 * 1000;
+    private static final long BLOCKED_PUBLISH_PARK_NANOS = 100L * 1000;
+
+    // High-throughput mode, enabled by setting ringBufferSize. Records are
+    // handed to the pump through a pre-allocated ring buffer instead of
+    // pendingRecords; the pump formats them into a reusable direct buffer
+    // and writes whole batches through the FileChannel of the log file.
+    private LogRecordRingBuffer ringBuffer;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private int overflowDropLevel = Level.WARNING.intValue();
+    private int overflowSampleRate = 10;
+    private final AtomicLong overflowCounter = new AtomicLong();
+    private LogRecord[] batchRecords;
+    private long[] batchEnqueueTimes;
+    private ByteBuffer writeBuffer;
+    private CharsetEncoder encoder;
+    private FileChannel fileChannel;
+    private volatile boolean pumpParked = false;
+    private GFFileHandlerStatsProvider statsProvider;
+
+    private final LongAdder enqueuedRecords = new LongAdder();
+    private final LongAdder droppedRecords = new LongAdder();
+    private final LongAdder blockedPublishes = new LongAdder();
+    private final LongAdder writtenRecords = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
     // Rotation can be done in 3 ways
     // 1. Based on the Size: Rotate when some Threshold number of bytes are 
     //    written to server.log
@@ -252,6 +314,8 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
             currentgffileHandlerFormatter = "com.sun.enterprise.server.logging.UniformLogFormatter";
         }
 
+        configureRingBuffer(manager, cname);
+
         // start the Queue consumer thread.
         initializePump();
         
@@ -448,6 +512,83 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
 
     }
 
+    /**
+     * Switches the handler to the high-throughput mode if a ringBufferSize
+     * is configured in logging.properties. The mode is read once at startup.
+     */
+    private void configureRingBuffer(LogManager manager, String cname) {
+        String propValue = manager.getProperty(cname + ".ringBufferSize");
+        int ringBufferSize = 0;
+        if (propValue != null && !propValue.trim().isEmpty()) {
+            try {
+                ringBufferSize = Integer.parseInt(propValue.trim());
+            } catch (NumberFormatException e) {
+                reportInvalidAttribute(propValue, "ringBufferSize");
+            }
+        }
+        if (ringBufferSize <= 0) {
+            return;
+        }
+
+        propValue = manager.getProperty(cname + ".overflowPolicy");
+        if (propValue != null && !propValue.trim().isEmpty()) {
+            try {
+                overflowPolicy = OverflowPolicy.valueOf(
+                        propValue.trim().toUpperCase(java.util.Locale.ENGLISH).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                reportInvalidAttribute(propValue, "overflowPolicy");
+            }
+        }
+
+        propValue = manager.getProperty(cname + ".overflowDropLevel");
+        if (propValue != null && !propValue.trim().isEmpty()) {
+            try {
+                overflowDropLevel = Level.parse(propValue.trim()).intValue();
+            } catch (IllegalArgumentException e) {
+                reportInvalidAttribute(propValue, "overflowDropLevel");
+            }
+        }
+
+        propValue = manager.getProperty(cname + ".overflowSampleRate");
+        if (propValue != null && !propValue.trim().isEmpty()) {
+            try {
+                overflowSampleRate = Integer.parseInt(propValue.trim());
+            } catch (NumberFormatException e) {
+                reportInvalidAttribute(propValue, "overflowSampleRate");
+            }
+        }
+        if (overflowSampleRate <= 0)
+            overflowSampleRate = 10;
+
+        Charset charset = Charset.defaultCharset();
+        String encoding = getEncoding();
+        if (encoding != null) {
+            charset = Charset.forName(encoding);
+        }
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        ringBuffer = new LogRecordRingBuffer(ringBufferSize);
+        int batchSize = Math.min(ringBuffer.capacity(), MAX_BATCH_SIZE);
+        batchRecords = new LogRecord[batchSize];
+        batchEnqueueTimes = new long[batchSize];
+
+        statsProvider = new GFFileHandlerStatsProvider(this);
+        StatsProviderManager.register("logging", PluginPoint.SERVER,
+                "logging/file-handler", statsProvider);
+    }
+
+    private void reportInvalidAttribute(String value, String attributeName) {
+        LogRecord lr = new LogRecord(Level.WARNING, LogFacade.INVALID_ATTRIBUTE_VALUE);
+        lr.setParameters(new Object[]{value, attributeName});
+        lr.setResourceBundle(ResourceBundle.getBundle(LogFacade.LOGGING_RB_NAME));
+        lr.setThreadID((int) Thread.currentThread().getId());
+        lr.setLoggerName(LogFacade.LOGGING_LOGGER_NAME);
+        EarlyLogHandler.earlyMessages.add(lr);
+    }
+
     Formatter findFormatterService(String formatterName) {
         List<Formatter> formatterServices = habitat.getAllServices(Formatter.class);
         for (Formatter formatter : formatterServices) {
@@ -537,7 +678,11 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
             public void run() {
                 while (!done.isSignalled()) {
                     try {
-                        log();
+                        if (ringBuffer != null) {
+                            logBatch();
+                        } else {
+                            log();
+                        }
                     } catch (Exception e) {
                         // GLASSFISH-19125
                         // Continue the loop without exiting
@@ -555,6 +700,21 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
             LogFacade.LOGGING_LOGGER.fine("Logger handler killed");            
         }
         done.tryReleaseShared(1);
+
+        if (ringBuffer != null) {
+            // Do not interrupt the pump here, an interrupt during a channel
+            // write would close the log file. It leaves its loop on its own.
+            LockSupport.unpark(pump);
+            LogRecord[] records = new LogRecord[batchRecords.length];
+            long[] enqueueTimes = new long[batchRecords.length];
+            int count;
+            while ((count = ringBuffer.drainTo(records, enqueueTimes, records.length)) > 0) {
+                writeBatch(records, enqueueTimes, count);
+            }
+            StatsProviderManager.unregister(statsProvider);
+            return;
+        }
+
         pump.interrupt();
 
         // drain and return
@@ -681,6 +841,7 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
         BufferedOutputStream bout = new BufferedOutputStream(fout);
         meter = new MeteredStream(bout, file.length());
         setOutputStream(meter);        
+        fileChannel = fout.getChannel();
     }
 
     /**
@@ -725,6 +886,7 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
                         throw new IOException("Could not delete log file: "
                                 + logFile.getAbsolutePath());
                     }
+                    LogFileIndex.deleteIndex(logFile);
                 }
             } catch (Exception e) {
                 new ErrorManager().error(
@@ -753,6 +915,7 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
                             thisInstance.close();
                             try {
                                 if (!absoluteFile.exists()) {
+                                    LogFileIndex.deleteIndex(absoluteFile);
                                     File creatingDeletedLogFile = new File(
                                             absoluteFile.getAbsolutePath());
                                     if (creatingDeletedLogFile.createNewFile()) { 
@@ -783,6 +946,8 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
                                                 freshServerLogFile);
                                         fo.close();
                                     }
+                                    // the index of server.log now describes the rotated file
+                                    LogFileIndex.moveIndex(oldFile, rotatedFile);
                                     FileOutputStream oldFileFO = new FileOutputStream(
                                             oldFile);
                                     oldFileFO.close();
@@ -850,6 +1015,181 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
 
     }
 
+    /**
+     * High-throughput counterpart of log(): drains a batch of records from
+     * the ring buffer and writes it to the file, parking when there is
+     * nothing to do.
+     */
+    void logBatch() {
+        int count = ringBuffer.drainTo(batchRecords, batchEnqueueTimes, batchRecords.length);
+        if (count == 0) {
+            pumpParked = true;
+            if (ringBuffer.isEmpty() && !done.isSignalled()) {
+                LockSupport.parkNanos(PUMP_PARK_NANOS);
+            }
+            pumpParked = false;
+            return;
+        }
+
+        writeBatch(batchRecords, batchEnqueueTimes, count);
+
+        if ((rotationRequested.get())
+                || ((limitForFileRotation > 0)
+                && (meter.written >= limitForFileRotation))) {
+            synchronized (rotationLock) {
+                rotate();
+                rotationRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Formats the records into the write buffer and writes it out through the
+     * file channel every time it fills up. Holding the rotationLock keeps
+     * rotate() and changeFileName() from swapping the file underneath us.
+     */
+    private void writeBatch(LogRecord[] records, long[] enqueueTimes, int count) {
+        synchronized (rotationLock) {
+            int written = 0;
+            try {
+                for (int i = 0; i < count; i++) {
+                    LogRecord record = records[i];
+                    records[i] = null;
+                    if (!isLoggable(record)) {
+                        enqueueTimes[i] = 0;
+                        continue;
+                    }
+                    String msg;
+                    try {
+                        msg = getFormatter().format(record);
+                    } catch (Exception ex) {
+                        reportError(null, ex, ErrorManager.FORMAT_FAILURE);
+                        enqueueTimes[i] = 0;
+                        continue;
+                    }
+                    encode(msg);
+                    written++;
+                }
+                writeOut();
+            } catch (IOException ex) {
+                writeBuffer.clear();
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+                return;
+            }
+
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                if (enqueueTimes[i] != 0) {
+                    long latency = now - enqueueTimes[i];
+                    totalLatencyNanos.add(latency);
+                    long max = maxLatencyNanos.get();
+                    while (latency > max && !maxLatencyNanos.compareAndSet(max, latency)) {
+                        max = maxLatencyNanos.get();
+                    }
+                }
+            }
+            writtenRecords.add(written);
+        }
+    }
+
+    private void encode(String msg) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(msg);
+        while (true) {
+            CoderResult result = encoder.encode(chars, writeBuffer, true);
+            if (result.isOverflow()) {
+                writeOut();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(writeBuffer).isOverflow()) {
+            writeOut();
+        }
+        encoder.reset();
+    }
+
+    private void writeOut() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            meter.written += fileChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Puts the record into the ring buffer, applying the overflow policy
+     * if it is full.
+     */
+    private void enqueue(LogRecord record) {
+        if (ringBuffer.offer(record)) {
+            enqueuedRecords.increment();
+            wakeUpPump();
+            return;
+        }
+
+        if (overflowPolicy != OverflowPolicy.BLOCK
+                && record.getLevel().intValue() < overflowDropLevel) {
+            if (overflowPolicy == OverflowPolicy.DROP_BELOW_LEVEL
+                    || overflowCounter.getAndIncrement() % overflowSampleRate != 0) {
+                droppedRecords.increment();
+                return;
+            }
+        }
+
+        blockedPublishes.increment();
+        wakeUpPump();
+        while (!ringBuffer.offer(record)) {
+            if (done.isSignalled() || Thread.currentThread().isInterrupted()) {
+                // too bad, record is lost...
+                droppedRecords.increment();
+                return;
+            }
+            LockSupport.parkNanos(BLOCKED_PUBLISH_PARK_NANOS);
+        }
+        enqueuedRecords.increment();
+        wakeUpPump();
+    }
+
+    private void wakeUpPump() {
+        if (pumpParked) {
+            LockSupport.unpark(pump);
+        }
+    }
+
+    int getQueuedRecordCount() {
+        return (ringBuffer == null) ? pendingRecords.size() : ringBuffer.size();
+    }
+
+    int getRingBufferCapacity() {
+        return (ringBuffer == null) ? 0 : ringBuffer.capacity();
+    }
+
+    long getEnqueuedRecordCount() {
+        return enqueuedRecords.sum();
+    }
+
+    long getDroppedRecordCount() {
+        return droppedRecords.sum();
+    }
+
+    long getBlockedPublishCount() {
+        return blockedPublishes.sum();
+    }
+
+    long getWrittenRecordCount() {
+        return writtenRecords.sum();
+    }
+
+    long getTotalLatencyNanos() {
+        return totalLatencyNanos.sum();
+    }
+
+    long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
     /**
      * Publishes the logrecord storing it in our queue
      */
@@ -867,16 +1207,20 @@ PostConstruct, PreDestroy, LogEventBroadcaster, LoggingRuntime {
         GFLogRecord recordWrapper = new GFLogRecord(record);
         recordWrapper.setThreadName(Thread.currentThread().getName());
 
-        try {
-            // set the thread id to be the current thread that is logging the message
-//            record.setThreadID((int)Thread.currentThread().getId());
-            pendingRecords.add(recordWrapper);
-        } catch (IllegalStateException e) {
-            // queue is full, start waiting.
+        if (ringBuffer != null) {
+            enqueue(recordWrapper);
+        } else {
             try {
-                pendingRecords.put(recordWrapper);
-            } catch (InterruptedException e1) {
-                // too bad, record is lost...
+                // set the thread id to be the current thread that is logging the message
+//                record.setThreadID((int)Thread.currentThread().getId());
+                pendingRecords.add(recordWrapper);
+            } catch (IllegalStateException e) {
+                // queue is full, start waiting.
+                try {
+                    pendingRecords.put(recordWrapper);
+                } catch (InterruptedException e1) {
+                    // too bad, record is lost...
+                }
             }
         }
         
@@ -0,0 +1,149 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging;
+
+import org.glassfish.external.statistics.CountStatistic;
+import org.glassfish.external.statistics.impl.CountStatisticImpl;
+import org.glassfish.external.statistics.impl.StatisticImpl;
+import org.glassfish.gmbal.AMXMetadata;
+import org.glassfish.gmbal.Description;
+import org.glassfish.gmbal.ManagedAttribute;
+import org.glassfish.gmbal.ManagedObject;
+
+/**
+ * Exposes the ring buffer counters of GFFileHandler when it runs in
+ * high-throughput mode.
+ */
+/* server.logging.file-handler */
+@AMXMetadata(type="log-file-handler-mon", group="monitoring")
+@ManagedObject
+@Description( "Log File Handler Statistics" )
+public class GFFileHandlerStatsProvider {
+
+    private final GFFileHandler handler;
+
+    private CountStatisticImpl queuedRecordCount = new CountStatisticImpl(
+            "QueuedRecordCount", StatisticImpl.UNIT_COUNT,
+                "Number of log records waiting in the ring buffer to be written" );
+    private CountStatisticImpl ringBufferCapacity = new CountStatisticImpl(
+            "RingBufferCapacity", StatisticImpl.UNIT_COUNT,
+                "Number of slots in the ring buffer" );
+    private CountStatisticImpl enqueuedRecordCount = new CountStatisticImpl(
+            "EnqueuedRecordCount", StatisticImpl.UNIT_COUNT,
+                "Number of log records accepted into the ring buffer" );
+    private CountStatisticImpl droppedRecordCount = new CountStatisticImpl(
+            "DroppedRecordCount", StatisticImpl.UNIT_COUNT,
+                "Number of log records discarded by the overflow policy" );
+    private CountStatisticImpl blockedPublishCount = new CountStatisticImpl(
+            "BlockedPublishCount", StatisticImpl.UNIT_COUNT,
+                "Number of times a logging thread had to wait for free space in the ring buffer" );
+    private CountStatisticImpl writtenRecordCount = new CountStatisticImpl(
+            "WrittenRecordCount", StatisticImpl.UNIT_COUNT,
+                "Number of log records written to the log file" );
+    private CountStatisticImpl averageLatency = new CountStatisticImpl(
+            "AverageLatency", StatisticImpl.UNIT_MICROSECOND,
+                "Average time between a log record being enqueued and written, in microseconds" );
+    private CountStatisticImpl maxLatency = new CountStatisticImpl(
+            "MaxLatency", StatisticImpl.UNIT_MICROSECOND,
+                "Longest time between a log record being enqueued and written, in microseconds" );
+
+    public GFFileHandlerStatsProvider(GFFileHandler handler) {
+        this.handler = handler;
+    }
+
+    @ManagedAttribute(id="queuedrecordcount")
+    @Description( "Number of log records waiting in the ring buffer to be written" )
+    public CountStatistic getQueuedRecordCount() {
+        queuedRecordCount.setCount(handler.getQueuedRecordCount());
+        return queuedRecordCount;
+    }
+
+    @ManagedAttribute(id="ringbuffercapacity")
+    @Description( "Number of slots in the ring buffer" )
+    public CountStatistic getRingBufferCapacity() {
+        ringBufferCapacity.setCount(handler.getRingBufferCapacity());
+        return ringBufferCapacity;
+    }
+
+    @ManagedAttribute(id="enqueuedrecordcount")
+    @Description( "Number of log records accepted into the ring buffer" )
+    public CountStatistic getEnqueuedRecordCount() {
+        enqueuedRecordCount.setCount(handler.getEnqueuedRecordCount());
+        return enqueuedRecordCount;
+    }
+
+    @ManagedAttribute(id="droppedrecordcount")
+    @Description( "Number of log records discarded by the overflow policy" )
+    public CountStatistic getDroppedRecordCount() {
+        droppedRecordCount.setCount(handler.getDroppedRecordCount());
+        return droppedRecordCount;
+    }
+
+    @ManagedAttribute(id="blockedpublishcount")
+    @Description( "Number of times a logging thread had to wait for free space in the ring buffer" )
+    public CountStatistic getBlockedPublishCount() {
+        blockedPublishCount.setCount(handler.getBlockedPublishCount());
+        return blockedPublishCount;
+    }
+
+    @ManagedAttribute(id="writtenrecordcount")
+    @Description( "Number of log records written to the log file" )
+    public CountStatistic getWrittenRecordCount() {
+        writtenRecordCount.setCount(handler.getWrittenRecordCount());
+        return writtenRecordCount;
+    }
+
+    @ManagedAttribute(id="averagelatency")
+    @Description( "Average time between a log record being enqueued and written, in microseconds" )
+    public CountStatistic getAverageLatency() {
+        long written = handler.getWrittenRecordCount();
+        long average = (written == 0) ? 0 : handler.getTotalLatencyNanos() / written;
+        averageLatency.setCount(average / 1000);
+        return averageLatency;
+    }
+
+    @ManagedAttribute(id="maxlatency")
+    @Description( "Longest time between a log record being enqueued and written, in microseconds" )
+    public CountStatistic getMaxLatency() {
+        maxLatency.setCount(handler.getMaxLatencyNanos() / 1000);
+        return maxLatency;
+    }
+}
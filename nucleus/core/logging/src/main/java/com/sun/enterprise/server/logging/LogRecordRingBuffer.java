@@ -0,0 +1,154 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.LogRecord;
+
+/**
+ * Bounded, pre-allocated ring buffer of log records used by the
+ * high-throughput mode of GFFileHandler.
+ * <p/>
+ * The slots are allocated once. Every slot carries a sequence number that
+ * tells producers and consumers whose turn it is, so publishing and draining
+ * a record is a single CAS on the claim counter plus a volatile store, with
+ * no lock and no per-record node allocation. The time at which the record
+ * was enqueued is kept next to it so that the consumer can report the
+ * enqueue to write latency.
+ */
+final class LogRecordRingBuffer {
+
+    private final LogRecord[] records;
+    private final long[] enqueueTimes;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param requestedCapacity rounded up to the next power of two
+     */
+    LogRecordRingBuffer(int requestedCapacity) {
+        int capacity = 2;
+        while (capacity < requestedCapacity) {
+            capacity <<= 1;
+        }
+        records = new LogRecord[capacity];
+        enqueueTimes = new long[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+    }
+
+    int capacity() {
+        return records.length;
+    }
+
+    /**
+     * Approximate number of records waiting to be consumed.
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, records.length);
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Stores the record in the next free slot.
+     *
+     * @return false if the buffer is full
+     */
+    boolean offer(LogRecord record) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    records[index] = record;
+                    enqueueTimes[index] = System.nanoTime();
+                    // volatile store publishes the slot to the consumer
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Moves up to <code>max</code> records into the given arrays.
+     *
+     * @return the number of records drained
+     */
+    int drainTo(LogRecord[] target, long[] targetEnqueueTimes, int max) {
+        int count = 0;
+        while (count < max) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    target[count] = records[index];
+                    targetEnqueueTimes[count] = enqueueTimes[index];
+                    records[index] = null;
+                    // hand the slot back to the producers for the next lap
+                    sequences.set(index, pos + mask + 1);
+                    count++;
+                }
+            } else if (diff < 0) {
+                break;
+            }
+        }
+        return count;
+    }
+}
@@ -43,9 +43,7 @@ package com.sun.enterprise.server.logging.logviewer.backend;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -85,7 +83,6 @@ public class LogFile implements java.io.Serializable {
      */
     public LogFile(String name) {
         _logFileName = name;
-        _recordIdx.add(Long.valueOf(0));
     }
 
     /**
@@ -110,9 +107,11 @@ public class LogFile implements java.io.Serializable {
             return null;
         }
 
-        // Open the file at the desired starting Record
+        // Map the file from the block holding the desired starting Record
+        // up to the end of the block holding the last one
         final long recordsToIgnore = (startingRecord % getIndexSize());
-        BufferedReader reader = getFilePosition(startingRecord - recordsToIgnore);
+        BufferedReader reader = getFilePosition(startingRecord,
+                startingRecord + Math.max(maxRecords, 1) - 1);
         final List results = new ArrayList();
         if (reader == null) {
             return results;
@@ -169,108 +168,101 @@ public class LogFile implements java.io.Serializable {
         return results;
     }
 
-
     /**
-     * This method builds the file index in the beginning.  The index is for
-     * the beginning of every record after the size specified by '_indexSize'
-     * variable.
+     * Returns the first record at or after the given one that lives in a
+     * block which may hold a record matching the date and level query,
+     * or -1 if there is none. Blocks that cannot match are skipped using
+     * the index, without reading them.
      */
-    private synchronized void buildLogFileIndex() {
-        // Open the file and skip to the where we left off
-        final long startPos = (Long) _recordIdx.get(_recordIdx.size() - 1);
-        final long localIndexSize = getIndexSize();
-        BufferedReader reader = getLogFileReader(startPos);
-        try {
-            File logFile = new File(getLogFileName());
-            LogParser logParser = LogParserFactory.getInstance().createLogParser(logFile);
-            if (logParser != null) {
-                logParser.parseLog(reader, new LogParserListener() {
-                    
-                    long recordNumber = (_recordIdx.size() - 1) * localIndexSize;
-
-                    @Override
-                    public void outputSummary(BufferedWriter writer, Object... objects)
-                            throws IOException {
-                    }
-                    
-                    @Override
-                    public void foundLogRecord(long position, ParsedLogRecord object) {                    
-                        long modIndex = recordNumber % localIndexSize;
-                        if (modIndex == 0) {
-                            _recordIdx.add((Long)(startPos+position));
-                        }
-                        recordNumber++;
-                    }
-                    
-                    @Override
-                    public void close() throws IOException {                    
-                    }
-                });                
-            }
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException ex) {
-                }
+    public long nextCandidateRecord(long recordNumber, Date fromDate, Date toDate,
+            String queryLevel) {
+        LogFileIndex index = getIndex();
+        index.update();
+        long fromTime = (fromDate == null || toDate == null) ? -1 : fromDate.getTime();
+        long toTime = (fromDate == null || toDate == null) ? -1 : toDate.getTime();
+        int minLevel = getMinimumLevel(queryLevel);
+        long blocks = index.getBlockCount();
+        for (long block = recordNumber / getIndexSize(); block < blocks; block++) {
+            if (index.mayMatch(block, fromTime, toTime, minLevel)) {
+                return Math.max(recordNumber, block * getIndexSize());
             }
         }
+        return -1;
     }
 
     /**
-     * This method returns the file position given the record number.
-     *
-     * @return The file position.
-     * @param    recordNumber    The Record Number
+     * Returns the last record at or before the given one that lives in a
+     * block which may hold a record matching the date and level query,
+     * or -1 if there is none.
      */
-    private BufferedReader getFilePosition(long recordNumber) {
-        // The index is stored from the second slot. i.e., if there
-        // are 100 records and the index will be on 20, 40, 60, 80, 100
-        // if the _indexSize is 20. We don't store '0' hence we subtract
-        // from 1 to get the right index
-        int index = (int) (recordNumber / getIndexSize());
-        if (index > _recordIdx.size()-1) {
-            return null;
+    public long previousCandidateRecord(long recordNumber, Date fromDate, Date toDate,
+            String queryLevel) {
+        LogFileIndex index = getIndex();
+        index.update();
+        long fromTime = (fromDate == null || toDate == null) ? -1 : fromDate.getTime();
+        long toTime = (fromDate == null || toDate == null) ? -1 : toDate.getTime();
+        int minLevel = getMinimumLevel(queryLevel);
+        long block = Math.min(recordNumber / getIndexSize(), index.getBlockCount() - 1);
+        for (; block >= 0; block--) {
+            if (index.mayMatch(block, fromTime, toTime, minLevel)) {
+                return Math.min(recordNumber, (block + 1) * getIndexSize() - 1);
+            }
         }
-        Long filePosition = (Long) _recordIdx.get(index);
-        return getLogFileReader(filePosition);
+        return -1;
     }
 
     /**
-     * This method opens the server.log file and moves the stream to
-     * the specified filePosition.
+     * Lowest level value a record must have to pass LogFilter.levelCheck(),
+     * both for the "at least" and the "only" query.
      */
-    protected BufferedReader getLogFileReader(long fromFilePosition) {
-        FileInputStream file = null;
+    private int getMinimumLevel(String queryLevel) {
+        if (queryLevel == null) {
+            return Integer.MIN_VALUE;
+        }
         try {
-            file = new FileInputStream(getLogFileName());
-            long bytesToSkip = fromFilePosition-1;
-            if (bytesToSkip > 0) {
-                long bytesSkipped = file.skip(bytesToSkip);
-                if (bytesSkipped != fromFilePosition) {
-                    if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) { 
-                        LogFacade.LOGGING_LOGGER.log(Level.FINE, "Did not skip exact bytes while positioning reader in " + getLogFileName());
-                    }
-                }
+            return Level.parse(queryLevel.trim()).intValue();
+        } catch (Exception e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * This method returns a reader over the records from the block holding
+     * the first record number up to the end of the block holding the last
+     * one, or null if the file has no such records.
+     *
+     * @param    firstRecord    The Record Number to start from
+     * @param    lastRecord    The last Record Number needed
+     */
+    private BufferedReader getFilePosition(long firstRecord, long lastRecord) {
+        LogFileIndex index = getIndex();
+        long from;
+        long to;
+        synchronized (index) {
+            index.update();
+            from = index.getBlockOffset(firstRecord / getIndexSize());
+            if (from < 0) {
+                return null;
             }
-            BufferedReader reader =
-                    new BufferedReader(new InputStreamReader(file));
-            return reader;
-        } catch (Exception ex) {
+            to = index.getBlockEnd(lastRecord / getIndexSize());
+        }
+        try {
+            return index.openReader(from, to);
+        } catch (IOException ex) {
             if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) { 
                 LogFacade.LOGGING_LOGGER.log(Level.FINE, "Error reading from file: " + getLogFileName(), ex);
             }
-            if (file != null) try { file.close(); } catch (Exception ex2) {
-                if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) { 
-                    LogFacade.LOGGING_LOGGER.log(Level.FINE, "Error closing file: " + getLogFileName(), ex2);
-                }                
-            }            
-        } 
+        }
         return null;
     }
 
+    private synchronized LogFileIndex getIndex() {
+        if (_index == null) {
+            _index = new LogFileIndex(new File(getLogFileName()), (int) getIndexSize());
+        }
+        return _index;
+    }
+
     /**
      *
      */
@@ -283,8 +275,9 @@ public class LogFile implements java.io.Serializable {
      * will ensure that the indexes are up-to-date.
      */
     public long getLastIndexNumber() {
-        buildLogFileIndex();
-        return _recordIdx.size() - 1;
+        LogFileIndex index = getIndex();
+        index.update();
+        return index.getBlockCount();
     }
 
     /**
@@ -445,6 +438,6 @@ public class LogFile implements java.io.Serializable {
     
     private long _indexSize = 10;
     private String _logFileName = null;
-    private List _recordIdx   = new ArrayList();
+    private transient LogFileIndex _index = null;
     
 }
@@ -0,0 +1,711 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging.logviewer.backend;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+import com.sun.enterprise.server.logging.LogFacade;
+import com.sun.enterprise.server.logging.LogFormatHelper;
+import com.sun.enterprise.server.logging.parser.LogParser;
+import com.sun.enterprise.server.logging.parser.LogParserFactory;
+import com.sun.enterprise.server.logging.parser.LogParserListener;
+import com.sun.enterprise.server.logging.parser.ParsedLogRecord;
+
+/**
+ * Sparse index over a log file. Every <code>indexSize</code> records form a
+ * block, and for each block the index keeps the byte offset of its first
+ * record together with the smallest and largest timestamp and the highest
+ * level found in it. That lets LogFile jump straight to a page of records
+ * and lets LogFilter skip whole blocks that cannot match a time or level
+ * query.
+ * <p/>
+ * The index is kept in <code>.logindex/&lt;log file name&gt;.idx</code> next
+ * to the log file, so it survives restarts. On every update only the bytes
+ * appended since the last update are scanned. All access to the log file and
+ * the index goes through positional channel reads rather than memory
+ * mappings, so no mapped region keeps the files open and GFFileHandler can
+ * rename or delete them during rotation on every platform. A fingerprint of the beginning of the log file detects
+ * that the file was rotated or replaced, in which case the index is rebuilt.
+ * GFFileHandler moves the index along with the file when it rotates it.
+ */
+public class LogFileIndex {
+
+    static final String INDEX_DIR = ".logindex";
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x47464c49;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5 * 4 + 3 * 8;
+    private static final int ENTRY_SIZE = 3 * 8 + 4;
+
+    private static final int FINGERPRINT_BYTES = 512;
+    private static final int SCAN_WINDOW = 1024 * 1024;
+    private static final int HEADER_PREFIX_BYTES = 64;
+
+    private static final int FORMAT_UNDETECTED = -1;
+    private static final int FORMAT_RAW = 0;
+    private static final int FORMAT_UNIFORM = 1;
+    private static final int FORMAT_ODL = 2;
+
+    private static final String UNIFORM_RECORD_BEGIN_MARKER = "[#|";
+
+    private static final Pattern ODL_RECORD_BEGIN_PATTERN = Pattern.compile(
+        "\\[(\\d){4}\\-(\\d){2}\\-(\\d){2}T(\\d){2}\\:(\\d){2}\\:(\\d){2}\\.(\\d){3}[\\+|\\-](\\d){4}\\]");
+
+    /**
+     * Level value recorded for records whose level cannot be parsed, so
+     * that level queries never skip them.
+     */
+    private static final int UNKNOWN_LEVEL = Integer.MAX_VALUE;
+
+    private final File logFile;
+    private final File indexFile;
+    private final int indexSize;
+    private final Charset charset = Charset.defaultCharset();
+
+    private boolean loaded = false;
+    private int format = FORMAT_UNDETECTED;
+    private int fingerprintLength = 0;
+    private long fingerprint = 0;
+    private long recordCount = 0;
+    private long scannedUpTo = 0;
+    private long fileLength = 0;
+    private boolean pendingRecord = false;
+
+    private int blockCount = 0;
+    private long[] offsets = new long[64];
+    private long[] minTimes = new long[64];
+    private long[] maxTimes = new long[64];
+    private int[] maxLevels = new int[64];
+
+    // first block whose entry changed since the index file was last written,
+    // -1 if the file has to be rewritten from scratch
+    private int firstDirtyBlock = 0;
+
+    public LogFileIndex(File logFile, int indexSize) {
+        this.logFile = logFile;
+        this.indexFile = getIndexFile(logFile);
+        this.indexSize = indexSize;
+    }
+
+    /**
+     * Returns the file holding the index of the given log file.
+     */
+    public static File getIndexFile(File logFile) {
+        return new File(new File(logFile.getAbsoluteFile().getParentFile(), INDEX_DIR),
+                logFile.getName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Called when a log file is renamed during rotation, the index still
+     * describes the content of the renamed file.
+     */
+    public static void moveIndex(File from, File to) {
+        File fromIndex = getIndexFile(from);
+        if (!fromIndex.exists()) {
+            return;
+        }
+        File toIndex = getIndexFile(to);
+        if (!fromIndex.renameTo(toIndex) && !fromIndex.delete()) {
+            if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                LogFacade.LOGGING_LOGGER.log(Level.FINE, "Could not move log index " + fromIndex);
+            }
+        }
+    }
+
+    /**
+     * Called when a log file is deleted.
+     */
+    public static void deleteIndex(File logFile) {
+        File index = getIndexFile(logFile);
+        if (index.exists() && !index.delete()) {
+            if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                LogFacade.LOGGING_LOGGER.log(Level.FINE, "Could not delete log index " + index);
+            }
+        }
+    }
+
+    /**
+     * Brings the index up to date with the log file, scanning only what was
+     * appended since the last call.
+     */
+    public synchronized void update() {
+        if (!loaded) {
+            load();
+            loaded = true;
+        }
+        long length = logFile.length();
+        try {
+            if (length < scannedUpTo || !fingerprintMatches()) {
+                reset();
+            }
+            if (length == fileLength && firstDirtyBlock == blockCount) {
+                return;
+            }
+            updateFingerprint(length);
+            scan(length);
+            fileLength = length;
+        } catch (IOException ex) {
+            if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                LogFacade.LOGGING_LOGGER.log(Level.FINE, "Error indexing log file: " + logFile, ex);
+            }
+            return;
+        }
+        store();
+    }
+
+    /**
+     * Number of records in the file, including a trailing record that may
+     * still be in the process of being written.
+     */
+    public synchronized long getRecordCount() {
+        return recordCount + (pendingRecord ? 1 : 0);
+    }
+
+    /**
+     * Number of blocks of <code>indexSize</code> records.
+     */
+    public synchronized long getBlockCount() {
+        long records = getRecordCount();
+        return (records + indexSize - 1) / indexSize;
+    }
+
+    /**
+     * Byte offset of the first record of the given block, -1 if there is
+     * no such block.
+     */
+    public synchronized long getBlockOffset(long block) {
+        if (block < 0) {
+            return -1;
+        }
+        if (block < blockCount) {
+            return offsets[(int) block];
+        }
+        if (block == blockCount && pendingRecord && recordCount % indexSize == 0) {
+            return scannedUpTo;
+        }
+        return -1;
+    }
+
+    /**
+     * Byte offset just past the last record of the given block.
+     */
+    public synchronized long getBlockEnd(long block) {
+        long next = getBlockOffset(block + 1);
+        return (next < 0) ? fileLength : next;
+    }
+
+    /**
+     * Whether the given block may hold a record logged between
+     * <code>fromTime</code> and <code>toTime</code> (both ignored if -1)
+     * with a level of at least <code>minLevel</code>. The last block is
+     * always a candidate since its trailing record is not indexed yet.
+     */
+    public synchronized boolean mayMatch(long block, long fromTime, long toTime, int minLevel) {
+        if (block < 0) {
+            return false;
+        }
+        if (block >= blockCount - 1) {
+            return block < getBlockCount();
+        }
+        int b = (int) block;
+        if (maxLevels[b] < minLevel) {
+            return false;
+        }
+        if (fromTime >= 0 && toTime >= 0
+                && (maxTimes[b] < fromTime || minTimes[b] > toTime)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Opens a reader over the bytes between the two offsets. The log file
+     * stays open until the reader is closed.
+     */
+    public BufferedReader openReader(long from, long to) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            long end = Math.min(to, file.length());
+            return new BufferedReader(new InputStreamReader(
+                    new RegionInputStream(file, from, Math.max(from, end)), charset));
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    private void scan(long length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (format == FORMAT_UNDETECTED) {
+                if (length == 0) {
+                    return;
+                }
+                ByteBuffer head = ByteBuffer.allocate((int) Math.min(length, 8192));
+                readFully(channel, head, 0);
+                head.flip();
+                format = detectFormat(head);
+            }
+            LogParser parser = LogParserFactory.getInstance().createLogParser(logFile);
+            long windowStart = scannedUpTo;
+            ByteBuffer window = ByteBuffer.allocate(
+                    (int) Math.max(0, Math.min(SCAN_WINDOW, length - windowStart)));
+            pendingRecord = false;
+            while (windowStart < length) {
+                long size = Math.min(window.capacity(), length - windowStart);
+                boolean reachesEnd = (windowStart + size == length);
+                window.clear();
+                window.limit((int) size);
+                readFully(channel, window, windowStart);
+                window.flip();
+                int limit = (int) size;
+                int recordStart = -1;
+                int lastLineStart = 0;
+                int lineStart = 0;
+                while (lineStart < limit) {
+                    if (isRecordStart(window, lineStart, limit)) {
+                        if (recordStart >= 0) {
+                            indexRecord(parser, window, windowStart, recordStart, lineStart);
+                        }
+                        recordStart = lineStart;
+                    }
+                    lastLineStart = lineStart;
+                    int lineEnd = lineStart;
+                    while (lineEnd < limit && window.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    lineStart = lineEnd + 1;
+                }
+
+                if (recordStart < 0) {
+                    // nothing but lines that precede the first record
+                    if (reachesEnd || lastLineStart == 0) {
+                        break;
+                    }
+                    windowStart += lastLineStart;
+                    scannedUpTo = windowStart;
+                } else if (recordStart == 0 && !reachesEnd) {
+                    // a single record larger than the window
+                    window = ByteBuffer.allocate(
+                            (int) Math.min(2L * window.capacity(), length - windowStart));
+                } else {
+                    scannedUpTo = windowStart + recordStart;
+                    windowStart = scannedUpTo;
+                    if (window.capacity() > SCAN_WINDOW) {
+                        window = ByteBuffer.allocate(SCAN_WINDOW);
+                    }
+                    if (reachesEnd) {
+                        pendingRecord = true;
+                        break;
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            IOException ioe = new IOException(ex.getMessage());
+            ioe.initCause(ex);
+            throw ioe;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Parses one record and adds it to the index if the parser accepts it.
+     */
+    private void indexRecord(LogParser parser, ByteBuffer window, long windowStart,
+            int from, int to) throws Exception {
+        ByteBuffer bytes = window.duplicate();
+        bytes.limit(to);
+        bytes.position(from);
+        String text = charset.decode(bytes).toString();
+        final ParsedLogRecord[] found = new ParsedLogRecord[1];
+        parser.parseLog(new BufferedReader(new StringReader(text)), new LogParserListener() {
+            @Override
+            public void foundLogRecord(long position, ParsedLogRecord record) {
+                if (found[0] == null) {
+                    found[0] = record;
+                }
+            }
+
+            @Override
+            public void outputSummary(java.io.BufferedWriter writer, Object... objects) {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        if (found[0] == null) {
+            return;
+        }
+
+        long time = found[0].getTimeMillis();
+        int level = UNKNOWN_LEVEL;
+        try {
+            level = Level.parse(found[0].getLevel()).intValue();
+        } catch (Exception e) {
+            // keep the record visible to every level query
+        }
+
+        if (recordCount % indexSize == 0) {
+            addBlock(windowStart + from, time, level);
+        } else {
+            int b = blockCount - 1;
+            minTimes[b] = Math.min(minTimes[b], time);
+            maxTimes[b] = Math.max(maxTimes[b], time);
+            maxLevels[b] = Math.max(maxLevels[b], level);
+            if (firstDirtyBlock > b) {
+                firstDirtyBlock = b;
+            }
+        }
+        recordCount++;
+    }
+
+    private void addBlock(long offset, long time, int level) {
+        if (blockCount == offsets.length) {
+            int capacity = blockCount * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            minTimes = Arrays.copyOf(minTimes, capacity);
+            maxTimes = Arrays.copyOf(maxTimes, capacity);
+            maxLevels = Arrays.copyOf(maxLevels, capacity);
+        }
+        offsets[blockCount] = offset;
+        minTimes[blockCount] = time;
+        maxTimes[blockCount] = time;
+        maxLevels[blockCount] = level;
+        if (firstDirtyBlock > blockCount) {
+            firstDirtyBlock = blockCount;
+        }
+        blockCount++;
+    }
+
+    private boolean isRecordStart(ByteBuffer window, int lineStart, int limit) {
+        switch (format) {
+        case FORMAT_UNIFORM:
+            return startsWith(window, lineStart, limit, UNIFORM_RECORD_BEGIN_MARKER);
+        case FORMAT_ODL:
+            return ODL_RECORD_BEGIN_PATTERN.matcher(
+                    linePrefix(window, lineStart, limit)).lookingAt();
+        default:
+            return true;
+        }
+    }
+
+    private int detectFormat(ByteBuffer head) {
+        int limit = head.limit();
+        int end = 0;
+        while (end < limit && head.get(end) != '\n') {
+            end++;
+        }
+        ByteBuffer line = head.duplicate();
+        line.limit(end);
+        String firstLine = charset.decode(line).toString();
+        if (firstLine.endsWith("\r")) {
+            firstLine = firstLine.substring(0, firstLine.length() - 1);
+        }
+        if (ODL_RECORD_BEGIN_PATTERN.matcher(firstLine).lookingAt()) {
+            return FORMAT_ODL;
+        } else if (LogFormatHelper.isUniformFormatLogHeader(firstLine)) {
+            return FORMAT_UNIFORM;
+        }
+        return FORMAT_RAW;
+    }
+
+    private static boolean startsWith(ByteBuffer window, int offset, int limit, String prefix) {
+        if (offset + prefix.length() > limit) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (window.get(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String linePrefix(ByteBuffer window, int offset, int limit) {
+        StringBuilder prefix = new StringBuilder(HEADER_PREFIX_BYTES);
+        for (int i = offset; i < limit && i < offset + HEADER_PREFIX_BYTES; i++) {
+            byte b = window.get(i);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            prefix.append((char) (b & 0xff));
+        }
+        return prefix.toString();
+    }
+
+    private boolean fingerprintMatches() throws IOException {
+        if (fingerprintLength == 0) {
+            return true;
+        }
+        return fingerprintLength <= logFile.length()
+                && fingerprint == computeFingerprint(fingerprintLength);
+    }
+
+    private void updateFingerprint(long length) throws IOException {
+        if (fingerprintLength < FINGERPRINT_BYTES && length > fingerprintLength) {
+            fingerprintLength = (int) Math.min(length, FINGERPRINT_BYTES);
+            fingerprint = computeFingerprint(fingerprintLength);
+        }
+    }
+
+    private long computeFingerprint(int length) throws IOException {
+        byte[] head = new byte[length];
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            file.readFully(head);
+        } finally {
+            file.close();
+        }
+        // 64 bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : head) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void reset() {
+        format = FORMAT_UNDETECTED;
+        fingerprintLength = 0;
+        fingerprint = 0;
+        recordCount = 0;
+        scannedUpTo = 0;
+        fileLength = 0;
+        pendingRecord = false;
+        blockCount = 0;
+        firstDirtyBlock = -1;
+    }
+
+    private void load() {
+        if (!indexFile.exists()) {
+            firstDirtyBlock = -1;
+            return;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(indexFile, "r");
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getInt() != indexSize) {
+                reset();
+                return;
+            }
+            format = header.getInt();
+            fingerprintLength = header.getInt();
+            fingerprint = header.getLong();
+            recordCount = header.getLong();
+            scannedUpTo = header.getLong();
+
+            int blocks = (int) ((recordCount + indexSize - 1) / indexSize);
+            if (channel.size() < HEADER_SIZE + (long) blocks * ENTRY_SIZE) {
+                reset();
+                return;
+            }
+            ByteBuffer entries = ByteBuffer.allocate(blocks * ENTRY_SIZE);
+            readFully(channel, entries, HEADER_SIZE);
+            entries.flip();
+            for (int i = 0; i < blocks; i++) {
+                addBlock(entries.getLong(), entries.getLong(), 0);
+                maxTimes[i] = entries.getLong();
+                maxLevels[i] = entries.getInt();
+            }
+            firstDirtyBlock = blockCount;
+        } catch (IOException ex) {
+            if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                LogFacade.LOGGING_LOGGER.log(Level.FINE, "Ignoring unreadable log index " + indexFile, ex);
+            }
+            reset();
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the header and every entry that changed since the last call.
+     */
+    private void store() {
+        File dir = indexFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(indexFile, "rw");
+            FileChannel channel = file.getChannel();
+            int from = firstDirtyBlock;
+            if (from < 0) {
+                file.setLength(0);
+                from = 0;
+            }
+            ByteBuffer entries = ByteBuffer.allocate((blockCount - from) * ENTRY_SIZE);
+            for (int i = from; i < blockCount; i++) {
+                entries.putLong(offsets[i]);
+                entries.putLong(minTimes[i]);
+                entries.putLong(maxTimes[i]);
+                entries.putInt(maxLevels[i]);
+            }
+            entries.flip();
+            writeFully(channel, entries, HEADER_SIZE + (long) from * ENTRY_SIZE);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(indexSize);
+            header.putInt(format);
+            header.putInt(fingerprintLength);
+            header.putLong(fingerprint);
+            header.putLong(recordCount);
+            header.putLong(scannedUpTo);
+            header.flip();
+            writeFully(channel, header, 0);
+            firstDirtyBlock = blockCount;
+        } catch (IOException ex) {
+            if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                LogFacade.LOGGING_LOGGER.log(Level.FINE, "Could not write log index " + indexFile, ex);
+            }
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Streams a region of the log file through positional reads and closes
+     * the file when it is closed.
+     */
+    private static final class RegionInputStream extends InputStream {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RegionInputStream(RandomAccessFile file, long from, long end) {
+            this.file = file;
+            this.channel = file.getChannel();
+            this.position = from;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int n = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, n), position);
+            if (read < 0) {
+                return -1;
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
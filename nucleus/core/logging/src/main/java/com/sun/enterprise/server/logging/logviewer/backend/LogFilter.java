@@ -210,10 +210,6 @@ public class LogFilter {
             }
         }
 
-        // TO DO: If the fromRecord count is zero and the fromDate entry is
-        // non-null, then the system should take advantage of file Indexing.
-        // It should move the file position to the marker where the DateTime
-        // query matches.
         try {
             return fetchRecordsUsingQuery(logFile, startingRecord, nxt, forwd,
                     reqCount, fromDate, toDate, logLevel,
@@ -461,10 +457,6 @@ public class LogFilter {
             }
         }
 
-        // TO DO: If the fromRecord count is zero and the fromDate entry is
-        // non-null, then the system should take advantage of file Indexing.
-        // It should move the file position to the marker where the DateTime
-        // query matches.
         try {
             return fetchRecordsUsingQuery(logFile, startingRecord, nxt, forwd,
                     reqCount, fromDate, toDate, logLevel,
@@ -518,7 +510,32 @@ public class LogFilter {
         List results = new ArrayList();
         List records = null;
         LogFile.LogEntry entry = null;
+        boolean indexedQuery = ((fromDate != null) && (toDate != null)) || (logLevel != null);
         while (results.size() < requestedCount) {
+            // Let the log file index skip the blocks that cannot match the
+            // date/level part of the query instead of reading them
+            if (indexedQuery && (searchChunkIncrement > 0)) {
+                if (forward) {
+                    long candidate = logFile.nextCandidateRecord(startingRecord,
+                            fromDate, toDate, logLevel);
+                    if (candidate < 0) {
+                        break;
+                    }
+                    startingRecord = candidate;
+                } else {
+                    long lastRecord = startingRecord + searchChunkIncrement - 1;
+                    long candidate = logFile.previousCandidateRecord(lastRecord,
+                            fromDate, toDate, logLevel);
+                    if (candidate < 0) {
+                        break;
+                    }
+                    if (candidate < lastRecord) {
+                        startingRecord = Math.max(0, candidate - searchChunkIncrement + 1);
+                        searchChunkIncrement = candidate - startingRecord + 1;
+                    }
+                }
+            }
+
             // The following will always return unfiltered forward records
             records = logFile.getLogEntries(
                     startingRecord, searchChunkIncrement);
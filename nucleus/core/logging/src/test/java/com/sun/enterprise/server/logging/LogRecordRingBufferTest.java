@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+/**
+ * Test class for the ring buffer behind the high-throughput mode of
+ * GFFileHandler.
+ */
+public class LogRecordRingBufferTest {
+
+    @Test
+    public void testCapacityIsRoundedUp() {
+        assertEquals(8, new LogRecordRingBuffer(5).capacity());
+        assertEquals(1024, new LogRecordRingBuffer(1024).capacity());
+    }
+
+    @Test
+    public void testOfferFailsWhenFull() {
+        LogRecordRingBuffer buffer = new LogRecordRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(new LogRecord(Level.INFO, "record " + i)));
+        }
+        assertFalse(buffer.offer(new LogRecord(Level.INFO, "overflow")));
+        assertEquals(4, buffer.size());
+    }
+
+    @Test
+    public void testDrainKeepsOrderAndWrapsAround() {
+        LogRecordRingBuffer buffer = new LogRecordRingBuffer(4);
+        LogRecord[] records = new LogRecord[4];
+        long[] times = new long[4];
+        for (int lap = 0; lap < 3; lap++) {
+            LogRecord first = new LogRecord(Level.INFO, "first " + lap);
+            LogRecord second = new LogRecord(Level.INFO, "second " + lap);
+            LogRecord third = new LogRecord(Level.INFO, "third " + lap);
+            buffer.offer(first);
+            buffer.offer(second);
+            buffer.offer(third);
+            assertEquals(2, buffer.drainTo(records, times, 2));
+            assertSame(first, records[0]);
+            assertSame(second, records[1]);
+            assertEquals(1, buffer.drainTo(records, times, 4));
+            assertSame(third, records[0]);
+            assertTrue(times[0] != 0);
+        }
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.drainTo(records, times, 4));
+    }
+
+    @Test
+    public void testConcurrentProducersLoseNothing() throws InterruptedException {
+        final LogRecordRingBuffer buffer = new LogRecordRingBuffer(64);
+        final int producers = 4;
+        final int perProducer = 10000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads[p] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        LogRecord record = new LogRecord(Level.INFO, id + ":" + i);
+                        while (!buffer.offer(record)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads[p].start();
+        }
+
+        Set<String> seen = new HashSet<String>();
+        LogRecord[] records = new LogRecord[16];
+        long[] times = new long[16];
+        while (seen.size() < producers * perProducer) {
+            int count = buffer.drainTo(records, times, records.length);
+            for (int i = 0; i < count; i++) {
+                assertTrue(seen.add(records[i].getMessage()));
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.drainTo(records, times, 1));
+    }
+}
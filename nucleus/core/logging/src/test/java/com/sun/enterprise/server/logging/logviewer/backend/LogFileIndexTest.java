@@ -0,0 +1,168 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.server.logging.logviewer.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.enterprise.server.logging.logviewer.backend.LogFile.LogEntry;
+
+/**
+ * Test class for the log file index used by the log viewer.
+ */
+public class LogFileIndexTest {
+
+    private static final String UNIFORM_LOG = "uniform-server.log";
+    private static final int UNIFORM_RECORDS = 138;
+
+    private File logsDir;
+
+    @Before
+    public void setUp() {
+        logsDir = new File(System.getProperty("user.dir") + File.separator + "target"
+                + File.separator + "test-logindex-" + System.nanoTime());
+        logsDir.mkdirs();
+    }
+
+    @Test
+    public void testPagesMatchRecordNumbers() throws IOException {
+        File log = copyLog(UNIFORM_LOG, "server.log");
+        LogFile logFile = new LogFile(log.getAbsolutePath());
+        assertEquals((UNIFORM_RECORDS + 9) / 10, logFile.getLastIndexNumber());
+
+        List all = logFile.getLogEntries(0, UNIFORM_RECORDS + 10);
+        assertEquals(UNIFORM_RECORDS, all.size());
+
+        List page = logFile.getLogEntries(25, 10);
+        assertEquals(10, page.size());
+        for (int i = 0; i < 10; i++) {
+            LogEntry expected = (LogEntry) all.get(25 + i);
+            LogEntry actual = (LogEntry) page.get(i);
+            assertEquals(25 + i, actual.getRecordNumber());
+            assertEquals(expected.getLoggedMessage(), actual.getLoggedMessage());
+        }
+
+        assertTrue(LogFileIndex.getIndexFile(log).exists());
+    }
+
+    @Test
+    public void testIndexIsReusedAndExtended() throws IOException {
+        File log = copyLog(UNIFORM_LOG, "server.log");
+        new LogFile(log.getAbsolutePath()).getLastIndexNumber();
+
+        // a second copy of the records is appended to the same file
+        appendLog(UNIFORM_LOG, log);
+        LogFile logFile = new LogFile(log.getAbsolutePath());
+        List page = logFile.getLogEntries(UNIFORM_RECORDS, 3);
+        List first = logFile.getLogEntries(0, 3);
+        assertEquals(3, page.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(((LogEntry) first.get(i)).getLoggedMessage(),
+                    ((LogEntry) page.get(i)).getLoggedMessage());
+        }
+    }
+
+    @Test
+    public void testIndexIsRebuiltForReplacedFile() throws IOException {
+        File log = copyLog(UNIFORM_LOG, "server.log");
+        LogFile logFile = new LogFile(log.getAbsolutePath());
+        logFile.getLastIndexNumber();
+
+        copyLog("odl-server.log", "server.log");
+        assertEquals(45, logFile.getLogEntries(0, 100).size());
+    }
+
+    @Test
+    public void testLevelQuerySkipsBlocks() throws IOException {
+        File log = copyLog(UNIFORM_LOG, "server.log");
+        LogFile logFile = new LogFile(log.getAbsolutePath());
+        List all = logFile.getLogEntries(0, UNIFORM_RECORDS);
+        long candidate = logFile.nextCandidateRecord(0, null, null, "SEVERE");
+        for (int i = 0; i < candidate; i++) {
+            LogEntry entry = (LogEntry) all.get(i);
+            assertTrue(!"SEVERE".equals(entry.getLoggedLevel()));
+        }
+    }
+
+    private File copyLog(String resource, String name) throws IOException {
+        File log = new File(logsDir, name);
+        OutputStream out = new FileOutputStream(log);
+        try {
+            copy(resource, out);
+        } finally {
+            out.close();
+        }
+        return log;
+    }
+
+    private void appendLog(String resource, File log) throws IOException {
+        OutputStream out = new FileOutputStream(log, true);
+        try {
+            copy(resource, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void copy(String resource, OutputStream out) throws IOException {
+        InputStream in = LogFileIndexTest.class.getResourceAsStream(
+                "/com/sun/enterprise/server/logging/parser/" + resource);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}